@@ -1,7 +1,8 @@
 package com.asiah.formfit.data;
 
 import android.content.Context;
-import android.util.Log;
+
+import com.asiah.formfit.utils.TraceBuffer;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -11,7 +12,6 @@ import java.util.List;
  */
 public class DataManager {
 
-    private static final String TAG = "DataManager";
     private static DataManager instance;
     private Context context;
 
@@ -46,7 +46,7 @@ public class DataManager {
         User user = new User(username, email);
         user.setId(1); // Hardcoded ID for prototype
 
-        Log.d(TAG, "User initialized: " + username);
+        TraceBuffer.record(TraceBuffer.EVENT_DATA_USER_INITIALIZED, user.getId());
 
         if (listener != null) {
             listener.onDataLoaded(user);
@@ -61,7 +61,7 @@ public class DataManager {
         Exercise exercise = new Exercise(1, name, duration, formAccuracy, reps, calories);
         exercise.setId(System.currentTimeMillis()); // Use timestamp as ID
 
-        Log.d(TAG, "Exercise saved: " + name);
+        TraceBuffer.record(TraceBuffer.EVENT_DATA_EXERCISE_SAVED, reps, formAccuracy);
 
         if (listener != null) {
             listener.onDataLoaded(exercise);
@@ -76,7 +76,7 @@ public class DataManager {
         Achievement achievement = new Achievement(1, name, description);
         achievement.setId(System.currentTimeMillis()); // Use timestamp as ID
 
-        Log.d(TAG, "Achievement saved: " + name);
+        TraceBuffer.record(TraceBuffer.EVENT_DATA_ACHIEVEMENT_SAVED, 0);
 
         if (listener != null) {
             listener.onDataLoaded(achievement);
@@ -93,7 +93,7 @@ public class DataManager {
         exercises.add(new Exercise(1, "Push-up", 240, 92.0f, 20, 80));
         exercises.add(new Exercise(1, "Plank", 180, 88.5f, 1, 60));
 
-        Log.d(TAG, "Returning " + exercises.size() + " exercises");
+        TraceBuffer.record(TraceBuffer.EVENT_DATA_EXERCISES_LOADED, exercises.size());
 
         if (listener != null) {
             listener.onDataLoaded(exercises);
@@ -110,7 +110,7 @@ public class DataManager {
         achievements.add(new Achievement(1, "10 Day Streak", "Exercised for 10 consecutive days"));
         achievements.add(new Achievement(1, "First Workout", "Completed your first workout session"));
 
-        Log.d(TAG, "Returning " + achievements.size() + " achievements");
+        TraceBuffer.record(TraceBuffer.EVENT_DATA_ACHIEVEMENTS_LOADED, achievements.size());
 
         if (listener != null) {
             listener.onDataLoaded(achievements);
@@ -128,8 +128,8 @@ public class DataManager {
      * Set the current local user ID
      */
     public void setLocalUserId(long userId) {
-        // For prototype, just log it
-        Log.d(TAG, "Local user ID set to: " + userId);
+        // For prototype, just trace it
+        TraceBuffer.record(TraceBuffer.EVENT_DATA_USER_ID_SET, userId);
     }
 
     /**
@@ -0,0 +1,224 @@
+package com.asiah.formfit.data;
+
+import com.asiah.formfit.model.MotionPattern;
+import com.asiah.formfit.model.RecordedSession;
+import com.asiah.formfit.utils.MotionSession;
+import com.asiah.formfit.utils.SensorQuantizer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * SensorRecordingReader memory-maps a recording written by SensorRecordingWriter
+ * and reads frames in place, without copying the file into the Java heap.
+ * Frames are decoded on demand with absolute reads, so random access and
+ * full replays both run at the speed of the page cache.
+ * A single mapping covers files up to 2 GB, roughly 80 hours at 200 Hz.
+ */
+public class SensorRecordingReader implements Closeable {
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer data;
+    private final int exerciseType;
+    private final int sampleRate;
+    private final long startTime;
+    private final short encoding;
+    private final int frameSize;
+    private final SensorQuantizer quantizer;
+    private final int frameCount;
+
+    /**
+     * Open and map a recording
+     * @param input Recording file
+     * @throws IOException If the file cannot be read or is not a recording
+     */
+    public SensorRecordingReader(File input) throws IOException {
+        file = new RandomAccessFile(input, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            if (size < SensorRecordingWriter.HEADER_SIZE) {
+                throw new IOException("File too short for a recording header: " + input);
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Recording too large to map: " + input);
+            }
+
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            data.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (data.getInt(0) != SensorRecordingWriter.MAGIC) {
+                throw new IOException("Not a sensor recording: " + input);
+            }
+            if (data.getShort(SensorRecordingWriter.OFFSET_VERSION) > SensorRecordingWriter.VERSION) {
+                throw new IOException("Unsupported recording version in " + input);
+            }
+
+            encoding = data.getShort(SensorRecordingWriter.OFFSET_ENCODING);
+            exerciseType = data.getInt(SensorRecordingWriter.OFFSET_EXERCISE_TYPE);
+            sampleRate = data.getInt(SensorRecordingWriter.OFFSET_SAMPLE_RATE);
+            startTime = data.getLong(SensorRecordingWriter.OFFSET_START_TIME);
+            frameSize = data.getInt(SensorRecordingWriter.OFFSET_FRAME_SIZE);
+            if (frameSize != SensorRecordingWriter.frameSizeFor(encoding)) {
+                throw new IOException("Frame size does not match encoding in " + input);
+            }
+            float[] scales = new float[6];
+            for (int i = 0; i < 6; i++) {
+                scales[i] = data.getFloat(SensorRecordingWriter.OFFSET_SCALES + i * 4);
+            }
+            quantizer = new SensorQuantizer(scales);
+
+            // Trust the file length over the header if recording was interrupted
+            long complete = (size - SensorRecordingWriter.HEADER_SIZE) / frameSize;
+            long declared = data.getLong(SensorRecordingWriter.OFFSET_FRAME_COUNT);
+            frameCount = (int) (declared > 0 && declared <= complete ? declared : complete);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private int frameOffset(int frame) {
+        if (frame < 0 || frame >= frameCount) {
+            throw new IndexOutOfBoundsException("Frame " + frame + " of " + frameCount);
+        }
+        return SensorRecordingWriter.HEADER_SIZE + frame * frameSize;
+    }
+
+    /**
+     * Get the sensor timestamp of a frame in epoch milliseconds
+     */
+    public long getTimestamp(int frame) {
+        return startTime + data.getInt(frameOffset(frame));
+    }
+
+    /**
+     * Decode one frame into caller-owned arrays
+     * @param frame Frame index
+     * @param accelerationData Receives acceleration x, y, z
+     * @param gyroscopeData Receives gyroscope x, y, z
+     * @return Sensor timestamp of the frame in epoch milliseconds
+     */
+    public long readFrame(int frame, float[] accelerationData, float[] gyroscopeData) {
+        int offset = frameOffset(frame);
+        int values = offset + 4;
+        if (encoding == SensorRecordingWriter.ENCODING_FLOAT32) {
+            accelerationData[0] = data.getFloat(values);
+            accelerationData[1] = data.getFloat(values + 4);
+            accelerationData[2] = data.getFloat(values + 8);
+            gyroscopeData[0] = data.getFloat(values + 12);
+            gyroscopeData[1] = data.getFloat(values + 16);
+            gyroscopeData[2] = data.getFloat(values + 20);
+        } else {
+            accelerationData[0] = quantizer.dequantize(data.getShort(values), 0);
+            accelerationData[1] = quantizer.dequantize(data.getShort(values + 2), 1);
+            accelerationData[2] = quantizer.dequantize(data.getShort(values + 4), 2);
+            gyroscopeData[0] = quantizer.dequantize(data.getShort(values + 6), 3);
+            gyroscopeData[1] = quantizer.dequantize(data.getShort(values + 8), 4);
+            gyroscopeData[2] = quantizer.dequantize(data.getShort(values + 10), 5);
+        }
+        return startTime + data.getInt(offset);
+    }
+
+    /**
+     * Copy one frame's int16 values without decoding, quantizing float32 frames on the fly
+     * @param frame Frame index
+     * @param out Receives SAMPLE_STRIDE values in getQuantizer() units
+     * @param offset Index of the first value in out
+     * @return Sensor timestamp of the frame in epoch milliseconds
+     */
+    public long readQuantizedFrame(int frame, short[] out, int offset) {
+        int frameOffset = frameOffset(frame);
+        int values = frameOffset + 4;
+        for (int i = 0; i < 6; i++) {
+            out[offset + i] = encoding == SensorRecordingWriter.ENCODING_INT16
+                    ? data.getShort(values + i * 2)
+                    : quantizer.quantize(data.getFloat(values + i * 4), i);
+        }
+        return startTime + data.getInt(frameOffset);
+    }
+
+    /**
+     * Replay every frame through an analysis session
+     * @param session Session to feed
+     * @return Number of frames replayed
+     */
+    public int replay(MotionSession session) {
+        float[] acc = new float[3];
+        float[] gyro = new float[3];
+        for (int i = 0; i < frameCount; i++) {
+            long timestamp = readFrame(i, acc, gyro);
+            session.addSample(acc, gyro, timestamp);
+        }
+        return frameCount;
+    }
+
+    /**
+     * Decode the whole recording into a heap RecordedSession for batch re-analysis
+     * @param id Identifier for the session
+     */
+    public RecordedSession toRecordedSession(String id) {
+        float[] samples = new float[frameCount * RecordedSession.SAMPLE_STRIDE];
+        long[] timestamps = new long[frameCount];
+        float[] acc = new float[3];
+        float[] gyro = new float[3];
+
+        for (int i = 0; i < frameCount; i++) {
+            timestamps[i] = readFrame(i, acc, gyro);
+            int base = i * RecordedSession.SAMPLE_STRIDE;
+            System.arraycopy(acc, 0, samples, base, 3);
+            System.arraycopy(gyro, 0, samples, base + 3, 3);
+        }
+
+        return new RecordedSession(id, exerciseType, samples, timestamps, frameCount);
+    }
+
+    /**
+     * Decode one frame as a MotionPattern, for callers that still need objects
+     */
+    public MotionPattern readPattern(int frame) {
+        MotionPattern pattern = new MotionPattern();
+        pattern.setTimestamp(readFrame(frame, pattern.getAccelerationData(), pattern.getGyroscopeData()));
+        return pattern;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public int getExerciseType() {
+        return exerciseType;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public short getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Get the quantizer matching the recording's int16 scale factors
+     */
+    public SensorQuantizer getQuantizer() {
+        return quantizer;
+    }
+
+    /**
+     * Close the file. The mapping itself is released once it is garbage collected
+     */
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
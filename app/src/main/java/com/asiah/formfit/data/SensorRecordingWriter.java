@@ -0,0 +1,249 @@
+package com.asiah.formfit.data;
+
+import com.asiah.formfit.utils.SensorQuantizer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * SensorRecordingWriter appends raw wearable frames to a compact binary session file.
+ *
+ * Layout (all values little-endian):
+ * <pre>
+ *  0  int32   magic "FFSR"
+ *  4  int16   format version
+ *  6  int16   encoding: ENCODING_FLOAT32 or ENCODING_INT16
+ *  8  int32   exercise type
+ * 12  int32   nominal sample rate in Hz
+ * 16  int64   start timestamp in epoch milliseconds
+ * 24  int64   frame count, written on close (0 while recording)
+ * 32  float32 x6 per-axis scale for int16 frames (value = raw * scale)
+ * 56  int32   frame size in bytes
+ * 60  int32   reserved
+ * 64  frames: int32 milliseconds since start, then acc x, y, z and gyro x, y, z
+ *             as float32 (28 bytes) or int16 (16 bytes)
+ * </pre>
+ * Frames are fixed-size, so a file cut short by a crash is still readable up
+ * to its last complete frame, and recording can resume by appending. Appending
+ * clears the frame count until the next close.
+ */
+public class SensorRecordingWriter implements Closeable {
+
+    public static final int MAGIC = 0x52534646; // "FFSR" read as little-endian
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 64;
+
+    public static final short ENCODING_FLOAT32 = 0;
+    public static final short ENCODING_INT16 = 1;
+
+    public static final int FRAME_SIZE_FLOAT32 = 4 + 6 * 4;
+    public static final int FRAME_SIZE_INT16 = 4 + 6 * 2;
+
+    // Header offsets
+    static final int OFFSET_VERSION = 4;
+    static final int OFFSET_ENCODING = 6;
+    static final int OFFSET_EXERCISE_TYPE = 8;
+    static final int OFFSET_SAMPLE_RATE = 12;
+    static final int OFFSET_START_TIME = 16;
+    static final int OFFSET_FRAME_COUNT = 24;
+    static final int OFFSET_SCALES = 32;
+    static final int OFFSET_FRAME_SIZE = 56;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final short encoding;
+    private final int frameSize;
+    private final long startTime;
+    private final SensorQuantizer quantizer;
+    private long frameCount;
+
+    /**
+     * Create a new recording, replacing any existing file
+     * @param output File to write
+     * @param exerciseType Type of exercise being recorded
+     * @param sampleRate Nominal sample rate in Hz
+     * @param startTime Timestamp of the session start in epoch milliseconds
+     * @param encoding ENCODING_FLOAT32 or ENCODING_INT16
+     * @param quantizer Per-axis int16 scale factors, stored in the header; only applied to ENCODING_INT16 frames
+     */
+    public SensorRecordingWriter(File output, int exerciseType, int sampleRate, long startTime,
+                                 short encoding, SensorQuantizer quantizer) throws IOException {
+        // Check everything before the existing file is opened and truncated
+        if (quantizer == null) {
+            throw new IllegalArgumentException("Quantizer must not be null");
+        }
+        this.frameSize = frameSizeFor(encoding);
+        this.encoding = encoding;
+        this.startTime = startTime;
+        this.quantizer = quantizer;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        this.file = new RandomAccessFile(output, "rw");
+        try {
+            this.channel = file.getChannel();
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putShort(VERSION);
+            header.putShort(encoding);
+            header.putInt(exerciseType);
+            header.putInt(sampleRate);
+            header.putLong(startTime);
+            header.putLong(0);
+            for (int i = 0; i < 6; i++) {
+                header.putFloat(quantizer.getScale(i));
+            }
+            header.putInt(frameSize);
+            header.putInt(0);
+            header.flip();
+            writeFully(header, 0);
+            channel.position(HEADER_SIZE);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Create a new float32 recording
+     */
+    public SensorRecordingWriter(File output, int exerciseType, int sampleRate, long startTime) throws IOException {
+        this(output, exerciseType, sampleRate, startTime, ENCODING_FLOAT32, new SensorQuantizer());
+    }
+
+    /**
+     * Reopen an existing recording to append more frames.
+     * Any partial frame left by an interrupted write is discarded
+     */
+    public static SensorRecordingWriter append(File existing) throws IOException {
+        return new SensorRecordingWriter(existing);
+    }
+
+    private SensorRecordingWriter(File existing) throws IOException {
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        this.file = new RandomAccessFile(existing, "rw");
+        try {
+            this.channel = file.getChannel();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (channel.read(header, 0) < HEADER_SIZE || header.getInt(0) != MAGIC) {
+                throw new IOException("Not a sensor recording: " + existing);
+            }
+
+            this.encoding = header.getShort(OFFSET_ENCODING);
+            this.frameSize = header.getInt(OFFSET_FRAME_SIZE);
+            if ((encoding != ENCODING_FLOAT32 && encoding != ENCODING_INT16) || frameSize != frameSizeFor(encoding)) {
+                throw new IOException("Frame size does not match encoding in " + existing);
+            }
+            this.startTime = header.getLong(OFFSET_START_TIME);
+            float[] scales = new float[6];
+            for (int i = 0; i < 6; i++) {
+                scales[i] = header.getFloat(OFFSET_SCALES + i * 4);
+                if (!(scales[i] > 0) || Float.isInfinite(scales[i])) {
+                    throw new IOException("Invalid scale factors in " + existing);
+                }
+            }
+            this.quantizer = new SensorQuantizer(scales);
+
+            this.frameCount = (channel.size() - HEADER_SIZE) / frameSize;
+            long end = HEADER_SIZE + frameCount * frameSize;
+            channel.truncate(end);
+            channel.position(end);
+
+            // Back to "recording" so a crash before close leaves the reader trusting the file length
+            ByteBuffer count = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            writeFully(count, OFFSET_FRAME_COUNT);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    static int frameSizeFor(short encoding) {
+        switch (encoding) {
+            case ENCODING_FLOAT32:
+                return FRAME_SIZE_FLOAT32;
+            case ENCODING_INT16:
+                return FRAME_SIZE_INT16;
+            default:
+                throw new IllegalArgumentException("Unknown encoding: " + encoding);
+        }
+    }
+
+    /**
+     * Append one frame
+     * @param timestamp Sensor timestamp in epoch milliseconds
+     * @param accelerationData Acceleration x, y, z
+     * @param gyroscopeData Gyroscope x, y, z
+     */
+    public void writeFrame(long timestamp, float[] accelerationData, float[] gyroscopeData) throws IOException {
+        if (buffer.remaining() < frameSize) {
+            flush();
+        }
+
+        buffer.putInt((int) (timestamp - startTime));
+        if (encoding == ENCODING_FLOAT32) {
+            buffer.putFloat(accelerationData[0]);
+            buffer.putFloat(accelerationData[1]);
+            buffer.putFloat(accelerationData[2]);
+            buffer.putFloat(gyroscopeData[0]);
+            buffer.putFloat(gyroscopeData[1]);
+            buffer.putFloat(gyroscopeData[2]);
+        } else {
+            buffer.putShort(quantizer.quantize(accelerationData[0], 0));
+            buffer.putShort(quantizer.quantize(accelerationData[1], 1));
+            buffer.putShort(quantizer.quantize(accelerationData[2], 2));
+            buffer.putShort(quantizer.quantize(gyroscopeData[0], 3));
+            buffer.putShort(quantizer.quantize(gyroscopeData[1], 4));
+            buffer.putShort(quantizer.quantize(gyroscopeData[2], 5));
+        }
+        frameCount++;
+    }
+
+    /**
+     * Write buffered frames to the file
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer source, long position) throws IOException {
+        while (source.hasRemaining()) {
+            position += channel.write(source, position);
+        }
+    }
+
+    /**
+     * Get the number of frames in the recording, including buffered ones
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Flush remaining frames, record the final frame count and close the file
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            ByteBuffer count = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            count.putLong(0, frameCount);
+            writeFully(count, OFFSET_FRAME_COUNT);
+        } finally {
+            file.close();
+        }
+    }
+}
@@ -5,16 +5,43 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.os.Handler;
+import android.util.Log;
+import android.util.TypedValue;
+import android.view.Choreographer;
+import android.view.Gravity;
 import android.view.View;
+import android.widget.FrameLayout;
 import android.widget.ImageButton;
 import android.widget.TextView;
 import android.widget.Toast;
+import com.asiah.formfit.BuildConfig;
 import com.asiah.formfit.R;
+import com.asiah.formfit.model.MotionPattern;
+import com.asiah.formfit.utils.AnalysisEngine;
+import com.asiah.formfit.utils.FeedbackBus;
+import com.asiah.formfit.utils.FormRuleEngine;
+import com.asiah.formfit.utils.MotionAnalyzer;
+import com.asiah.formfit.utils.MotionSession;
+import com.asiah.formfit.utils.PhysiologyEngine;
+import com.asiah.formfit.utils.PipelineLatency;
+import com.asiah.formfit.wearable.SensorDataListener;
+import com.asiah.formfit.wearable.SimulatedWearableController;
+import com.asiah.formfit.wearable.WearableController;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 
 /**
  * ActiveExerciseActivity - Fixed to extend Activity instead of AppCompatActivity
  */
-public class ActiveExerciseActivity extends Activity {
+public class ActiveExerciseActivity extends Activity implements SensorDataListener {
+
+    private static final String TAG = "ActiveExerciseActivity";
+
+    // How often the debug latency overlay refreshes
+    private static final long OVERLAY_REFRESH_MS = 1000;
 
     private TextView tvExerciseName;
     private TextView tvFormAccuracy;
@@ -26,12 +53,44 @@ public class ActiveExerciseActivity extends Activity {
 
     private Handler handler = new Handler();
     private boolean isExercising = true;
+    private boolean finishing;
     private String exerciseName = "Exercise";
 
-    // Simple exercise data
-    private float formAccuracy = 92f;
-    private int calories = 148;
-    private int reps = 12;
+    // Motion analysis; templates for the exercise are loaded when the session starts
+    private MotionAnalyzer motionAnalyzer;
+    private MotionSession motionSession;
+
+    // Runs the session on its own thread; sensor callbacks only queue samples
+    private AnalysisEngine analysisEngine;
+    private static final int ANALYSIS_QUEUE_CAPACITY = 1024;
+    private int exerciseType;
+
+    // Sample-to-screen latency per pipeline hop
+    private final PipelineLatency latency = new PipelineLatency();
+    private TextView tvLatencyOverlay;
+
+    // Feedback codes from analysis, coalesced to one update per frame
+    private final FeedbackBus feedbackBus = new FeedbackBus();
+    private volatile long feedbackPublishedNanos;
+    private volatile long feedbackReceivedNanos;
+    private long feedbackShownNanos;
+
+    // Heart rate, calories and training load for the session
+    private PhysiologyEngine physiology;
+
+    // Source of motion and heart-rate data; null until a wearable is available
+    private WearableController wearableController;
+
+    // Share of simulated reps performed with a form error, so debug builds show corrections
+    private static final float SIMULATED_ERROR_RATE = 0.2f;
+
+    // Typical wearable IMU rate; the session decimates it to what the exercise needs
+    private static final float SIMULATED_SAMPLE_RATE = 200f;
+
+    // Session totals shown on screen
+    private float formAccuracy;
+    private int calories;
+    private int reps;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -41,6 +100,7 @@ public class ActiveExerciseActivity extends Activity {
         initViews();
         setupExercise();
         setupClickListeners();
+        setupLatencyOverlay();
         startSimulation();
     }
 
@@ -65,12 +125,57 @@ public class ActiveExerciseActivity extends Activity {
             exerciseName = "Squat Form";
         }
 
-        // Set initial values
+        // Start analysis for this exercise only
+        motionAnalyzer = MotionAnalyzer.getInstance(this);
+        exerciseType = MotionAnalyzer.exerciseTypeForName(exerciseName);
+        motionSession = motionAnalyzer.newSession(exerciseType);
+        // Declares the input rate on the session, so create it before analysis starts
+        wearableController = createWearableController();
+        analysisEngine = new AnalysisEngine(motionSession, ANALYSIS_QUEUE_CAPACITY, feedbackBus, latency);
+        analysisEngine.setFeedbackListener(feedbackPending);
+        analysisEngine.setRepetitionListener(repetitionCompleted);
+        analysisEngine.start();
+
+        physiology = new PhysiologyEngine(exerciseType);
+        physiology.update(System.currentTimeMillis());
+
+        // Pick up form rules pushed to the device while tuning
+        motionAnalyzer.getRuleEngine().reloadIfChanged(new File(getFilesDir(), FormRuleEngine.RULES_FILE));
+
         tvExerciseName.setText(exerciseName);
-        tvFormAccuracy.setText("92%");
-        tvCaloriesBurned.setText("148");
-        tvRepCount.setText("12");
-        tvFormCorrection.setText("Excellent form! Keep it up!");
+        if (wearableController == null) {
+            showNoWearable();
+            return;
+        }
+        wearableController.setSensorDataListener(this);
+        wearableController.startListening();
+
+        // Set initial values
+        tvFormAccuracy.setText("0%");
+        tvCaloriesBurned.setText("0");
+        tvRepCount.setText("0");
+        tvFormCorrection.setText("Get into position");
+    }
+
+    // Without a data source there is nothing to measure, so no numbers are shown
+    private void showNoWearable() {
+        tvFormAccuracy.setText("--");
+        tvCaloriesBurned.setText("--");
+        tvRepCount.setText("--");
+        tvFormCorrection.setText("No wearable connected");
+    }
+
+    // No hardware controller exists yet; debug builds stream from the simulator instead
+    private WearableController createWearableController() {
+        if (!BuildConfig.DEBUG) {
+            return null;
+        }
+        SimulatedWearableController simulator = new SimulatedWearableController(System.currentTimeMillis());
+        simulator.setExerciseType(exerciseType);
+        simulator.setErrorRate(SIMULATED_ERROR_RATE);
+        simulator.setSampleRate(SIMULATED_SAMPLE_RATE);
+        motionSession.setInputRate(SIMULATED_SAMPLE_RATE);
+        return simulator;
     }
 
     private void setupClickListeners() {
@@ -110,6 +215,170 @@ public class ActiveExerciseActivity extends Activity {
         });
     }
 
+    /**
+     * In debug builds, long-pressing the exercise name toggles a latency overlay
+     */
+    private void setupLatencyOverlay() {
+        if (!BuildConfig.DEBUG) {
+            return;
+        }
+
+        tvLatencyOverlay = new TextView(this);
+        tvLatencyOverlay.setTypeface(android.graphics.Typeface.MONOSPACE);
+        tvLatencyOverlay.setTextSize(TypedValue.COMPLEX_UNIT_SP, 10);
+        tvLatencyOverlay.setTextColor(0xFFFFFFFF);
+        tvLatencyOverlay.setBackgroundColor(0xAA000000);
+        tvLatencyOverlay.setPadding(12, 12, 12, 12);
+        tvLatencyOverlay.setVisibility(View.GONE);
+        FrameLayout content = findViewById(android.R.id.content);
+        content.addView(tvLatencyOverlay, new FrameLayout.LayoutParams(
+                FrameLayout.LayoutParams.WRAP_CONTENT, FrameLayout.LayoutParams.WRAP_CONTENT,
+                Gravity.TOP | Gravity.END));
+
+        tvExerciseName.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                boolean show = tvLatencyOverlay.getVisibility() != View.VISIBLE;
+                tvLatencyOverlay.setVisibility(show ? View.VISIBLE : View.GONE);
+                if (show) {
+                    handler.post(refreshLatencyOverlay);
+                }
+                return true;
+            }
+        });
+    }
+
+    private final Runnable refreshLatencyOverlay = new Runnable() {
+        @Override
+        public void run() {
+            if (tvLatencyOverlay != null && tvLatencyOverlay.getVisibility() == View.VISIBLE) {
+                tvLatencyOverlay.setText(latency.toString());
+                handler.postDelayed(this, OVERLAY_REFRESH_MS);
+            }
+        }
+    };
+
+    @Override
+    public void onMotionDataReceived(MotionPattern motionPattern) {
+        long sampleTime = motionPattern.getTimestamp();
+        if (sampleTime > 0) {
+            latency.record(PipelineLatency.HOP_RECEIVE, (System.currentTimeMillis() - sampleTime) * 1000000L);
+        }
+        analysisEngine.offer(motionPattern.getAccelerationData(), motionPattern.getGyroscopeData(), sampleTime);
+    }
+
+    @Override
+    public void onMotionDataBatch(float[] samples, int count, long firstTimestamp, float intervalMillis) {
+        if (count == 0) {
+            return;
+        }
+        long lastTime = firstTimestamp + Math.round((count - 1) * intervalMillis);
+        latency.record(PipelineLatency.HOP_RECEIVE, (System.currentTimeMillis() - lastTime) * 1000000L);
+        analysisEngine.offerBatch(samples, count, firstTimestamp, intervalMillis);
+    }
+
+    // Runs on the analysis thread when the bus goes from empty to pending
+    private final AnalysisEngine.FeedbackListener feedbackPending = new AnalysisEngine.FeedbackListener() {
+        @Override
+        public void onFeedbackPending(long analyzedNanos, long receivedNanos) {
+            feedbackPublishedNanos = analyzedNanos;
+            feedbackReceivedNanos = receivedNanos;
+            handler.post(scheduleFeedback);
+        }
+    };
+
+    // Runs on the analysis thread; physiology is only touched on the UI thread
+    private final AnalysisEngine.RepetitionListener repetitionCompleted = new AnalysisEngine.RepetitionListener() {
+        @Override
+        public void onRepetition(int repetitionCount, final long timestamp) {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (isExercising) {
+                        physiology.addRepetition(timestamp);
+                    }
+                }
+            });
+        }
+    };
+
+    // Choreographer callbacks must be posted from the UI thread
+    private final Runnable scheduleFeedback = new Runnable() {
+        @Override
+        public void run() {
+            if (isExercising) {
+                Choreographer.getInstance().postFrameCallback(drainFeedback);
+            }
+        }
+    };
+
+    // Shows at most one feedback update per frame
+    private final Choreographer.FrameCallback drainFeedback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            long now = System.nanoTime();
+            latency.recordSpan(PipelineLatency.HOP_FEEDBACK, feedbackPublishedNanos, now);
+            int code = feedbackBus.drain(now);
+            if (code == FeedbackBus.FEEDBACK_NONE || !isExercising) {
+                return;
+            }
+
+            tvFormCorrection.setText(FeedbackBus.getMessage(code));
+            feedbackShownNanos = now;
+            Choreographer.getInstance().postFrameCallback(feedbackRendered);
+        }
+    };
+
+    // The text is on screen once the frame after setText has been drawn
+    private final Choreographer.FrameCallback feedbackRendered = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            long now = System.nanoTime();
+            latency.recordSpan(PipelineLatency.HOP_RENDER, feedbackShownNanos, now);
+            latency.recordSpan(PipelineLatency.HOP_TOTAL, feedbackReceivedNanos, now);
+        }
+    };
+
+    @Override
+    public void onHeartRateReceived(final float heartRate) {
+        final long receivedTime = System.currentTimeMillis();
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (isExercising) {
+                    physiology.addHeartRate(heartRate, receivedTime);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onWearableError(final String errorMessage) {
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                Toast.makeText(ActiveExerciseActivity.this, errorMessage, Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    /**
+     * Write this session's latency summary to app storage in debug builds
+     */
+    private void exportLatency() {
+        if (!BuildConfig.DEBUG || latency.getHistogram(PipelineLatency.HOP_TOTAL).getCount() == 0) {
+            return;
+        }
+
+        File file = new File(getFilesDir(), "latency_" + System.currentTimeMillis() + ".txt");
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(exerciseName + "\n");
+            latency.export(writer);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not export latency", e);
+        }
+    }
+
     private void startSimulation() {
         Toast.makeText(this, "Starting " + exerciseName + "...", Toast.LENGTH_LONG).show();
 
@@ -126,36 +395,57 @@ public class ActiveExerciseActivity extends Activity {
     }
 
     private void updateStats() {
-        // Simulate changing values
-        formAccuracy += (Math.random() - 0.5) * 6;
-        formAccuracy = Math.max(80, Math.min(98, formAccuracy));
-
-        if (Math.random() > 0.4) {
-            calories += (int)(Math.random() * 4) + 1;
-            reps += 1;
+        if (wearableController == null) {
+            return;
         }
 
+        // Totals are kept up to date as samples arrive; only read them here
+        physiology.update(System.currentTimeMillis());
+        formAccuracy = analysisEngine.getFormAccuracy();
+        reps = analysisEngine.getRepetitionCount();
+        calories = (int) physiology.getCalories();
+
         // Update UI
         tvFormAccuracy.setText(String.format("%.0f%%", formAccuracy));
         tvCaloriesBurned.setText(String.valueOf(calories));
         tvRepCount.setText(String.valueOf(reps));
+    }
 
-        // Update feedback
-        if (formAccuracy > 90) {
-            tvFormCorrection.setText("Excellent form! Keep it up! 💪");
-        } else if (formAccuracy > 85) {
-            tvFormCorrection.setText("Good form. Stay focused! 👍");
-        } else {
-            tvFormCorrection.setText("Focus on your form ⚠️");
+    private void finishExercise() {
+        if (finishing) {
+            return;
         }
+        finishing = true;
+
+        // Stop the source, then the analysis, so the final totals include every sample delivered
+        stopWearable();
+        analysisEngine.stop();
+
+        // Runs after the repetition events the last samples posted
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                completeSession();
+            }
+        });
     }
 
-    private void finishExercise() {
+    private void completeSession() {
+        updateStats();
         isExercising = false;
         handler.removeCallbacksAndMessages(null);
+        Choreographer.getInstance().removeFrameCallback(drainFeedback);
+
+        if (wearableController == null) {
+            // Nothing was measured, so keep the last real session in the stats
+            Toast.makeText(this, "No wearable connected, nothing recorded", Toast.LENGTH_LONG).show();
+            finish();
+            return;
+        }
 
         // Save exercise data
         saveExerciseData();
+        exportLatency();
 
         Toast.makeText(this,
                 String.format("Exercise Complete!\n%d reps • %.0f%% form • %d calories",
@@ -165,6 +455,13 @@ public class ActiveExerciseActivity extends Activity {
         finish();
     }
 
+    private void stopWearable() {
+        if (wearableController != null) {
+            wearableController.stopListening();
+            wearableController.setSensorDataListener(null);
+        }
+    }
+
     private void saveExerciseData() {
         SharedPreferences prefs = getSharedPreferences("FormFitData", MODE_PRIVATE);
         SharedPreferences.Editor editor = prefs.edit();
@@ -203,7 +500,21 @@ public class ActiveExerciseActivity extends Activity {
     protected void onDestroy() {
         super.onDestroy();
         isExercising = false;
+        stopWearable();
+        if (analysisEngine != null) {
+            analysisEngine.stop();
+        }
         handler.removeCallbacksAndMessages(null);
+        Choreographer.getInstance().removeFrameCallback(drainFeedback);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // Our own session keeps its templates; only cached ones are released
+        if (motionAnalyzer != null) {
+            motionAnalyzer.trimMemory(level);
+        }
     }
 
     @Override
@@ -21,6 +21,12 @@ public class MotionPattern {
     public static final int ERROR_WRONG_ANGLE = 3;
     public static final int ERROR_INCOMPLETE_RANGE = 4;
 
+    // Largest expected magnitude on any sensor axis
+    public static final float MAX_SENSOR_VALUE = 20.0f;
+
+    // Distance used to normalize similarity scores, computed once rather than per comparison
+    public static final float MAX_DISTANCE = (float) Math.sqrt(6 * MAX_SENSOR_VALUE * MAX_SENSOR_VALUE);
+
     private int type;
     private int errorType;
     private float[] accelerationData;
@@ -64,14 +70,29 @@ public class MotionPattern {
      * Higher score means more similar patterns
      */
     public float calculateSimilarity(MotionPattern other) {
+        return calculateSimilarity(this.accelerationData, this.gyroscopeData,
+                other.accelerationData, other.gyroscopeData);
+    }
+
+    /**
+     * Calculate similarity score between two sets of raw sensor data
+     * without requiring MotionPattern instances
+     * @return Similarity from 0 (very different) to 1 (identical)
+     */
+    public static float calculateSimilarity(float[] accelerationData, float[] gyroscopeData,
+                                            float[] otherAcceleration, float[] otherGyroscope) {
         // Simple Euclidean distance calculation
-        float accDistance = calculateEuclideanDistance(this.accelerationData, other.accelerationData);
-        float gyroDistance = calculateEuclideanDistance(this.gyroscopeData, other.gyroscopeData);
+        float accDistance = calculateEuclideanDistance(accelerationData, otherAcceleration);
+        float gyroDistance = calculateEuclideanDistance(gyroscopeData, otherGyroscope);
+        return similarityFromDistance(accDistance + gyroDistance);
+    }
 
-        // Convert distance to similarity (inverse relationship)
-        // Max distance is normalized to 1.0
-        float maxDistance = (float) Math.sqrt(6 * Math.pow(20, 2)); // Assuming max sensor value is ±20 in each axis
-        float normalizedDistance = (accDistance + gyroDistance) / maxDistance;
+    /**
+     * Convert a combined acceleration plus gyroscope distance to a similarity score
+     * Max distance is normalized to 1.0
+     */
+    public static float similarityFromDistance(float distance) {
+        float normalizedDistance = distance / MAX_DISTANCE;
 
         // Convert to similarity score (0 to 1)
         return Math.max(0, 1 - normalizedDistance);
@@ -80,10 +101,12 @@ public class MotionPattern {
     /**
      * Calculate Euclidean distance between two vectors
      */
-    private float calculateEuclideanDistance(float[] v1, float[] v2) {
+    private static float calculateEuclideanDistance(float[] v1, float[] v2) {
         float sum = 0;
-        for (int i = 0; i < Math.min(v1.length, v2.length); i++) {
-            sum += Math.pow(v1[i] - v2[i], 2);
+        int length = Math.min(v1.length, v2.length);
+        for (int i = 0; i < length; i++) {
+            float diff = v1[i] - v2[i];
+            sum += diff * diff;
         }
         return (float) Math.sqrt(sum);
     }
@@ -0,0 +1,95 @@
+package com.asiah.formfit.model;
+
+/**
+ * RecordedSession holds the raw sensor stream of one recorded exercise session,
+ * optionally with ground-truth labels, for offline re-analysis
+ */
+public class RecordedSession {
+
+    // Values per packed sample: acceleration x, y, z then gyroscope x, y, z
+    public static final int SAMPLE_STRIDE = 6;
+
+    // Used when the number of repetitions performed is not known
+    public static final int UNKNOWN_REPETITIONS = -1;
+
+    private final String id;
+    private final int exerciseType;
+    private final float[] samples;
+    private final long[] timestamps;
+    private final int sampleCount;
+    private int[] expectedErrorTypes;
+    private int expectedRepetitions;
+
+    /**
+     * Constructor with sensor data
+     * @param id Identifier of the session, e.g. its recording file name
+     * @param exerciseType Type of exercise performed
+     * @param samples Packed samples, SAMPLE_STRIDE floats each
+     * @param timestamps Timestamp of each sample
+     * @param sampleCount Number of samples
+     */
+    public RecordedSession(String id, int exerciseType, float[] samples, long[] timestamps, int sampleCount) {
+        if (samples.length < sampleCount * SAMPLE_STRIDE || timestamps.length < sampleCount) {
+            throw new IllegalArgumentException("Sample arrays are smaller than the sample count");
+        }
+
+        this.id = id;
+        this.exerciseType = exerciseType;
+        this.samples = samples;
+        this.timestamps = timestamps;
+        this.sampleCount = sampleCount;
+        this.expectedRepetitions = UNKNOWN_REPETITIONS;
+    }
+
+    /**
+     * Check whether per-sample error labels are available
+     */
+    public boolean hasLabels() {
+        return expectedErrorTypes != null;
+    }
+
+    // Getters and setters
+
+    public String getId() {
+        return id;
+    }
+
+    public int getExerciseType() {
+        return exerciseType;
+    }
+
+    public float[] getSamples() {
+        return samples;
+    }
+
+    public long[] getTimestamps() {
+        return timestamps;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public int[] getExpectedErrorTypes() {
+        return expectedErrorTypes;
+    }
+
+    /**
+     * Set the ground-truth MotionPattern error type of each sample,
+     * with ERROR_NONE marking good form
+     */
+    public void setExpectedErrorTypes(int[] expectedErrorTypes) {
+        if (expectedErrorTypes != null && expectedErrorTypes.length < sampleCount) {
+            throw new IllegalArgumentException("Expected one label per sample");
+        }
+        this.expectedErrorTypes = expectedErrorTypes;
+    }
+
+    public int getExpectedRepetitions() {
+        return expectedRepetitions;
+    }
+
+    public void setExpectedRepetitions(int expectedRepetitions) {
+        this.expectedRepetitions = expectedRepetitions;
+    }
+}
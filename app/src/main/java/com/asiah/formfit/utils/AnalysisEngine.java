@@ -0,0 +1,332 @@
+package com.asiah.formfit.utils;
+
+import com.asiah.formfit.model.MotionPattern;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * AnalysisEngine runs a MotionSession on its own thread, so neither the sensor
+ * callback nor the UI thread does detection work.
+ *
+ * Samples reach it through a bounded single-producer single-consumer ring: one
+ * sensor callback thread offers, the analysis thread takes. When the ring is
+ * full the oldest sample is dropped, since fresh data matters more for live
+ * feedback than a complete history; drops are counted. The producer drops by
+ * advancing the head with a compare-and-set, and the consumer only keeps a
+ * sample it copied if its own compare-and-set on the same head succeeds.
+ *
+ * Results leave through a FeedbackBus, which coalesces them to one UI update
+ * per frame, through repetition events as each rep completes, and through
+ * volatile totals the UI can read at any time.
+ */
+public class AnalysisEngine {
+
+    private static final int STRIDE = MotionAnalyzer.SAMPLE_STRIDE;
+
+    // Samples analysed before checking for newer ones again
+    private static final int DRAIN_LIMIT = 64;
+
+    /**
+     * Told when the feedback bus has a new pending code; called on the analysis thread
+     */
+    public interface FeedbackListener {
+        /**
+         * @param analyzedNanos System.nanoTime when the sample was analysed
+         * @param receivedNanos System.nanoTime when the sample was offered
+         */
+        void onFeedbackPending(long analyzedNanos, long receivedNanos);
+    }
+
+    /**
+     * Told when a repetition completes; called on the analysis thread
+     */
+    public interface RepetitionListener {
+        /**
+         * @param repetitionCount Repetitions counted so far
+         * @param timestamp Timestamp of the sample that completed the repetition
+         */
+        void onRepetition(int repetitionCount, long timestamp);
+    }
+
+    private final MotionSession session;
+    private final FeedbackBus feedbackBus;
+    private final PipelineLatency latency;
+
+    private final int capacity;
+    private final int mask;
+    private final float[] ringValues;
+    private final long[] ringTimes;
+    private final long[] ringReceived;
+    private final AtomicLong head = new AtomicLong();
+    private volatile long tail;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile long offeredCount;
+    private volatile long analyzedCount;
+
+    // Totals after the last analysed sample, for the UI
+    private volatile int repetitionCount;
+    private volatile float formAccuracy;
+
+    private volatile FeedbackListener feedbackListener;
+    private volatile RepetitionListener repetitionListener;
+    private volatile boolean running;
+    private volatile boolean waiting;
+    private volatile Thread thread;
+
+    // Consumer-owned copies of one sample
+    private final float[] acceleration = new float[3];
+    private final float[] gyroscope = new float[3];
+
+    /**
+     * Create an engine; call start to begin analysing
+     * @param session Session to feed; only used from the analysis thread once started
+     * @param capacity Samples buffered; rounded up to a power of two
+     * @param feedbackBus Bus that receives a feedback code per analysed sample
+     * @param latency Latency histograms to record enqueue and analyze hops in, or null
+     */
+    public AnalysisEngine(MotionSession session, int capacity, FeedbackBus feedbackBus, PipelineLatency latency) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Capacity must be at least 2");
+        }
+        this.session = session;
+        this.feedbackBus = feedbackBus;
+        this.latency = latency;
+        this.capacity = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.ringValues = new float[this.capacity * STRIDE];
+        this.ringTimes = new long[this.capacity];
+        this.ringReceived = new long[this.capacity];
+    }
+
+    public void setFeedbackListener(FeedbackListener feedbackListener) {
+        this.feedbackListener = feedbackListener;
+    }
+
+    public void setRepetitionListener(RepetitionListener repetitionListener) {
+        this.repetitionListener = repetitionListener;
+    }
+
+    /**
+     * Start the analysis thread
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runLoop();
+            }
+        }, "AnalysisEngine");
+        thread.start();
+    }
+
+    /**
+     * Stop the analysis thread and wait for it. Samples queued before the call
+     * are analysed first, so stop the producer beforehand for complete totals
+     */
+    public synchronized void stop() {
+        running = false;
+        if (thread == null) {
+            return;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    /**
+     * Queue one sample, from the single producer thread
+     * @param accelerationData Acceleration x, y, z
+     * @param gyroscopeData Gyroscope x, y, z
+     * @param timestamp Sample timestamp in milliseconds
+     * @return False if the oldest queued sample was dropped to make room
+     */
+    public boolean offer(float[] accelerationData, float[] gyroscopeData, long timestamp) {
+        long receivedNanos = System.nanoTime();
+        boolean kept = reserve();
+        int slot = (int) (tail & mask);
+        int base = slot * STRIDE;
+        ringValues[base] = accelerationData[0];
+        ringValues[base + 1] = accelerationData[1];
+        ringValues[base + 2] = accelerationData[2];
+        ringValues[base + 3] = gyroscopeData[0];
+        ringValues[base + 4] = gyroscopeData[1];
+        ringValues[base + 5] = gyroscopeData[2];
+        ringTimes[slot] = timestamp;
+        ringReceived[slot] = receivedNanos;
+        publish();
+        return kept;
+    }
+
+    /**
+     * Queue a block of evenly spaced samples, from the single producer thread
+     * @param samples Packed samples, SAMPLE_STRIDE floats each
+     * @param count Number of samples
+     * @param firstTimestamp Timestamp of the first sample in milliseconds
+     * @param intervalMillis Time between samples in milliseconds
+     * @return Number of older samples dropped to make room
+     */
+    public int offerBatch(float[] samples, int count, long firstTimestamp, float intervalMillis) {
+        long receivedNanos = System.nanoTime();
+        int dropped = 0;
+        for (int i = 0; i < count; i++) {
+            if (!reserve()) {
+                dropped++;
+            }
+            int slot = (int) (tail & mask);
+            System.arraycopy(samples, i * STRIDE, ringValues, slot * STRIDE, STRIDE);
+            ringTimes[slot] = firstTimestamp + Math.round(i * intervalMillis);
+            ringReceived[slot] = receivedNanos;
+            // Publish per sample so the consumer never reads a slot still being written
+            publish();
+        }
+        return dropped;
+    }
+
+    // Make room for one sample at the tail, dropping the oldest if full
+    private boolean reserve() {
+        while (true) {
+            long currentHead = head.get();
+            if (tail - currentHead < capacity) {
+                return true;
+            }
+            if (head.compareAndSet(currentHead, currentHead + 1)) {
+                droppedCount.incrementAndGet();
+                return false;
+            }
+        }
+    }
+
+    private void publish() {
+        tail = tail + 1;
+        offeredCount = offeredCount + 1;
+        if (waiting) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void runLoop() {
+        while (running) {
+            int analyzed = 0;
+            while (analyzed < DRAIN_LIMIT && take()) {
+                analyzed++;
+            }
+            if (analyzed == 0) {
+                // Re-check after announcing the wait so a concurrent offer cannot be missed
+                waiting = true;
+                if (head.get() == tail && running) {
+                    LockSupport.park(this);
+                }
+                waiting = false;
+            }
+        }
+
+        // Finish what was queued before stop, but not samples still arriving
+        long end = tail;
+        while (head.get() < end && take()) {
+            // Analysed in take
+        }
+    }
+
+    // Take and analyse the oldest sample; false if the ring is empty
+    private boolean take() {
+        long timestamp;
+        long receivedNanos;
+        while (true) {
+            long currentHead = head.get();
+            if (currentHead == tail) {
+                return false;
+            }
+            int slot = (int) (currentHead & mask);
+            int base = slot * STRIDE;
+            acceleration[0] = ringValues[base];
+            acceleration[1] = ringValues[base + 1];
+            acceleration[2] = ringValues[base + 2];
+            gyroscope[0] = ringValues[base + 3];
+            gyroscope[1] = ringValues[base + 4];
+            gyroscope[2] = ringValues[base + 5];
+            timestamp = ringTimes[slot];
+            receivedNanos = ringReceived[slot];
+            // Fails if the producer dropped this sample and may be overwriting it
+            if (head.compareAndSet(currentHead, currentHead + 1)) {
+                break;
+            }
+        }
+
+        long start = System.nanoTime();
+        MotionPattern result = session.addSample(acceleration, gyroscope, timestamp);
+        long analyzed = System.nanoTime();
+        if (latency != null) {
+            latency.recordSpan(PipelineLatency.HOP_ENQUEUE, receivedNanos, start);
+            latency.recordSpan(PipelineLatency.HOP_ANALYZE, start, analyzed);
+        }
+
+        int repetitions = session.getRepetitionCount();
+        boolean repeated = repetitions > repetitionCount;
+        repetitionCount = repetitions;
+        formAccuracy = session.getFormAccuracy();
+        analyzedCount = analyzedCount + 1;
+
+        if (repeated) {
+            RepetitionListener listener = repetitionListener;
+            if (listener != null) {
+                listener.onRepetition(repetitions, session.getRepetitionCounter().getLastRepEnd());
+            }
+        }
+
+        if (feedbackBus.publish(MotionAnalyzer.getFeedbackCode(result, session.getExerciseType()))) {
+            FeedbackListener listener = feedbackListener;
+            if (listener != null) {
+                listener.onFeedbackPending(analyzed, receivedNanos);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the number of samples queued and not yet analysed
+     */
+    public int getQueuedCount() {
+        return (int) (tail - head.get());
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getOfferedCount() {
+        return offeredCount;
+    }
+
+    /**
+     * Get the number of samples dropped because the analysis thread fell behind
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getAnalyzedCount() {
+        return analyzedCount;
+    }
+
+    public int getRepetitionCount() {
+        return repetitionCount;
+    }
+
+    public float getFormAccuracy() {
+        return formAccuracy;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+}
@@ -0,0 +1,180 @@
+package com.asiah.formfit.utils;
+
+/**
+ * Decimator reduces a high-rate sensor stream to the rate form analysis needs.
+ * A windowed-sinc FIR low-pass filter removes content above the output Nyquist
+ * frequency before samples are dropped, so fast vibration does not alias into
+ * the analysed band. The filter is only evaluated at output instants: each input
+ * sample costs one ring buffer write, and each output sample one dot product,
+ * so the cost scales with the output rate rather than the input rate.
+ */
+public class Decimator {
+
+    private static final int CHANNELS = MotionAnalyzer.SAMPLE_STRIDE;
+
+    // Output rates in Hz; slow holds need far fewer samples than dynamic movements
+    public static final float RATE_DYNAMIC = 50f;
+    public static final float RATE_STATIC = 20f;
+
+    // Pass band edge as a fraction of the output Nyquist frequency
+    private static final float CUTOFF_FRACTION = 0.8f;
+
+    // Filter length per unit of decimation factor, and its upper bound
+    private static final int TAPS_PER_FACTOR = 8;
+    private static final int MAX_TAPS = 255;
+
+    private final int factor;
+    private final int tapCount;
+    private final float[] taps;
+
+    // Per-channel history stored twice, so the newest tapCount values are always contiguous
+    private final float[] history;
+    private final long[] timestamps;
+    private int position;
+    private int filled;
+    private int phase;
+
+    private final float[] output = new float[CHANNELS];
+    private long outputTimestamp;
+
+    /**
+     * Create a decimator
+     * @param inputRate Input sample rate in Hz
+     * @param targetRate Desired output rate in Hz; rounded to an integer decimation factor
+     */
+    public Decimator(float inputRate, float targetRate) {
+        if (!(inputRate > 0) || !(targetRate > 0)) {
+            throw new IllegalArgumentException("Sample rates must be positive");
+        }
+
+        this.factor = Math.max(1, Math.round(inputRate / targetRate));
+        this.tapCount = factor == 1 ? 1 : Math.min(MAX_TAPS, TAPS_PER_FACTOR * factor + 1);
+        this.taps = designLowPass(tapCount, CUTOFF_FRACTION * 0.5f / factor);
+        this.history = new float[CHANNELS * tapCount * 2];
+        this.timestamps = new long[tapCount * 2];
+    }
+
+    /**
+     * Create a decimator with the output rate suited to an exercise
+     * @param exerciseType Type of exercise being performed
+     * @param inputRate Input sample rate in Hz
+     */
+    public static Decimator forExercise(int exerciseType, float inputRate) {
+        return new Decimator(inputRate, targetRateFor(exerciseType));
+    }
+
+    /**
+     * Get the analysis rate needed for an exercise
+     */
+    public static float targetRateFor(int exerciseType) {
+        switch (exerciseType) {
+            case MotionAnalyzer.EXERCISE_PLANK:
+                return RATE_STATIC;
+
+            default:
+                return RATE_DYNAMIC;
+        }
+    }
+
+    /**
+     * Design a linear-phase low-pass filter with a Blackman window and unity DC gain
+     * @param tapCount Number of taps, odd
+     * @param cutoff Cutoff frequency as a fraction of the input sample rate
+     */
+    static float[] designLowPass(int tapCount, float cutoff) {
+        float[] taps = new float[tapCount];
+        if (tapCount == 1) {
+            taps[0] = 1;
+            return taps;
+        }
+
+        double centre = (tapCount - 1) / 2.0;
+        double sum = 0;
+        for (int i = 0; i < tapCount; i++) {
+            double x = i - centre;
+            double sinc = x == 0 ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * x) / (Math.PI * x);
+            double window = 0.42 - 0.5 * Math.cos(2 * Math.PI * i / (tapCount - 1))
+                    + 0.08 * Math.cos(4 * Math.PI * i / (tapCount - 1));
+            taps[i] = (float) (sinc * window);
+            sum += taps[i];
+        }
+        for (int i = 0; i < tapCount; i++) {
+            taps[i] /= sum;
+        }
+        return taps;
+    }
+
+    /**
+     * Add one input sample
+     * @param accelerationData Acceleration x, y, z
+     * @param gyroscopeData Gyroscope x, y, z
+     * @param timestamp Timestamp of the sample
+     * @return True if an output sample is ready; read it with getOutput
+     */
+    public boolean addSample(float[] accelerationData, float[] gyroscopeData, long timestamp) {
+        int second = position + tapCount;
+        for (int c = 0; c < CHANNELS; c++) {
+            float value = c < 3 ? accelerationData[c] : gyroscopeData[c - 3];
+            int base = c * tapCount * 2;
+            history[base + position] = value;
+            history[base + second] = value;
+        }
+        timestamps[position] = timestamp;
+        timestamps[second] = timestamp;
+
+        position = position + 1 == tapCount ? 0 : position + 1;
+        if (filled < tapCount) {
+            filled++;
+        }
+
+        // Wait for a full filter span, then emit every factor-th sample
+        if (filled < tapCount || ++phase < factor) {
+            return false;
+        }
+        phase = 0;
+
+        // Oldest sample is now at position, newest at position + tapCount - 1
+        for (int c = 0; c < CHANNELS; c++) {
+            int start = c * tapCount * 2 + position;
+            float sum = 0;
+            for (int k = 0; k < tapCount; k++) {
+                sum += taps[k] * history[start + k];
+            }
+            output[c] = sum;
+        }
+        // A symmetric filter delays by half its length; report the centre sample's time
+        outputTimestamp = timestamps[position + tapCount / 2];
+        return true;
+    }
+
+    /**
+     * Copy the latest output sample into caller-owned arrays
+     * @return Timestamp of the output sample, delayed by the filter's group delay
+     */
+    public long getOutput(float[] accelerationData, float[] gyroscopeData) {
+        accelerationData[0] = output[0];
+        accelerationData[1] = output[1];
+        accelerationData[2] = output[2];
+        gyroscopeData[0] = output[3];
+        gyroscopeData[1] = output[4];
+        gyroscopeData[2] = output[5];
+        return outputTimestamp;
+    }
+
+    /**
+     * Clear the filter history
+     */
+    public void reset() {
+        position = 0;
+        filled = 0;
+        phase = 0;
+    }
+
+    public int getFactor() {
+        return factor;
+    }
+
+    public int getTapCount() {
+        return tapCount;
+    }
+}
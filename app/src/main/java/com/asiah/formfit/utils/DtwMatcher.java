@@ -0,0 +1,336 @@
+package com.asiah.formfit.utils;
+
+import com.asiah.formfit.model.MotionPattern;
+
+import java.util.Arrays;
+
+/**
+ * DtwMatcher compares a rep-length window of sensor frames against reference
+ * templates using Dynamic Time Warping with a Sakoe-Chiba band.
+ * Templates are tested with the cheap LB_Kim and LB_Keogh lower bounds first,
+ * and only the ones that could still beat the best match so far get the full
+ * O(n * band) DTW computation, which itself abandons early.
+ *
+ * Frame cost is the acceleration distance plus the gyroscope distance, the
+ * same metric used by MotionPattern.calculateSimilarity.
+ */
+public class DtwMatcher {
+
+    private static final int STRIDE = MotionAnalyzer.SAMPLE_STRIDE;
+
+    private final int length;
+    private final int bandRadius;
+
+    // Templates resampled to the matcher length, with their warping envelopes
+    private float[][] templates = new float[4][];
+    private float[][] upperEnvelopes = new float[4][];
+    private float[][] lowerEnvelopes = new float[4][];
+    private int[] templateTypes = new int[4];
+    private int templateCount;
+
+    // Two rolling rows of the cost matrix, reused between matches
+    private final float[] previousRow;
+    private final float[] currentRow;
+
+    // Result of the last match
+    private int bestTemplate = -1;
+    private float bestDistance = Float.POSITIVE_INFINITY;
+
+    // How far each template got through the cascade
+    private long lbKimPruned;
+    private long lbKeoghPruned;
+    private long fullComputations;
+
+    /**
+     * Create a matcher for fixed-length windows
+     * @param length Number of frames in every window and template
+     * @param bandRadius Maximum warping offset in frames (Sakoe-Chiba band)
+     */
+    public DtwMatcher(int length, int bandRadius) {
+        if (length < 1) {
+            throw new IllegalArgumentException("Length must be positive: " + length);
+        }
+        if (bandRadius < 0) {
+            throw new IllegalArgumentException("Band radius must not be negative: " + bandRadius);
+        }
+
+        this.length = length;
+        this.bandRadius = Math.min(bandRadius, length - 1);
+        this.previousRow = new float[length];
+        this.currentRow = new float[length];
+    }
+
+    /**
+     * Add a reference template; it is resampled if its length differs from the matcher's
+     * @param frames Packed template frames, SAMPLE_STRIDE floats each
+     * @param type Motion pattern type reported when this template matches
+     * @return Index of the new template
+     */
+    public int addTemplate(float[] frames, int type) {
+        int frameCount = frames.length / STRIDE;
+        if (frameCount < 1) {
+            throw new IllegalArgumentException("Template has no frames");
+        }
+
+        float[] template = frameCount == length
+                ? frames.clone()
+                : resample(frames, frameCount, length);
+
+        if (templateCount == templates.length) {
+            int capacity = templateCount * 2;
+            templates = Arrays.copyOf(templates, capacity);
+            upperEnvelopes = Arrays.copyOf(upperEnvelopes, capacity);
+            lowerEnvelopes = Arrays.copyOf(lowerEnvelopes, capacity);
+            templateTypes = Arrays.copyOf(templateTypes, capacity);
+        }
+
+        float[] upper = new float[template.length];
+        float[] lower = new float[template.length];
+        buildEnvelope(template, upper, lower);
+
+        templates[templateCount] = template;
+        upperEnvelopes[templateCount] = upper;
+        lowerEnvelopes[templateCount] = lower;
+        templateTypes[templateCount] = type;
+        return templateCount++;
+    }
+
+    /**
+     * Compute the per-channel min/max of the template within the warping band
+     */
+    private void buildEnvelope(float[] template, float[] upper, float[] lower) {
+        for (int i = 0; i < length; i++) {
+            int from = Math.max(0, i - bandRadius);
+            int to = Math.min(length - 1, i + bandRadius);
+
+            for (int c = 0; c < STRIDE; c++) {
+                float max = Float.NEGATIVE_INFINITY;
+                float min = Float.POSITIVE_INFINITY;
+                for (int j = from; j <= to; j++) {
+                    float value = template[j * STRIDE + c];
+                    max = Math.max(max, value);
+                    min = Math.min(min, value);
+                }
+                upper[i * STRIDE + c] = max;
+                lower[i * STRIDE + c] = min;
+            }
+        }
+    }
+
+    /**
+     * Find the template closest to a window
+     * @param window Packed window frames, at least length * SAMPLE_STRIDE floats, oldest first
+     * @return Index of the best template, or -1 if no templates have been added
+     */
+    public int match(float[] window) {
+        if (window.length < length * STRIDE) {
+            throw new IllegalArgumentException("Window must hold " + length + " frames");
+        }
+
+        bestTemplate = -1;
+        bestDistance = Float.POSITIVE_INFINITY;
+
+        for (int t = 0; t < templateCount; t++) {
+            float[] template = templates[t];
+
+            // LB_Kim: first and last frames are always aligned with each other
+            float bound = frameCost(window, 0, template, 0);
+            if (length > 1) {
+                int last = (length - 1) * STRIDE;
+                bound += frameCost(window, last, template, last);
+            }
+            if (bound >= bestDistance) {
+                lbKimPruned++;
+                continue;
+            }
+
+            // LB_Keogh: every window frame is matched to something inside the template envelope
+            if (lbKeogh(window, upperEnvelopes[t], lowerEnvelopes[t], bestDistance) >= bestDistance) {
+                lbKeoghPruned++;
+                continue;
+            }
+
+            fullComputations++;
+            float distance = dtw(window, template, bestDistance);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                bestTemplate = t;
+            }
+        }
+
+        return bestTemplate;
+    }
+
+    /**
+     * LB_Keogh lower bound, abandoned as soon as it reaches the cutoff
+     */
+    private float lbKeogh(float[] window, float[] upper, float[] lower, float cutoff) {
+        float sum = 0;
+        for (int i = 0; i < length && sum < cutoff; i++) {
+            int base = i * STRIDE;
+            float acc = 0;
+            float gyro = 0;
+            for (int c = 0; c < 3; c++) {
+                float d = envelopeGap(window[base + c], upper[base + c], lower[base + c]);
+                acc += d * d;
+                float g = envelopeGap(window[base + 3 + c], upper[base + 3 + c], lower[base + 3 + c]);
+                gyro += g * g;
+            }
+            sum += (float) Math.sqrt(acc) + (float) Math.sqrt(gyro);
+        }
+        return sum;
+    }
+
+    private static float envelopeGap(float value, float upper, float lower) {
+        if (value > upper) {
+            return value - upper;
+        }
+        if (value < lower) {
+            return lower - value;
+        }
+        return 0;
+    }
+
+    /**
+     * Banded DTW distance, abandoned once every cell in a row reaches the cutoff
+     */
+    private float dtw(float[] window, float[] template, float cutoff) {
+        float[] previous = previousRow;
+        float[] current = currentRow;
+        Arrays.fill(previous, Float.POSITIVE_INFINITY);
+        Arrays.fill(current, Float.POSITIVE_INFINITY);
+
+        for (int i = 0; i < length; i++) {
+            int from = Math.max(0, i - bandRadius);
+            int to = Math.min(length - 1, i + bandRadius);
+
+            // The cell left of the band may hold a value from two rows ago
+            if (from > 0) {
+                current[from - 1] = Float.POSITIVE_INFINITY;
+            }
+
+            float rowMin = Float.POSITIVE_INFINITY;
+            for (int j = from; j <= to; j++) {
+                float cost = frameCost(window, i * STRIDE, template, j * STRIDE);
+
+                float best;
+                if (i == 0 && j == 0) {
+                    best = 0;
+                } else {
+                    best = previous[j];
+                    if (j > 0) {
+                        best = Math.min(best, Math.min(current[j - 1], previous[j - 1]));
+                    }
+                }
+
+                float cell = cost + best;
+                current[j] = cell;
+                rowMin = Math.min(rowMin, cell);
+            }
+
+            if (rowMin >= cutoff) {
+                return Float.POSITIVE_INFINITY;
+            }
+
+            float[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+
+        return previous[length - 1];
+    }
+
+    /**
+     * Cost of aligning two frames: acceleration distance plus gyroscope distance
+     */
+    private static float frameCost(float[] a, int aBase, float[] b, int bBase) {
+        float dax = a[aBase] - b[bBase];
+        float day = a[aBase + 1] - b[bBase + 1];
+        float daz = a[aBase + 2] - b[bBase + 2];
+        float dgx = a[aBase + 3] - b[bBase + 3];
+        float dgy = a[aBase + 4] - b[bBase + 4];
+        float dgz = a[aBase + 5] - b[bBase + 5];
+        return (float) Math.sqrt(dax * dax + day * day + daz * daz)
+                + (float) Math.sqrt(dgx * dgx + dgy * dgy + dgz * dgz);
+    }
+
+    /**
+     * Linearly resample a packed frame sequence to a new length
+     * @param frames Packed frames, SAMPLE_STRIDE floats each
+     * @param frameCount Number of frames in the input
+     * @param targetLength Number of frames wanted
+     * @return New packed array of targetLength frames
+     */
+    public static float[] resample(float[] frames, int frameCount, int targetLength) {
+        float[] resampled = new float[targetLength * STRIDE];
+        for (int i = 0; i < targetLength; i++) {
+            float position = targetLength == 1 ? 0 : i * (frameCount - 1) / (float) (targetLength - 1);
+            int lower = (int) position;
+            int upper = Math.min(lower + 1, frameCount - 1);
+            float fraction = position - lower;
+
+            for (int c = 0; c < STRIDE; c++) {
+                float a = frames[lower * STRIDE + c];
+                float b = frames[upper * STRIDE + c];
+                resampled[i * STRIDE + c] = a + (b - a) * fraction;
+            }
+        }
+        return resampled;
+    }
+
+    /**
+     * Get the DTW distance of the last match, or infinity if nothing matched
+     */
+    public float getBestDistance() {
+        return bestDistance;
+    }
+
+    /**
+     * Get the last match as a 0-1 similarity based on the mean per-frame cost,
+     * comparable with MotionPattern.calculateSimilarity
+     */
+    public float getBestSimilarity() {
+        if (bestTemplate < 0) {
+            return 0;
+        }
+        return MotionPattern.similarityFromDistance(bestDistance / length);
+    }
+
+    /**
+     * Get the index of the template chosen by the last match, or -1
+     */
+    public int getBestTemplate() {
+        return bestTemplate;
+    }
+
+    /**
+     * Get the motion pattern type of a template
+     */
+    public int getTemplateType(int index) {
+        return templateTypes[index];
+    }
+
+    public int getTemplateCount() {
+        return templateCount;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getBandRadius() {
+        return bandRadius;
+    }
+
+    public long getLbKimPruned() {
+        return lbKimPruned;
+    }
+
+    public long getLbKeoghPruned() {
+        return lbKeoghPruned;
+    }
+
+    public long getFullComputations() {
+        return fullComputations;
+    }
+}
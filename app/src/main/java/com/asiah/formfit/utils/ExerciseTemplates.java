@@ -0,0 +1,214 @@
+package com.asiah.formfit.utils;
+
+import com.asiah.formfit.model.MotionPattern;
+
+import java.util.List;
+
+/**
+ * ExerciseTemplates is an immutable, packed set of reference patterns for one exercise.
+ * Instances are never modified after construction, so any number of threads
+ * and sessions can match against the same instance without locking.
+ */
+public final class ExerciseTemplates {
+
+    private static final int STRIDE = MotionAnalyzer.SAMPLE_STRIDE;
+
+    private final int exerciseType;
+    private final float[] references;
+    private final int[] types;
+    private final int count;
+
+    // Nearest-neighbour index, only built for large template sets
+    private final ReferenceIndex index;
+
+    /**
+     * Create templates from packed reference data
+     * @param exerciseType Type of exercise these templates belong to
+     * @param references Packed references, SAMPLE_STRIDE floats each; copied
+     * @param types Motion pattern type of each reference; copied
+     * @param indexThreshold Reference count above which an index is built
+     */
+    public ExerciseTemplates(int exerciseType, float[] references, int[] types, int indexThreshold) {
+        if (references.length != types.length * STRIDE) {
+            throw new IllegalArgumentException("Expected " + types.length * STRIDE
+                    + " reference values, got " + references.length);
+        }
+
+        this.exerciseType = exerciseType;
+        this.references = references.clone();
+        this.types = types.clone();
+        this.count = types.length;
+        this.index = count > indexThreshold ? new ReferenceIndex(this.references, count) : null;
+    }
+
+    /**
+     * Create templates from reference pattern objects
+     * @param exerciseType Type of exercise these templates belong to
+     * @param patterns Reference patterns; their data is copied
+     * @param indexThreshold Reference count above which an index is built
+     */
+    public static ExerciseTemplates fromPatterns(int exerciseType, List<MotionPattern> patterns,
+                                                 int indexThreshold) {
+        float[] packed = new float[patterns.size() * STRIDE];
+        int[] types = new int[patterns.size()];
+
+        for (int i = 0; i < patterns.size(); i++) {
+            MotionPattern pattern = patterns.get(i);
+            System.arraycopy(pattern.getAccelerationData(), 0, packed, i * STRIDE, 3);
+            System.arraycopy(pattern.getGyroscopeData(), 0, packed, i * STRIDE + 3, 3);
+            types[i] = pattern.getType();
+        }
+
+        return new ExerciseTemplates(exerciseType, packed, types, indexThreshold);
+    }
+
+    /**
+     * Return the same templates with a different index threshold.
+     * Returns this instance if the threshold does not change whether an index is built
+     */
+    public ExerciseTemplates withIndexThreshold(int indexThreshold) {
+        if ((count > indexThreshold) == (index != null)) {
+            return this;
+        }
+        return new ExerciseTemplates(exerciseType, references, types, indexThreshold);
+    }
+
+    /**
+     * Find the reference with the highest similarity to a sample.
+     * Uses the index when one was built; both paths return identical results
+     * @param accelerationData Acceleration x, y, z
+     * @param gyroscopeData Gyroscope x, y, z
+     * @param result Receives the best similarity as its confidence
+     * @return Index of the best reference; the first one wins ties and index 0 is used if nothing is similar
+     */
+    public int findBestMatch(float[] accelerationData, float[] gyroscopeData, MotionPattern result) {
+        if (index != null) {
+            return index.findBestMatch(accelerationData, gyroscopeData, result);
+        }
+
+        float accX = accelerationData[0];
+        float accY = accelerationData[1];
+        float accZ = accelerationData[2];
+        float gyroX = gyroscopeData[0];
+        float gyroY = gyroscopeData[1];
+        float gyroZ = gyroscopeData[2];
+
+        int bestIndex = 0;
+        float bestSimilarity = 0;
+        for (int i = 0, base = 0; i < count; i++, base += STRIDE) {
+            float dax = accX - references[base];
+            float day = accY - references[base + 1];
+            float daz = accZ - references[base + 2];
+            float dgx = gyroX - references[base + 3];
+            float dgy = gyroY - references[base + 4];
+            float dgz = gyroZ - references[base + 5];
+
+            float similarity = MotionPattern.similarityFromDistance(
+                    (float) Math.sqrt(dax * dax + day * day + daz * daz)
+                            + (float) Math.sqrt(dgx * dgx + dgy * dgy + dgz * dgz));
+
+            // Update best match if this is better
+            if (similarity > bestSimilarity) {
+                bestSimilarity = similarity;
+                bestIndex = i;
+            }
+        }
+
+        result.setConfidence(bestSimilarity);
+        return bestIndex;
+    }
+
+    /**
+     * Find the best reference and the runner-up similarity with a linear scan.
+     * The best index and similarity are identical to findBestMatch
+     * @param accelerationData Acceleration x, y, z
+     * @param gyroscopeData Gyroscope x, y, z
+     * @param similarities Receives the best similarity, then the highest similarity of any other reference
+     * @return Index of the best reference
+     */
+    public int findBestTwo(float[] accelerationData, float[] gyroscopeData, float[] similarities) {
+        int bestIndex = 0;
+        float bestSimilarity = 0;
+        float secondSimilarity = 0;
+        for (int i = 0; i < count; i++) {
+            float similarity = similarity(i, accelerationData, gyroscopeData);
+            if (similarity > bestSimilarity) {
+                secondSimilarity = bestSimilarity;
+                bestSimilarity = similarity;
+                bestIndex = i;
+            } else if (similarity > secondSimilarity) {
+                secondSimilarity = similarity;
+            }
+        }
+
+        similarities[0] = bestSimilarity;
+        similarities[1] = secondSimilarity;
+        return bestIndex;
+    }
+
+    /**
+     * Compute the similarity of a sample to one reference
+     */
+    public float similarity(int referenceIndex, float[] accelerationData, float[] gyroscopeData) {
+        int base = referenceIndex * STRIDE;
+        float dax = accelerationData[0] - references[base];
+        float day = accelerationData[1] - references[base + 1];
+        float daz = accelerationData[2] - references[base + 2];
+        float dgx = gyroscopeData[0] - references[base + 3];
+        float dgy = gyroscopeData[1] - references[base + 4];
+        float dgz = gyroscopeData[2] - references[base + 5];
+
+        return MotionPattern.similarityFromDistance(
+                (float) Math.sqrt(dax * dax + day * day + daz * daz)
+                        + (float) Math.sqrt(dgx * dgx + dgy * dgy + dgz * dgz));
+    }
+
+    /**
+     * Score packed samples against these templates with MotionAnalyzer.scoreBatch
+     * @param samples Packed samples, SAMPLE_STRIDE floats each
+     * @param sampleCount Number of samples to score
+     * @param bestIndices Receives the best matching reference index per sample
+     * @param bestSimilarities Receives the best similarity per sample
+     */
+    public void scoreBatch(float[] samples, int sampleCount, int[] bestIndices, float[] bestSimilarities) {
+        MotionAnalyzer.scoreBatch(samples, sampleCount, references, count, bestIndices, bestSimilarities);
+    }
+
+    /**
+     * Get one value of a reference
+     * @param referenceIndex Index of the reference
+     * @param channel 0-2 for acceleration x, y, z and 3-5 for gyroscope x, y, z
+     */
+    public float getValue(int referenceIndex, int channel) {
+        return references[referenceIndex * STRIDE + channel];
+    }
+
+    /**
+     * Get the motion pattern type of a reference
+     */
+    public int getType(int referenceIndex) {
+        return types[referenceIndex];
+    }
+
+    /**
+     * Copy the packed references
+     */
+    public float[] copyReferences() {
+        return references.clone();
+    }
+
+    /**
+     * Check whether lookups go through a nearest-neighbour index
+     */
+    public boolean isIndexed() {
+        return index != null;
+    }
+
+    public int getExerciseType() {
+        return exerciseType;
+    }
+
+    public int size() {
+        return count;
+    }
+}
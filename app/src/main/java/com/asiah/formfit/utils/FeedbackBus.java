@@ -0,0 +1,170 @@
+package com.asiah.formfit.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * FeedbackBus carries form feedback from analysis to the UI as integer codes.
+ * Messages live in a fixed table, so no strings are built per sample.
+ *
+ * Any thread may publish. Codes published between two display frames are
+ * coalesced into one pending code, with the higher priority code winning, so
+ * the UI is updated at most once per frame however fast samples arrive.
+ * When the UI drains the bus, a code equal to the one already shown is dropped,
+ * and a lower priority code may not replace a correction until it has been
+ * shown for the hold time.
+ */
+public class FeedbackBus {
+
+    public static final int FEEDBACK_NONE = -1;
+
+    // Feedback codes, index into the message and priority tables
+    public static final int FEEDBACK_GOOD_FORM = 0;
+    public static final int FEEDBACK_MAINTAIN_FORM = 1;
+    public static final int FEEDBACK_STEADY_PACE = 2;
+    public static final int FEEDBACK_SLOW_DOWN = 3;
+    public static final int FEEDBACK_FULL_RANGE = 4;
+    public static final int FEEDBACK_SQUAT_DEEPER = 5;
+    public static final int FEEDBACK_PUSHUP_CHEST = 6;
+    public static final int FEEDBACK_CHECK_ALIGNMENT = 7;
+    public static final int FEEDBACK_SQUAT_ALIGNMENT = 8;
+    public static final int FEEDBACK_PUSHUP_LINE = 9;
+
+    private static final String[] MESSAGES = {
+            "Good form",
+            "Maintain proper form",
+            "Try to maintain a steady pace",
+            "Slow down your movement",
+            "Complete the full range of motion",
+            "Go deeper in your squat",
+            "Lower your chest closer to the ground",
+            "Check your form alignment",
+            "Keep your back straight and knees aligned",
+            "Lower your body in a straight line",
+    };
+
+    // Higher pre-empts lower; alignment and speed corrections are the safety-relevant ones
+    private static final int PRIORITY_INFO = 0;
+    private static final int PRIORITY_TECHNIQUE = 1;
+    private static final int PRIORITY_SAFETY = 2;
+
+    private static final int[] PRIORITIES = {
+            PRIORITY_INFO,
+            PRIORITY_TECHNIQUE,
+            PRIORITY_TECHNIQUE,
+            PRIORITY_SAFETY,
+            PRIORITY_TECHNIQUE,
+            PRIORITY_TECHNIQUE,
+            PRIORITY_TECHNIQUE,
+            PRIORITY_SAFETY,
+            PRIORITY_SAFETY,
+            PRIORITY_SAFETY,
+    };
+
+    public static final long DEFAULT_HOLD_MS = 750;
+
+    private final long holdNanos;
+
+    private final AtomicInteger pending = new AtomicInteger(FEEDBACK_NONE);
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong deliveredCount = new AtomicLong();
+
+    // Only touched by the draining thread
+    private int displayed = FEEDBACK_NONE;
+    private long displayedAt;
+
+    public FeedbackBus() {
+        this(DEFAULT_HOLD_MS);
+    }
+
+    /**
+     * Create a bus
+     * @param holdMs How long a correction stays up before lower priority feedback may replace it
+     */
+    public FeedbackBus(long holdMs) {
+        if (holdMs < 0) {
+            throw new IllegalArgumentException("Hold time must not be negative");
+        }
+        this.holdNanos = TimeUnit.MILLISECONDS.toNanos(holdMs);
+    }
+
+    /**
+     * Get the message for a feedback code
+     */
+    public static String getMessage(int code) {
+        return code >= 0 && code < MESSAGES.length ? MESSAGES[code] : null;
+    }
+
+    public static int getPriority(int code) {
+        return code >= 0 && code < PRIORITIES.length ? PRIORITIES[code] : -1;
+    }
+
+    /**
+     * Publish feedback from any thread
+     * @param code One of the FEEDBACK_ codes
+     * @return True if nothing was pending before, i.e. the caller should schedule a drain for the next frame
+     */
+    public boolean publish(int code) {
+        if (code < 0 || code >= MESSAGES.length) {
+            throw new IllegalArgumentException("Unknown feedback code " + code);
+        }
+        publishedCount.incrementAndGet();
+
+        int current;
+        do {
+            current = pending.get();
+            if (current == code || (current != FEEDBACK_NONE && PRIORITIES[current] > PRIORITIES[code])) {
+                return false;
+            }
+        } while (!pending.compareAndSet(current, code));
+        return current == FEEDBACK_NONE;
+    }
+
+    /**
+     * Take the pending feedback, once per frame on the UI thread
+     * @param nowNanos Current System.nanoTime
+     * @return Code to display, or FEEDBACK_NONE if the screen should stay as it is
+     */
+    public int drain(long nowNanos) {
+        int code = pending.getAndSet(FEEDBACK_NONE);
+        if (code == FEEDBACK_NONE || code == displayed) {
+            return FEEDBACK_NONE;
+        }
+        if (displayed != FEEDBACK_NONE && PRIORITIES[code] < PRIORITIES[displayed]
+                && nowNanos - displayedAt < holdNanos) {
+            return FEEDBACK_NONE;
+        }
+
+        displayed = code;
+        displayedAt = nowNanos;
+        deliveredCount.incrementAndGet();
+        return code;
+    }
+
+    /**
+     * Forget what is displayed and pending, e.g. when a new session starts
+     */
+    public void reset() {
+        pending.set(FEEDBACK_NONE);
+        displayed = FEEDBACK_NONE;
+    }
+
+    public int getDisplayed() {
+        return displayed;
+    }
+
+    /**
+     * Get the number of codes published, including ones coalesced away
+     */
+    public long getPublishedCount() {
+        return publishedCount.get();
+    }
+
+    /**
+     * Get the number of codes handed to the UI
+     */
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+}
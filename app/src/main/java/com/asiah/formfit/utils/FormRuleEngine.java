@@ -0,0 +1,389 @@
+package com.asiah.formfit.utils;
+
+import android.util.Log;
+
+import com.asiah.formfit.model.MotionPattern;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * FormRuleEngine decides which form error an incorrect pattern shows, from a
+ * table of threshold rules per exercise. Rules are written one per line:
+ * <pre>
+ *  # exercise  error        feature  axis    op  threshold
+ *  squat       too_fast     if jerk  acc_y   &gt;   50
+ *  squat       wrong_angle  if absdiff gyro_x &gt; 1
+ *  plank       wrong_angle  always
+ * </pre>
+ * Features are value (the classified sample), diff and absdiff (sample minus the
+ * best matching reference), and the RollingFeatures std, range, jerk and
+ * crossings. A rule on a feature that is unavailable, such as a window feature
+ * when classifying a single sample, never matches. The exercise "*" holds the
+ * rules for exercises that have none of their own.
+ *
+ * Window features cover the session's feature window, DEFAULT_FEATURE_WINDOW
+ * samples or about 100 ms at 50 Hz. That is long enough for std and jerk, but
+ * much shorter than a rep, so range and crossings mostly measure sensor noise
+ * there; the built-in rules do not use them.
+ *
+ * Rules are checked in order and the last one that matches sets the error, so
+ * more important errors go further down. The text is compiled into flat
+ * primitive arrays, and evaluation is one feature lookup, one multiply-compare
+ * and one conditional move per rule. A new table can be swapped in at any time,
+ * e.g. from a file pushed to the device while tuning thresholds.
+ */
+public class FormRuleEngine {
+
+    private static final String TAG = "FormRuleEngine";
+
+    // File in the app's files directory that overrides the built-in rules
+    public static final String RULES_FILE = "form_rules.txt";
+
+    private static final int FEATURE_ALWAYS = 0;
+    private static final int FEATURE_VALUE = 1;
+    private static final int FEATURE_DIFF = 2;
+    private static final int FEATURE_ABS_DIFF = 3;
+    private static final int FEATURE_STD = 4;
+    private static final int FEATURE_RANGE = 5;
+    private static final int FEATURE_JERK = 6;
+    private static final int FEATURE_CROSSINGS = 7;
+
+    private static final String[] FEATURE_NAMES = {
+            "always", "value", "diff", "absdiff", "std", "range", "jerk", "crossings"
+    };
+
+    private static final String[] AXIS_NAMES = {"acc_x", "acc_y", "acc_z", "gyro_x", "gyro_y", "gyro_z"};
+
+    // Indexed by MotionPattern error type
+    private static final String[] ERROR_NAMES = {"none", "too_fast", "too_slow", "wrong_angle", "incomplete_range"};
+
+    private static final String[] EXERCISE_NAMES = {
+            "squat", "pushup", "plank", "lunge", "pullup", "bench_press", "shoulder_press",
+            "deadlift", "crunch", "russian_twist", "jumping_jack", "burpee", "mountain_climber"
+    };
+
+    private static final String DEFAULT_EXERCISE = "*";
+    private static final int DEFAULT_GROUP = MotionAnalyzer.EXERCISE_COUNT;
+
+    /**
+     * Built-in rules; thresholds are in m/s^2 and rad/s, jerk in m/s^3.
+     * Only the squat has reference templates, and a pattern is never typed
+     * without them, so the rules of every other exercise are inactive until a
+     * template asset for that exercise ships. Jumping jacks have no rules and
+     * use the "*" group
+     */
+    public static final String DEFAULT_RULES =
+            "# Squat: vertical pace against the reference, then knee and back rotation\n"
+            + "squat too_fast if diff acc_y < -3\n"
+            + "squat too_slow if diff acc_y > 3\n"
+            + "squat too_fast if jerk acc_y > 50\n"
+            + "squat wrong_angle if absdiff gyro_x > 1\n"
+            + "\n"
+            + "# Inactive until these exercises have reference templates\n"
+            + "pushup incomplete_range if absdiff gyro_x > 0.8\n"
+            + "pushup too_fast if jerk acc_z > 60\n"
+            + "pushup wrong_angle if absdiff gyro_y > 1\n"
+            + "\n"
+            + "plank incomplete_range always\n"
+            + "plank wrong_angle if absdiff acc_x > 2\n"
+            + "plank wrong_angle if std gyro_y > 0.5\n"
+            + "\n"
+            + "lunge incomplete_range always\n"
+            + "lunge too_fast if jerk acc_y > 45\n"
+            + "lunge wrong_angle if absdiff gyro_z > 1\n"
+            + "\n"
+            + "pullup too_fast if jerk acc_y > 40\n"
+            + "pullup wrong_angle if std gyro_z > 1.5\n"
+            + "\n"
+            + "bench_press too_fast if jerk acc_z > 40\n"
+            + "bench_press wrong_angle if std gyro_x > 1\n"
+            + "\n"
+            + "shoulder_press too_fast if jerk acc_y > 40\n"
+            + "shoulder_press wrong_angle if absdiff acc_x > 3\n"
+            + "\n"
+            + "deadlift too_fast if jerk acc_y > 35\n"
+            + "deadlift wrong_angle if std gyro_x > 0.8\n"
+            + "\n"
+            + "crunch too_fast if jerk acc_z > 50\n"
+            + "crunch wrong_angle if std gyro_z > 1\n"
+            + "\n"
+            + "russian_twist too_fast if jerk acc_x > 60\n"
+            + "\n"
+            + "burpee wrong_angle if std gyro_y > 2\n"
+            + "\n"
+            + "mountain_climber wrong_angle if std acc_y > 3\n"
+            + "\n"
+            + "* incomplete_range always\n";
+
+    private volatile Rules rules;
+    private long loadedModified = -1;
+    private long loadedLength = -1;
+
+    /**
+     * Create an engine with the built-in rules
+     */
+    public FormRuleEngine() {
+        this.rules = compile(DEFAULT_RULES);
+    }
+
+    /**
+     * Compiled rule table. Rules of exercise group g are the indices
+     * groupStart[g] to groupStart[g + 1] - 1 of the parallel arrays
+     */
+    static final class Rules {
+        final int[] groupStart;
+        final int[] features;
+        final int[] axes;
+        final float[] signs;
+        final float[] bounds;
+        final int[] errors;
+
+        Rules(int[] groupStart, int[] features, int[] axes, float[] signs, float[] bounds, int[] errors) {
+            this.groupStart = groupStart;
+            this.features = features;
+            this.axes = axes;
+            this.signs = signs;
+            this.bounds = bounds;
+            this.errors = errors;
+        }
+    }
+
+    /**
+     * Compile rule text
+     * @param source Rules, one per line; blank lines and text after # are ignored
+     * @throws IllegalArgumentException If a line is not a valid rule
+     */
+    static Rules compile(String source) {
+        List<List<float[]>> groups = new ArrayList<>();
+        for (int g = 0; g <= DEFAULT_GROUP; g++) {
+            groups.add(new ArrayList<>());
+        }
+
+        String[] lines = source.split("\n");
+        int ruleCount = 0;
+        for (int n = 0; n < lines.length; n++) {
+            String line = lines[n];
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            String[] tokens = line.toLowerCase(Locale.US).split("\\s+");
+            groups.get(parseRule(tokens, n + 1, groups.size())).add(parseCondition(tokens, n + 1));
+            ruleCount++;
+        }
+
+        int[] groupStart = new int[groups.size() + 1];
+        int[] features = new int[ruleCount];
+        int[] axes = new int[ruleCount];
+        float[] signs = new float[ruleCount];
+        float[] bounds = new float[ruleCount];
+        int[] errors = new int[ruleCount];
+        int r = 0;
+        for (int g = 0; g < groups.size(); g++) {
+            groupStart[g] = r;
+            for (float[] rule : groups.get(g)) {
+                features[r] = (int) rule[0];
+                axes[r] = (int) rule[1];
+                signs[r] = rule[2];
+                bounds[r] = rule[3];
+                errors[r] = (int) rule[4];
+                r++;
+            }
+        }
+        groupStart[groups.size()] = r;
+        return new Rules(groupStart, features, axes, signs, bounds, errors);
+    }
+
+    // Returns the exercise group of a rule
+    private static int parseRule(String[] tokens, int lineNumber, int groupCount) {
+        if (tokens.length < 3) {
+            throw new IllegalArgumentException("Line " + lineNumber + ": expected exercise, error and condition");
+        }
+        if (tokens[0].equals(DEFAULT_EXERCISE)) {
+            return DEFAULT_GROUP;
+        }
+        int exercise = indexOf(EXERCISE_NAMES, tokens[0]);
+        if (exercise < 0 || exercise >= groupCount) {
+            throw new IllegalArgumentException("Line " + lineNumber + ": unknown exercise " + tokens[0]);
+        }
+        return exercise;
+    }
+
+    // Returns {feature, axis, sign, sign * threshold, error}
+    private static float[] parseCondition(String[] tokens, int lineNumber) {
+        int error = indexOf(ERROR_NAMES, tokens[1]);
+        if (error < 0) {
+            throw new IllegalArgumentException("Line " + lineNumber + ": unknown error " + tokens[1]);
+        }
+
+        if (tokens[2].equals(FEATURE_NAMES[FEATURE_ALWAYS])) {
+            if (tokens.length != 3) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": unexpected text after always");
+            }
+            // Feature value 1 is always above 0
+            return new float[]{FEATURE_ALWAYS, 0, 1, 0, error};
+        }
+
+        if (tokens.length != 7 || !tokens[2].equals("if")) {
+            throw new IllegalArgumentException("Line " + lineNumber + ": expected if <feature> <axis> <op> <threshold>");
+        }
+        int feature = indexOf(FEATURE_NAMES, tokens[3]);
+        if (feature <= FEATURE_ALWAYS) {
+            throw new IllegalArgumentException("Line " + lineNumber + ": unknown feature " + tokens[3]);
+        }
+        int axis = indexOf(AXIS_NAMES, tokens[4]);
+        if (axis < 0) {
+            throw new IllegalArgumentException("Line " + lineNumber + ": unknown axis " + tokens[4]);
+        }
+
+        float sign;
+        if (tokens[5].equals(">")) {
+            sign = 1;
+        } else if (tokens[5].equals("<")) {
+            sign = -1;
+        } else {
+            throw new IllegalArgumentException("Line " + lineNumber + ": operator must be > or <");
+        }
+
+        float threshold;
+        try {
+            threshold = Float.parseFloat(tokens[6]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Line " + lineNumber + ": bad threshold " + tokens[6]);
+        }
+        if (Float.isNaN(threshold)) {
+            throw new IllegalArgumentException("Line " + lineNumber + ": bad threshold " + tokens[6]);
+        }
+
+        // "x > t" and "x < t" both become sign * x > sign * t
+        return new float[]{feature, axis, sign, sign * threshold, error};
+    }
+
+    private static int indexOf(String[] names, String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Replace the rules with newly compiled text
+     * @throws IllegalArgumentException If the text does not compile; the current rules are kept
+     */
+    public void load(String source) {
+        rules = compile(source);
+    }
+
+    /**
+     * Reload the rules from a file if it changed since the last reload.
+     * A missing file restores the built-in rules; a file that does not
+     * compile is logged and the current rules are kept
+     * @return True if a new table was swapped in
+     */
+    public synchronized boolean reloadIfChanged(File file) {
+        long modified = file.exists() ? file.lastModified() : -1;
+        long length = file.exists() ? file.length() : -1;
+        if (modified == loadedModified && length == loadedLength) {
+            return false;
+        }
+        loadedModified = modified;
+        loadedLength = length;
+
+        try {
+            String source = modified < 0 ? DEFAULT_RULES
+                    : readFile(file);
+            load(source);
+            Log.d(TAG, "Loaded " + getRuleCount() + " form rules" + (modified < 0 ? "" : " from " + file));
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            Log.w(TAG, "Keeping current form rules", e);
+            return false;
+        }
+    }
+
+    private static String readFile(File file) throws IOException {
+        try (InputStream input = new FileInputStream(file)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] chunk = new byte[4096];
+            int read;
+            while ((read = input.read(chunk)) > 0) {
+                bytes.write(chunk, 0, read);
+            }
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    public int getRuleCount() {
+        return rules.errors.length;
+    }
+
+    /**
+     * Find the form error of an incorrect pattern
+     * @param exerciseType Type of exercise being performed
+     * @param pattern Classified pattern
+     * @param templates Reference templates, or null
+     * @param referenceIndex Index of the best matching reference
+     * @param features Rolling features of the recent samples, or null
+     * @return One of the MotionPattern ERROR_ types; ERROR_NONE if no rule matched
+     */
+    public int evaluate(int exerciseType, MotionPattern pattern, ExerciseTemplates templates,
+                        int referenceIndex, RollingFeatures features) {
+        Rules table = rules;
+        int group = exerciseType >= 0 && exerciseType < DEFAULT_GROUP
+                && table.groupStart[exerciseType + 1] > table.groupStart[exerciseType]
+                ? exerciseType : DEFAULT_GROUP;
+
+        float[] acc = pattern.getAccelerationData();
+        float[] gyro = pattern.getGyroscopeData();
+        boolean hasReference = templates != null && referenceIndex >= 0 && referenceIndex < templates.size();
+        boolean hasWindow = features != null && features.getCount() > 0;
+
+        int error = MotionPattern.ERROR_NONE;
+        for (int r = table.groupStart[group], end = table.groupStart[group + 1]; r < end; r++) {
+            int axis = table.axes[r];
+            float x;
+            switch (table.features[r]) {
+                case FEATURE_VALUE:
+                    x = axis < 3 ? acc[axis] : gyro[axis - 3];
+                    break;
+                case FEATURE_DIFF:
+                    x = hasReference ? (axis < 3 ? acc[axis] : gyro[axis - 3]) - templates.getValue(referenceIndex, axis) : Float.NaN;
+                    break;
+                case FEATURE_ABS_DIFF:
+                    x = hasReference ? Math.abs((axis < 3 ? acc[axis] : gyro[axis - 3]) - templates.getValue(referenceIndex, axis)) : Float.NaN;
+                    break;
+                case FEATURE_STD:
+                    x = hasWindow ? features.getStandardDeviation(axis) : Float.NaN;
+                    break;
+                case FEATURE_RANGE:
+                    x = hasWindow ? features.getRange(axis) : Float.NaN;
+                    break;
+                case FEATURE_JERK:
+                    x = hasWindow ? features.getJerk(axis) : Float.NaN;
+                    break;
+                case FEATURE_CROSSINGS:
+                    x = hasWindow ? features.getZeroCrossings(axis) : Float.NaN;
+                    break;
+                default:
+                    x = 1;
+            }
+            error = table.signs[r] * x > table.bounds[r] ? table.errors[r] : error;
+        }
+        return error;
+    }
+}
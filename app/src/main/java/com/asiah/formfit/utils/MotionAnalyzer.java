@@ -1,18 +1,26 @@
 // File: app/src/main/java/com/asiah/formfit/utils/MotionAnalyzer.java
 package com.asiah.formfit.utils;
 
+import android.content.Context;
 import android.util.Log;
 
 import com.asiah.formfit.model.MotionPattern;
 
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 /**
  * MotionAnalyzer analyzes motion data from wearable sensors
- * to detect exercise patterns and provide feedback
+ * to detect exercise patterns and provide feedback.
+ * One instance can be shared by any number of threads: reference templates
+ * are published through a TemplateRegistry as immutable snapshots, and
+ * per-session mutable state lives in MotionSession objects created with newSession.
  */
 public class MotionAnalyzer {
 
@@ -23,31 +31,154 @@ public class MotionAnalyzer {
     public static final int EXERCISE_PUSHUP = 1;
     public static final int EXERCISE_PLANK = 2;
     public static final int EXERCISE_LUNGE = 3;
+    public static final int EXERCISE_PULLUP = 4;
+    public static final int EXERCISE_BENCH_PRESS = 5;
+    public static final int EXERCISE_SHOULDER_PRESS = 6;
+    public static final int EXERCISE_DEADLIFT = 7;
+    public static final int EXERCISE_CRUNCH = 8;
+    public static final int EXERCISE_RUSSIAN_TWIST = 9;
+    public static final int EXERCISE_JUMPING_JACK = 10;
+    public static final int EXERCISE_BURPEE = 11;
+    public static final int EXERCISE_MOUNTAIN_CLIMBER = 12;
 
-    // Reference motion patterns for each exercise
-    private Map<Integer, List<MotionPattern>> referencePatterns;
+    // Number of exercise types; types run from 0 to EXERCISE_COUNT - 1
+    public static final int EXERCISE_COUNT = 13;
+
+    // Values per packed sample or reference: acceleration x, y, z then gyroscope x, y, z
+    public static final int SAMPLE_STRIDE = 6;
+
+    // Exercises with more reference patterns than this are searched through an index
+    public static final int DEFAULT_INDEX_THRESHOLD = 32;
+
+    // Samples per session feature window; sessions classify the window mean
+    public static final int DEFAULT_FEATURE_WINDOW = 5;
+
+    // Calibrated templates produced by TemplateCalibrator, shipped in the app's assets
+    public static final String TEMPLATE_ASSET = "reference_templates.ffta";
+
+    private static MotionAnalyzer instance;
+
+    // Loads and caches reference templates per exercise
+    private final TemplateRegistry templateRegistry;
+
+    // Decides the form error of incorrect patterns
+    private final FormRuleEngine ruleEngine = new FormRuleEngine();
 
     // Similarity threshold for pattern matching
     private static final float SIMILARITY_THRESHOLD = 0.7f;
 
     /**
-     * Constructor initializes reference motion patterns
+     * Get the shared analyzer, which loads calibrated templates from the app's
+     * assets one exercise at a time as sessions start
+     */
+    public static synchronized MotionAnalyzer getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            instance = new MotionAnalyzer(new TemplateRegistry(
+                    (exerciseType, indexThreshold) -> loadAssetTemplates(appContext, exerciseType, indexThreshold),
+                    DEFAULT_INDEX_THRESHOLD));
+        }
+        return instance;
+    }
+
+    /**
+     * Constructor with the built-in reference patterns, built per exercise on first use
      */
     public MotionAnalyzer() {
-        // Initialize reference patterns
-        initializeReferencePatterns();
+        this(new TemplateRegistry(MotionAnalyzer::loadBuiltInTemplates, DEFAULT_INDEX_THRESHOLD));
+    }
+
+    /**
+     * Constructor with a prepared reference library
+     * @param library Reference templates to match against
+     */
+    public MotionAnalyzer(ReferenceLibrary library) {
+        this(new TemplateRegistry(library));
+    }
+
+    /**
+     * Constructor with a template registry
+     * @param templateRegistry Registry that supplies reference templates
+     */
+    public MotionAnalyzer(TemplateRegistry templateRegistry) {
+        this.templateRegistry = templateRegistry;
 
         Log.d(TAG, "MotionAnalyzer initialized successfully");
     }
 
+    /**
+     * Constructor that loads calibrated templates from a template asset,
+     * e.g. context.getAssets().open(TEMPLATE_ASSET). Falls back to the
+     * built-in patterns if the asset is missing or invalid
+     * @param templateAsset Stream over a TemplateAsset, or null; closed by this constructor
+     */
+    public MotionAnalyzer(InputStream templateAsset) {
+        this(loadLibrary(templateAsset));
+    }
+
+    /**
+     * Build the library of built-in reference patterns
+     */
+    public static ReferenceLibrary createDefaultLibrary() {
+        return ReferenceLibrary.fromPatterns(initializeReferencePatterns(), DEFAULT_INDEX_THRESHOLD);
+    }
+
+    private static ExerciseTemplates loadBuiltInTemplates(int exerciseType, int indexThreshold) {
+        List<MotionPattern> patterns = builtInPatterns(exerciseType);
+        return patterns == null ? null : ExerciseTemplates.fromPatterns(exerciseType, patterns, indexThreshold);
+    }
+
+    private static ExerciseTemplates loadAssetTemplates(Context context, int exerciseType, int indexThreshold) {
+        try (InputStream input = context.getAssets().open(TEMPLATE_ASSET)) {
+            ExerciseTemplates templates = TemplateAsset.readTemplates(input, exerciseType, indexThreshold);
+            return templates != null ? templates : loadBuiltInTemplates(exerciseType, indexThreshold);
+        } catch (FileNotFoundException e) {
+            // No calibrated asset shipped yet
+            return loadBuiltInTemplates(exerciseType, indexThreshold);
+        } catch (IOException e) {
+            // A truncated or corrupt asset must not leave the exercise without templates
+            Log.w(TAG, "Could not load template asset, using built-in patterns", e);
+            return loadBuiltInTemplates(exerciseType, indexThreshold);
+        }
+    }
+
+    private static ReferenceLibrary loadLibrary(InputStream templateAsset) {
+        if (templateAsset == null) {
+            return createDefaultLibrary();
+        }
+
+        try (InputStream input = templateAsset) {
+            return TemplateAsset.read(input, DEFAULT_INDEX_THRESHOLD);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not load template asset, using built-in patterns", e);
+            return createDefaultLibrary();
+        }
+    }
+
     /**
      * Initialize reference motion patterns for various exercises
      */
-    private void initializeReferencePatterns() {
-        referencePatterns = new HashMap<>();
+    private static Map<Integer, List<MotionPattern>> initializeReferencePatterns() {
+        Map<Integer, List<MotionPattern>> referencePatterns = new HashMap<>();
+        for (int exerciseType = 0; exerciseType < EXERCISE_COUNT; exerciseType++) {
+            List<MotionPattern> patterns = builtInPatterns(exerciseType);
+            if (patterns != null) {
+                referencePatterns.put(exerciseType, patterns);
+            }
+        }
+        return referencePatterns;
+    }
 
-        // For each exercise type, add reference patterns
-        // In a real implementation, these would be trained/calibrated patterns
+    /**
+     * Build the built-in reference patterns of one exercise
+     * @return Patterns, or null if the exercise has none
+     */
+    private static List<MotionPattern> builtInPatterns(int exerciseType) {
+        // These are fallbacks; calibrated templates are loaded from TEMPLATE_ASSET
+        if (exerciseType != EXERCISE_SQUAT) {
+            // Patterns for other exercise types would be added here
+            return null;
+        }
 
         // Squat reference patterns
         List<MotionPattern> squatPatterns = new ArrayList<>();
@@ -76,11 +207,113 @@ public class MotionAnalyzer {
         squatBottom.setType(MotionPattern.TYPE_CORRECT);
         squatPatterns.add(squatBottom);
 
-        // Add to reference map
-        referencePatterns.put(EXERCISE_SQUAT, squatPatterns);
+        return squatPatterns;
+    }
+
+    /**
+     * Map an exercise name from the UI, e.g. "Squats" or "Push-ups - Beginner", to an exercise type
+     * @return Exercise type, or -1 if the exercise is not analysed
+     */
+    public static int exerciseTypeForName(String exerciseName) {
+        if (exerciseName == null) {
+            return -1;
+        }
+
+        String name = exerciseName.toLowerCase(Locale.US);
+        if (name.contains("squat")) {
+            return EXERCISE_SQUAT;
+        } else if (name.contains("push")) {
+            return EXERCISE_PUSHUP;
+        } else if (name.contains("plank")) {
+            return EXERCISE_PLANK;
+        } else if (name.contains("lunge")) {
+            return EXERCISE_LUNGE;
+        } else if (name.contains("pull")) {
+            return EXERCISE_PULLUP;
+        } else if (name.contains("bench")) {
+            return EXERCISE_BENCH_PRESS;
+        } else if (name.contains("shoulder")) {
+            return EXERCISE_SHOULDER_PRESS;
+        } else if (name.contains("deadlift")) {
+            return EXERCISE_DEADLIFT;
+        } else if (name.contains("crunch")) {
+            return EXERCISE_CRUNCH;
+        } else if (name.contains("twist")) {
+            return EXERCISE_RUSSIAN_TWIST;
+        } else if (name.contains("jumping")) {
+            return EXERCISE_JUMPING_JACK;
+        } else if (name.contains("burpee")) {
+            return EXERCISE_BURPEE;
+        } else if (name.contains("mountain")) {
+            return EXERCISE_MOUNTAIN_CLIMBER;
+        }
+        return -1;
+    }
+
+    /**
+     * Get a snapshot of the reference templates loaded so far
+     */
+    public ReferenceLibrary getReferenceLibrary() {
+        return templateRegistry.getLibrary();
+    }
+
+    /**
+     * Replace the whole reference library. Sessions that are already running
+     * keep the templates they started with
+     */
+    public void setReferenceLibrary(ReferenceLibrary library) {
+        templateRegistry.setLibrary(library);
+    }
+
+    public TemplateRegistry getTemplateRegistry() {
+        return templateRegistry;
+    }
+
+    /**
+     * Release cached templates of exercises not in use; call from onTrimMemory
+     * @param level Trim level passed to onTrimMemory
+     */
+    public void trimMemory(int level) {
+        templateRegistry.trimMemory(level);
+    }
+
+    /**
+     * Replace the reference patterns for an exercise, e.g. with calibrated per-user templates
+     * @param exerciseType Type of exercise
+     * @param patterns New reference patterns
+     */
+    public void setReferencePatterns(int exerciseType, List<MotionPattern> patterns) {
+        templateRegistry.putTemplates(ExerciseTemplates.fromPatterns(exerciseType, patterns,
+                templateRegistry.getLibrary().getIndexThreshold()));
+    }
+
+    /**
+     * Set how many reference patterns an exercise needs before lookups use an index.
+     * Indexed and linear lookups return identical matches; this only affects speed
+     * @param threshold Reference count above which an index is built
+     */
+    public void setIndexThreshold(int threshold) {
+        templateRegistry.setIndexThreshold(threshold);
+    }
+
+    /**
+     * Start a new analysis session. Each session should be used by one thread at a time,
+     * while the analyzer itself can serve many sessions concurrently
+     * @param exerciseType Type of exercise being performed
+     * @return New session bound to the current reference templates
+     */
+    public MotionSession newSession(int exerciseType) {
+        return newSession(exerciseType, DEFAULT_FEATURE_WINDOW);
+    }
 
-        // Add patterns for other exercise types as needed
-        // This would be expanded in a real implementation
+    /**
+     * Start a new analysis session with a specific feature window
+     * @param exerciseType Type of exercise being performed
+     * @param featureWindow Number of samples the session's rolling features cover; 1 classifies raw samples
+     * @return New session bound to the current reference templates
+     */
+    public MotionSession newSession(int exerciseType, int featureWindow) {
+        return new MotionSession(this, exerciseType, templateRegistry.getTemplates(exerciseType), featureWindow);
     }
 
     /**
@@ -94,180 +327,310 @@ public class MotionAnalyzer {
         // Create a new pattern from the sensor data
         MotionPattern currentPattern = new MotionPattern(accelerationData, gyroscopeData);
 
-        // Get reference patterns for the exercise type
-        List<MotionPattern> patterns = referencePatterns.get(exerciseType);
-        if (patterns == null || patterns.isEmpty()) {
-            Log.w(TAG, "No reference patterns found for exercise type: " + exerciseType);
+        if (!detectPattern(accelerationData, gyroscopeData, exerciseType, currentPattern)) {
+            TraceBuffer.record(TraceBuffer.EVENT_NO_TEMPLATES, exerciseType);
             return currentPattern; // Return unclassified pattern
         }
 
-        // Find the most similar reference pattern
-        MotionPattern bestMatch = findBestMatch(currentPattern, patterns);
+        TraceBuffer.record(TraceBuffer.EVENT_PATTERN_DETECTED, exerciseType, currentPattern.getConfidence());
+        return currentPattern;
+    }
+
+    /**
+     * Detect motion pattern from sensor data into a caller-supplied pattern.
+     * This is the per-sample hot path: it allocates nothing and does not log,
+     * so streaming callers can reuse one result object for a whole session
+     * @param accelerationData Acceleration data from wearable
+     * @param gyroscopeData Gyroscope data from wearable
+     * @param exerciseType Type of exercise being performed
+     * @param currentPattern Pattern to populate; its previous classification is cleared
+     * @return True if reference patterns exist for the exercise and the pattern was classified
+     */
+    public boolean detectPattern(float[] accelerationData, float[] gyroscopeData, int exerciseType,
+                                 MotionPattern currentPattern) {
+        return classify(accelerationData, gyroscopeData, exerciseType,
+                templateRegistry.getTemplates(exerciseType), currentPattern);
+    }
+
+    /**
+     * Classify a sample against a specific set of templates
+     * @param accelerationData Acceleration data from wearable
+     * @param gyroscopeData Gyroscope data from wearable
+     * @param exerciseType Type of exercise being performed
+     * @param templates Reference templates for the exercise, or null
+     * @param currentPattern Pattern to populate; its previous classification is cleared
+     * @return True if templates exist and the pattern was classified
+     */
+    boolean classify(float[] accelerationData, float[] gyroscopeData, int exerciseType,
+                     ExerciseTemplates templates, MotionPattern currentPattern) {
+        return classify(accelerationData, gyroscopeData, exerciseType, templates, null, currentPattern);
+    }
+
+    /**
+     * Classify a sample against a specific set of templates, typing errors with rolling features
+     * @param accelerationData Acceleration data, usually the feature window mean
+     * @param gyroscopeData Gyroscope data, usually the feature window mean
+     * @param exerciseType Type of exercise being performed
+     * @param templates Reference templates for the exercise, or null
+     * @param features Rolling features of the recent samples, or null to use the sample alone
+     * @param currentPattern Pattern to populate; its previous classification is cleared
+     * @return True if templates exist and the pattern was classified
+     */
+    boolean classify(float[] accelerationData, float[] gyroscopeData, int exerciseType,
+                     ExerciseTemplates templates, RollingFeatures features, MotionPattern currentPattern) {
+        // Reset the pattern to an unclassified state for the new data
+        currentPattern.setAccelerationData(accelerationData);
+        currentPattern.setGyroscopeData(gyroscopeData);
+        currentPattern.setType(MotionPattern.TYPE_UNKNOWN);
+        currentPattern.setErrorType(MotionPattern.ERROR_NONE);
+        currentPattern.setConfidence(0.0f);
+
+        if (templates == null || templates.size() == 0) {
+            return false;
+        }
+
+        // Find the most similar reference pattern; its similarity is left in the confidence
+        int bestMatch = templates.findBestMatch(accelerationData, gyroscopeData, currentPattern);
+        applyMatch(currentPattern, exerciseType, templates, features, bestMatch, currentPattern.getConfidence());
+        return true;
+    }
+
+    /**
+     * Classify a pattern whose best matching reference is already known
+     * @param currentPattern Pattern holding the sample data; receives the classification
+     * @param exerciseType Type of exercise being performed
+     * @param templates Reference templates for the exercise
+     * @param features Rolling features of the recent samples, or null
+     * @param bestMatch Index of the most similar reference
+     * @param similarity Similarity to that reference
+     */
+    void applyMatch(MotionPattern currentPattern, int exerciseType, ExerciseTemplates templates,
+                    RollingFeatures features, int bestMatch, float similarity) {
+        currentPattern.setErrorType(MotionPattern.ERROR_NONE);
+        currentPattern.setConfidence(similarity);
 
         // If similarity is above threshold, classify as the same type
-        float similarity = currentPattern.calculateSimilarity(bestMatch);
         if (similarity >= SIMILARITY_THRESHOLD) {
-            currentPattern.setType(bestMatch.getType());
+            currentPattern.setType(templates.getType(bestMatch));
         } else {
             // If not similar enough, classify as incorrect
             currentPattern.setType(MotionPattern.TYPE_INCORRECT);
 
             // Determine error type
-            determineErrorType(currentPattern, bestMatch, exerciseType);
+            currentPattern.setErrorType(ruleEngine.evaluate(exerciseType, currentPattern, templates,
+                    bestMatch, features));
         }
+    }
 
-        // Set confidence based on similarity
-        currentPattern.setConfidence(similarity);
-
-        Log.d(TAG, "Pattern detected with confidence: " + similarity);
-        return currentPattern;
+    /**
+     * Open a streaming session that classifies sliding windows of raw samples
+     * @param exerciseType Type of exercise being performed
+     * @param windowSize Number of samples per classification window
+     * @param hopSize Number of new samples between consecutive windows
+     * @return New stream bound to this analyzer
+     */
+    public MotionStream openStream(int exerciseType, int windowSize, int hopSize) {
+        return new MotionStream(this, exerciseType, windowSize, hopSize);
     }
 
     /**
-     * Find the reference pattern that best matches the current pattern
-     * @param currentPattern Pattern to match
-     * @param referencePatterns List of reference patterns
-     * @return Best matching reference pattern
+     * Create a sequence-level matcher for whole repetitions of an exercise.
+     * The exercise's reference poses are treated as keyframes of one rep
+     * (down through each pose and back up again) and interpolated into a
+     * template of the requested length
+     * @param exerciseType Type of exercise being performed
+     * @param repLength Number of frames in a rep-length window
+     * @param bandRadius Maximum warping offset in frames
+     * @return Matcher seeded with the exercise's rep template; empty if it has no references
      */
-    private MotionPattern findBestMatch(MotionPattern currentPattern, List<MotionPattern> referencePatterns) {
-        MotionPattern bestMatch = null;
-        float bestSimilarity = 0;
-
-        // Compare with each reference pattern
-        for (MotionPattern refPattern : referencePatterns) {
-            float similarity = currentPattern.calculateSimilarity(refPattern);
-
-            // Update best match if this is better
-            if (similarity > bestSimilarity) {
-                bestSimilarity = similarity;
-                bestMatch = refPattern;
-            }
+    public DtwMatcher createSequenceMatcher(int exerciseType, int repLength, int bandRadius) {
+        DtwMatcher matcher = new DtwMatcher(repLength, bandRadius);
+
+        ExerciseTemplates templates = templateRegistry.getTemplates(exerciseType);
+        if (templates == null || templates.size() == 0) {
+            return matcher;
         }
 
-        // If no match found, return the first reference pattern
-        if (bestMatch == null && !referencePatterns.isEmpty()) {
-            bestMatch = referencePatterns.get(0);
+        // Keyframes run through the poses in order and then back to the start
+        float[] poses = templates.copyReferences();
+        int poseCount = templates.size();
+        int keyframeCount = Math.max(1, poseCount * 2 - 1);
+        float[] keyframes = new float[keyframeCount * SAMPLE_STRIDE];
+        for (int k = 0; k < keyframeCount; k++) {
+            int pose = k < poseCount ? k : keyframeCount - 1 - k;
+            System.arraycopy(poses, pose * SAMPLE_STRIDE, keyframes, k * SAMPLE_STRIDE, SAMPLE_STRIDE);
         }
 
-        return bestMatch;
+        matcher.addTemplate(keyframes, MotionPattern.TYPE_CORRECT);
+        return matcher;
     }
 
     /**
-     * Determine what type of error is occurring in the motion
-     * @param currentPattern Current detected pattern
-     * @param referencePattern Best matching reference pattern
+     * Get the reference patterns for an exercise as a packed matrix
+     * @param exerciseType Type of exercise
+     * @return Copy of the references, SAMPLE_STRIDE floats each; empty if none are defined
+     */
+    public float[] getPackedReferences(int exerciseType) {
+        ExerciseTemplates templates = templateRegistry.getTemplates(exerciseType);
+        return templates == null ? new float[0] : templates.copyReferences();
+    }
+
+    /**
+     * Score a batch of samples against an exercise's reference patterns
+     * @param samples Packed samples, SAMPLE_STRIDE floats each
+     * @param sampleCount Number of samples to score
      * @param exerciseType Type of exercise being performed
+     * @param bestIndices Receives the best matching reference index per sample
+     * @param bestSimilarities Receives the best similarity per sample
+     * @return False if no reference patterns exist for the exercise
      */
-    private void determineErrorType(MotionPattern currentPattern, MotionPattern referencePattern, int exerciseType) {
-        // Get acceleration and gyroscope data
-        float[] currAcc = currentPattern.getAccelerationData();
-        float[] refAcc = referencePattern.getAccelerationData();
-        float[] currGyro = currentPattern.getGyroscopeData();
-        float[] refGyro = referencePattern.getGyroscopeData();
-
-        // Check for common errors based on exercise type
-        switch (exerciseType) {
-            case EXERCISE_SQUAT:
-                // Check for speed issues
-                float verticalAccDiff = Math.abs(currAcc[1] - refAcc[1]);
-                if (verticalAccDiff > 3.0f) {
-                    if (currAcc[1] < refAcc[1]) {
-                        currentPattern.setErrorType(MotionPattern.ERROR_TOO_FAST);
-                    } else {
-                        currentPattern.setErrorType(MotionPattern.ERROR_TOO_SLOW);
-                    }
-                }
+    public boolean scoreBatch(float[] samples, int sampleCount, int exerciseType,
+                              int[] bestIndices, float[] bestSimilarities) {
+        ExerciseTemplates templates = templateRegistry.getTemplates(exerciseType);
+        if (templates == null || templates.size() == 0) {
+            return false;
+        }
 
-                // Check for incorrect angle
-                float rotationDiff = Math.abs(currGyro[0] - refGyro[0]);
-                if (rotationDiff > 1.0f) {
-                    currentPattern.setErrorType(MotionPattern.ERROR_WRONG_ANGLE);
-                }
-                break;
+        templates.scoreBatch(samples, sampleCount, bestIndices, bestSimilarities);
+        return true;
+    }
 
-            case EXERCISE_PUSHUP:
-                // Similar checks for pushup form
-                // Would be expanded in a real implementation
-                break;
+    /**
+     * Score N packed samples against M packed reference patterns in one call.
+     * Results match findBestMatch exactly: the first reference with the highest
+     * similarity wins, and index 0 is reported when every similarity is zero
+     * @param samples Packed samples, SAMPLE_STRIDE floats each
+     * @param sampleCount Number of samples to score
+     * @param references Packed reference matrix, SAMPLE_STRIDE floats per reference
+     * @param referenceCount Number of references in the matrix
+     * @param bestIndices Receives the best matching reference index per sample
+     * @param bestSimilarities Receives the best similarity per sample
+     */
+    public static void scoreBatch(float[] samples, int sampleCount, float[] references, int referenceCount,
+                                  int[] bestIndices, float[] bestSimilarities) {
+        if (samples.length < sampleCount * SAMPLE_STRIDE
+                || references.length < referenceCount * SAMPLE_STRIDE
+                || bestIndices.length < sampleCount
+                || bestSimilarities.length < sampleCount) {
+            throw new IllegalArgumentException("Batch arrays are smaller than the requested counts");
+        }
 
-            default:
-                // Default error type
-                currentPattern.setErrorType(MotionPattern.ERROR_INCOMPLETE_RANGE);
+        int referenceEnd = referenceCount * SAMPLE_STRIDE;
+
+        for (int s = 0; s < sampleCount; s++) {
+            // Keep the sample in locals so the reference loop only streams the matrix
+            int sampleBase = s * SAMPLE_STRIDE;
+            float accX = samples[sampleBase];
+            float accY = samples[sampleBase + 1];
+            float accZ = samples[sampleBase + 2];
+            float gyroX = samples[sampleBase + 3];
+            float gyroY = samples[sampleBase + 4];
+            float gyroZ = samples[sampleBase + 5];
+
+            int bestIndex = 0;
+            float bestSimilarity = 0;
+
+            // Fixed-stride body with no calls or branches besides the best-match update
+            for (int r = 0, refIndex = 0; r < referenceEnd; r += SAMPLE_STRIDE, refIndex++) {
+                float dax = accX - references[r];
+                float day = accY - references[r + 1];
+                float daz = accZ - references[r + 2];
+                float dgx = gyroX - references[r + 3];
+                float dgy = gyroY - references[r + 4];
+                float dgz = gyroZ - references[r + 5];
+
+                float accDistance = (float) Math.sqrt(dax * dax + day * day + daz * daz);
+                float gyroDistance = (float) Math.sqrt(dgx * dgx + dgy * dgy + dgz * dgz);
+                float similarity = MotionPattern.similarityFromDistance(accDistance + gyroDistance);
+
+                if (similarity > bestSimilarity) {
+                    bestSimilarity = similarity;
+                    bestIndex = refIndex;
+                }
+            }
+
+            bestIndices[s] = bestIndex;
+            bestSimilarities[s] = bestSimilarity;
         }
     }
 
+    /**
+     * Get the engine that decides form errors, e.g. to reload tuned rules
+     */
+    public FormRuleEngine getRuleEngine() {
+        return ruleEngine;
+    }
+
     /**
      * Get feedback based on detected motion pattern
      * @param pattern Detected motion pattern
      * @param exerciseType Type of exercise being performed
-     * @return Feedback message
+     * @return Feedback message, from a fixed table
      */
     public String getMotionFeedback(MotionPattern pattern, int exerciseType) {
+        return FeedbackBus.getMessage(getFeedbackCode(pattern, exerciseType));
+    }
+
+    /**
+     * Get feedback for a detected motion pattern as a FeedbackBus code
+     * @param pattern Detected motion pattern
+     * @param exerciseType Type of exercise being performed
+     * @return One of the FeedbackBus.FEEDBACK_ codes
+     */
+    public static int getFeedbackCode(MotionPattern pattern, int exerciseType) {
         // If pattern is correct, no feedback needed
         if (pattern.getType() == MotionPattern.TYPE_CORRECT) {
-            return "Good form";
+            return FeedbackBus.FEEDBACK_GOOD_FORM;
         }
 
         // Otherwise, provide feedback based on error type
         switch (pattern.getErrorType()) {
             case MotionPattern.ERROR_TOO_FAST:
-                return "Slow down your movement";
+                return FeedbackBus.FEEDBACK_SLOW_DOWN;
 
             case MotionPattern.ERROR_TOO_SLOW:
-                return "Try to maintain a steady pace";
+                return FeedbackBus.FEEDBACK_STEADY_PACE;
 
             case MotionPattern.ERROR_WRONG_ANGLE:
                 if (exerciseType == EXERCISE_SQUAT) {
-                    return "Keep your back straight and knees aligned";
+                    return FeedbackBus.FEEDBACK_SQUAT_ALIGNMENT;
                 } else if (exerciseType == EXERCISE_PUSHUP) {
-                    return "Lower your body in a straight line";
+                    return FeedbackBus.FEEDBACK_PUSHUP_LINE;
                 } else {
-                    return "Check your form alignment";
+                    return FeedbackBus.FEEDBACK_CHECK_ALIGNMENT;
                 }
 
             case MotionPattern.ERROR_INCOMPLETE_RANGE:
                 if (exerciseType == EXERCISE_SQUAT) {
-                    return "Go deeper in your squat";
+                    return FeedbackBus.FEEDBACK_SQUAT_DEEPER;
                 } else if (exerciseType == EXERCISE_PUSHUP) {
-                    return "Lower your chest closer to the ground";
+                    return FeedbackBus.FEEDBACK_PUSHUP_CHEST;
                 } else {
-                    return "Complete the full range of motion";
+                    return FeedbackBus.FEEDBACK_FULL_RANGE;
                 }
 
             default:
-                return "Maintain proper form";
+                return FeedbackBus.FEEDBACK_MAINTAIN_FORM;
         }
     }
 
     /**
-     * Detect repetitions from a sequence of motion patterns
+     * Detect repetitions from a sequence of motion patterns.
+     * This rescans the whole list; live sessions should feed samples to a
+     * RepetitionCounter as they arrive instead
      * @param patterns List of detected patterns over time
      * @return Number of repetitions detected
      */
     public int countRepetitions(List<MotionPattern> patterns) {
-        // Simplified repetition counting
-        // In a real implementation, this would use more sophisticated algorithms
-
-        int repCount = 0;
-        boolean inRep = false;
+        // Unfiltered, with the original thresholds on vertical acceleration
+        RepetitionCounter counter = new RepetitionCounter(RepetitionCounter.AXIS_ACC_Y,
+                RepetitionCounter.DEFAULT_START_THRESHOLD, RepetitionCounter.DEFAULT_END_THRESHOLD, 1.0f);
 
-        // Scan through patterns to detect repetition cycles
         for (int i = 0; i < patterns.size(); i++) {
             MotionPattern pattern = patterns.get(i);
-            float[] acc = pattern.getAccelerationData();
-
-            // Detect start of repetition (e.g., downward motion in squat)
-            if (!inRep && acc[1] < -1.0f) {
-                inRep = true;
-            }
-
-            // Detect end of repetition (e.g., upward motion completing squat)
-            else if (inRep && acc[1] > 1.0f) {
-                inRep = false;
-                repCount++;
-            }
+            counter.addValue(pattern.getAccelerationData()[1], pattern.getTimestamp());
         }
 
-        return repCount;
+        return counter.getCount();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,356 @@
+package com.asiah.formfit.utils;
+
+import com.asiah.formfit.model.MotionPattern;
+
+/**
+ * MotionSession holds the mutable state for one user's exercise session.
+ * The shared MotionAnalyzer and its reference library stay read-only, so
+ * each thread analysing its own session needs no locking. A session binds to
+ * the templates that were current when it started, and is meant to be fed
+ * from a single thread. Samples pass through a RollingFeatures window first:
+ * the window mean is classified and the window statistics drive error typing.
+ *
+ * Classification runs as a cascade, cheapest stage first:
+ * <ol>
+ *     <li>Stationary gate: if the window is near-still and its mean moved less than
+ *     GATE_DISTANCE since the last evaluation, the previous decision is reused.
+ *     Its confidence is then off by at most GATE_DISTANCE / MotionPattern.MAX_DISTANCE.</li>
+ *     <li>Margin check: the match distance is a metric, so after moving by d every
+ *     similarity changes by at most d / MAX_DISTANCE. If the best reference from the
+ *     last full match still leads the runner-up by more than twice that, it is still
+ *     the best, and only that reference is rescored. The result is identical to stage 3.</li>
+ *     <li>Full match against every reference.</li>
+ * </ol>
+ */
+public class MotionSession {
+
+    private final MotionAnalyzer analyzer;
+    private final int exerciseType;
+    private final ExerciseTemplates templates;
+
+    // Reused for every sample; valid until the next call to addSample
+    private final MotionPattern result = new MotionPattern();
+    private final RepetitionCounter repetitionCounter;
+    private final RollingFeatures features;
+
+    // Optional anti-aliased rate reduction ahead of analysis
+    private Decimator decimator;
+    private final float[] decimatedAcceleration = new float[3];
+    private final float[] decimatedGyroscope = new float[3];
+    private long inputCount;
+
+    // One sample taken from a frame or batch
+    private final float[] frameAcceleration = new float[3];
+    private final float[] frameGyroscope = new float[3];
+
+    // Window means, classified in place of the raw sample
+    private final float[] meanAcceleration = new float[3];
+    private final float[] meanGyroscope = new float[3];
+
+    private long sampleCount;
+    private long correctCount;
+
+    // Stage 1 thresholds: mean movement in sensor units and per-axis window variance
+    static final float GATE_DISTANCE = 0.02f;
+    static final float GATE_VARIANCE = 0.01f;
+
+    // Covers float rounding in the margin check
+    private static final float MARGIN_EPSILON = 1e-5f;
+
+    private boolean cascadeEnabled = true;
+    private boolean hasMatch;
+
+    // Input of the last evaluation, for the stationary gate
+    private final float[] lastAcceleration = new float[3];
+    private final float[] lastGyroscope = new float[3];
+
+    // Input and result of the last full match, for the margin check
+    private final float[] anchorAcceleration = new float[3];
+    private final float[] anchorGyroscope = new float[3];
+    private final float[] anchorSimilarities = new float[2];
+    private int anchorMatch;
+
+    private long gatedCount;
+    private long marginCount;
+    private long fullMatchCount;
+
+    /**
+     * Create a session; use MotionAnalyzer.newSession rather than calling this directly
+     * @param analyzer Analyzer providing classification rules
+     * @param exerciseType Type of exercise being performed
+     * @param templates Reference templates for the exercise, or null if it has none
+     * @param featureWindow Number of samples the rolling features cover
+     */
+    MotionSession(MotionAnalyzer analyzer, int exerciseType, ExerciseTemplates templates, int featureWindow) {
+        this.analyzer = analyzer;
+        this.exerciseType = exerciseType;
+        this.templates = templates;
+        this.repetitionCounter = RepetitionCounter.forExercise(exerciseType);
+        this.features = new RollingFeatures(featureWindow);
+    }
+
+    /**
+     * Declare the rate samples arrive at. Streams faster than the exercise needs
+     * are low-pass filtered and decimated before analysis, see Decimator
+     * @param inputRate Sensor sample rate in Hz, or 0 to analyse every sample
+     */
+    public void setInputRate(float inputRate) {
+        decimator = null;
+        if (inputRate > 0) {
+            Decimator candidate = Decimator.forExercise(exerciseType, inputRate);
+            if (candidate.getFactor() > 1) {
+                decimator = candidate;
+            }
+        }
+    }
+
+    /**
+     * Analyse one sample: classify its form and update the repetition count.
+     * With an input rate set, only every decimation-factor-th call analyses
+     * a filtered sample; the others return the previous result unchanged
+     * @param accelerationData Acceleration x, y, z
+     * @param gyroscopeData Gyroscope x, y, z
+     * @param timestamp Timestamp of the sample
+     * @return Classified pattern, holding the window mean; reused by the next call
+     */
+    public MotionPattern addSample(float[] accelerationData, float[] gyroscopeData, long timestamp) {
+        inputCount++;
+        if (decimator == null) {
+            return analyze(accelerationData, gyroscopeData, timestamp);
+        }
+        if (!decimator.addSample(accelerationData, gyroscopeData, timestamp)) {
+            return result;
+        }
+        long outputTimestamp = decimator.getOutput(decimatedAcceleration, decimatedGyroscope);
+        return analyze(decimatedAcceleration, decimatedGyroscope, outputTimestamp);
+    }
+
+    /**
+     * Analyse a block of evenly spaced samples, as delivered by
+     * SensorDataListener.onMotionDataBatch
+     * @param samples Packed samples, SAMPLE_STRIDE floats each
+     * @param offset Index of the first sample in the array
+     * @param count Number of samples
+     * @param firstTimestamp Timestamp of the first sample in milliseconds
+     * @param intervalMillis Time between samples in milliseconds
+     * @return Result for the last sample, reused by the next call; null if count is 0
+     */
+    public MotionPattern addSamples(float[] samples, int offset, int count, long firstTimestamp,
+                                    float intervalMillis) {
+        MotionPattern last = null;
+        for (int i = 0; i < count; i++) {
+            int base = (offset + i) * MotionAnalyzer.SAMPLE_STRIDE;
+            frameAcceleration[0] = samples[base];
+            frameAcceleration[1] = samples[base + 1];
+            frameAcceleration[2] = samples[base + 2];
+            frameGyroscope[0] = samples[base + 3];
+            frameGyroscope[1] = samples[base + 4];
+            frameGyroscope[2] = samples[base + 5];
+            last = addSample(frameAcceleration, frameGyroscope, firstTimestamp + Math.round(i * intervalMillis));
+        }
+        return last;
+    }
+
+    /**
+     * Analyse one synchronized multi-device frame. Templates describe a single
+     * sensor, so only the preferred device is analysed. Another placement's
+     * signal would jump the filters and counters, showing as false jerk and
+     * reps, so a frame where the preferred device is stale is skipped
+     * @param frame Frame from a StreamSynchronizer
+     * @param preferredDevice Device whose placement the templates were recorded with
+     * @return Classified pattern as for addSample, or null if the preferred device is stale
+     */
+    public MotionPattern addFrame(SensorFrame frame, int preferredDevice) {
+        if (frame.isStale(preferredDevice)) {
+            return null;
+        }
+        frame.getDevice(preferredDevice, frameAcceleration, frameGyroscope);
+        return addSample(frameAcceleration, frameGyroscope, frame.getTimestamp());
+    }
+
+    private MotionPattern analyze(float[] accelerationData, float[] gyroscopeData, long timestamp) {
+        features.addSample(accelerationData, gyroscopeData, timestamp);
+        features.getMeans(meanAcceleration, meanGyroscope);
+        if (cascadeEnabled && templates != null && templates.size() > 0) {
+            classifyCascade();
+        } else {
+            analyzer.classify(meanAcceleration, meanGyroscope, exerciseType, templates, features, result);
+        }
+        result.setTimestamp(timestamp);
+
+        repetitionCounter.addSample(accelerationData, gyroscopeData, timestamp);
+
+        sampleCount++;
+        if (result.getType() == MotionPattern.TYPE_CORRECT) {
+            correctCount++;
+        }
+        return result;
+    }
+
+    private void classifyCascade() {
+        // Stage 1: near-stationary and barely moved, keep the previous decision
+        if (hasMatch && isStill()
+                && distance(meanAcceleration, meanGyroscope, lastAcceleration, lastGyroscope) < GATE_DISTANCE) {
+            gatedCount++;
+            // The decision carries over, but the pattern reports this window's mean
+            result.setAccelerationData(meanAcceleration);
+            result.setGyroscopeData(meanGyroscope);
+            return;
+        }
+
+        System.arraycopy(meanAcceleration, 0, lastAcceleration, 0, 3);
+        System.arraycopy(meanGyroscope, 0, lastGyroscope, 0, 3);
+        result.setAccelerationData(meanAcceleration);
+        result.setGyroscopeData(meanGyroscope);
+        result.setType(MotionPattern.TYPE_UNKNOWN);
+
+        // Stage 2: the anchored best reference provably still wins, rescore only it
+        if (hasMatch && !templates.isIndexed()) {
+            float drift = distance(meanAcceleration, meanGyroscope, anchorAcceleration, anchorGyroscope)
+                    / MotionPattern.MAX_DISTANCE;
+            if (anchorSimilarities[0] - drift > anchorSimilarities[1] + drift + MARGIN_EPSILON) {
+                float similarity = templates.similarity(anchorMatch, meanAcceleration, meanGyroscope);
+                if (similarity > 0) {
+                    marginCount++;
+                    analyzer.applyMatch(result, exerciseType, templates, features, anchorMatch, similarity);
+                    return;
+                }
+            }
+        }
+
+        // Stage 3: full match, which becomes the new anchor
+        fullMatchCount++;
+        int bestMatch;
+        if (templates.isIndexed()) {
+            // The index only reports the best match, so there is no margin to anchor on
+            bestMatch = templates.findBestMatch(meanAcceleration, meanGyroscope, result);
+            anchorSimilarities[0] = result.getConfidence();
+            anchorSimilarities[1] = anchorSimilarities[0];
+        } else {
+            bestMatch = templates.findBestTwo(meanAcceleration, meanGyroscope, anchorSimilarities);
+        }
+        anchorMatch = bestMatch;
+        System.arraycopy(meanAcceleration, 0, anchorAcceleration, 0, 3);
+        System.arraycopy(meanGyroscope, 0, anchorGyroscope, 0, 3);
+        hasMatch = true;
+
+        analyzer.applyMatch(result, exerciseType, templates, features, bestMatch, anchorSimilarities[0]);
+    }
+
+    private boolean isStill() {
+        for (int axis = 0; axis < RollingFeatures.AXES; axis++) {
+            if (features.getVariance(axis) >= GATE_VARIANCE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The reference match metric: acceleration and gyroscope Euclidean distances summed
+    private static float distance(float[] acc, float[] gyro, float[] otherAcc, float[] otherGyro) {
+        float dax = acc[0] - otherAcc[0];
+        float day = acc[1] - otherAcc[1];
+        float daz = acc[2] - otherAcc[2];
+        float dgx = gyro[0] - otherGyro[0];
+        float dgy = gyro[1] - otherGyro[1];
+        float dgz = gyro[2] - otherGyro[2];
+        return (float) Math.sqrt(dax * dax + day * day + daz * daz)
+                + (float) Math.sqrt(dgx * dgx + dgy * dgy + dgz * dgz);
+    }
+
+    /**
+     * Turn the classification cascade on or off; when off every sample is fully matched
+     */
+    public void setCascadeEnabled(boolean enabled) {
+        cascadeEnabled = enabled;
+        hasMatch = false;
+    }
+
+    /**
+     * Get how many samples reused the previous decision at the stationary gate
+     */
+    public long getGatedCount() {
+        return gatedCount;
+    }
+
+    /**
+     * Get how many samples were settled by rescoring only the anchored best reference
+     */
+    public long getMarginCount() {
+        return marginCount;
+    }
+
+    /**
+     * Get how many samples went through a full match
+     */
+    public long getFullMatchCount() {
+        return fullMatchCount;
+    }
+
+    /**
+     * Clear counters and repetition state, e.g. between sets
+     */
+    public void reset() {
+        repetitionCounter.reset();
+        features.reset();
+        if (decimator != null) {
+            decimator.reset();
+        }
+        inputCount = 0;
+        hasMatch = false;
+        gatedCount = 0;
+        marginCount = 0;
+        fullMatchCount = 0;
+        sampleCount = 0;
+        correctCount = 0;
+    }
+
+    /**
+     * Get the percentage of samples classified as correct form
+     */
+    public float getFormAccuracy() {
+        return sampleCount == 0 ? 0 : correctCount * 100f / sampleCount;
+    }
+
+    public int getRepetitionCount() {
+        return repetitionCounter.getCount();
+    }
+
+    public RepetitionCounter getRepetitionCounter() {
+        return repetitionCounter;
+    }
+
+    public RollingFeatures getFeatures() {
+        return features;
+    }
+
+    public MotionPattern getLastResult() {
+        return result;
+    }
+
+    /**
+     * Get the number of samples analysed, after any decimation
+     */
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Get the number of samples received, before any decimation
+     */
+    public long getInputCount() {
+        return inputCount;
+    }
+
+    public Decimator getDecimator() {
+        return decimator;
+    }
+
+    public int getExerciseType() {
+        return exerciseType;
+    }
+
+    public ExerciseTemplates getTemplates() {
+        return templates;
+    }
+}
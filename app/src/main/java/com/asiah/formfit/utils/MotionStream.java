@@ -0,0 +1,230 @@
+package com.asiah.formfit.utils;
+
+import com.asiah.formfit.model.MotionPattern;
+
+/**
+ * MotionStream buffers raw wearable samples for one exercise session in a
+ * fixed-capacity ring and classifies them over sliding windows.
+ * A result is emitted once the first window fills and then every hopSize
+ * samples, so memory use stays constant however long the workout runs.
+ */
+public class MotionStream {
+
+    // Values stored per sample: acceleration x, y, z then gyroscope x, y, z
+    public static final int CHANNELS = MotionAnalyzer.SAMPLE_STRIDE;
+
+    /**
+     * Listener notified each time a window has been classified
+     */
+    public interface WindowListener {
+        /**
+         * Called when a window completes
+         * @param result Classification of the window; reused for the next window
+         * @param windowStart Timestamp of the oldest sample in the window
+         * @param windowEnd Timestamp of the newest sample in the window
+         */
+        void onWindowClassified(MotionPattern result, long windowStart, long windowEnd);
+    }
+
+    private final MotionAnalyzer analyzer;
+    private final int exerciseType;
+    private final int windowSize;
+    private final int hopSize;
+
+    // Ring buffer of interleaved samples and their timestamps
+    private final float[] samples;
+    private final long[] timestamps;
+    private int writeIndex;
+    private int sampleCount;
+    private int samplesSinceWindow;
+    private long windowCount;
+
+    // Reused for every window so classification does not allocate
+    private final float[] windowAcceleration = new float[3];
+    private final float[] windowGyroscope = new float[3];
+    private final MotionPattern result;
+
+    private WindowListener listener;
+
+    // Optional sequence-level matching of each full window
+    private DtwMatcher sequenceMatcher;
+    private float[] sequenceWindow;
+
+    /**
+     * Create a stream for a single exercise session
+     * @param analyzer Analyzer used to classify each window
+     * @param exerciseType Type of exercise being performed
+     * @param windowSize Number of samples per classification window
+     * @param hopSize Number of new samples between consecutive windows
+     */
+    public MotionStream(MotionAnalyzer analyzer, int exerciseType, int windowSize, int hopSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size must be positive: " + windowSize);
+        }
+        if (hopSize < 1 || hopSize > windowSize) {
+            throw new IllegalArgumentException("Hop size must be between 1 and " + windowSize + ": " + hopSize);
+        }
+
+        this.analyzer = analyzer;
+        this.exerciseType = exerciseType;
+        this.windowSize = windowSize;
+        this.hopSize = hopSize;
+        this.samples = new float[windowSize * CHANNELS];
+        this.timestamps = new long[windowSize];
+        this.result = new MotionPattern(windowAcceleration, windowGyroscope);
+    }
+
+    /**
+     * Set the listener notified when a window completes
+     */
+    public void setWindowListener(WindowListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Match every completed window against rep templates with DTW
+     * in addition to the per-window mean classification
+     * @param matcher Matcher whose length equals this stream's window size, or null to disable
+     */
+    public void setSequenceMatcher(DtwMatcher matcher) {
+        if (matcher != null && matcher.getLength() != windowSize) {
+            throw new IllegalArgumentException("Matcher length " + matcher.getLength()
+                    + " does not match window size " + windowSize);
+        }
+
+        this.sequenceMatcher = matcher;
+        this.sequenceWindow = matcher == null ? null : new float[windowSize * CHANNELS];
+    }
+
+    /**
+     * Get the sequence matcher holding the result for the latest window, if any
+     */
+    public DtwMatcher getSequenceMatcher() {
+        return sequenceMatcher;
+    }
+
+    /**
+     * Add one raw sample to the stream
+     * @param accelerationData Acceleration x, y, z
+     * @param gyroscopeData Gyroscope x, y, z
+     * @param timestamp Sensor timestamp of the sample
+     * @return True if this sample completed a window and a result was emitted
+     */
+    public boolean addSample(float[] accelerationData, float[] gyroscopeData, long timestamp) {
+        // Overwrite the oldest slot once the ring is full
+        int base = writeIndex * CHANNELS;
+        samples[base] = accelerationData[0];
+        samples[base + 1] = accelerationData[1];
+        samples[base + 2] = accelerationData[2];
+        samples[base + 3] = gyroscopeData[0];
+        samples[base + 4] = gyroscopeData[1];
+        samples[base + 5] = gyroscopeData[2];
+        timestamps[writeIndex] = timestamp;
+
+        writeIndex = (writeIndex + 1) % windowSize;
+        if (sampleCount < windowSize) {
+            sampleCount++;
+        }
+        samplesSinceWindow++;
+
+        // Wait for the first full window, then emit every hopSize samples
+        if (sampleCount < windowSize || (windowCount > 0 && samplesSinceWindow < hopSize)) {
+            return false;
+        }
+
+        classifyWindow();
+        return true;
+    }
+
+    /**
+     * Classify the current window using the mean of each channel
+     */
+    private void classifyWindow() {
+        float accX = 0, accY = 0, accZ = 0;
+        float gyroX = 0, gyroY = 0, gyroZ = 0;
+        for (int i = 0; i < samples.length; i += CHANNELS) {
+            accX += samples[i];
+            accY += samples[i + 1];
+            accZ += samples[i + 2];
+            gyroX += samples[i + 3];
+            gyroY += samples[i + 4];
+            gyroZ += samples[i + 5];
+        }
+
+        float scale = 1.0f / windowSize;
+        windowAcceleration[0] = accX * scale;
+        windowAcceleration[1] = accY * scale;
+        windowAcceleration[2] = accZ * scale;
+        windowGyroscope[0] = gyroX * scale;
+        windowGyroscope[1] = gyroY * scale;
+        windowGyroscope[2] = gyroZ * scale;
+
+        analyzer.detectPattern(windowAcceleration, windowGyroscope, exerciseType, result);
+
+        long windowStart = timestamps[writeIndex];
+        long windowEnd = timestamps[(writeIndex + windowSize - 1) % windowSize];
+        result.setTimestamp(windowEnd);
+
+        if (sequenceMatcher != null) {
+            copyWindow(sequenceWindow);
+            sequenceMatcher.match(sequenceWindow);
+        }
+
+        samplesSinceWindow = 0;
+        windowCount++;
+
+        if (listener != null) {
+            listener.onWindowClassified(result, windowStart, windowEnd);
+        }
+    }
+
+    /**
+     * Copy the buffered samples, oldest first, as interleaved channels
+     * @param destination Array receiving at least windowSize * CHANNELS values
+     * @return Number of samples copied
+     */
+    public int copyWindow(float[] destination) {
+        // Oldest sample sits at the write index once the ring has wrapped
+        int start = sampleCount < windowSize ? 0 : writeIndex;
+        int firstPart = Math.min(sampleCount, windowSize - start);
+        System.arraycopy(samples, start * CHANNELS, destination, 0, firstPart * CHANNELS);
+        System.arraycopy(samples, 0, destination, firstPart * CHANNELS, (sampleCount - firstPart) * CHANNELS);
+        return sampleCount;
+    }
+
+    /**
+     * Clear buffered samples, e.g. between sets
+     */
+    public void reset() {
+        writeIndex = 0;
+        sampleCount = 0;
+        samplesSinceWindow = 0;
+        windowCount = 0;
+    }
+
+    /**
+     * Get the most recent window result
+     */
+    public MotionPattern getLastResult() {
+        return result;
+    }
+
+    /**
+     * Get the number of windows classified since the last reset
+     */
+    public long getWindowCount() {
+        return windowCount;
+    }
+
+    public int getExerciseType() {
+        return exerciseType;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public int getHopSize() {
+        return hopSize;
+    }
+}
@@ -0,0 +1,252 @@
+package com.asiah.formfit.utils;
+
+/**
+ * PhysiologyEngine turns heart-rate samples and detected repetitions into
+ * running session totals: smoothed heart rate, time in each heart-rate zone,
+ * calories burned and training load. Each update integrates only the time since
+ * the previous one, so the cost per sample is constant and no history is kept.
+ *
+ * Calories use the exercise's MET value (kcal per kg per hour at rest is 1 MET).
+ * With a recent heart rate the MET value is scaled by heart-rate reserve, so a
+ * hard set burns more than an easy one; without one, the exercise is counted as
+ * active while repetitions keep coming and at rest otherwise. Training load is
+ * Banister's TRIMP, minutes weighted by exponentially growing heart-rate reserve.
+ * Meant to be fed from a single thread.
+ */
+public class PhysiologyEngine {
+
+    public static final int ZONE_COUNT = 6;
+
+    public static final float DEFAULT_BODY_MASS_KG = 70f;
+    public static final float DEFAULT_MAX_HEART_RATE = 190f;
+    public static final float DEFAULT_RESTING_HEART_RATE = 60f;
+
+    // Plausible wrist readings; anything else is a sensor glitch
+    private static final float MIN_HEART_RATE = 30f;
+    private static final float MAX_HEART_RATE = 240f;
+
+    // Time constant of the heart-rate smoothing
+    private static final float SMOOTHING_MS = 5000f;
+
+    // Heart rate and repetitions older than this no longer describe the current effort
+    private static final long HEART_RATE_TIMEOUT_MS = 10000;
+    private static final long ACTIVE_TIMEOUT_MS = 10000;
+
+    // Longer gaps between updates are skipped entirely, e.g. a paused session
+    private static final long MAX_STEP_MS = 10000;
+
+    private static final float REST_MET = 1.0f;
+
+    // Heart-rate reserve at which an exercise burns its nominal MET value
+    private static final float NOMINAL_RESERVE = 0.6f;
+
+    // Banister TRIMP weighting
+    private static final double TRIMP_FACTOR = 0.64;
+    private static final double TRIMP_EXPONENT = 1.92;
+
+    private final float bodyMassKg;
+    private final float maxHeartRate;
+    private final float restingHeartRate;
+    private final float exerciseMet;
+
+    private float heartRate;
+    private long heartRateTime = Long.MIN_VALUE;
+    private long lastRepetitionTime = Long.MIN_VALUE;
+    private long lastUpdate = Long.MIN_VALUE;
+    private int repetitions;
+
+    private final long[] zoneMillis = new long[ZONE_COUNT];
+    private double calories;
+    private double trainingLoad;
+
+    /**
+     * Create an engine with default body measurements
+     * @param exerciseType Type of exercise being performed
+     */
+    public PhysiologyEngine(int exerciseType) {
+        this(exerciseType, DEFAULT_BODY_MASS_KG, DEFAULT_MAX_HEART_RATE, DEFAULT_RESTING_HEART_RATE);
+    }
+
+    /**
+     * Create an engine
+     * @param exerciseType Type of exercise being performed
+     * @param bodyMassKg Body mass in kilograms
+     * @param maxHeartRate Maximum heart rate in BPM
+     * @param restingHeartRate Resting heart rate in BPM
+     */
+    public PhysiologyEngine(int exerciseType, float bodyMassKg, float maxHeartRate, float restingHeartRate) {
+        if (!(bodyMassKg > 0)) {
+            throw new IllegalArgumentException("Body mass must be positive");
+        }
+        if (!(restingHeartRate > 0) || !(maxHeartRate > restingHeartRate)) {
+            throw new IllegalArgumentException("Maximum heart rate must be above a positive resting heart rate");
+        }
+        this.bodyMassKg = bodyMassKg;
+        this.maxHeartRate = maxHeartRate;
+        this.restingHeartRate = restingHeartRate;
+        this.exerciseMet = metFor(exerciseType);
+    }
+
+    /**
+     * Get the nominal MET value of an exercise
+     */
+    public static float metFor(int exerciseType) {
+        switch (exerciseType) {
+            case MotionAnalyzer.EXERCISE_SQUAT:
+                return 5.0f;
+            case MotionAnalyzer.EXERCISE_PUSHUP:
+                return 3.8f;
+            case MotionAnalyzer.EXERCISE_PLANK:
+                return 3.8f;
+            case MotionAnalyzer.EXERCISE_LUNGE:
+                return 4.0f;
+            case MotionAnalyzer.EXERCISE_PULLUP:
+                return 8.0f;
+            case MotionAnalyzer.EXERCISE_BENCH_PRESS:
+            case MotionAnalyzer.EXERCISE_SHOULDER_PRESS:
+            case MotionAnalyzer.EXERCISE_DEADLIFT:
+                return 6.0f;
+            case MotionAnalyzer.EXERCISE_CRUNCH:
+                return 2.8f;
+            case MotionAnalyzer.EXERCISE_RUSSIAN_TWIST:
+                return 3.8f;
+            case MotionAnalyzer.EXERCISE_JUMPING_JACK:
+            case MotionAnalyzer.EXERCISE_BURPEE:
+            case MotionAnalyzer.EXERCISE_MOUNTAIN_CLIMBER:
+                return 8.0f;
+            default:
+                return 4.0f;
+        }
+    }
+
+    /**
+     * Add a heart-rate sample
+     * @param bpm Heart rate in beats per minute
+     * @param timestamp Time of the sample in milliseconds
+     * @return False if the reading was implausible and ignored
+     */
+    public boolean addHeartRate(float bpm, long timestamp) {
+        if (!(bpm >= MIN_HEART_RATE && bpm <= MAX_HEART_RATE)) {
+            return false;
+        }
+
+        // Integrate the elapsed time at the old rate, then move towards the new one
+        update(timestamp);
+        if (heartRateTime == Long.MIN_VALUE || timestamp - heartRateTime > HEART_RATE_TIMEOUT_MS) {
+            heartRate = bpm;
+        } else {
+            long elapsed = Math.max(0, timestamp - heartRateTime);
+            heartRate += elapsed / (SMOOTHING_MS + elapsed) * (bpm - heartRate);
+        }
+        heartRateTime = timestamp;
+        return true;
+    }
+
+    /**
+     * Count a completed repetition
+     * @param timestamp Time of the repetition in milliseconds
+     */
+    public void addRepetition(long timestamp) {
+        update(timestamp);
+        repetitions++;
+        lastRepetitionTime = timestamp;
+    }
+
+    /**
+     * Bring the totals up to a time, e.g. before reading them for display
+     * @param timestamp Current time in milliseconds
+     */
+    public void update(long timestamp) {
+        if (lastUpdate == Long.MIN_VALUE || timestamp <= lastUpdate) {
+            lastUpdate = Math.max(lastUpdate, timestamp);
+            return;
+        }
+
+        long step = timestamp - lastUpdate;
+        lastUpdate = timestamp;
+        if (step > MAX_STEP_MS) {
+            return;
+        }
+        double minutes = step / 60000.0;
+
+        float met;
+        if (hasHeartRate(timestamp)) {
+            float reserve = getHeartRateReserve();
+            zoneMillis[getZone()] += step;
+            trainingLoad += minutes * reserve * TRIMP_FACTOR * Math.exp(TRIMP_EXPONENT * reserve);
+            met = REST_MET + (exerciseMet - REST_MET) * Math.min(2f, reserve / NOMINAL_RESERVE);
+        } else if (lastRepetitionTime != Long.MIN_VALUE && timestamp - lastRepetitionTime <= ACTIVE_TIMEOUT_MS) {
+            met = exerciseMet;
+        } else {
+            met = REST_MET;
+        }
+
+        // 1 MET is 1 kcal per kg per hour
+        calories += met * bodyMassKg * minutes / 60.0;
+    }
+
+    private boolean hasHeartRate(long timestamp) {
+        return heartRateTime != Long.MIN_VALUE && timestamp - heartRateTime <= HEART_RATE_TIMEOUT_MS;
+    }
+
+    /**
+     * Get the smoothed heart rate, or 0 before the first sample
+     */
+    public float getHeartRate() {
+        return heartRate;
+    }
+
+    /**
+     * Get the heart-rate reserve fraction: 0 at resting, 1 at maximum heart rate
+     */
+    public float getHeartRateReserve() {
+        float reserve = (heartRate - restingHeartRate) / (maxHeartRate - restingHeartRate);
+        return Math.max(0f, Math.min(1f, reserve));
+    }
+
+    /**
+     * Get the current heart-rate zone: 0 below 50% of maximum, then one zone per 10% up to 5
+     */
+    public int getZone() {
+        int zone = (int) (heartRate / maxHeartRate * 10) - 4;
+        return Math.max(0, Math.min(ZONE_COUNT - 1, zone));
+    }
+
+    /**
+     * Get the time spent in a heart-rate zone, in milliseconds
+     */
+    public long getZoneMillis(int zone) {
+        return zoneMillis[zone];
+    }
+
+    public double getCalories() {
+        return calories;
+    }
+
+    /**
+     * Get the accumulated training load in TRIMP units
+     */
+    public double getTrainingLoad() {
+        return trainingLoad;
+    }
+
+    public int getRepetitionCount() {
+        return repetitions;
+    }
+
+    /**
+     * Clear all totals, e.g. at the start of a session
+     */
+    public void reset() {
+        heartRate = 0;
+        heartRateTime = Long.MIN_VALUE;
+        lastRepetitionTime = Long.MIN_VALUE;
+        lastUpdate = Long.MIN_VALUE;
+        repetitions = 0;
+        calories = 0;
+        trainingLoad = 0;
+        for (int zone = 0; zone < ZONE_COUNT; zone++) {
+            zoneMillis[zone] = 0;
+        }
+    }
+}
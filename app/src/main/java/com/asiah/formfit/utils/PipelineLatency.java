@@ -0,0 +1,83 @@
+package com.asiah.formfit.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * PipelineLatency holds one LatencyHistogram per hop between a wearable sample
+ * arriving and its feedback appearing on screen:
+ * <ul>
+ *     <li>receive: sensor timestamp to the listener callback (wall clock, millisecond resolution)</li>
+ *     <li>enqueue: callback to the start of analysis, i.e. time spent queued</li>
+ *     <li>analyze: running the sample through the MotionSession</li>
+ *     <li>feedback: feedback selection and hand-off until the UI thread picks it up</li>
+ *     <li>render: setting the text until the next frame is drawn</li>
+ *     <li>total: callback to the frame that shows the feedback</li>
+ * </ul>
+ * Hops are recorded independently from whichever thread observes them.
+ */
+public class PipelineLatency {
+
+    public static final int HOP_RECEIVE = 0;
+    public static final int HOP_ENQUEUE = 1;
+    public static final int HOP_ANALYZE = 2;
+    public static final int HOP_FEEDBACK = 3;
+    public static final int HOP_RENDER = 4;
+    public static final int HOP_TOTAL = 5;
+
+    private static final String[] HOP_NAMES = {"receive", "enqueue", "analyze", "feedback", "render", "total"};
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[HOP_NAMES.length];
+
+    public PipelineLatency() {
+        for (int hop = 0; hop < histograms.length; hop++) {
+            histograms[hop] = new LatencyHistogram(HOP_NAMES[hop]);
+        }
+    }
+
+    /**
+     * Record the duration of one hop
+     * @param hop One of the HOP_ constants
+     * @param nanos Duration in nanoseconds
+     */
+    public void record(int hop, long nanos) {
+        histograms[hop].record(nanos);
+    }
+
+    /**
+     * Record the duration between two System.nanoTime readings
+     */
+    public void recordSpan(int hop, long startNanos, long endNanos) {
+        histograms[hop].record(endNanos - startNanos);
+    }
+
+    public LatencyHistogram getHistogram(int hop) {
+        return histograms[hop];
+    }
+
+    /**
+     * Clear every hop, e.g. at the start of a session
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Write one summary line per hop, e.g. for a session export
+     */
+    public void export(Writer writer) throws IOException {
+        writer.write(toString());
+        writer.flush();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder summary = new StringBuilder();
+        for (LatencyHistogram histogram : histograms) {
+            summary.append(histogram).append('\n');
+        }
+        return summary.toString();
+    }
+}
@@ -0,0 +1,108 @@
+package com.asiah.formfit.utils;
+
+import com.asiah.formfit.model.RecordedSession;
+
+import java.util.Arrays;
+
+/**
+ * QuantizedSampleBuffer is a growable in-memory store of sensor samples in int16 form.
+ * Each sample costs 12 bytes of sensor data plus an 8-byte timestamp, in two
+ * primitive arrays, instead of a MotionPattern object with two float arrays.
+ */
+public class QuantizedSampleBuffer {
+
+    private static final int STRIDE = MotionAnalyzer.SAMPLE_STRIDE;
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private final SensorQuantizer quantizer;
+    private short[] samples;
+    private long[] timestamps;
+    private int size;
+
+    /**
+     * Create a buffer with the default quantizer
+     */
+    public QuantizedSampleBuffer() {
+        this(new SensorQuantizer(), DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a buffer
+     * @param quantizer Quantizer for incoming samples
+     * @param initialCapacity Number of samples to allocate room for up front
+     */
+    public QuantizedSampleBuffer(SensorQuantizer quantizer, int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        this.quantizer = quantizer;
+        this.samples = new short[capacity * STRIDE];
+        this.timestamps = new long[capacity];
+    }
+
+    /**
+     * Append one sample
+     */
+    public void add(float[] accelerationData, float[] gyroscopeData, long timestamp) {
+        if (size == timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps, size * 2);
+            samples = Arrays.copyOf(samples, size * 2 * STRIDE);
+        }
+        quantizer.quantize(accelerationData, gyroscopeData, samples, size * STRIDE);
+        timestamps[size++] = timestamp;
+    }
+
+    /**
+     * Decode one sample
+     * @return Timestamp of the sample
+     */
+    public long get(int index, float[] accelerationData, float[] gyroscopeData) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Sample " + index + " of " + size);
+        }
+        quantizer.dequantize(samples, index * STRIDE, accelerationData, gyroscopeData);
+        return timestamps[index];
+    }
+
+    /**
+     * Score every buffered sample against quantized references with SensorQuantizer.scoreBatch
+     * @param references References quantized with the same quantizer
+     * @param referenceCount Number of references
+     * @param bestIndices Receives the best matching reference index per sample
+     * @param bestSimilarities Receives the best similarity per sample
+     */
+    public void scoreAgainst(short[] references, int referenceCount, int[] bestIndices, float[] bestSimilarities) {
+        quantizer.scoreBatch(samples, size, references, referenceCount, bestIndices, bestSimilarities);
+    }
+
+    /**
+     * Decode the buffer into a RecordedSession for offline re-analysis
+     */
+    public RecordedSession toRecordedSession(String id, int exerciseType) {
+        float[] decoded = new float[size * STRIDE];
+        for (int i = 0; i < decoded.length; i++) {
+            decoded[i] = quantizer.dequantize(samples[i], i % STRIDE);
+        }
+        return new RecordedSession(id, exerciseType, decoded, Arrays.copyOf(timestamps, size), size);
+    }
+
+    /**
+     * Remove all samples, keeping the allocated capacity
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Get the packed quantized samples; only the first size() * SAMPLE_STRIDE values are valid
+     */
+    public short[] getSamples() {
+        return samples;
+    }
+
+    public SensorQuantizer getQuantizer() {
+        return quantizer;
+    }
+
+    public int size() {
+        return size;
+    }
+}
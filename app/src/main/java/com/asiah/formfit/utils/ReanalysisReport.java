@@ -0,0 +1,202 @@
+package com.asiah.formfit.utils;
+
+import com.asiah.formfit.model.MotionPattern;
+
+import java.util.Locale;
+
+/**
+ * ReanalysisReport aggregates the results of re-analysing recorded sessions:
+ * an error-type confusion matrix, repetition counting error and throughput.
+ * Samples the analyzer could not classify are kept in their own predicted
+ * class rather than counted as good form.
+ * Reports from independent workers are combined with merge.
+ */
+public class ReanalysisReport {
+
+    // Confusion matrix classes are the MotionPattern error types, ERROR_NONE meaning good form
+    public static final int ERROR_CLASSES = MotionPattern.ERROR_INCOMPLETE_RANGE + 1;
+
+    // Extra predicted class for samples the analyzer could not classify, e.g. exercises without templates
+    public static final int PREDICTED_UNCLASSIFIED = ERROR_CLASSES;
+    public static final int PREDICTED_CLASSES = ERROR_CLASSES + 1;
+
+    private long sessionCount;
+    private long sampleCount;
+    private long labelledSampleCount;
+    private long correctFormSamples;
+
+    // confusion[expected][predicted]; unclassified samples count against accuracy
+    private final long[][] confusion = new long[ERROR_CLASSES][PREDICTED_CLASSES];
+
+    private long repetitionSessions;
+    private long repetitionAbsoluteError;
+    private long detectedRepetitions;
+
+    private long elapsedNanos;
+
+    /**
+     * Record one analysed sample
+     * @param expectedError Ground-truth error type, or -1 if the sample is unlabelled
+     * @param predicted Pattern produced by the analyzer
+     */
+    void addSample(int expectedError, MotionPattern predicted) {
+        sampleCount++;
+        if (predicted.getType() == MotionPattern.TYPE_CORRECT) {
+            correctFormSamples++;
+        }
+
+        if (expectedError >= 0 && expectedError < ERROR_CLASSES) {
+            int predictedError;
+            if (predicted.getType() == MotionPattern.TYPE_INCORRECT) {
+                predictedError = predicted.getErrorType();
+            } else if (predicted.getType() == MotionPattern.TYPE_CORRECT) {
+                predictedError = MotionPattern.ERROR_NONE;
+            } else {
+                predictedError = PREDICTED_UNCLASSIFIED;
+            }
+            confusion[expectedError][predictedError]++;
+            labelledSampleCount++;
+        }
+    }
+
+    /**
+     * Record the repetition count of one finished session
+     * @param expected Repetitions actually performed, or a negative value if unknown
+     * @param detected Repetitions the analyzer counted
+     */
+    void addSession(int expected, int detected) {
+        sessionCount++;
+        detectedRepetitions += detected;
+        if (expected >= 0) {
+            repetitionSessions++;
+            repetitionAbsoluteError += Math.abs(expected - detected);
+        }
+    }
+
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Add another report's counts into this one
+     */
+    public void merge(ReanalysisReport other) {
+        sessionCount += other.sessionCount;
+        sampleCount += other.sampleCount;
+        labelledSampleCount += other.labelledSampleCount;
+        correctFormSamples += other.correctFormSamples;
+        for (int i = 0; i < ERROR_CLASSES; i++) {
+            for (int j = 0; j < PREDICTED_CLASSES; j++) {
+                confusion[i][j] += other.confusion[i][j];
+            }
+        }
+        repetitionSessions += other.repetitionSessions;
+        repetitionAbsoluteError += other.repetitionAbsoluteError;
+        detectedRepetitions += other.detectedRepetitions;
+    }
+
+    /**
+     * Get the fraction of labelled samples whose error type was predicted correctly
+     */
+    public float getAccuracy() {
+        if (labelledSampleCount == 0) {
+            return 0;
+        }
+        long hits = 0;
+        for (int i = 0; i < ERROR_CLASSES; i++) {
+            hits += confusion[i][i];
+        }
+        return (float) hits / labelledSampleCount;
+    }
+
+    /**
+     * Get the precision for one error type, or 0 if it was never predicted
+     */
+    public float getPrecision(int errorType) {
+        long predicted = 0;
+        for (int i = 0; i < ERROR_CLASSES; i++) {
+            predicted += confusion[i][errorType];
+        }
+        return predicted == 0 ? 0 : (float) confusion[errorType][errorType] / predicted;
+    }
+
+    /**
+     * Get the recall for one error type, or 0 if it never occurred
+     */
+    public float getRecall(int errorType) {
+        long actual = 0;
+        for (int j = 0; j < PREDICTED_CLASSES; j++) {
+            actual += confusion[errorType][j];
+        }
+        return actual == 0 ? 0 : (float) confusion[errorType][errorType] / actual;
+    }
+
+    /**
+     * Get the number of samples with the given expected and predicted error types
+     * @param predictedError Error type, or PREDICTED_UNCLASSIFIED
+     */
+    public long getConfusion(int expectedError, int predictedError) {
+        return confusion[expectedError][predictedError];
+    }
+
+    /**
+     * Get the number of labelled samples the analyzer left unclassified
+     */
+    public long getUnclassifiedCount() {
+        long unclassified = 0;
+        for (int i = 0; i < ERROR_CLASSES; i++) {
+            unclassified += confusion[i][PREDICTED_UNCLASSIFIED];
+        }
+        return unclassified;
+    }
+
+    /**
+     * Get the mean absolute repetition count error over sessions with known counts
+     */
+    public float getMeanRepetitionError() {
+        return repetitionSessions == 0 ? 0 : (float) repetitionAbsoluteError / repetitionSessions;
+    }
+
+    /**
+     * Get the percentage of samples classified as correct form
+     */
+    public float getFormAccuracy() {
+        return sampleCount == 0 ? 0 : correctFormSamples * 100f / sampleCount;
+    }
+
+    /**
+     * Get the analysis throughput over the wall-clock time of the run
+     */
+    public double getSamplesPerSecond() {
+        return elapsedNanos == 0 ? 0 : sampleCount * 1e9 / elapsedNanos;
+    }
+
+    public long getSessionCount() {
+        return sessionCount;
+    }
+
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    public long getLabelledSampleCount() {
+        return labelledSampleCount;
+    }
+
+    public long getDetectedRepetitions() {
+        return detectedRepetitions;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "ReanalysisReport{sessions=%d, samples=%d, accuracy=%.3f, unclassified=%d, "
+                        + "formAccuracy=%.1f%%, meanRepError=%.2f, samplesPerSecond=%.0f}",
+                sessionCount, sampleCount, getAccuracy(), getUnclassifiedCount(), getFormAccuracy(),
+                getMeanRepetitionError(), getSamplesPerSecond());
+    }
+}
@@ -0,0 +1,251 @@
+package com.asiah.formfit.utils;
+
+import com.asiah.formfit.model.MotionPattern;
+
+/**
+ * ReferenceIndex is a vantage-point tree over packed reference patterns,
+ * used to find the best match without scanning every reference.
+ *
+ * The tree uses the same metric as MotionPattern.calculateSimilarity
+ * (acceleration distance plus gyroscope distance). That sum is a true
+ * metric, so triangle-inequality pruning is exact. Subtrees are only skipped
+ * when they cannot beat the current best similarity, or could only tie it
+ * with a later reference index. The result is therefore identical to the
+ * linear scan in MotionAnalyzer, including its tie-breaking.
+ */
+public class ReferenceIndex {
+
+    private static final int STRIDE = MotionAnalyzer.SAMPLE_STRIDE;
+
+    // Slack on distance bounds to absorb float rounding in the triangle inequality
+    private static final float ABSOLUTE_EPSILON = 1e-3f;
+    private static final float RELATIVE_EPSILON = 1e-5f;
+
+    private final float[] references;
+    private final int size;
+
+    // Node arrays; node i's vantage point is reference vantage[i], which is
+    // also the lowest reference index anywhere in that node's subtree
+    private final int[] vantage;
+    private final int[] inside;
+    private final int[] outside;
+    private final float[] insideMin;
+    private final float[] insideMax;
+    private final float[] outsideMin;
+    private final float[] outsideMax;
+    private int nodeCount;
+    private final int root;
+
+    /**
+     * Build an index over packed references
+     * @param references Packed references, SAMPLE_STRIDE floats each; not copied
+     * @param count Number of references
+     */
+    public ReferenceIndex(float[] references, int count) {
+        this.references = references;
+        this.size = count;
+
+        vantage = new int[count];
+        inside = new int[count];
+        outside = new int[count];
+        insideMin = new float[count];
+        insideMax = new float[count];
+        outsideMin = new float[count];
+        outsideMax = new float[count];
+
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        float[] distances = new float[count];
+        root = build(order, distances, 0, count);
+    }
+
+    /**
+     * Recursively build the subtree for order[from, to)
+     * @return Node index, or -1 for an empty range
+     */
+    private int build(int[] order, float[] distances, int from, int to) {
+        if (from >= to) {
+            return -1;
+        }
+
+        // Use the lowest reference index as the vantage point so ties resolve early
+        int lowest = from;
+        for (int i = from + 1; i < to; i++) {
+            if (order[i] < order[lowest]) {
+                lowest = i;
+            }
+        }
+        swap(order, distances, from, lowest);
+
+        int node = nodeCount++;
+        int vp = order[from];
+        vantage[node] = vp;
+
+        for (int i = from + 1; i < to; i++) {
+            distances[i] = distance(references, vp * STRIDE, references, order[i] * STRIDE);
+        }
+
+        // Split the remaining points around the median distance
+        int median = (from + 1 + to) / 2;
+        if (from + 1 < to) {
+            select(order, distances, from + 1, to - 1, median);
+        }
+
+        insideMin[node] = Float.POSITIVE_INFINITY;
+        insideMax[node] = Float.NEGATIVE_INFINITY;
+        for (int i = from + 1; i < median; i++) {
+            insideMin[node] = Math.min(insideMin[node], distances[i]);
+            insideMax[node] = Math.max(insideMax[node], distances[i]);
+        }
+        outsideMin[node] = Float.POSITIVE_INFINITY;
+        outsideMax[node] = Float.NEGATIVE_INFINITY;
+        for (int i = median; i < to; i++) {
+            outsideMin[node] = Math.min(outsideMin[node], distances[i]);
+            outsideMax[node] = Math.max(outsideMax[node], distances[i]);
+        }
+
+        inside[node] = build(order, distances, from + 1, median);
+        outside[node] = build(order, distances, median, to);
+        return node;
+    }
+
+    /**
+     * Quickselect so that order[k] holds the k-th smallest distance in [left, right]
+     */
+    private static void select(int[] order, float[] distances, int left, int right, int k) {
+        while (left < right) {
+            float pivot = distances[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (distances[i] < pivot) {
+                    i++;
+                }
+                while (distances[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(order, distances, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static void swap(int[] order, float[] distances, int a, int b) {
+        int o = order[a];
+        order[a] = order[b];
+        order[b] = o;
+        float d = distances[a];
+        distances[a] = distances[b];
+        distances[b] = d;
+    }
+
+    /**
+     * Find the reference with the highest similarity to a sample
+     * @param accelerationData Acceleration x, y, z
+     * @param gyroscopeData Gyroscope x, y, z
+     * @param result Receives the best similarity as its confidence
+     * @return Index of the best reference, with the same tie-breaking as a linear scan
+     */
+    public int findBestMatch(float[] accelerationData, float[] gyroscopeData, MotionPattern result) {
+        if (root < 0) {
+            result.setConfidence(0);
+            return 0;
+        }
+
+        result.setConfidence(-1);
+        return search(root, accelerationData, gyroscopeData, size, result);
+    }
+
+    /**
+     * Depth-first search keeping the best (similarity, index) pair in the result holder
+     * @return Best reference index found so far
+     */
+    private int search(int node, float[] acc, float[] gyro, int bestIndex, MotionPattern result) {
+        int vp = vantage[node];
+        float d = distance(acc, gyro, references, vp * STRIDE);
+        float similarity = MotionPattern.similarityFromDistance(d);
+        float bestSimilarity = result.getConfidence();
+        if (similarity > bestSimilarity || (similarity == bestSimilarity && vp < bestIndex)) {
+            result.setConfidence(similarity);
+            bestIndex = vp;
+        }
+
+        // Visit the side the sample falls in first; it is the most likely to improve the best
+        boolean insideFirst = d < outsideMin[node];
+        int first = insideFirst ? inside[node] : outside[node];
+        int second = insideFirst ? outside[node] : inside[node];
+
+        bestIndex = visit(first, d, insideFirst, node, acc, gyro, bestIndex, result);
+        bestIndex = visit(second, d, !insideFirst, node, acc, gyro, bestIndex, result);
+        return bestIndex;
+    }
+
+    private int visit(int child, float d, boolean isInside, int node, float[] acc, float[] gyro,
+                      int bestIndex, MotionPattern result) {
+        if (child < 0) {
+            return bestIndex;
+        }
+
+        // Triangle inequality: every point in the child lies within [min, max] of the vantage point
+        float min = isInside ? insideMin[node] : outsideMin[node];
+        float max = isInside ? insideMax[node] : outsideMax[node];
+        float bound = Math.max(0, Math.max(d - max, min - d));
+        bound = Math.max(0, bound - ABSOLUTE_EPSILON - RELATIVE_EPSILON * (d + max));
+
+        float upperSimilarity = MotionPattern.similarityFromDistance(bound);
+        float bestSimilarity = result.getConfidence();
+        if (upperSimilarity < bestSimilarity
+                || (upperSimilarity == bestSimilarity && vantage[child] > bestIndex)) {
+            return bestIndex;
+        }
+
+        return search(child, acc, gyro, bestIndex, result);
+    }
+
+    /**
+     * Acceleration distance plus gyroscope distance between a sample and a packed reference
+     */
+    private static float distance(float[] acc, float[] gyro, float[] packed, int base) {
+        float dax = acc[0] - packed[base];
+        float day = acc[1] - packed[base + 1];
+        float daz = acc[2] - packed[base + 2];
+        float dgx = gyro[0] - packed[base + 3];
+        float dgy = gyro[1] - packed[base + 4];
+        float dgz = gyro[2] - packed[base + 5];
+        return (float) Math.sqrt(dax * dax + day * day + daz * daz)
+                + (float) Math.sqrt(dgx * dgx + dgy * dgy + dgz * dgz);
+    }
+
+    /**
+     * Acceleration distance plus gyroscope distance between two packed references
+     */
+    private static float distance(float[] a, int aBase, float[] b, int bBase) {
+        float dax = a[aBase] - b[bBase];
+        float day = a[aBase + 1] - b[bBase + 1];
+        float daz = a[aBase + 2] - b[bBase + 2];
+        float dgx = a[aBase + 3] - b[bBase + 3];
+        float dgy = a[aBase + 4] - b[bBase + 4];
+        float dgz = a[aBase + 5] - b[bBase + 5];
+        return (float) Math.sqrt(dax * dax + day * day + daz * daz)
+                + (float) Math.sqrt(dgx * dgx + dgy * dgy + dgz * dgz);
+    }
+
+    /**
+     * Get the number of references in the index
+     */
+    public int size() {
+        return size;
+    }
+}
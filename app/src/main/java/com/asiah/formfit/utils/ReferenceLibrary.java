@@ -0,0 +1,84 @@
+package com.asiah.formfit.utils;
+
+import com.asiah.formfit.model.MotionPattern;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ReferenceLibrary is an immutable snapshot of the reference templates for every exercise.
+ * Changes produce a new library instead of modifying this one, so a
+ * MotionAnalyzer can swap libraries atomically while other threads keep
+ * matching against the snapshot they already hold.
+ */
+public final class ReferenceLibrary {
+
+    private final Map<Integer, ExerciseTemplates> templates;
+    private final int indexThreshold;
+
+    /**
+     * Create a library from per-exercise templates
+     * @param templates Templates keyed by exercise type; the map is copied
+     * @param indexThreshold Reference count above which exercises are indexed
+     */
+    public ReferenceLibrary(Map<Integer, ExerciseTemplates> templates, int indexThreshold) {
+        this.templates = Collections.unmodifiableMap(new HashMap<>(templates));
+        this.indexThreshold = indexThreshold;
+    }
+
+    /**
+     * Create a library from reference pattern objects
+     * @param patterns Reference patterns keyed by exercise type; their data is copied
+     * @param indexThreshold Reference count above which exercises are indexed
+     */
+    public static ReferenceLibrary fromPatterns(Map<Integer, List<MotionPattern>> patterns, int indexThreshold) {
+        Map<Integer, ExerciseTemplates> templates = new HashMap<>();
+        for (Map.Entry<Integer, List<MotionPattern>> entry : patterns.entrySet()) {
+            templates.put(entry.getKey(),
+                    ExerciseTemplates.fromPatterns(entry.getKey(), entry.getValue(), indexThreshold));
+        }
+        return new ReferenceLibrary(templates, indexThreshold);
+    }
+
+    /**
+     * Get the templates for an exercise
+     * @return Templates, or null if the exercise has none
+     */
+    public ExerciseTemplates getTemplates(int exerciseType) {
+        return templates.get(exerciseType);
+    }
+
+    /**
+     * Return a copy of this library with one exercise's templates replaced
+     */
+    public ReferenceLibrary withTemplates(ExerciseTemplates exerciseTemplates) {
+        Map<Integer, ExerciseTemplates> copy = new HashMap<>(templates);
+        copy.put(exerciseTemplates.getExerciseType(), exerciseTemplates.withIndexThreshold(indexThreshold));
+        return new ReferenceLibrary(copy, indexThreshold);
+    }
+
+    /**
+     * Return a copy of this library using a different index threshold
+     */
+    public ReferenceLibrary withIndexThreshold(int threshold) {
+        Map<Integer, ExerciseTemplates> copy = new HashMap<>();
+        for (Map.Entry<Integer, ExerciseTemplates> entry : templates.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().withIndexThreshold(threshold));
+        }
+        return new ReferenceLibrary(copy, threshold);
+    }
+
+    /**
+     * Get the exercise types that have templates
+     */
+    public Set<Integer> getExerciseTypes() {
+        return templates.keySet();
+    }
+
+    public int getIndexThreshold() {
+        return indexThreshold;
+    }
+}
@@ -0,0 +1,202 @@
+package com.asiah.formfit.utils;
+
+/**
+ * RepetitionCounter counts exercise repetitions online, one sample at a time.
+ * The tracked axis is smoothed with a single-pole low-pass filter, and a rep
+ * is counted with hysteresis: it starts when the filtered value crosses the
+ * start threshold and completes when it crosses the end threshold. Each
+ * sample costs O(1) regardless of how long the session has been running.
+ */
+public class RepetitionCounter {
+
+    // Axis indexes: 0-2 acceleration x, y, z and 3-5 gyroscope x, y, z
+    public static final int AXIS_NONE = -1;
+    public static final int AXIS_ACC_X = 0;
+    public static final int AXIS_ACC_Y = 1;
+    public static final int AXIS_ACC_Z = 2;
+    public static final int AXIS_GYRO_X = 3;
+    public static final int AXIS_GYRO_Y = 4;
+    public static final int AXIS_GYRO_Z = 5;
+
+    // Legacy thresholds used by MotionAnalyzer.countRepetitions
+    public static final float DEFAULT_START_THRESHOLD = -1.0f;
+    public static final float DEFAULT_END_THRESHOLD = 1.0f;
+
+    // Filter coefficient used for live sensor data
+    public static final float DEFAULT_SMOOTHING = 0.3f;
+
+    private final int axis;
+    private final float startThreshold;
+    private final float endThreshold;
+    private final boolean startsBelow;
+    private final float smoothing;
+
+    private float filteredValue;
+    private boolean hasSample;
+    private boolean inRep;
+    private int count;
+    private long currentRepStart;
+    private long lastRepStart;
+    private long lastRepEnd;
+
+    /**
+     * Create a counter with explicit thresholds
+     * @param axis Axis to track, one of the AXIS_ constants
+     * @param startThreshold Filtered value that starts a rep
+     * @param endThreshold Filtered value that completes a rep. If it is above the
+     *                     start threshold, reps start by falling below the start
+     *                     and end by rising above the end; otherwise the reverse
+     * @param smoothing Low-pass coefficient in (0, 1]; 1 disables filtering
+     */
+    public RepetitionCounter(int axis, float startThreshold, float endThreshold, float smoothing) {
+        if (axis < AXIS_NONE || axis > AXIS_GYRO_Z) {
+            throw new IllegalArgumentException("Unknown axis: " + axis);
+        }
+        if (smoothing <= 0 || smoothing > 1) {
+            throw new IllegalArgumentException("Smoothing must be in (0, 1]: " + smoothing);
+        }
+
+        this.axis = axis;
+        this.startThreshold = startThreshold;
+        this.endThreshold = endThreshold;
+        this.startsBelow = endThreshold > startThreshold;
+        this.smoothing = smoothing;
+        reset();
+    }
+
+    /**
+     * Create a counter with the thresholds tuned for an exercise
+     * @param exerciseType One of the MotionAnalyzer exercise types
+     */
+    public static RepetitionCounter forExercise(int exerciseType) {
+        switch (exerciseType) {
+            case MotionAnalyzer.EXERCISE_SQUAT:
+                // Vertical acceleration dips on the way down and peaks driving up
+                return new RepetitionCounter(AXIS_ACC_Y, -1.0f, 1.0f, DEFAULT_SMOOTHING);
+
+            case MotionAnalyzer.EXERCISE_PUSHUP:
+                // Wrist-worn sensor sees the chest lowering as forward rotation
+                return new RepetitionCounter(AXIS_GYRO_X, 0.8f, -0.8f, DEFAULT_SMOOTHING);
+
+            case MotionAnalyzer.EXERCISE_LUNGE:
+                // Longer stride gives a deeper but slower vertical swing
+                return new RepetitionCounter(AXIS_ACC_Y, -1.5f, 1.2f, 0.2f);
+
+            case MotionAnalyzer.EXERCISE_PLANK:
+                // Planks are held, not repeated
+                return new RepetitionCounter(AXIS_NONE, 0, 0, 1.0f);
+
+            default:
+                return new RepetitionCounter(AXIS_ACC_Y, DEFAULT_START_THRESHOLD,
+                        DEFAULT_END_THRESHOLD, DEFAULT_SMOOTHING);
+        }
+    }
+
+    /**
+     * Consume one sample
+     * @param accelerationData Acceleration x, y, z
+     * @param gyroscopeData Gyroscope x, y, z
+     * @param timestamp Timestamp of the sample
+     * @return True if this sample completed a repetition
+     */
+    public boolean addSample(float[] accelerationData, float[] gyroscopeData, long timestamp) {
+        if (axis == AXIS_NONE) {
+            return false;
+        }
+
+        float value = axis < 3 ? accelerationData[axis] : gyroscopeData[axis - 3];
+        return addValue(value, timestamp);
+    }
+
+    /**
+     * Consume one value of the tracked axis
+     * @param value Raw value of the tracked axis
+     * @param timestamp Timestamp of the sample
+     * @return True if this value completed a repetition
+     */
+    public boolean addValue(float value, long timestamp) {
+        if (axis == AXIS_NONE) {
+            return false;
+        }
+
+        // Seed the filter with the first sample so it does not ramp up from zero
+        if (hasSample) {
+            filteredValue += smoothing * (value - filteredValue);
+        } else {
+            filteredValue = value;
+            hasSample = true;
+        }
+
+        if (!inRep) {
+            if (startsBelow ? filteredValue < startThreshold : filteredValue > startThreshold) {
+                inRep = true;
+                currentRepStart = timestamp;
+            }
+            return false;
+        }
+
+        if (startsBelow ? filteredValue > endThreshold : filteredValue < endThreshold) {
+            inRep = false;
+            count++;
+            lastRepStart = currentRepStart;
+            lastRepEnd = timestamp;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Clear the count and filter state, e.g. between sets
+     */
+    public void reset() {
+        filteredValue = 0;
+        hasSample = false;
+        inRep = false;
+        count = 0;
+        currentRepStart = -1;
+        lastRepStart = -1;
+        lastRepEnd = -1;
+    }
+
+    /**
+     * Get the number of completed repetitions
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Check whether a repetition is currently in progress
+     */
+    public boolean isInRep() {
+        return inRep;
+    }
+
+    /**
+     * Get the start timestamp of the rep in progress, or -1 if none is
+     */
+    public long getCurrentRepStart() {
+        return inRep ? currentRepStart : -1;
+    }
+
+    /**
+     * Get the start timestamp of the last completed rep, or -1 if none
+     */
+    public long getLastRepStart() {
+        return lastRepStart;
+    }
+
+    /**
+     * Get the end timestamp of the last completed rep, or -1 if none
+     */
+    public long getLastRepEnd() {
+        return lastRepEnd;
+    }
+
+    /**
+     * Get the current low-pass filtered value of the tracked axis
+     */
+    public float getFilteredValue() {
+        return filteredValue;
+    }
+}
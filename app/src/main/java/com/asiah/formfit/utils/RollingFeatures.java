@@ -0,0 +1,264 @@
+package com.asiah.formfit.utils;
+
+import java.util.Arrays;
+
+/**
+ * RollingFeatures maintains per-axis statistics over a sliding window of samples.
+ * Every feature is updated in O(1) per sample (amortised for min/max) and is
+ * read without rescanning the window:
+ * <ul>
+ *     <li>mean and variance, with a sliding Welford update</li>
+ *     <li>min and max, with monotonic deques of window positions</li>
+ *     <li>jerk, the mean absolute rate of change per second</li>
+ *     <li>zero crossings of the signal around a slow moving baseline, so gravity
+ *     on an acceleration axis does not hide oscillation</li>
+ * </ul>
+ * Axes 0-2 are acceleration x, y, z and 3-5 are gyroscope x, y, z.
+ */
+public class RollingFeatures {
+
+    public static final int AXES = MotionAnalyzer.SAMPLE_STRIDE;
+
+    // Smoothing of the baseline that zero crossings are counted around
+    private static final float BASELINE_SMOOTHING = 0.05f;
+
+    private final int windowSize;
+
+    // Ring buffers, AXES values per window slot
+    private final float[] values;
+    private final float[] jerks;
+    private final boolean[] crossings;
+
+    // Kept in double so the running sums do not drift over long sessions
+    private final double[] means = new double[AXES];
+    private final double[] squaredDeviations = new double[AXES];
+    private final double[] jerkSums = new double[AXES];
+    private final int[] crossingCounts = new int[AXES];
+
+    private final float[] previousValues = new float[AXES];
+    private final float[] baselines = new float[AXES];
+    private final boolean[] aboveBaseline = new boolean[AXES];
+
+    // Monotonic deques of sample numbers, one ring of windowSize entries per axis
+    private final long[] minDeque;
+    private final long[] maxDeque;
+    private final int[] minHead = new int[AXES];
+    private final int[] minSize = new int[AXES];
+    private final int[] maxHead = new int[AXES];
+    private final int[] maxSize = new int[AXES];
+
+    private long sampleNumber;
+    private long previousTimestamp;
+    private int count;
+
+    /**
+     * Create a feature window
+     * @param windowSize Number of samples the features cover
+     */
+    public RollingFeatures(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size must be at least 1");
+        }
+        this.windowSize = windowSize;
+        this.values = new float[windowSize * AXES];
+        this.jerks = new float[windowSize * AXES];
+        this.crossings = new boolean[windowSize * AXES];
+        this.minDeque = new long[windowSize * AXES];
+        this.maxDeque = new long[windowSize * AXES];
+    }
+
+    /**
+     * Add one sample, evicting the oldest once the window is full
+     * @param accelerationData Acceleration x, y, z
+     * @param gyroscopeData Gyroscope x, y, z
+     * @param timestamp Timestamp in milliseconds, used for jerk
+     */
+    public void addSample(float[] accelerationData, float[] gyroscopeData, long timestamp) {
+        float seconds = count > 0 && timestamp > previousTimestamp
+                ? (timestamp - previousTimestamp) / 1000f : 0;
+        int slot = (int) (sampleNumber % windowSize) * AXES;
+        boolean full = count == windowSize;
+
+        for (int axis = 0; axis < AXES; axis++) {
+            float value = axis < 3 ? accelerationData[axis] : gyroscopeData[axis - 3];
+            int index = slot + axis;
+
+            // Jerk and zero crossing of the new sample
+            float jerk = seconds > 0 ? Math.abs(value - previousValues[axis]) / seconds : 0;
+            boolean crossing = false;
+            if (sampleNumber == 0) {
+                baselines[axis] = value;
+                aboveBaseline[axis] = true;
+            } else {
+                baselines[axis] += BASELINE_SMOOTHING * (value - baselines[axis]);
+                boolean above = value >= baselines[axis];
+                crossing = above != aboveBaseline[axis];
+                aboveBaseline[axis] = above;
+            }
+            previousValues[axis] = value;
+
+            if (full) {
+                // Sliding Welford: replace the oldest value in one step
+                float old = values[index];
+                double oldMean = means[axis];
+                double newMean = oldMean + (double) (value - old) / windowSize;
+                squaredDeviations[axis] = Math.max(0,
+                        squaredDeviations[axis] + (value - old) * (value - newMean + old - oldMean));
+                means[axis] = newMean;
+
+                jerkSums[axis] += jerk - jerks[index];
+                if (crossings[index]) {
+                    crossingCounts[axis]--;
+                }
+            } else {
+                double delta = value - means[axis];
+                means[axis] += delta / (count + 1);
+                squaredDeviations[axis] += delta * (value - means[axis]);
+                jerkSums[axis] += jerk;
+            }
+
+            values[index] = value;
+            jerks[index] = jerk;
+            crossings[index] = crossing;
+            if (crossing) {
+                crossingCounts[axis]++;
+            }
+
+            pushMin(axis, value);
+            pushMax(axis, value);
+        }
+
+        if (!full) {
+            count++;
+        }
+        previousTimestamp = timestamp;
+        sampleNumber++;
+    }
+
+    private void pushMin(int axis, float value) {
+        int base = axis * windowSize;
+        long oldest = sampleNumber - windowSize;
+        if (minSize[axis] > 0 && minDeque[base + minHead[axis]] <= oldest) {
+            minHead[axis] = (minHead[axis] + 1) % windowSize;
+            minSize[axis]--;
+        }
+        while (minSize[axis] > 0) {
+            long last = minDeque[base + (minHead[axis] + minSize[axis] - 1) % windowSize];
+            if (valueAt(last, axis) < value) {
+                break;
+            }
+            minSize[axis]--;
+        }
+        minDeque[base + (minHead[axis] + minSize[axis]) % windowSize] = sampleNumber;
+        minSize[axis]++;
+    }
+
+    private void pushMax(int axis, float value) {
+        int base = axis * windowSize;
+        long oldest = sampleNumber - windowSize;
+        if (maxSize[axis] > 0 && maxDeque[base + maxHead[axis]] <= oldest) {
+            maxHead[axis] = (maxHead[axis] + 1) % windowSize;
+            maxSize[axis]--;
+        }
+        while (maxSize[axis] > 0) {
+            long last = maxDeque[base + (maxHead[axis] + maxSize[axis] - 1) % windowSize];
+            if (valueAt(last, axis) > value) {
+                break;
+            }
+            maxSize[axis]--;
+        }
+        maxDeque[base + (maxHead[axis] + maxSize[axis]) % windowSize] = sampleNumber;
+        maxSize[axis]++;
+    }
+
+    private float valueAt(long number, int axis) {
+        return values[(int) (number % windowSize) * AXES + axis];
+    }
+
+    /**
+     * Clear the window
+     */
+    public void reset() {
+        Arrays.fill(means, 0);
+        Arrays.fill(squaredDeviations, 0);
+        Arrays.fill(jerkSums, 0);
+        Arrays.fill(crossingCounts, 0);
+        Arrays.fill(minSize, 0);
+        Arrays.fill(maxSize, 0);
+        Arrays.fill(minHead, 0);
+        Arrays.fill(maxHead, 0);
+        sampleNumber = 0;
+        count = 0;
+    }
+
+    /**
+     * Copy the window means into caller-owned arrays
+     */
+    public void getMeans(float[] accelerationData, float[] gyroscopeData) {
+        accelerationData[0] = (float) means[0];
+        accelerationData[1] = (float) means[1];
+        accelerationData[2] = (float) means[2];
+        gyroscopeData[0] = (float) means[3];
+        gyroscopeData[1] = (float) means[4];
+        gyroscopeData[2] = (float) means[5];
+    }
+
+    public float getMean(int axis) {
+        return (float) means[axis];
+    }
+
+    /**
+     * Get the population variance over the window
+     */
+    public float getVariance(int axis) {
+        return count == 0 ? 0 : (float) (squaredDeviations[axis] / count);
+    }
+
+    public float getStandardDeviation(int axis) {
+        return (float) Math.sqrt(getVariance(axis));
+    }
+
+    public float getMin(int axis) {
+        return minSize[axis] == 0 ? 0 : valueAt(minDeque[axis * windowSize + minHead[axis]], axis);
+    }
+
+    public float getMax(int axis) {
+        return maxSize[axis] == 0 ? 0 : valueAt(maxDeque[axis * windowSize + maxHead[axis]], axis);
+    }
+
+    /**
+     * Get max minus min over the window
+     */
+    public float getRange(int axis) {
+        return getMax(axis) - getMin(axis);
+    }
+
+    /**
+     * Get the mean absolute rate of change over the window, in units per second
+     */
+    public float getJerk(int axis) {
+        return count == 0 ? 0 : (float) (Math.max(0, jerkSums[axis]) / count);
+    }
+
+    /**
+     * Get the number of times the axis crossed its baseline within the window
+     */
+    public int getZeroCrossings(int axis) {
+        return crossingCounts[axis];
+    }
+
+    /**
+     * Get the number of samples currently in the window
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public boolean isFull() {
+        return count == windowSize;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+}
@@ -0,0 +1,90 @@
+package com.asiah.formfit.utils;
+
+/**
+ * SensorFrame holds one instant of a multi-device stream: every device's
+ * acceleration and gyroscope values aligned to the same timestamp, as produced
+ * by StreamSynchronizer. Devices whose data did not reach the instant in time
+ * are marked stale and hold their last known values.
+ */
+public class SensorFrame {
+
+    private static final int STRIDE = MotionAnalyzer.SAMPLE_STRIDE;
+
+    private final int deviceCount;
+
+    // STRIDE values per device: acceleration x, y, z then gyroscope x, y, z
+    private final float[] values;
+    private long timestamp;
+    private int staleMask;
+
+    /**
+     * Create an empty frame
+     * @param deviceCount Number of devices, at most 32
+     */
+    public SensorFrame(int deviceCount) {
+        if (deviceCount < 1 || deviceCount > 32) {
+            throw new IllegalArgumentException("Device count must be between 1 and 32");
+        }
+        this.deviceCount = deviceCount;
+        this.values = new float[deviceCount * STRIDE];
+    }
+
+    /**
+     * Copy one device's values into caller-owned arrays
+     */
+    public void getDevice(int device, float[] accelerationData, float[] gyroscopeData) {
+        int base = device * STRIDE;
+        accelerationData[0] = values[base];
+        accelerationData[1] = values[base + 1];
+        accelerationData[2] = values[base + 2];
+        gyroscopeData[0] = values[base + 3];
+        gyroscopeData[1] = values[base + 4];
+        gyroscopeData[2] = values[base + 5];
+    }
+
+    /**
+     * Get one value
+     * @param device Device index
+     * @param axis Axis, 0-2 acceleration and 3-5 gyroscope
+     */
+    public float getValue(int device, int axis) {
+        return values[device * STRIDE + axis];
+    }
+
+    /**
+     * Get all values, STRIDE per device; the array is owned by the frame
+     */
+    public float[] getValues() {
+        return values;
+    }
+
+    public int getDeviceCount() {
+        return deviceCount;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Check whether a device's values are held over rather than aligned to this frame
+     */
+    public boolean isStale(int device) {
+        return (staleMask & (1 << device)) != 0;
+    }
+
+    /**
+     * Get one bit per device, set for stale devices
+     */
+    public int getStaleMask() {
+        return staleMask;
+    }
+
+    void setStaleMask(int staleMask) {
+        this.staleMask = staleMask;
+    }
+}
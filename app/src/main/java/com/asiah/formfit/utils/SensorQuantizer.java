@@ -0,0 +1,236 @@
+package com.asiah.formfit.utils;
+
+import com.asiah.formfit.model.MotionPattern;
+
+import java.util.Arrays;
+
+/**
+ * SensorQuantizer converts sensor samples to fixed-point int16 values with
+ * per-axis scale factors (value = raw * scale), and matches quantized samples
+ * against quantized references without converting them back to floats.
+ *
+ * Accuracy: with in-range values each quantized axis is within scale/2 of the
+ * original, so a quantized acceleration or gyroscope vector is within
+ * sqrt(3) * scale / 2 of the original. When both the sample and the reference
+ * are quantized, each vector distance is therefore off by at most sqrt(3) * scale,
+ * and the similarity differs from the float path by at most
+ * sqrt(3) * (accScale + gyroScale) / MotionPattern.MAX_DISTANCE
+ * (about 7e-5 at the default scale), plus float rounding. See getSimilarityErrorBound.
+ * Values beyond +/-32767 * scale are clamped and are not covered by the bound.
+ */
+public class SensorQuantizer {
+
+    private static final int STRIDE = MotionAnalyzer.SAMPLE_STRIDE;
+
+    // 1/1000 per step covers +/-32.7 m/s^2 and rad/s, about 3g for acceleration
+    public static final float DEFAULT_SCALE = 0.001f;
+
+    private final float[] scales = new float[STRIDE];
+    private final float[] inverseScales = new float[STRIDE];
+
+    /**
+     * Create a quantizer with the default scale on every axis
+     */
+    public SensorQuantizer() {
+        this(DEFAULT_SCALE, DEFAULT_SCALE);
+    }
+
+    /**
+     * Create a quantizer with one scale for all acceleration axes and one for all gyroscope axes
+     */
+    public SensorQuantizer(float accelerationScale, float gyroscopeScale) {
+        this(new float[]{accelerationScale, accelerationScale, accelerationScale,
+                gyroscopeScale, gyroscopeScale, gyroscopeScale});
+    }
+
+    /**
+     * Create a quantizer with per-axis scales
+     * @param scales Scale of acceleration x, y, z then gyroscope x, y, z; copied
+     */
+    public SensorQuantizer(float[] scales) {
+        if (scales.length != STRIDE) {
+            throw new IllegalArgumentException("Expected " + STRIDE + " scale factors");
+        }
+        for (int i = 0; i < STRIDE; i++) {
+            if (!(scales[i] > 0)) {
+                throw new IllegalArgumentException("Scale factors must be positive");
+            }
+            this.scales[i] = scales[i];
+            this.inverseScales[i] = 1.0f / scales[i];
+        }
+    }
+
+    /**
+     * Quantize one value
+     * @param value Sensor value
+     * @param axis 0-2 for acceleration x, y, z and 3-5 for gyroscope x, y, z
+     */
+    public short quantize(float value, int axis) {
+        int raw = Math.round(value * inverseScales[axis]);
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, raw));
+    }
+
+    /**
+     * Convert one quantized value back to a sensor value
+     */
+    public float dequantize(short raw, int axis) {
+        return raw * scales[axis];
+    }
+
+    /**
+     * Quantize one sample into a packed int16 array
+     * @param accelerationData Acceleration x, y, z
+     * @param gyroscopeData Gyroscope x, y, z
+     * @param out Receives SAMPLE_STRIDE values
+     * @param offset Index of the first value in out
+     */
+    public void quantize(float[] accelerationData, float[] gyroscopeData, short[] out, int offset) {
+        out[offset] = quantize(accelerationData[0], 0);
+        out[offset + 1] = quantize(accelerationData[1], 1);
+        out[offset + 2] = quantize(accelerationData[2], 2);
+        out[offset + 3] = quantize(gyroscopeData[0], 3);
+        out[offset + 4] = quantize(gyroscopeData[1], 4);
+        out[offset + 5] = quantize(gyroscopeData[2], 5);
+    }
+
+    /**
+     * Convert one packed quantized sample back to sensor values
+     */
+    public void dequantize(short[] in, int offset, float[] accelerationData, float[] gyroscopeData) {
+        accelerationData[0] = in[offset] * scales[0];
+        accelerationData[1] = in[offset + 1] * scales[1];
+        accelerationData[2] = in[offset + 2] * scales[2];
+        gyroscopeData[0] = in[offset + 3] * scales[3];
+        gyroscopeData[1] = in[offset + 4] * scales[4];
+        gyroscopeData[2] = in[offset + 5] * scales[5];
+    }
+
+    /**
+     * Quantize packed float samples
+     * @param samples Packed samples, SAMPLE_STRIDE floats each
+     * @param sampleCount Number of samples
+     * @return Packed int16 samples
+     */
+    public short[] quantizeSamples(float[] samples, int sampleCount) {
+        short[] out = new short[sampleCount * STRIDE];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = quantize(samples[i], i % STRIDE);
+        }
+        return out;
+    }
+
+    /**
+     * Quantize an exercise's reference templates for use with scoreBatch
+     */
+    public short[] quantizeTemplates(ExerciseTemplates templates) {
+        return quantizeSamples(templates.copyReferences(), templates.size());
+    }
+
+    /**
+     * Check whether the integer distance kernels can be used: all acceleration
+     * axes must share one scale and all gyroscope axes another
+     */
+    public boolean hasUniformGroups() {
+        return scales[0] == scales[1] && scales[1] == scales[2]
+                && scales[3] == scales[4] && scales[4] == scales[5];
+    }
+
+    /**
+     * Score N packed int16 samples against M packed int16 references.
+     * Squared differences are summed in integer arithmetic per sensor group and
+     * scaled once; ties and the zero-similarity fallback follow MotionAnalyzer.scoreBatch
+     * @param samples Packed quantized samples, SAMPLE_STRIDE values each
+     * @param sampleCount Number of samples to score
+     * @param references Packed quantized references
+     * @param referenceCount Number of references
+     * @param bestIndices Receives the best matching reference index per sample
+     * @param bestSimilarities Receives the best similarity per sample
+     */
+    public void scoreBatch(short[] samples, int sampleCount, short[] references, int referenceCount,
+                           int[] bestIndices, float[] bestSimilarities) {
+        if (!hasUniformGroups()) {
+            throw new IllegalStateException("Integer distance needs one scale per sensor group");
+        }
+        if (samples.length < sampleCount * STRIDE
+                || references.length < referenceCount * STRIDE
+                || bestIndices.length < sampleCount
+                || bestSimilarities.length < sampleCount) {
+            throw new IllegalArgumentException("Batch arrays are smaller than the requested counts");
+        }
+
+        float accScale = scales[0];
+        float gyroScale = scales[3];
+        int referenceEnd = referenceCount * STRIDE;
+
+        for (int s = 0; s < sampleCount; s++) {
+            int sampleBase = s * STRIDE;
+            int accX = samples[sampleBase];
+            int accY = samples[sampleBase + 1];
+            int accZ = samples[sampleBase + 2];
+            int gyroX = samples[sampleBase + 3];
+            int gyroY = samples[sampleBase + 4];
+            int gyroZ = samples[sampleBase + 5];
+
+            int bestIndex = 0;
+            float bestSimilarity = 0;
+
+            for (int r = 0, refIndex = 0; r < referenceEnd; r += STRIDE, refIndex++) {
+                // Differences fit in 17 bits, so three squares need a long
+                long dax = accX - references[r];
+                long day = accY - references[r + 1];
+                long daz = accZ - references[r + 2];
+                long dgx = gyroX - references[r + 3];
+                long dgy = gyroY - references[r + 4];
+                long dgz = gyroZ - references[r + 5];
+
+                float accDistance = accScale * (float) Math.sqrt(dax * dax + day * day + daz * daz);
+                float gyroDistance = gyroScale * (float) Math.sqrt(dgx * dgx + dgy * dgy + dgz * dgz);
+                float similarity = MotionPattern.similarityFromDistance(accDistance + gyroDistance);
+
+                if (similarity > bestSimilarity) {
+                    bestSimilarity = similarity;
+                    bestIndex = refIndex;
+                }
+            }
+
+            bestIndices[s] = bestIndex;
+            bestSimilarities[s] = bestSimilarity;
+        }
+    }
+
+    /**
+     * Get the largest difference between a similarity computed from quantized
+     * samples and references and the float similarity, for in-range values
+     */
+    public float getSimilarityErrorBound() {
+        float accScale = Math.max(scales[0], Math.max(scales[1], scales[2]));
+        float gyroScale = Math.max(scales[3], Math.max(scales[4], scales[5]));
+        return (float) Math.sqrt(3) * (accScale + gyroScale) / MotionPattern.MAX_DISTANCE;
+    }
+
+    /**
+     * Get the scale of one axis
+     */
+    public float getScale(int axis) {
+        return scales[axis];
+    }
+
+    /**
+     * Copy the per-axis scales
+     */
+    public float[] getScales() {
+        return scales.clone();
+    }
+
+    /**
+     * Get the largest magnitude an axis can hold without clamping
+     */
+    public float getRange(int axis) {
+        return Short.MAX_VALUE * scales[axis];
+    }
+
+    @Override
+    public String toString() {
+        return "SensorQuantizer{scales=" + Arrays.toString(scales) + "}";
+    }
+}
@@ -0,0 +1,118 @@
+package com.asiah.formfit.utils;
+
+import com.asiah.formfit.model.MotionPattern;
+import com.asiah.formfit.model.RecordedSession;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * SessionReanalyzer re-scores recorded sensor sessions through a MotionAnalyzer
+ * in parallel. Sessions are split across a ForkJoinPool. Each worker runs
+ * detection, repetition counting and error typing on its own MotionSession,
+ * and the per-worker reports are merged into one ReanalysisReport.
+ */
+public class SessionReanalyzer {
+
+    private final MotionAnalyzer analyzer;
+    private final ForkJoinPool pool;
+
+    /**
+     * Create a re-analyzer that runs on the common ForkJoinPool
+     * @param analyzer Analyzer to score sessions with; shared by all workers
+     */
+    public SessionReanalyzer(MotionAnalyzer analyzer) {
+        this(analyzer, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a re-analyzer that runs on a specific pool
+     * @param analyzer Analyzer to score sessions with; shared by all workers
+     * @param pool Pool whose parallelism decides how many sessions run at once
+     */
+    public SessionReanalyzer(MotionAnalyzer analyzer, ForkJoinPool pool) {
+        this.analyzer = analyzer;
+        this.pool = pool;
+    }
+
+    /**
+     * Re-analyse all sessions and aggregate the results
+     * @param sessions Recorded sessions to score
+     * @return Merged report, with throughput measured over the whole run
+     */
+    public ReanalysisReport analyze(List<RecordedSession> sessions) {
+        long start = System.nanoTime();
+        ReanalysisReport report = pool.invoke(new ReanalysisTask(sessions, 0, sessions.size()));
+        report.setElapsedNanos(System.nanoTime() - start);
+        return report;
+    }
+
+    /**
+     * Re-analyse a single session on the calling thread
+     */
+    public ReanalysisReport analyzeSession(RecordedSession recorded) {
+        ReanalysisReport report = new ReanalysisReport();
+        long start = System.nanoTime();
+        analyzeInto(recorded, report);
+        report.setElapsedNanos(System.nanoTime() - start);
+        return report;
+    }
+
+    private void analyzeInto(RecordedSession recorded, ReanalysisReport report) {
+        MotionSession session = analyzer.newSession(recorded.getExerciseType());
+        float[] samples = recorded.getSamples();
+        long[] timestamps = recorded.getTimestamps();
+        int[] labels = recorded.getExpectedErrorTypes();
+
+        float[] acc = new float[3];
+        float[] gyro = new float[3];
+        for (int i = 0; i < recorded.getSampleCount(); i++) {
+            int base = i * RecordedSession.SAMPLE_STRIDE;
+            System.arraycopy(samples, base, acc, 0, 3);
+            System.arraycopy(samples, base + 3, gyro, 0, 3);
+
+            MotionPattern result = session.addSample(acc, gyro, timestamps[i]);
+            report.addSample(labels == null ? -1 : labels[i], result);
+        }
+
+        report.addSession(recorded.getExpectedRepetitions(), session.getRepetitionCount());
+    }
+
+    /**
+     * Splits the session list in half until a single session remains
+     */
+    private class ReanalysisTask extends RecursiveTask<ReanalysisReport> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<RecordedSession> sessions;
+        private final int from;
+        private final int to;
+
+        ReanalysisTask(List<RecordedSession> sessions, int from, int to) {
+            this.sessions = sessions;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected ReanalysisReport compute() {
+            if (to - from <= 1) {
+                ReanalysisReport report = new ReanalysisReport();
+                if (from < to) {
+                    analyzeInto(sessions.get(from), report);
+                }
+                return report;
+            }
+
+            int middle = (from + to) >>> 1;
+            ReanalysisTask left = new ReanalysisTask(sessions, from, middle);
+            ReanalysisTask right = new ReanalysisTask(sessions, middle, to);
+            left.fork();
+            ReanalysisReport report = right.compute();
+            report.merge(left.join());
+            return report;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.asiah.formfit.utils;
+
+import com.asiah.formfit.model.MotionPattern;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * StreamSynchronizer merges the sample streams of several wearables, e.g. wrist,
+ * ankle and chest, onto one timeline of SensorFrames at a fixed interval.
+ *
+ * Each device has a bounded single-producer single-consumer ring: the device's
+ * callback thread offers samples without locking and a full ring rejects the
+ * sample instead of blocking. One consumer thread polls frames. For every frame
+ * time each device's value is interpolated linearly between its two samples
+ * around that time. A frame waits for slower devices only while the newest
+ * data from any device is at most maxLag ahead of it; after that it is emitted
+ * with the lagging devices marked stale and holding their last values, so one
+ * slow or disconnected device delays the others by at most maxLag. A device
+ * whose ring is full cannot deliver newer data, so the wait also ends as soon
+ * as any ring fills; otherwise a ring holding less than maxLag of samples would
+ * stall the timeline for good.
+ */
+public class StreamSynchronizer {
+
+    private static final int STRIDE = MotionAnalyzer.SAMPLE_STRIDE;
+
+    private final int deviceCount;
+    private final int capacity;
+    private final int mask;
+    private final long frameInterval;
+    private final long maxLag;
+
+    // Rings, capacity entries per device
+    private final float[] ringValues;
+    private final long[] ringTimes;
+    private final AtomicLongArray heads;
+    private final AtomicLongArray tails;
+
+    // Producer-side state, one writer per device
+    private final long[] lastOffered;
+    private final AtomicLongArray rejectedCounts;
+    private final AtomicLongArray outOfOrderCounts;
+
+    // Consumer-side state: the two most recent samples taken from each ring
+    private final float[] previousValues;
+    private final float[] latestValues;
+    private final long[] previousTimes;
+    private final long[] latestTimes;
+    private final int[] taken;
+    private final long[] staleCounts;
+
+    private boolean started;
+    private long nextFrameTime;
+    private long frameCount;
+
+    /**
+     * Create a synchronizer
+     * @param deviceCount Number of devices, at most 32
+     * @param capacity Samples buffered per device; rounded up to a power of two
+     * @param frameInterval Time between output frames, in sample timestamp units
+     * @param maxLag How far a frame may fall behind the newest data before lagging devices are marked stale
+     */
+    public StreamSynchronizer(int deviceCount, int capacity, long frameInterval, long maxLag) {
+        if (deviceCount < 1 || deviceCount > 32) {
+            throw new IllegalArgumentException("Device count must be between 1 and 32");
+        }
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Capacity must be at least 2");
+        }
+        if (frameInterval <= 0 || maxLag < 0) {
+            throw new IllegalArgumentException("Frame interval must be positive and max lag not negative");
+        }
+
+        this.deviceCount = deviceCount;
+        this.capacity = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.frameInterval = frameInterval;
+        this.maxLag = maxLag;
+
+        this.ringValues = new float[deviceCount * this.capacity * STRIDE];
+        this.ringTimes = new long[deviceCount * this.capacity];
+        this.heads = new AtomicLongArray(deviceCount);
+        this.tails = new AtomicLongArray(deviceCount);
+
+        this.lastOffered = new long[deviceCount];
+        this.rejectedCounts = new AtomicLongArray(deviceCount);
+        this.outOfOrderCounts = new AtomicLongArray(deviceCount);
+        for (int d = 0; d < deviceCount; d++) {
+            lastOffered[d] = Long.MIN_VALUE;
+        }
+
+        this.previousValues = new float[deviceCount * STRIDE];
+        this.latestValues = new float[deviceCount * STRIDE];
+        this.previousTimes = new long[deviceCount];
+        this.latestTimes = new long[deviceCount];
+        this.taken = new int[deviceCount];
+        this.staleCounts = new long[deviceCount];
+    }
+
+    /**
+     * Offer a sample from a device's own thread
+     * @param device Device index
+     * @param timestamp Sample timestamp; must increase per device
+     * @param accelerationData Acceleration x, y, z
+     * @param gyroscopeData Gyroscope x, y, z
+     * @return False if the sample was rejected because the ring is full or it is not newer than the last one
+     */
+    public boolean offer(int device, long timestamp, float[] accelerationData, float[] gyroscopeData) {
+        if (timestamp <= lastOffered[device]) {
+            outOfOrderCounts.incrementAndGet(device);
+            return false;
+        }
+
+        long tail = tails.get(device);
+        if (tail - heads.get(device) >= capacity) {
+            rejectedCounts.incrementAndGet(device);
+            return false;
+        }
+
+        int slot = device * capacity + (int) (tail & mask);
+        int base = slot * STRIDE;
+        ringValues[base] = accelerationData[0];
+        ringValues[base + 1] = accelerationData[1];
+        ringValues[base + 2] = accelerationData[2];
+        ringValues[base + 3] = gyroscopeData[0];
+        ringValues[base + 4] = gyroscopeData[1];
+        ringValues[base + 5] = gyroscopeData[2];
+        ringTimes[slot] = timestamp;
+        lastOffered[device] = timestamp;
+
+        // Publishes the slot to the consumer
+        tails.lazySet(device, tail + 1);
+        return true;
+    }
+
+    /**
+     * Offer a sample held in a MotionPattern
+     */
+    public boolean offer(int device, MotionPattern pattern) {
+        return offer(device, pattern.getTimestamp(), pattern.getAccelerationData(), pattern.getGyroscopeData());
+    }
+
+    /**
+     * Produce the next frame if it is ready, from the single consumer thread
+     * @param frame Frame to fill, created for this synchronizer's device count
+     * @return True if the frame was filled; false if more data is needed first
+     */
+    public boolean poll(SensorFrame frame) {
+        if (frame.getDeviceCount() != deviceCount) {
+            throw new IllegalArgumentException("Frame is for " + frame.getDeviceCount() + " devices, not " + deviceCount);
+        }
+
+        if (!started && !start()) {
+            return false;
+        }
+
+        long time = nextFrameTime;
+        boolean waiting = false;
+        for (int d = 0; d < deviceCount; d++) {
+            take(d, time);
+            if (taken[d] == 0 || latestTimes[d] < time) {
+                waiting = true;
+            }
+        }
+        // Wait for lagging devices only while they are within maxLag of the newest data
+        if (waiting && !anyRingFull() && newestAvailable() - time <= maxLag) {
+            return false;
+        }
+
+        float[] values = frame.getValues();
+        int staleMask = 0;
+        for (int d = 0; d < deviceCount; d++) {
+            int base = d * STRIDE;
+            if (taken[d] == 0 || latestTimes[d] < time) {
+                staleMask |= 1 << d;
+                staleCounts[d]++;
+                System.arraycopy(latestValues, base, values, base, STRIDE);
+            } else if (taken[d] > 1 && previousTimes[d] <= time && latestTimes[d] > previousTimes[d]) {
+                float weight = (float) (time - previousTimes[d]) / (latestTimes[d] - previousTimes[d]);
+                for (int axis = 0; axis < STRIDE; axis++) {
+                    float previous = previousValues[base + axis];
+                    values[base + axis] = previous + weight * (latestValues[base + axis] - previous);
+                }
+            } else {
+                System.arraycopy(latestValues, base, values, base, STRIDE);
+            }
+        }
+
+        frame.setTimestamp(time);
+        frame.setStaleMask(staleMask);
+        nextFrameTime += frameInterval;
+        frameCount++;
+        return true;
+    }
+
+    // The timeline starts once every device has data, or once waiting for the rest exceeds maxLag or fills a ring
+    private boolean start() {
+        long firstTime = Long.MIN_VALUE;
+        long earliest = Long.MAX_VALUE;
+        boolean all = true;
+        for (int d = 0; d < deviceCount; d++) {
+            take(d, Long.MIN_VALUE);
+            if (taken[d] == 0) {
+                all = false;
+            } else {
+                firstTime = Math.max(firstTime, latestTimes[d]);
+                earliest = Math.min(earliest, latestTimes[d]);
+            }
+        }
+        if (firstTime == Long.MIN_VALUE || (!all && !anyRingFull() && newestAvailable() - earliest <= maxLag)) {
+            return false;
+        }
+
+        started = true;
+        nextFrameTime = firstTime;
+        return true;
+    }
+
+    // Take samples from a device's ring until one is at or after the given time
+    private void take(int device, long time) {
+        long head = heads.get(device);
+        long tail = tails.get(device);
+        while (head < tail && (taken[device] == 0 || latestTimes[device] < time)) {
+            int slot = device * capacity + (int) (head & mask);
+            int base = device * STRIDE;
+            System.arraycopy(latestValues, base, previousValues, base, STRIDE);
+            previousTimes[device] = latestTimes[device];
+            System.arraycopy(ringValues, slot * STRIDE, latestValues, base, STRIDE);
+            latestTimes[device] = ringTimes[slot];
+            if (taken[device] < 2) {
+                taken[device]++;
+            }
+            head++;
+        }
+        // Frees the slots for the producer
+        heads.lazySet(device, head);
+    }
+
+    private boolean anyRingFull() {
+        for (int d = 0; d < deviceCount; d++) {
+            if (tails.get(d) - heads.get(d) >= capacity) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Newest timestamp any device has delivered, taken or still queued
+    private long newestAvailable() {
+        long newest = Long.MIN_VALUE;
+        for (int d = 0; d < deviceCount; d++) {
+            long tail = tails.get(d);
+            if (tail > heads.get(d)) {
+                newest = Math.max(newest, ringTimes[d * capacity + (int) ((tail - 1) & mask)]);
+            } else if (taken[d] > 0) {
+                newest = Math.max(newest, latestTimes[d]);
+            }
+        }
+        return newest;
+    }
+
+    public int getDeviceCount() {
+        return deviceCount;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the number of samples a device has waiting
+     */
+    public int getQueuedCount(int device) {
+        return (int) (tails.get(device) - heads.get(device));
+    }
+
+    /**
+     * Get the number of samples rejected because a device's ring was full
+     */
+    public long getRejectedCount(int device) {
+        return rejectedCounts.get(device);
+    }
+
+    /**
+     * Get the number of samples rejected as duplicates or out of order
+     */
+    public long getOutOfOrderCount(int device) {
+        return outOfOrderCounts.get(device);
+    }
+
+    /**
+     * Get the number of frames in which a device was stale; read from the consumer thread
+     */
+    public long getStaleCount(int device) {
+        return staleCounts[device];
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+}
@@ -0,0 +1,222 @@
+package com.asiah.formfit.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * TemplateAsset reads and writes a ReferenceLibrary as a versioned binary asset.
+ *
+ * Layout (all values little-endian):
+ * <pre>
+ *  0  int32  magic "FFTA"
+ *  4  int16  format version
+ *  6  int16  reserved
+ *  8  int32  exercise count E
+ * 12  E x { int32 exercise type, int32 reference count, int32 byte offset of its block }
+ *     blocks: reference count x int32 pattern type, then
+ *             reference count x SAMPLE_STRIDE float32 packed references
+ * </pre>
+ * Loading reads the asset into one buffer and copies each block out with
+ * bulk int and float reads, so no MotionPattern objects are created. A single
+ * exercise can also be loaded on its own by reading the table and only its block.
+ */
+public final class TemplateAsset {
+
+    public static final int MAGIC = 0x41544646; // "FFTA" read as little-endian
+    public static final short VERSION = 1;
+
+    private static final int STRIDE = MotionAnalyzer.SAMPLE_STRIDE;
+    private static final int HEADER_SIZE = 12;
+    private static final int TABLE_ENTRY_SIZE = 12;
+
+    private TemplateAsset() {
+    }
+
+    /**
+     * Write every exercise of a library
+     * @param library Library to serialize
+     * @param output Stream to write to; not closed
+     */
+    public static void write(ReferenceLibrary library, OutputStream output) throws IOException {
+        List<Integer> exerciseTypes = new ArrayList<>(library.getExerciseTypes());
+        Collections.sort(exerciseTypes);
+
+        long size = HEADER_SIZE + (long) exerciseTypes.size() * TABLE_ENTRY_SIZE;
+        for (int exerciseType : exerciseTypes) {
+            size += blockSize(library.getTemplates(exerciseType).size());
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Library too large for a template asset");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.putShort((short) 0);
+        buffer.putInt(exerciseTypes.size());
+
+        int offset = HEADER_SIZE + exerciseTypes.size() * TABLE_ENTRY_SIZE;
+        for (int exerciseType : exerciseTypes) {
+            int count = library.getTemplates(exerciseType).size();
+            buffer.putInt(exerciseType);
+            buffer.putInt(count);
+            buffer.putInt(offset);
+            offset += (int) blockSize(count);
+        }
+
+        for (int exerciseType : exerciseTypes) {
+            ExerciseTemplates templates = library.getTemplates(exerciseType);
+            for (int i = 0; i < templates.size(); i++) {
+                buffer.putInt(templates.getType(i));
+            }
+            for (float value : templates.copyReferences()) {
+                buffer.putFloat(value);
+            }
+        }
+
+        output.write(buffer.array());
+        output.flush();
+    }
+
+    /**
+     * Read a library from an asset
+     * @param input Stream positioned at the start of the asset; not closed
+     * @param indexThreshold Reference count above which exercises are indexed
+     * @throws IOException If the stream cannot be read or does not hold a valid asset
+     */
+    public static ReferenceLibrary read(InputStream input, int indexThreshold) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(readAll(input)).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a template asset");
+        }
+        if (buffer.getShort(4) > VERSION) {
+            throw new IOException("Unsupported template asset version " + buffer.getShort(4));
+        }
+
+        int exerciseCount = buffer.getInt(8);
+        if (exerciseCount < 0 || HEADER_SIZE + (long) exerciseCount * TABLE_ENTRY_SIZE > buffer.limit()) {
+            throw new IOException("Corrupt template asset table");
+        }
+
+        Map<Integer, ExerciseTemplates> templates = new HashMap<>();
+        for (int e = 0; e < exerciseCount; e++) {
+            int entry = HEADER_SIZE + e * TABLE_ENTRY_SIZE;
+            int exerciseType = buffer.getInt(entry);
+            int count = buffer.getInt(entry + 4);
+            int offset = buffer.getInt(entry + 8);
+            if (count < 0 || offset < 0 || offset + blockSize(count) > buffer.limit()) {
+                throw new IOException("Corrupt template block for exercise " + exerciseType);
+            }
+
+            int[] types = new int[count];
+            float[] references = new float[count * STRIDE];
+            buffer.position(offset);
+            buffer.asIntBuffer().get(types);
+            buffer.position(offset + count * 4);
+            buffer.asFloatBuffer().get(references);
+
+            templates.put(exerciseType, new ExerciseTemplates(exerciseType, references, types, indexThreshold));
+        }
+
+        return new ReferenceLibrary(templates, indexThreshold);
+    }
+
+    /**
+     * Read only one exercise's templates from an asset
+     * @param input Stream positioned at the start of the asset; not closed
+     * @param exerciseType Type of exercise to load
+     * @param indexThreshold Reference count above which the templates are indexed
+     * @return Templates, or null if the asset has none for the exercise
+     * @throws IOException If the stream cannot be read or does not hold a valid asset
+     */
+    public static ExerciseTemplates readTemplates(InputStream input, int exerciseType, int indexThreshold)
+            throws IOException {
+        DataInputStream data = new DataInputStream(input);
+        ByteBuffer header = readBlock(data, HEADER_SIZE);
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("Not a template asset");
+        }
+        if (header.getShort(4) > VERSION) {
+            throw new IOException("Unsupported template asset version " + header.getShort(4));
+        }
+
+        int exerciseCount = header.getInt(8);
+        if (exerciseCount < 0) {
+            throw new IOException("Corrupt template asset table");
+        }
+        ByteBuffer table = readBlock(data, (long) exerciseCount * TABLE_ENTRY_SIZE);
+
+        for (int e = 0; e < exerciseCount; e++) {
+            int entry = e * TABLE_ENTRY_SIZE;
+            if (table.getInt(entry) != exerciseType) {
+                continue;
+            }
+
+            int count = table.getInt(entry + 4);
+            long skip = table.getInt(entry + 8) - (long) HEADER_SIZE - table.limit();
+            if (count < 0 || skip < 0) {
+                throw new IOException("Corrupt template block for exercise " + exerciseType);
+            }
+            while (skip > 0) {
+                int skipped = data.skipBytes((int) Math.min(skip, Integer.MAX_VALUE));
+                if (skipped <= 0) {
+                    throw new EOFException("Template asset ends before exercise " + exerciseType);
+                }
+                skip -= skipped;
+            }
+
+            ByteBuffer block = readBlock(data, blockSize(count));
+            int[] types = new int[count];
+            float[] references = new float[count * STRIDE];
+            block.asIntBuffer().get(types);
+            block.position(count * 4);
+            block.asFloatBuffer().get(references);
+            return new ExerciseTemplates(exerciseType, references, types, indexThreshold);
+        }
+        return null;
+    }
+
+    // Grows with the data actually read, so a corrupt size fails at the end of the stream instead of allocating it
+    private static ByteBuffer readBlock(DataInputStream data, long size) throws IOException {
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException("Template asset block too large: " + size);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.min(size, 8192));
+        byte[] chunk = new byte[8192];
+        long remaining = size;
+        while (remaining > 0) {
+            int read = data.read(chunk, 0, (int) Math.min(remaining, chunk.length));
+            if (read == -1) {
+                throw new EOFException("Template asset ends " + remaining + " bytes into a " + size + " byte block");
+            }
+            bytes.write(chunk, 0, read);
+            remaining -= read;
+        }
+        return ByteBuffer.wrap(bytes.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long blockSize(int referenceCount) {
+        return (long) referenceCount * 4 + (long) referenceCount * STRIDE * 4;
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(input.available(), 4096));
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = input.read(chunk)) != -1) {
+            bytes.write(chunk, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+}
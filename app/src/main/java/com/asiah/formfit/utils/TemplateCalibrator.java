@@ -0,0 +1,250 @@
+package com.asiah.formfit.utils;
+
+import com.asiah.formfit.model.MotionPattern;
+import com.asiah.formfit.model.RecordedSession;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * TemplateCalibrator builds reference templates from recorded good-form sessions.
+ * Samples are pooled per exercise and clustered with k-means (k-means++ seeding).
+ * Each cluster centre is then snapped to its nearest recorded sample, so every
+ * template is a pose that was actually performed. The result can be used
+ * directly or written out with TemplateAsset.
+ */
+public class TemplateCalibrator {
+
+    private static final int STRIDE = MotionAnalyzer.SAMPLE_STRIDE;
+
+    public static final int DEFAULT_TEMPLATES_PER_EXERCISE = 8;
+    public static final int DEFAULT_MAX_ITERATIONS = 50;
+
+    private final int templatesPerExercise;
+    private final int maxIterations;
+    private final long seed;
+
+    // Pooled good-form samples per exercise, in recording order
+    private final Map<Integer, float[]> samples = new HashMap<>();
+    private final Map<Integer, Integer> sampleCounts = new HashMap<>();
+
+    /**
+     * Create a calibrator with the default settings
+     */
+    public TemplateCalibrator() {
+        this(DEFAULT_TEMPLATES_PER_EXERCISE, DEFAULT_MAX_ITERATIONS, 0L);
+    }
+
+    /**
+     * Create a calibrator
+     * @param templatesPerExercise Number of clusters per exercise
+     * @param maxIterations Maximum k-means iterations
+     * @param seed Random seed, so the same recordings always produce the same asset
+     */
+    public TemplateCalibrator(int templatesPerExercise, int maxIterations, long seed) {
+        if (templatesPerExercise < 1 || maxIterations < 1) {
+            throw new IllegalArgumentException("Template count and iterations must be positive");
+        }
+        this.templatesPerExercise = templatesPerExercise;
+        this.maxIterations = maxIterations;
+        this.seed = seed;
+    }
+
+    /**
+     * Add a recorded session. If it has labels only samples labelled ERROR_NONE
+     * are used; unlabelled sessions are assumed to be good form throughout
+     */
+    public void addSession(RecordedSession session) {
+        int exerciseType = session.getExerciseType();
+        float[] data = session.getSamples();
+        int[] labels = session.getExpectedErrorTypes();
+
+        float[] pooled = samples.get(exerciseType);
+        int count = sampleCounts.containsKey(exerciseType) ? sampleCounts.get(exerciseType) : 0;
+        if (pooled == null) {
+            pooled = new float[Math.max(session.getSampleCount(), 16) * STRIDE];
+        }
+
+        for (int i = 0; i < session.getSampleCount(); i++) {
+            if (labels != null && labels[i] != MotionPattern.ERROR_NONE) {
+                continue;
+            }
+            if ((count + 1) * STRIDE > pooled.length) {
+                pooled = Arrays.copyOf(pooled, pooled.length * 2);
+            }
+            System.arraycopy(data, i * STRIDE, pooled, count * STRIDE, STRIDE);
+            count++;
+        }
+
+        samples.put(exerciseType, pooled);
+        sampleCounts.put(exerciseType, count);
+    }
+
+    /**
+     * Cluster every exercise that has samples
+     * @param indexThreshold Reference count above which exercises are indexed
+     */
+    public ReferenceLibrary calibrate(int indexThreshold) {
+        Map<Integer, ExerciseTemplates> templates = new HashMap<>();
+        for (Map.Entry<Integer, float[]> entry : samples.entrySet()) {
+            int count = sampleCounts.get(entry.getKey());
+            if (count == 0) {
+                continue;
+            }
+            float[] references = cluster(entry.getValue(), count, templatesPerExercise, maxIterations,
+                    new Random(seed ^ entry.getKey()));
+            int[] types = new int[references.length / STRIDE];
+            Arrays.fill(types, MotionPattern.TYPE_CORRECT);
+            templates.put(entry.getKey(),
+                    new ExerciseTemplates(entry.getKey(), references, types, indexThreshold));
+        }
+        return new ReferenceLibrary(templates, indexThreshold);
+    }
+
+    /**
+     * Cluster every exercise and write the result as a template asset
+     */
+    public void writeAsset(OutputStream output) throws IOException {
+        TemplateAsset.write(calibrate(MotionAnalyzer.DEFAULT_INDEX_THRESHOLD), output);
+    }
+
+    /**
+     * Cluster packed samples into at most k recorded poses.
+     * Templates are returned in the order their poses first occur in the samples,
+     * so a recording that starts at the top of a rep yields keyframes in rep order
+     * @param data Packed samples, SAMPLE_STRIDE floats each
+     * @param count Number of samples
+     * @param k Maximum number of templates
+     * @param maxIterations Maximum k-means iterations
+     * @param random Source of randomness for seeding
+     * @return Packed templates, SAMPLE_STRIDE floats each
+     */
+    static float[] cluster(float[] data, int count, int k, int maxIterations, Random random) {
+        k = Math.min(k, count);
+        float[] centres = seedCentres(data, count, k, random);
+        int[] assignment = new int[count];
+        float[] sums = new float[k * STRIDE];
+        int[] sizes = new int[k];
+
+        for (int iteration = 0; iteration < maxIterations; iteration++) {
+            boolean changed = iteration == 0;
+            for (int i = 0; i < count; i++) {
+                int nearest = nearest(data, i, centres, k);
+                if (nearest != assignment[i]) {
+                    assignment[i] = nearest;
+                    changed = true;
+                }
+            }
+            if (!changed) {
+                break;
+            }
+
+            Arrays.fill(sums, 0);
+            Arrays.fill(sizes, 0);
+            for (int i = 0; i < count; i++) {
+                int c = assignment[i];
+                sizes[c]++;
+                for (int d = 0; d < STRIDE; d++) {
+                    sums[c * STRIDE + d] += data[i * STRIDE + d];
+                }
+            }
+            for (int c = 0; c < k; c++) {
+                // An empty cluster keeps its previous centre
+                if (sizes[c] == 0) {
+                    continue;
+                }
+                for (int d = 0; d < STRIDE; d++) {
+                    centres[c * STRIDE + d] = sums[c * STRIDE + d] / sizes[c];
+                }
+            }
+        }
+
+        // Snap each centre to its closest member and note where that pose first occurs
+        int[] medoids = new int[k];
+        float[] medoidDistances = new float[k];
+        int[] firstSeen = new int[k];
+        Arrays.fill(medoids, -1);
+        Arrays.fill(firstSeen, Integer.MAX_VALUE);
+        for (int i = 0; i < count; i++) {
+            int c = nearest(data, i, centres, k);
+            float distance = squaredDistance(data, i * STRIDE, centres, c * STRIDE);
+            if (medoids[c] < 0 || distance < medoidDistances[c]) {
+                medoids[c] = i;
+                medoidDistances[c] = distance;
+            }
+            firstSeen[c] = Math.min(firstSeen[c], i);
+        }
+
+        Integer[] order = new Integer[k];
+        int used = 0;
+        for (int c = 0; c < k; c++) {
+            if (medoids[c] >= 0) {
+                order[used++] = c;
+            }
+        }
+        Arrays.sort(order, 0, used, (a, b) -> Integer.compare(firstSeen[a], firstSeen[b]));
+
+        float[] templates = new float[used * STRIDE];
+        for (int t = 0; t < used; t++) {
+            System.arraycopy(data, medoids[order[t]] * STRIDE, templates, t * STRIDE, STRIDE);
+        }
+        return templates;
+    }
+
+    // k-means++: each new centre is drawn with probability proportional to its squared distance
+    private static float[] seedCentres(float[] data, int count, int k, Random random) {
+        float[] centres = new float[k * STRIDE];
+        double[] distances = new double[count];
+
+        System.arraycopy(data, random.nextInt(count) * STRIDE, centres, 0, STRIDE);
+        Arrays.fill(distances, Double.MAX_VALUE);
+
+        for (int c = 1; c < k; c++) {
+            double total = 0;
+            for (int i = 0; i < count; i++) {
+                distances[i] = Math.min(distances[i], squaredDistance(data, i * STRIDE, centres, (c - 1) * STRIDE));
+                total += distances[i];
+            }
+
+            int chosen = 0;
+            if (total > 0) {
+                double target = random.nextDouble() * total;
+                for (int i = 0; i < count; i++) {
+                    target -= distances[i];
+                    if (target <= 0) {
+                        chosen = i;
+                        break;
+                    }
+                }
+            }
+            System.arraycopy(data, chosen * STRIDE, centres, c * STRIDE, STRIDE);
+        }
+        return centres;
+    }
+
+    private static int nearest(float[] data, int sample, float[] centres, int k) {
+        int best = 0;
+        float bestDistance = Float.MAX_VALUE;
+        for (int c = 0; c < k; c++) {
+            float distance = squaredDistance(data, sample * STRIDE, centres, c * STRIDE);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    private static float squaredDistance(float[] a, int aBase, float[] b, int bBase) {
+        float sum = 0;
+        for (int d = 0; d < STRIDE; d++) {
+            float diff = a[aBase + d] - b[bBase + d];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,185 @@
+package com.asiah.formfit.utils;
+
+import android.content.ComponentCallbacks2;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * TemplateRegistry loads reference templates one exercise at a time, on first request.
+ * Loaded templates are published as an immutable ReferenceLibrary snapshot, so
+ * lookups after the first are a single volatile read. Templates that came from
+ * the source can be evicted under memory pressure and are reloaded on demand;
+ * templates installed directly are pinned and never evicted. Sessions that
+ * already hold an exercise's templates keep them across an eviction.
+ */
+public class TemplateRegistry {
+
+    private static final String TAG = "TemplateRegistry";
+
+    /**
+     * Supplies the templates of a single exercise
+     */
+    public interface TemplateSource {
+        /**
+         * Load one exercise's templates
+         * @param exerciseType Type of exercise
+         * @param indexThreshold Reference count above which the templates should be indexed
+         * @return Templates, or null if the exercise has none
+         */
+        ExerciseTemplates loadTemplates(int exerciseType, int indexThreshold) throws IOException;
+    }
+
+    private final TemplateSource source;
+
+    // Snapshot of everything currently loaded; replaced as a whole, never modified
+    private volatile ReferenceLibrary library;
+
+    // Exercises installed directly rather than loaded from the source; guarded by this
+    private final Set<Integer> pinned = new HashSet<>();
+
+    // Most recently requested exercise, kept on moderate trims. Racy by design: it is only a hint
+    private int lastRequested = -1;
+
+    private long loadCount;
+
+    /**
+     * Create a registry that loads exercises lazily
+     * @param source Where to load templates from
+     * @param indexThreshold Reference count above which exercises are indexed
+     */
+    public TemplateRegistry(TemplateSource source, int indexThreshold) {
+        this.source = source;
+        this.library = new ReferenceLibrary(Collections.<Integer, ExerciseTemplates>emptyMap(), indexThreshold);
+    }
+
+    /**
+     * Create a registry holding a fixed library; nothing is loaded or evicted
+     */
+    public TemplateRegistry(ReferenceLibrary library) {
+        this.source = null;
+        this.library = library;
+        pinned.addAll(library.getExerciseTypes());
+    }
+
+    /**
+     * Get the templates for an exercise, loading them on first request
+     * @return Templates, or null if the exercise has none
+     */
+    public ExerciseTemplates getTemplates(int exerciseType) {
+        if (lastRequested != exerciseType) {
+            lastRequested = exerciseType;
+        }
+
+        ReferenceLibrary current = library;
+        ExerciseTemplates templates = current.getTemplates(exerciseType);
+        if (templates != null || source == null) {
+            return emptyToNull(templates);
+        }
+        return emptyToNull(load(exerciseType));
+    }
+
+    private synchronized ExerciseTemplates load(int exerciseType) {
+        ReferenceLibrary current = library;
+        ExerciseTemplates templates = current.getTemplates(exerciseType);
+        if (templates != null) {
+            return templates;
+        }
+
+        try {
+            templates = source.loadTemplates(exerciseType, current.getIndexThreshold());
+        } catch (IOException e) {
+            Log.w(TAG, "Could not load templates for exercise type: " + exerciseType, e);
+        }
+
+        // Remember exercises without templates too, so they are not looked up on every sample
+        if (templates == null) {
+            templates = new ExerciseTemplates(exerciseType, new float[0], new int[0], current.getIndexThreshold());
+        }
+
+        loadCount++;
+        library = current.withTemplates(templates);
+        return templates;
+    }
+
+    private static ExerciseTemplates emptyToNull(ExerciseTemplates templates) {
+        return templates == null || templates.size() == 0 ? null : templates;
+    }
+
+    /**
+     * Install templates for an exercise, replacing any loaded ones. They are never evicted
+     */
+    public synchronized void putTemplates(ExerciseTemplates templates) {
+        pinned.add(templates.getExerciseType());
+        library = library.withTemplates(templates);
+    }
+
+    /**
+     * Replace everything with a fixed library. Its exercises are never evicted
+     */
+    public synchronized void setLibrary(ReferenceLibrary library) {
+        pinned.clear();
+        pinned.addAll(library.getExerciseTypes());
+        this.library = library;
+    }
+
+    /**
+     * Rebuild loaded templates with a different index threshold
+     */
+    public synchronized void setIndexThreshold(int threshold) {
+        library = library.withIndexThreshold(threshold);
+    }
+
+    /**
+     * Release templates in response to ComponentCallbacks2.onTrimMemory.
+     * While running low the most recently requested exercise is kept;
+     * once the UI is hidden or memory is critical every unpinned exercise is dropped
+     * @param level Trim level passed to onTrimMemory
+     */
+    public synchronized void trimMemory(int level) {
+        if (source == null || level < ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return;
+        }
+
+        boolean keepRecent = level < ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL;
+        ReferenceLibrary current = library;
+        Map<Integer, ExerciseTemplates> kept = new HashMap<>();
+        for (int exerciseType : current.getExerciseTypes()) {
+            if (pinned.contains(exerciseType) || (keepRecent && exerciseType == lastRequested)) {
+                kept.put(exerciseType, current.getTemplates(exerciseType));
+            }
+        }
+
+        if (kept.size() < current.getExerciseTypes().size()) {
+            Log.d(TAG, "Evicted " + (current.getExerciseTypes().size() - kept.size())
+                    + " exercise templates at trim level " + level);
+            library = new ReferenceLibrary(kept, current.getIndexThreshold());
+        }
+    }
+
+    /**
+     * Check whether an exercise's templates are currently loaded
+     */
+    public boolean isLoaded(int exerciseType) {
+        return library.getTemplates(exerciseType) != null;
+    }
+
+    /**
+     * Get a snapshot of the templates loaded so far
+     */
+    public ReferenceLibrary getLibrary() {
+        return library;
+    }
+
+    /**
+     * Get how many times an exercise was loaded from the source
+     */
+    public synchronized long getLoadCount() {
+        return loadCount;
+    }
+}
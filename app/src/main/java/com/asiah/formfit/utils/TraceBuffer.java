@@ -0,0 +1,227 @@
+package com.asiah.formfit.utils;
+
+import android.util.Log;
+
+import com.asiah.formfit.BuildConfig;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * TraceBuffer is a fixed-size in-memory ring of trace events for hot paths.
+ * An event is an integer code, a long argument, a float value and a
+ * System.nanoTime timestamp, stored in parallel atomic arrays. Recording
+ * claims a slot with one atomic increment and allocates nothing, so it is safe
+ * at sensor rates and from any thread. The ring is only turned into text when
+ * dumped to logcat or a file.
+ *
+ * Each slot is guarded by its sequence number like a seqlock. A writer claims
+ * the slot by swapping the previous lap's sequence for a busy marker, so two
+ * writers a lap apart never interleave their stores; a writer that finds a
+ * later lap already there drops its event, which is older anyway. The fields
+ * are atomic too, so neither the writer's field stores nor the dump's field
+ * loads can be reordered across the sequence accesses around them; VarHandle
+ * fences would do the same with plain arrays but need API 33.
+ *
+ * Tracing is controlled by BuildConfig.TRACE_ENABLED. That field is a
+ * compile-time constant, so in release builds every record call becomes an
+ * empty method and is removed by the compiler and R8.
+ */
+public final class TraceBuffer {
+
+    private static final String TAG = "TraceBuffer";
+
+    public static final boolean ENABLED = BuildConfig.TRACE_ENABLED;
+
+    // Must be a power of two
+    public static final int CAPACITY = 4096;
+    private static final int MASK = CAPACITY - 1;
+
+    // Event codes
+    public static final int EVENT_PATTERN_DETECTED = 1;       // arg: exercise type, value: confidence
+    public static final int EVENT_NO_TEMPLATES = 2;           // arg: exercise type
+    public static final int EVENT_DATA_USER_INITIALIZED = 3;  // arg: user id
+    public static final int EVENT_DATA_EXERCISE_SAVED = 4;    // arg: repetitions, value: form accuracy
+    public static final int EVENT_DATA_ACHIEVEMENT_SAVED = 5;
+    public static final int EVENT_DATA_EXERCISES_LOADED = 6;  // arg: count
+    public static final int EVENT_DATA_ACHIEVEMENTS_LOADED = 7; // arg: count
+    public static final int EVENT_DATA_USER_ID_SET = 8;       // arg: user id
+
+    private static final String[] EVENT_NAMES = {
+            "?",
+            "pattern_detected",
+            "no_templates",
+            "user_initialized",
+            "exercise_saved",
+            "achievement_saved",
+            "exercises_loaded",
+            "achievements_loaded",
+            "user_id_set",
+    };
+
+    private static final AtomicLong next = new AtomicLong();
+
+    // Sequence number written last for each slot; -1 marks a slot never written, BUSY one being written
+    private static final long BUSY = -2;
+    private static final AtomicLongArray sequences = new AtomicLongArray(ENABLED ? CAPACITY : 0);
+    private static final AtomicIntegerArray codes = new AtomicIntegerArray(ENABLED ? CAPACITY : 0);
+    private static final AtomicLongArray args = new AtomicLongArray(ENABLED ? CAPACITY : 0);
+    private static final AtomicIntegerArray values = new AtomicIntegerArray(ENABLED ? CAPACITY : 0);
+    private static final AtomicLongArray times = new AtomicLongArray(ENABLED ? CAPACITY : 0);
+
+    static {
+        for (int i = 0; i < sequences.length(); i++) {
+            sequences.set(i, -1);
+        }
+    }
+
+    private TraceBuffer() {
+    }
+
+    /**
+     * Record an event
+     * @param code One of the EVENT_ codes
+     * @param arg Argument, meaning depends on the code
+     * @param value Float value, meaning depends on the code
+     */
+    public static void record(int code, long arg, float value) {
+        if (!ENABLED) {
+            return;
+        }
+
+        long sequence = next.getAndIncrement();
+        int slot = (int) (sequence & MASK);
+        // Claim the slot; marking it busy also stops a concurrent dump pairing old and new fields
+        while (true) {
+            long current = sequences.get(slot);
+            if (current > sequence) {
+                return;
+            }
+            if (current == BUSY) {
+                // A writer from the previous lap is still storing its fields
+                Thread.yield();
+            } else if (sequences.compareAndSet(slot, current, BUSY)) {
+                break;
+            }
+        }
+        codes.set(slot, code);
+        args.set(slot, arg);
+        values.set(slot, Float.floatToRawIntBits(value));
+        times.set(slot, System.nanoTime());
+        sequences.set(slot, sequence);
+    }
+
+    /**
+     * Record an event without a value
+     */
+    public static void record(int code, long arg) {
+        record(code, arg, 0f);
+    }
+
+    /**
+     * Get the total number of events recorded, including ones overwritten since
+     */
+    public static long getRecordedCount() {
+        return next.get();
+    }
+
+    /**
+     * Write the buffered events, oldest first, one per line
+     * @return Number of events written
+     */
+    public static int dump(Writer writer) throws IOException {
+        if (!ENABLED) {
+            return 0;
+        }
+
+        long end = next.get();
+        long start = Math.max(0, end - CAPACITY);
+        int written = 0;
+        for (long sequence = start; sequence < end; sequence++) {
+            int slot = (int) (sequence & MASK);
+            if (sequences.get(slot) != sequence) {
+                continue;
+            }
+            int code = codes.get(slot);
+            long arg = args.get(slot);
+            float value = Float.intBitsToFloat(values.get(slot));
+            long time = times.get(slot);
+            // Skip slots a writer reused while we were reading them
+            if (sequences.get(slot) != sequence) {
+                continue;
+            }
+
+            writer.write(String.format(Locale.US, "%d %s arg=%d value=%.4f%n",
+                    time, code >= 0 && code < EVENT_NAMES.length ? EVENT_NAMES[code] : "event_" + code,
+                    arg, value));
+            written++;
+        }
+        writer.flush();
+        return written;
+    }
+
+    /**
+     * Dump the buffered events to a file, replacing its contents
+     */
+    public static int dumpToFile(File file) throws IOException {
+        try (Writer writer = new PrintWriter(new FileWriter(file))) {
+            return dump(writer);
+        }
+    }
+
+    /**
+     * Dump the buffered events to logcat at debug level
+     */
+    public static void dumpToLogcat() {
+        if (!ENABLED) {
+            return;
+        }
+
+        try {
+            LogcatWriter writer = new LogcatWriter();
+            dump(writer);
+            writer.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Trace dump failed", e);
+        }
+    }
+
+    /**
+     * Writes each line it receives to logcat
+     */
+    private static class LogcatWriter extends Writer {
+
+        private final StringBuilder line = new StringBuilder();
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                if (buffer[i] == '\n') {
+                    flush();
+                } else if (buffer[i] != '\r') {
+                    line.append(buffer[i]);
+                }
+            }
+        }
+
+        @Override
+        public void flush() {
+            if (line.length() > 0) {
+                Log.d(TAG, line.toString());
+                line.setLength(0);
+            }
+        }
+
+        @Override
+        public void close() {
+            flush();
+        }
+    }
+}
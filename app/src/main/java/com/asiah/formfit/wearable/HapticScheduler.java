@@ -0,0 +1,388 @@
+package com.asiah.formfit.wearable;
+
+import com.asiah.formfit.utils.FeedbackBus;
+
+/**
+ * HapticScheduler sits between form feedback and a WearableController so that
+ * haptics can be requested for every detected error without flooding the radio
+ * link or the user's wrist.
+ *
+ * Requests are queued per device. A request for a type that is already queued,
+ * or that was sent to the same device within the repeat interval, is dropped as
+ * a duplicate. Each device has a few queue slots; when they are full a more
+ * severe request replaces the least severe one. Flushing sends each device's
+ * queue in one sendHapticBatch call, most severe first, at most one write per
+ * minimum write interval. Pulses are also limited by a per-device token bucket;
+ * safety pulses spend a token if one is left but are sent without one. Requests
+ * that wait longer than the maximum age are discarded, since a late buzz no
+ * longer matches the rep.
+ * All methods are synchronized, so requests and flushes may come from any thread.
+ */
+public class HapticScheduler {
+
+    // Same scale as FeedbackBus priorities
+    public static final int SEVERITY_INFO = 0;
+    public static final int SEVERITY_TECHNIQUE = 1;
+    public static final int SEVERITY_SAFETY = 2;
+
+    public static final long DEFAULT_MIN_WRITE_INTERVAL_MS = 200;
+    public static final long DEFAULT_REPEAT_INTERVAL_MS = 2000;
+    public static final long DEFAULT_MAX_AGE_MS = 1000;
+    public static final int DEFAULT_BURST = 3;
+    public static final long DEFAULT_REFILL_MS = 1000;
+
+    // Queue slots per device, which is also the most pulses in one write
+    public static final int MAX_PENDING = 4;
+
+    // Recently sent types remembered per device for the repeat check
+    private static final int RECENT = 8;
+
+    private final WearableController controller;
+    private final int deviceCount;
+
+    private long minWriteIntervalMs = DEFAULT_MIN_WRITE_INTERVAL_MS;
+    private long repeatIntervalMs = DEFAULT_REPEAT_INTERVAL_MS;
+    private long maxAgeMs = DEFAULT_MAX_AGE_MS;
+    private int burst = DEFAULT_BURST;
+    private long refillMs = DEFAULT_REFILL_MS;
+
+    // Queued requests, MAX_PENDING per device
+    private final int[] pendingTypes;
+    private final int[] pendingSeverities;
+    private final long[] pendingTimes;
+    private final int[] pendingCounts;
+
+    // Recently sent types, a ring of RECENT per device
+    private final int[] recentTypes;
+    private final long[] recentTimes;
+    private final int[] recentNext;
+
+    private final float[] tokens;
+    private final long[] tokenTimes;
+    private final long[] lastWrites;
+
+    private final int[] batch = new int[MAX_PENDING];
+
+    private long requestedCount;
+    private long duplicateCount;
+    private long displacedCount;
+    private long rejectedCount;
+    private long expiredCount;
+    private long sentCount;
+    private long writeCount;
+
+    /**
+     * Create a scheduler with the default limits
+     * @param controller Controller the pulses are sent through
+     * @param deviceCount Number of devices the controller addresses
+     */
+    public HapticScheduler(WearableController controller, int deviceCount) {
+        if (controller == null) {
+            throw new IllegalArgumentException("Controller must not be null");
+        }
+        if (deviceCount < 1) {
+            throw new IllegalArgumentException("Device count must be at least 1");
+        }
+        this.controller = controller;
+        this.deviceCount = deviceCount;
+
+        this.pendingTypes = new int[deviceCount * MAX_PENDING];
+        this.pendingSeverities = new int[deviceCount * MAX_PENDING];
+        this.pendingTimes = new long[deviceCount * MAX_PENDING];
+        this.pendingCounts = new int[deviceCount];
+
+        this.recentTypes = new int[deviceCount * RECENT];
+        this.recentTimes = new long[deviceCount * RECENT];
+        this.recentNext = new int[deviceCount];
+        for (int i = 0; i < recentTimes.length; i++) {
+            recentTimes[i] = Long.MIN_VALUE;
+        }
+
+        this.tokens = new float[deviceCount];
+        this.tokenTimes = new long[deviceCount];
+        this.lastWrites = new long[deviceCount];
+        for (int d = 0; d < deviceCount; d++) {
+            tokens[d] = burst;
+            tokenTimes[d] = Long.MIN_VALUE;
+            lastWrites[d] = Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Set the token bucket that limits pulses per device
+     * @param burst Pulses that may be sent back to back
+     * @param refillMs Time for one pulse to become available again
+     */
+    public synchronized void setRateLimit(int burst, long refillMs) {
+        if (burst < 1 || refillMs <= 0) {
+            throw new IllegalArgumentException("Burst must be at least 1 and refill time positive");
+        }
+        this.burst = burst;
+        this.refillMs = refillMs;
+        for (int d = 0; d < deviceCount; d++) {
+            tokens[d] = Math.min(tokens[d], burst);
+        }
+    }
+
+    /**
+     * Set the shortest time between two writes to the same device
+     */
+    public synchronized void setMinWriteInterval(long minWriteIntervalMs) {
+        if (minWriteIntervalMs < 0) {
+            throw new IllegalArgumentException("Minimum write interval must not be negative");
+        }
+        this.minWriteIntervalMs = minWriteIntervalMs;
+    }
+
+    /**
+     * Set how long a type sent to a device is not repeated to it
+     */
+    public synchronized void setRepeatInterval(long repeatIntervalMs) {
+        if (repeatIntervalMs < 0) {
+            throw new IllegalArgumentException("Repeat interval must not be negative");
+        }
+        this.repeatIntervalMs = repeatIntervalMs;
+    }
+
+    /**
+     * Set how long a request may wait before it is discarded
+     */
+    public synchronized void setMaxAge(long maxAgeMs) {
+        if (maxAgeMs <= 0) {
+            throw new IllegalArgumentException("Maximum age must be positive");
+        }
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    /**
+     * Request a pulse
+     * @param device Device index
+     * @param type Pulse type passed on to the controller
+     * @param severity One of the SEVERITY_ values
+     * @param now Current time in milliseconds
+     * @return True if the request was queued; false if it was a duplicate or less severe than a full queue
+     */
+    public synchronized boolean request(int device, int type, int severity, long now) {
+        if (device < 0 || device >= deviceCount) {
+            throw new IllegalArgumentException("Device " + device + " out of range");
+        }
+        requestedCount++;
+
+        int base = device * MAX_PENDING;
+        int count = pendingCounts[device];
+        for (int i = base; i < base + count; i++) {
+            if (pendingTypes[i] == type) {
+                pendingSeverities[i] = Math.max(pendingSeverities[i], severity);
+                duplicateCount++;
+                return false;
+            }
+        }
+        if (sentRecently(device, type, now)) {
+            duplicateCount++;
+            return false;
+        }
+
+        int slot;
+        if (count < MAX_PENDING) {
+            slot = base + count;
+            pendingCounts[device] = count + 1;
+        } else {
+            // Replace the least severe request, the oldest among equals
+            slot = base;
+            for (int i = base + 1; i < base + count; i++) {
+                if (pendingSeverities[i] < pendingSeverities[slot]
+                        || (pendingSeverities[i] == pendingSeverities[slot] && pendingTimes[i] < pendingTimes[slot])) {
+                    slot = i;
+                }
+            }
+            if (pendingSeverities[slot] >= severity) {
+                rejectedCount++;
+                return false;
+            }
+            displacedCount++;
+        }
+        pendingTypes[slot] = type;
+        pendingSeverities[slot] = severity;
+        pendingTimes[slot] = now;
+        return true;
+    }
+
+    /**
+     * Request a pulse for a FeedbackBus code, with the code's priority as severity
+     * @return False if the code was FEEDBACK_NONE or the request was not queued
+     */
+    public boolean requestFeedback(int device, int feedbackCode, long now) {
+        if (feedbackCode == FeedbackBus.FEEDBACK_NONE) {
+            return false;
+        }
+        return request(device, feedbackCode, FeedbackBus.getPriority(feedbackCode), now);
+    }
+
+    private boolean sentRecently(int device, int type, long now) {
+        int base = device * RECENT;
+        for (int i = base; i < base + RECENT; i++) {
+            if (recentTypes[i] == type && recentTimes[i] != Long.MIN_VALUE
+                    && now - recentTimes[i] < repeatIntervalMs) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Send what each device's limits allow, one write per device
+     * @param now Current time in milliseconds
+     * @return Number of pulses sent
+     */
+    public synchronized int flush(long now) {
+        int sent = 0;
+        for (int d = 0; d < deviceCount; d++) {
+            sent += flush(d, now);
+        }
+        return sent;
+    }
+
+    private int flush(int device, long now) {
+        int base = device * MAX_PENDING;
+        int count = pendingCounts[device];
+
+        // Discard requests that waited too long, keeping the rest in order
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            int from = base + i;
+            if (now - pendingTimes[from] > maxAgeMs) {
+                expiredCount++;
+                continue;
+            }
+            move(from, base + kept);
+            kept++;
+        }
+        count = kept;
+        pendingCounts[device] = count;
+        if (count == 0 || (lastWrites[device] != Long.MIN_VALUE && now - lastWrites[device] < minWriteIntervalMs)) {
+            return 0;
+        }
+
+        refill(device, now);
+
+        // Most severe first, oldest first among equals; the queue is only a few entries long
+        for (int i = base + 1; i < base + count; i++) {
+            int type = pendingTypes[i];
+            int severity = pendingSeverities[i];
+            long time = pendingTimes[i];
+            int j = i - 1;
+            while (j >= base && (pendingSeverities[j] < severity
+                    || (pendingSeverities[j] == severity && pendingTimes[j] > time))) {
+                move(j, j + 1);
+                j--;
+            }
+            pendingTypes[j + 1] = type;
+            pendingSeverities[j + 1] = severity;
+            pendingTimes[j + 1] = time;
+        }
+
+        int batchSize = 0;
+        kept = 0;
+        for (int i = base; i < base + count; i++) {
+            if (tokens[device] >= 1f || pendingSeverities[i] >= SEVERITY_SAFETY) {
+                tokens[device] = Math.max(0f, tokens[device] - 1f);
+                batch[batchSize++] = pendingTypes[i];
+                remember(device, pendingTypes[i], now);
+            } else {
+                // Waits for a token until it expires
+                move(i, base + kept);
+                kept++;
+            }
+        }
+        pendingCounts[device] = kept;
+        if (batchSize == 0) {
+            return 0;
+        }
+
+        controller.sendHapticBatch(device, batch, batchSize);
+        lastWrites[device] = now;
+        writeCount++;
+        sentCount += batchSize;
+        return batchSize;
+    }
+
+    private void refill(int device, long now) {
+        if (tokenTimes[device] != Long.MIN_VALUE && now > tokenTimes[device]) {
+            tokens[device] = Math.min(burst, tokens[device] + (float) (now - tokenTimes[device]) / refillMs);
+        }
+        tokenTimes[device] = now;
+    }
+
+    private void remember(int device, int type, long now) {
+        int slot = device * RECENT + recentNext[device];
+        recentTypes[slot] = type;
+        recentTimes[slot] = now;
+        recentNext[device] = (recentNext[device] + 1) % RECENT;
+    }
+
+    private void move(int from, int to) {
+        pendingTypes[to] = pendingTypes[from];
+        pendingSeverities[to] = pendingSeverities[from];
+        pendingTimes[to] = pendingTimes[from];
+    }
+
+    /**
+     * Get the number of requests waiting for a device
+     */
+    public synchronized int getPendingCount(int device) {
+        return pendingCounts[device];
+    }
+
+    public synchronized long getRequestedCount() {
+        return requestedCount;
+    }
+
+    /**
+     * Get the number of requests dropped as already queued or recently sent
+     */
+    public synchronized long getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    /**
+     * Get the number of requests dropped for more severe ones when a queue was full
+     */
+    public synchronized long getDisplacedCount() {
+        return displacedCount;
+    }
+
+    /**
+     * Get the number of requests dropped because a queue was full of requests at least as severe
+     */
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * Get the number of requests discarded after waiting longer than the maximum age
+     */
+    public synchronized long getExpiredCount() {
+        return expiredCount;
+    }
+
+    /**
+     * Get the number of requests that never became a pulse
+     */
+    public synchronized long getSuppressedCount() {
+        return duplicateCount + displacedCount + rejectedCount + expiredCount;
+    }
+
+    /**
+     * Get the number of pulses sent
+     */
+    public synchronized long getSentCount() {
+        return sentCount;
+    }
+
+    /**
+     * Get the number of sendHapticBatch calls made
+     */
+    public synchronized long getWriteCount() {
+        return writeCount;
+    }
+}
@@ -2,6 +2,7 @@
 package com.asiah.formfit.wearable;
 
 import com.asiah.formfit.model.MotionPattern;
+import com.asiah.formfit.utils.MotionAnalyzer;
 
 /**
  * Interface for receiving sensor data from wearable devices
@@ -14,6 +15,34 @@ public interface SensorDataListener {
      */
     void onMotionDataReceived(MotionPattern motionPattern);
 
+    /**
+     * Called with a block of evenly spaced motion samples. The default passes
+     * each sample to onMotionDataReceived through one reused MotionPattern;
+     * listeners that can take the block at once should override it
+     * @param samples Packed samples, MotionAnalyzer.SAMPLE_STRIDE floats each
+     *                (acceleration x, y, z then gyroscope x, y, z); owned by the
+     *                caller and only valid during the call
+     * @param count Number of samples in the block
+     * @param firstTimestamp Timestamp of the first sample in milliseconds
+     * @param intervalMillis Time between consecutive samples in milliseconds
+     */
+    default void onMotionDataBatch(float[] samples, int count, long firstTimestamp, float intervalMillis) {
+        MotionPattern pattern = new MotionPattern(new float[3], new float[3]);
+        float[] acc = pattern.getAccelerationData();
+        float[] gyro = pattern.getGyroscopeData();
+        for (int i = 0; i < count; i++) {
+            int base = i * MotionAnalyzer.SAMPLE_STRIDE;
+            acc[0] = samples[base];
+            acc[1] = samples[base + 1];
+            acc[2] = samples[base + 2];
+            gyro[0] = samples[base + 3];
+            gyro[1] = samples[base + 4];
+            gyro[2] = samples[base + 5];
+            pattern.setTimestamp(firstTimestamp + Math.round(i * intervalMillis));
+            onMotionDataReceived(pattern);
+        }
+    }
+
     /**
      * Called when heart rate data is received from wearable
      * @param heartRate Heart rate in beats per minute (BPM)
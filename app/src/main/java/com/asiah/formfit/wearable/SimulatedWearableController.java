@@ -0,0 +1,556 @@
+package com.asiah.formfit.wearable;
+
+import com.asiah.formfit.model.MotionPattern;
+import com.asiah.formfit.utils.MotionAnalyzer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * SimulatedWearableController generates wearable data for load testing the
+ * analysis pipeline without hardware. Each exercise has a motion model: a rest
+ * pose, a peak pose and a repetition period. Per rep, acceleration swings
+ * towards the peak pose and past the rest pose the other way (one full sine),
+ * and rotation goes out to the peak and back (a half sine).
+ * On top of that the simulator adds sensor noise, per-device gain and phase,
+ * form errors on randomly chosen reps, timestamp jitter, dropout bursts and
+ * duplicated samples, and a heart rate that climbs with effort.
+ *
+ * Every device draws from its own Random seeded from the controller's seed, so
+ * the same seed and settings always give the same samples. In real time each
+ * virtual device runs on its own thread at the configured rate, up to
+ * MAX_SAMPLE_RATE; generate produces the same streams in simulated time as fast
+ * as the listener consumes them.
+ *
+ * The SensorDataListener receives device 0, as it would from one real wearable,
+ * plus heart rate; a DeviceListener receives every device. Listeners are called
+ * from the device threads and the MotionPattern passed is reused per device.
+ * With a batch size above 1, samples arrive through the batch callbacks instead.
+ */
+public class SimulatedWearableController implements WearableController {
+
+    public static final float MAX_SAMPLE_RATE = 1000f;
+    public static final float DEFAULT_SAMPLE_RATE = 50f;
+
+    private static final long HEART_RATE_INTERVAL_MS = 1000;
+
+    private static final int STRIDE = MotionAnalyzer.SAMPLE_STRIDE;
+
+    // Per exercise: rest pose (acc x, y, z, gyro x, y, z), peak pose, rep period in seconds
+    private static final float[][] MODELS = {
+            {0, 0, 9.8f, 0, 0, 0,   0, -2.0f, 9.5f, 0.5f, 0, 0,   3.0f},        // squat
+            {0, 9.8f, 0, 0, 0, 0,   0, 8.5f, -2.0f, -0.8f, 0, 0,   2.5f},       // push-up
+            {0, 0, 9.8f, 0, 0, 0,   0, 0, 9.8f, 0, 0, 0,   1.0f},              // plank
+            {0, 0, 9.8f, 0, 0, 0,   0, -2.5f, 9.3f, 0.3f, 0, 0.2f,   3.5f},     // lunge
+            {0, -9.8f, 0, 0, 0, 0,   0, -7.0f, 1.0f, 0.4f, 0, 0,   3.0f},       // pull-up
+            {0, 0, 9.8f, 0, 0, 0,   0, 0, 12.0f, 0.2f, 0, 0,   3.0f},           // bench press
+            {0, 9.8f, 0, 0, 0, 0,   0, 12.0f, 0.5f, 0, 0.2f, 0,   3.0f},        // shoulder press
+            {0, 0, 9.8f, 0, 0, 0,   0, -3.0f, 9.0f, 0.6f, 0, 0,   4.0f},        // deadlift
+            {0, 0, 9.8f, 0, 0, 0,   0, 4.0f, 8.9f, 1.0f, 0, 0,   2.0f},         // crunch
+            {0, 0, 9.8f, 0, 0, 0,   3.0f, 0, 9.3f, 0, 1.5f, 0,   2.0f},         // russian twist
+            {0, -9.8f, 0, 0, 0, 0,   8.0f, 5.0f, 0, 0, 0, 3.0f,   1.0f},        // jumping jack
+            {0, 0, 9.8f, 0, 0, 0,   0, -6.0f, 6.0f, 1.5f, 1.0f, 0,   4.0f},     // burpee
+            {0, 9.8f, 0, 0, 0, 0,   0, 9.0f, 3.0f, 0.5f, 0, 0,   0.8f},         // mountain climber
+    };
+    private static final int PERIOD = 12;
+
+    // Errors injected into a rep
+    private static final int[] INJECTED_ERRORS = {
+            MotionPattern.ERROR_TOO_FAST, MotionPattern.ERROR_WRONG_ANGLE, MotionPattern.ERROR_INCOMPLETE_RANGE
+    };
+
+    private static final float ACC_NOISE = 0.15f;
+    private static final float GYRO_NOISE = 0.05f;
+    private static final float HOLD_SWAY = 0.1f;
+
+    /**
+     * Receives every virtual device's samples
+     */
+    public interface DeviceListener {
+        void onDeviceSample(int device, MotionPattern sample);
+
+        /**
+         * Called with a block of evenly spaced samples, see SensorDataListener.onMotionDataBatch
+         */
+        default void onDeviceBatch(int device, float[] samples, int count, long firstTimestamp,
+                                   float intervalMillis) {
+            MotionPattern pattern = new MotionPattern(new float[3], new float[3]);
+            for (int i = 0; i < count; i++) {
+                int base = i * STRIDE;
+                System.arraycopy(samples, base, pattern.getAccelerationData(), 0, 3);
+                System.arraycopy(samples, base + 3, pattern.getGyroscopeData(), 0, 3);
+                pattern.setTimestamp(firstTimestamp + Math.round(i * intervalMillis));
+                onDeviceSample(device, pattern);
+            }
+        }
+    }
+
+    private final long seed;
+
+    // Settings, guarded by this; each DeviceModel copies them when it is created
+    private float sampleRate = DEFAULT_SAMPLE_RATE;
+    private int deviceCount = 1;
+    private int exerciseType = MotionAnalyzer.EXERCISE_SQUAT;
+    private float errorRate;
+    private float jitterMs;
+    private float dropoutRate;
+    private int maxDropoutBurst = 1;
+    private float duplicateRate;
+    private int batchSize = 1;
+
+    private volatile SensorDataListener listener;
+    private volatile DeviceListener deviceListener;
+
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running;
+
+    private final AtomicLong emittedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong duplicatedCount = new AtomicLong();
+    private final AtomicLongArray injectedErrors = new AtomicLongArray(5);
+    private final AtomicLong hapticCount = new AtomicLong();
+    private final AtomicLong hapticWriteCount = new AtomicLong();
+
+    /**
+     * Create a simulator
+     * @param seed Seed for every random choice, so runs can be repeated
+     */
+    public SimulatedWearableController(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Set the per-device sample rate
+     * @param sampleRate Samples per second, up to MAX_SAMPLE_RATE
+     */
+    public synchronized void setSampleRate(float sampleRate) {
+        if (!(sampleRate > 0) || sampleRate > MAX_SAMPLE_RATE) {
+            throw new IllegalArgumentException("Sample rate must be above 0 and at most " + MAX_SAMPLE_RATE);
+        }
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Set the number of virtual devices, e.g. wrist, ankle and chest
+     */
+    public synchronized void setDeviceCount(int deviceCount) {
+        if (deviceCount < 1) {
+            throw new IllegalArgumentException("Device count must be at least 1");
+        }
+        this.deviceCount = deviceCount;
+    }
+
+    public synchronized void setExerciseType(int exerciseType) {
+        this.exerciseType = exerciseType;
+    }
+
+    /**
+     * Set the fraction of reps performed with a form error
+     */
+    public synchronized void setErrorRate(float errorRate) {
+        this.errorRate = checkFraction(errorRate);
+    }
+
+    /**
+     * Set the standard deviation of timestamp jitter in milliseconds
+     */
+    public synchronized void setJitter(float jitterMs) {
+        if (jitterMs < 0) {
+            throw new IllegalArgumentException("Jitter must not be negative");
+        }
+        this.jitterMs = jitterMs;
+    }
+
+    /**
+     * Set how often a dropout starts, per sample, and its longest length in samples
+     */
+    public synchronized void setDropouts(float dropoutRate, int maxBurst) {
+        if (maxBurst < 1) {
+            throw new IllegalArgumentException("Dropout burst must be at least 1 sample");
+        }
+        this.dropoutRate = checkFraction(dropoutRate);
+        this.maxDropoutBurst = maxBurst;
+    }
+
+    /**
+     * Set the fraction of samples delivered twice
+     */
+    public synchronized void setDuplicateRate(float duplicateRate) {
+        this.duplicateRate = checkFraction(duplicateRate);
+    }
+
+    /**
+     * Deliver samples in blocks of up to batchSize through the batch callbacks.
+     * A block only holds evenly spaced samples, so dropouts, duplicates and
+     * jittered samples end the current block early
+     * @param batchSize Samples per block; 1 delivers each sample on its own
+     */
+    public synchronized void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        this.batchSize = batchSize;
+    }
+
+    private static float checkFraction(float value) {
+        if (!(value >= 0 && value <= 1)) {
+            throw new IllegalArgumentException("Rate must be between 0 and 1");
+        }
+        return value;
+    }
+
+    public void setDeviceListener(DeviceListener deviceListener) {
+        this.deviceListener = deviceListener;
+    }
+
+    @Override
+    public void setSensorDataListener(SensorDataListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public synchronized void startListening() {
+        if (running) {
+            return;
+        }
+        running = true;
+
+        final long start = System.currentTimeMillis();
+        for (int d = 0; d < deviceCount; d++) {
+            final DeviceModel model = new DeviceModel(d);
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runRealTime(model, start);
+                }
+            }, "SimulatedWearable-" + d);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    @Override
+    public synchronized void stopListening() {
+        running = false;
+        for (Thread thread : threads) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        threads.clear();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void sendHapticFeedback(int type) {
+        hapticCount.incrementAndGet();
+        hapticWriteCount.incrementAndGet();
+    }
+
+    // A real link would pack the pulses into one write
+    @Override
+    public void sendHapticBatch(int device, int[] types, int count) {
+        hapticCount.addAndGet(count);
+        hapticWriteCount.incrementAndGet();
+    }
+
+    /**
+     * Start streaming the given exercise in real time
+     */
+    @Override
+    public void simulateSensorData(int exerciseType) {
+        stopListening();
+        setExerciseType(exerciseType);
+        startListening();
+    }
+
+    private void runRealTime(DeviceModel model, long startTime) {
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / model.sampleRate);
+        long deadline = System.nanoTime();
+        while (running) {
+            model.emit(startTime);
+            deadline += intervalNanos;
+            long wait = deadline - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+        model.flush();
+    }
+
+    /**
+     * Produce the streams in simulated time on the calling thread, interleaving
+     * devices in time order, as fast as the listeners keep up
+     * @param startTime Timestamp of the first sample in milliseconds
+     * @param durationMs Simulated duration in milliseconds
+     * @return Number of samples delivered, duplicates included
+     */
+    public long generate(long startTime, long durationMs) {
+        long before = emittedCount.get();
+        DeviceModel[] models;
+        synchronized (this) {
+            models = new DeviceModel[deviceCount];
+            for (int d = 0; d < deviceCount; d++) {
+                models[d] = new DeviceModel(d);
+            }
+        }
+
+        long samples = (long) (durationMs / 1000.0 * models[0].sampleRate);
+        for (long i = 0; i < samples; i++) {
+            for (DeviceModel model : models) {
+                model.emit(startTime);
+            }
+        }
+        for (DeviceModel model : models) {
+            model.flush();
+        }
+        return emittedCount.get() - before;
+    }
+
+    /**
+     * Get the number of samples delivered, duplicates included
+     */
+    public long getEmittedCount() {
+        return emittedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getDuplicatedCount() {
+        return duplicatedCount.get();
+    }
+
+    /**
+     * Get the number of reps performed with an injected error
+     * @param errorType One of the MotionPattern ERROR_ types
+     */
+    public long getInjectedErrorCount(int errorType) {
+        return injectedErrors.get(errorType);
+    }
+
+    /**
+     * Get the number of haptic pulses sent
+     */
+    public long getHapticCount() {
+        return hapticCount.get();
+    }
+
+    /**
+     * Get the number of radio writes haptic pulses were sent in
+     */
+    public long getHapticWriteCount() {
+        return hapticWriteCount.get();
+    }
+
+    /**
+     * State of one virtual device; only touched by the thread generating it
+     */
+    private class DeviceModel {
+
+        private final int device;
+        private final Random random;
+
+        // Copies of the controller's settings, so device threads never read them unguarded
+        private final float sampleRate;
+        private final float errorRate;
+        private final float jitterMs;
+        private final float dropoutRate;
+        private final int maxDropoutBurst;
+        private final float duplicateRate;
+
+        private final float[] model;
+        private final float gain;
+        private final float phaseOffset;
+        private final boolean hold;
+
+        private final MotionPattern sample = new MotionPattern();
+        private final float[] acc = new float[3];
+        private final float[] gyro = new float[3];
+
+        private long index;
+        private double repStart;
+        private double repDuration;
+        private float repAmplitude;
+        private int repError;
+
+        // Pending block of evenly spaced samples
+        private final float[] batch;
+        private final float batchInterval;
+        private int batchCount;
+        private long batchFirstIndex;
+        private long batchFirstTimestamp;
+
+        private int dropRemaining;
+        private float effort;
+        private long nextHeartRate;
+
+        // Called with the controller's lock held
+        DeviceModel(int device) {
+            this.device = device;
+            this.sampleRate = SimulatedWearableController.this.sampleRate;
+            this.errorRate = SimulatedWearableController.this.errorRate;
+            this.jitterMs = SimulatedWearableController.this.jitterMs;
+            this.dropoutRate = SimulatedWearableController.this.dropoutRate;
+            this.maxDropoutBurst = SimulatedWearableController.this.maxDropoutBurst;
+            this.duplicateRate = SimulatedWearableController.this.duplicateRate;
+            this.random = new Random(seed * 31 + device);
+            this.model = exerciseType >= 0 && exerciseType < MODELS.length ? MODELS[exerciseType] : MODELS[0];
+            // Placement changes how strongly and how late a device sees the movement
+            this.gain = 1 + (random.nextFloat() - 0.5f) * 0.2f * device;
+            this.phaseOffset = 0.05f * device;
+            this.batch = new float[batchSize * STRIDE];
+            this.batchInterval = 1000f / sampleRate;
+
+            boolean same = true;
+            for (int axis = 0; axis < 6; axis++) {
+                same &= model[axis] == model[6 + axis];
+            }
+            this.hold = same;
+            startRep(0);
+        }
+
+        private void startRep(double time) {
+            repStart = time;
+            repDuration = model[PERIOD];
+            repAmplitude = 1;
+            repError = MotionPattern.ERROR_NONE;
+
+            if (random.nextFloat() < errorRate) {
+                repError = INJECTED_ERRORS[random.nextInt(INJECTED_ERRORS.length)];
+                if (repError == MotionPattern.ERROR_TOO_FAST) {
+                    repDuration *= 0.5;
+                } else if (repError == MotionPattern.ERROR_INCOMPLETE_RANGE) {
+                    repAmplitude = 0.4f;
+                }
+                injectedErrors.incrementAndGet(repError);
+            }
+        }
+
+        // Generate the next sample and deliver it, unless it falls in a dropout
+        void emit(long startTime) {
+            double time = index / (double) sampleRate;
+            long timestamp = startTime + Math.round(time * 1000);
+            index++;
+
+            while (time - repStart >= repDuration) {
+                startRep(repStart + repDuration);
+            }
+            double progress = (time - repStart) / repDuration;
+            // Acceleration dips on the way down and peaks driving back up; rotation goes out and back.
+            // Holds have no rep shape, only a slow sway
+            double phase = (progress + phaseOffset) % 1.0;
+            float accShape = hold ? HOLD_SWAY * (float) Math.sin(2 * Math.PI * progress)
+                    : repAmplitude * (float) Math.sin(2 * Math.PI * phase);
+            float gyroShape = hold ? 0 : repAmplitude * (float) Math.sin(Math.PI * phase);
+
+            for (int axis = 0; axis < 3; axis++) {
+                acc[axis] = gain * (model[axis] + accShape * (model[6 + axis] - model[axis]))
+                        + (float) random.nextGaussian() * ACC_NOISE;
+                gyro[axis] = gain * (model[3 + axis] + gyroShape * (model[9 + axis] - model[3 + axis]))
+                        + (float) random.nextGaussian() * GYRO_NOISE;
+            }
+            if (repError == MotionPattern.ERROR_WRONG_ANGLE) {
+                acc[0] += 2.0f;
+                gyro[0] += 1.5f;
+            }
+
+            // Effort builds during the set and sets the heart rate, which has its own sensor
+            effort += (1 - effort) / (60 * sampleRate);
+            SensorDataListener current = listener;
+            if (device == 0 && timestamp >= nextHeartRate) {
+                nextHeartRate = timestamp + HEART_RATE_INTERVAL_MS;
+                float heartRate = 70 + 80 * effort + (float) random.nextGaussian() * 2;
+                if (current != null) {
+                    current.onHeartRateReceived(heartRate);
+                }
+            }
+
+            if (dropRemaining > 0 || random.nextFloat() < dropoutRate) {
+                if (dropRemaining == 0) {
+                    dropRemaining = 1 + random.nextInt(maxDropoutBurst);
+                }
+                dropRemaining--;
+                droppedCount.incrementAndGet();
+                return;
+            }
+
+            long jitter = jitterMs > 0 ? Math.round(random.nextGaussian() * jitterMs) : 0;
+            timestamp += jitter;
+            sample.setAccelerationData(acc);
+            sample.setGyroscopeData(gyro);
+            sample.setTimestamp(timestamp);
+            deliver(index - 1, jitter == 0);
+            if (random.nextFloat() < duplicateRate) {
+                duplicatedCount.incrementAndGet();
+                deliver(index - 1, false);
+            }
+        }
+
+        private void deliver(long sampleIndex, boolean onGrid) {
+            if (batch.length == STRIDE) {
+                deliver();
+                return;
+            }
+
+            // Only consecutive samples on the nominal timeline share a block
+            if (batchCount > 0 && (!onGrid || sampleIndex != batchFirstIndex + batchCount)) {
+                flush();
+            }
+            if (batchCount == 0) {
+                batchFirstIndex = sampleIndex;
+                batchFirstTimestamp = sample.getTimestamp();
+            }
+            int base = batchCount * STRIDE;
+            System.arraycopy(acc, 0, batch, base, 3);
+            System.arraycopy(gyro, 0, batch, base + 3, 3);
+            batchCount++;
+            emittedCount.incrementAndGet();
+            if (!onGrid || batchCount * STRIDE == batch.length) {
+                flush();
+            }
+        }
+
+        // Deliver the pending block, if any
+        void flush() {
+            if (batchCount == 0) {
+                return;
+            }
+            DeviceListener currentDeviceListener = deviceListener;
+            if (currentDeviceListener != null) {
+                currentDeviceListener.onDeviceBatch(device, batch, batchCount, batchFirstTimestamp, batchInterval);
+            }
+            SensorDataListener current = listener;
+            if (device == 0 && current != null) {
+                current.onMotionDataBatch(batch, batchCount, batchFirstTimestamp, batchInterval);
+            }
+            batchCount = 0;
+        }
+
+        private void deliver() {
+            emittedCount.incrementAndGet();
+            DeviceListener currentDeviceListener = deviceListener;
+            if (currentDeviceListener != null) {
+                currentDeviceListener.onDeviceSample(device, sample);
+            }
+            SensorDataListener current = listener;
+            if (device == 0 && current != null) {
+                current.onMotionDataReceived(sample);
+            }
+        }
+    }
+}
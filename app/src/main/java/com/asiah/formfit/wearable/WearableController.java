@@ -10,6 +10,20 @@ public interface WearableController {
     void startListening();
     void stopListening();
     void sendHapticFeedback(int type);
+
+    /**
+     * Send several haptic pulses to one device in as few radio writes as the
+     * link allows. The default sends each pulse on its own; controllers that
+     * can pack pulses into one write should override it
+     * @param device Device index; 0 for a controller with a single wearable
+     * @param types Pulse types, most urgent first; only valid during the call
+     * @param count Number of pulses
+     */
+    default void sendHapticBatch(int device, int[] types, int count) {
+        for (int i = 0; i < count; i++) {
+            sendHapticFeedback(types[i]);
+        }
+    }
     void setSensorDataListener(SensorDataListener listener);
     void simulateSensorData(int exerciseType);
 }
@@ -0,0 +1,179 @@
+package com.asiah.formfit.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.asiah.formfit.model.MotionPattern;
+import com.asiah.formfit.model.RecordedSession;
+import com.asiah.formfit.utils.MotionAnalyzer;
+import com.asiah.formfit.utils.MotionSession;
+import com.asiah.formfit.utils.SensorQuantizer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+/**
+ * Writes seeded frames and reads them back through the memory-mapped reader
+ */
+public class SensorRecordingReaderTest {
+
+    private static final long START = 1_700_000_000_000L;
+    private static final int FRAMES = 5000;
+
+    private File file;
+    private float[] samples;
+    private long[] timestamps;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("recording", ".ffsr");
+        Random random = new Random(9);
+        samples = new float[FRAMES * RecordedSession.SAMPLE_STRIDE];
+        timestamps = new long[FRAMES];
+        for (int i = 0; i < FRAMES; i++) {
+            timestamps[i] = START + i * 5 + random.nextInt(3);
+            for (int c = 0; c < RecordedSession.SAMPLE_STRIDE; c++) {
+                samples[i * RecordedSession.SAMPLE_STRIDE + c] = (float) random.nextGaussian() * 5;
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void float32Frames_readBackExactly() throws IOException {
+        write(SensorRecordingWriter.ENCODING_FLOAT32, new SensorQuantizer());
+
+        float[] acc = new float[3];
+        float[] gyro = new float[3];
+        try (SensorRecordingReader reader = new SensorRecordingReader(file)) {
+            assertEquals(FRAMES, reader.getFrameCount());
+            for (int i = 0; i < FRAMES; i++) {
+                assertEquals(timestamps[i], reader.readFrame(i, acc, gyro));
+                assertEquals(timestamps[i], reader.getTimestamp(i));
+                for (int c = 0; c < 3; c++) {
+                    assertEquals(samples[i * 6 + c], acc[c], 0f);
+                    assertEquals(samples[i * 6 + 3 + c], gyro[c], 0f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void int16Frames_readBackWithinHalfAStep() throws IOException {
+        SensorQuantizer quantizer = new SensorQuantizer(0.001f, 0.002f);
+        write(SensorRecordingWriter.ENCODING_INT16, quantizer);
+
+        float[] acc = new float[3];
+        float[] gyro = new float[3];
+        short[] raw = new short[6];
+        try (SensorRecordingReader reader = new SensorRecordingReader(file)) {
+            assertEquals(FRAMES, reader.getFrameCount());
+            for (int i = 0; i < FRAMES; i++) {
+                assertEquals(timestamps[i], reader.readFrame(i, acc, gyro));
+                assertEquals(timestamps[i], reader.readQuantizedFrame(i, raw, 0));
+                for (int c = 0; c < 3; c++) {
+                    assertEquals(samples[i * 6 + c], acc[c], 0.0005f + 1e-5f);
+                    assertEquals(samples[i * 6 + 3 + c], gyro[c], 0.001f + 1e-5f);
+                }
+                for (int c = 0; c < 6; c++) {
+                    assertEquals(quantizer.quantize(samples[i * 6 + c], c), raw[c]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void interruptedRecording_readsCompleteFrames() throws IOException {
+        write(SensorRecordingWriter.ENCODING_FLOAT32, new SensorQuantizer());
+
+        // Clear the count as an unclosed writer would, and leave half a frame at the end
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(SensorRecordingWriter.OFFSET_FRAME_COUNT);
+            raw.writeLong(0);
+            raw.setLength(raw.length() - SensorRecordingWriter.FRAME_SIZE_FLOAT32 / 2);
+        }
+
+        try (SensorRecordingReader reader = new SensorRecordingReader(file)) {
+            assertEquals(FRAMES - 1, reader.getFrameCount());
+            try {
+                reader.getTimestamp(FRAMES - 1);
+                fail("Partial frame readable");
+            } catch (IndexOutOfBoundsException expected) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void replay_iteratesEveryFrameInOrder() throws IOException {
+        write(SensorRecordingWriter.ENCODING_FLOAT32, new SensorQuantizer());
+
+        try (SensorRecordingReader reader = new SensorRecordingReader(file)) {
+            RecordedSession recorded = reader.toRecordedSession("replay");
+            assertEquals(FRAMES, recorded.getSampleCount());
+            assertEquals(MotionAnalyzer.EXERCISE_SQUAT, recorded.getExerciseType());
+            for (int i = 0; i < FRAMES; i++) {
+                assertEquals(timestamps[i], recorded.getTimestamps()[i]);
+            }
+            for (int i = 0; i < samples.length; i++) {
+                assertEquals(samples[i], recorded.getSamples()[i], 0f);
+            }
+
+            MotionPattern pattern = reader.readPattern(17);
+            assertEquals(timestamps[17], pattern.getTimestamp());
+            assertEquals(samples[17 * 6 + 4], pattern.getGyroscopeData()[1], 0f);
+
+            // Replaying the file analyses exactly what feeding the samples directly does
+            MotionAnalyzer analyzer = new MotionAnalyzer();
+            MotionSession replayed = analyzer.newSession(MotionAnalyzer.EXERCISE_SQUAT);
+            assertEquals(FRAMES, reader.replay(replayed));
+            MotionSession direct = analyzer.newSession(MotionAnalyzer.EXERCISE_SQUAT);
+            float[] acc = new float[3];
+            float[] gyro = new float[3];
+            for (int i = 0; i < FRAMES; i++) {
+                System.arraycopy(samples, i * 6, acc, 0, 3);
+                System.arraycopy(samples, i * 6 + 3, gyro, 0, 3);
+                direct.addSample(acc, gyro, timestamps[i]);
+            }
+            assertEquals(direct.getSampleCount(), replayed.getSampleCount());
+            assertEquals(direct.getFormAccuracy(), replayed.getFormAccuracy(), 0f);
+            assertEquals(direct.getRepetitionCount(), replayed.getRepetitionCount());
+        }
+    }
+
+    @Test
+    public void notARecording_isRejected() throws IOException {
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.write(new byte[SensorRecordingWriter.HEADER_SIZE * 2]);
+        }
+        try {
+            new SensorRecordingReader(file).close();
+            fail("Zeroed file accepted");
+        } catch (IOException expected) {
+            // Expected
+        }
+    }
+
+    private void write(short encoding, SensorQuantizer quantizer) throws IOException {
+        try (SensorRecordingWriter writer = new SensorRecordingWriter(file, MotionAnalyzer.EXERCISE_SQUAT, 200,
+                START, encoding, quantizer)) {
+            float[] acc = new float[3];
+            float[] gyro = new float[3];
+            for (int i = 0; i < FRAMES; i++) {
+                System.arraycopy(samples, i * 6, acc, 0, 3);
+                System.arraycopy(samples, i * 6 + 3, gyro, 0, 3);
+                writer.writeFrame(timestamps[i], acc, gyro);
+            }
+        }
+    }
+}
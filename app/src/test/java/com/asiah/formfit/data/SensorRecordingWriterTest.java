@@ -0,0 +1,208 @@
+package com.asiah.formfit.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import com.asiah.formfit.utils.SensorQuantizer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Checks the recording header, appending after a crash and that failed opens release the file
+ */
+public class SensorRecordingWriterTest {
+
+    private static final long START = 1_700_000_000_000L;
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("recording", ".ffsr");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void header_roundTrips() throws IOException {
+        SensorQuantizer quantizer = new SensorQuantizer(new float[]{0.001f, 0.002f, 0.003f, 0.004f, 0.005f, 0.006f});
+        SensorRecordingWriter writer = new SensorRecordingWriter(file, 3, 200, START,
+                SensorRecordingWriter.ENCODING_INT16, quantizer);
+        writeFrames(writer, 7);
+        writer.close();
+
+        ByteBuffer header = readHeader();
+        assertEquals(SensorRecordingWriter.MAGIC, header.getInt(0));
+        assertEquals(SensorRecordingWriter.VERSION, header.getShort(SensorRecordingWriter.OFFSET_VERSION));
+        assertEquals(SensorRecordingWriter.ENCODING_INT16, header.getShort(SensorRecordingWriter.OFFSET_ENCODING));
+        assertEquals(3, header.getInt(SensorRecordingWriter.OFFSET_EXERCISE_TYPE));
+        assertEquals(200, header.getInt(SensorRecordingWriter.OFFSET_SAMPLE_RATE));
+        assertEquals(START, header.getLong(SensorRecordingWriter.OFFSET_START_TIME));
+        assertEquals(7, header.getLong(SensorRecordingWriter.OFFSET_FRAME_COUNT));
+        assertEquals(SensorRecordingWriter.FRAME_SIZE_INT16, header.getInt(SensorRecordingWriter.OFFSET_FRAME_SIZE));
+        for (int i = 0; i < 6; i++) {
+            assertEquals(quantizer.getScale(i), header.getFloat(SensorRecordingWriter.OFFSET_SCALES + i * 4), 0f);
+        }
+        assertEquals(SensorRecordingWriter.HEADER_SIZE + 7 * SensorRecordingWriter.FRAME_SIZE_INT16, file.length());
+
+        try (SensorRecordingReader reader = new SensorRecordingReader(file)) {
+            assertEquals(3, reader.getExerciseType());
+            assertEquals(200, reader.getSampleRate());
+            assertEquals(START, reader.getStartTime());
+            assertEquals(SensorRecordingWriter.ENCODING_INT16, reader.getEncoding());
+            assertEquals(7, reader.getFrameCount());
+            for (int i = 0; i < 6; i++) {
+                assertEquals(quantizer.getScale(i), reader.getQuantizer().getScale(i), 0f);
+            }
+        }
+    }
+
+    @Test
+    public void append_discardsPartialFrameAndContinues() throws IOException {
+        SensorRecordingWriter writer = new SensorRecordingWriter(file, 0, 50, START);
+        writeFrames(writer, 10);
+        writer.close();
+
+        // A crash in the middle of the next frame
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(raw.length());
+            raw.write(new byte[]{1, 2, 3, 4, 5});
+        }
+
+        writer = SensorRecordingWriter.append(file);
+        assertEquals(10, writer.getFrameCount());
+        assertEquals(SensorRecordingWriter.HEADER_SIZE + 10 * SensorRecordingWriter.FRAME_SIZE_FLOAT32, file.length());
+        // The count reads as "still recording" until the writer is closed
+        assertEquals(0, readHeader().getLong(SensorRecordingWriter.OFFSET_FRAME_COUNT));
+
+        float[] acc = new float[3];
+        float[] gyro = new float[3];
+        for (int i = 10; i < 12; i++) {
+            fill(acc, gyro, i);
+            writer.writeFrame(START + i * 20, acc, gyro);
+        }
+        writer.close();
+
+        assertEquals(12, readHeader().getLong(SensorRecordingWriter.OFFSET_FRAME_COUNT));
+        try (SensorRecordingReader reader = new SensorRecordingReader(file)) {
+            assertEquals(12, reader.getFrameCount());
+            for (int i = 0; i < 12; i++) {
+                assertEquals(START + i * 20, reader.readFrame(i, acc, gyro));
+                assertEquals(i, acc[0], 0f);
+                assertEquals(-i, gyro[2], 0f);
+            }
+        }
+    }
+
+    @Test
+    public void constructor_checksArgumentsBeforeTouchingFile() throws IOException {
+        SensorRecordingWriter writer = new SensorRecordingWriter(file, 0, 50, START);
+        writeFrames(writer, 4);
+        writer.close();
+        long length = file.length();
+        int open = openFileCount();
+
+        try {
+            new SensorRecordingWriter(file, 0, 50, START, (short) 7, new SensorQuantizer());
+            fail("Unknown encoding accepted");
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+        try {
+            new SensorRecordingWriter(file, 0, 50, START, SensorRecordingWriter.ENCODING_INT16, null);
+            fail("Missing quantizer accepted");
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+
+        assertEquals(length, file.length());
+        assertEquals(open, openFileCount());
+    }
+
+    @Test
+    public void append_rejectsCorruptHeaderAndClosesFile() throws IOException {
+        SensorRecordingWriter writer = new SensorRecordingWriter(file, 0, 50, START,
+                SensorRecordingWriter.ENCODING_INT16, new SensorQuantizer());
+        writeFrames(writer, 4);
+        writer.close();
+        int open = openFileCount();
+
+        // Zero, NaN and infinite scales, then a frame size that does not match the encoding
+        float[] badScales = {0f, Float.NaN, Float.POSITIVE_INFINITY};
+        for (float scale : badScales) {
+            patchHeader(SensorRecordingWriter.OFFSET_SCALES + 8, Float.floatToRawIntBits(scale));
+            assertAppendFails();
+        }
+        patchHeader(SensorRecordingWriter.OFFSET_SCALES + 8, Float.floatToRawIntBits(0.001f));
+        patchHeader(SensorRecordingWriter.OFFSET_FRAME_SIZE, SensorRecordingWriter.FRAME_SIZE_FLOAT32);
+        assertAppendFails();
+        patchHeader(0, 0);
+        assertAppendFails();
+
+        assertEquals(open, openFileCount());
+    }
+
+    private void assertAppendFails() {
+        try {
+            SensorRecordingWriter.append(file).close();
+            fail("Corrupt recording accepted");
+        } catch (IOException expected) {
+            // Expected
+        }
+    }
+
+    static void writeFrames(SensorRecordingWriter writer, int count) throws IOException {
+        float[] acc = new float[3];
+        float[] gyro = new float[3];
+        for (int i = 0; i < count; i++) {
+            fill(acc, gyro, i);
+            writer.writeFrame(START + i * 20, acc, gyro);
+        }
+    }
+
+    private static void fill(float[] acc, float[] gyro, int i) {
+        acc[0] = i;
+        acc[1] = 0.5f;
+        acc[2] = 9.8f;
+        gyro[0] = 0.25f;
+        gyro[1] = 0;
+        gyro[2] = -i;
+    }
+
+    private ByteBuffer readHeader() throws IOException {
+        byte[] bytes = new byte[SensorRecordingWriter.HEADER_SIZE];
+        try (RandomAccessFile raw = new RandomAccessFile(file, "r")) {
+            raw.readFully(bytes);
+        }
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void patchHeader(int offset, int value) throws IOException {
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(offset);
+            raw.writeInt(Integer.reverseBytes(value));
+        }
+    }
+
+    /**
+     * Count this process's open file descriptors, where the platform exposes them
+     */
+    private static int openFileCount() {
+        String[] descriptors = new File("/proc/self/fd").list();
+        assumeTrue(descriptors != null);
+        return descriptors.length;
+    }
+}
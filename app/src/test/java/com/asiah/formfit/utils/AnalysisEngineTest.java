@@ -0,0 +1,231 @@
+package com.asiah.formfit.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.asiah.formfit.model.MotionPattern;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks the analysis hand-off: nothing lost or torn, oldest samples dropped first
+ */
+public class AnalysisEngineTest {
+
+    private static final long TIMEOUT_MS = 30000;
+
+    /**
+     * Session that records what reaches analysis and checks each sample arrived whole
+     */
+    private static class RecordingSession extends MotionSession {
+
+        private final long[] timestamps;
+        private int count;
+        private volatile String problem;
+        private final long delayNanos;
+
+        RecordingSession(int capacity, long delayNanos) {
+            super(new MotionAnalyzer(), MotionAnalyzer.EXERCISE_SQUAT, null, 10);
+            this.timestamps = new long[capacity];
+            this.delayNanos = delayNanos;
+        }
+
+        @Override
+        public MotionPattern addSample(float[] accelerationData, float[] gyroscopeData, long timestamp) {
+            for (int axis = 0; axis < 3; axis++) {
+                if (accelerationData[axis] != timestamp || gyroscopeData[axis] != -timestamp) {
+                    problem = "Sample " + timestamp + " torn";
+                }
+            }
+            if (count > 0 && timestamp <= timestamps[count - 1]) {
+                problem = "Sample " + timestamp + " after " + timestamps[count - 1];
+            }
+            if (count < timestamps.length) {
+                timestamps[count] = timestamp;
+            }
+            count++;
+            if (delayNanos > 0) {
+                long end = System.nanoTime() + delayNanos;
+                while (System.nanoTime() < end) {
+                    // Busy wait, so the producer overtakes the consumer
+                }
+            }
+            return super.addSample(accelerationData, gyroscopeData, timestamp);
+        }
+    }
+
+    @Test
+    public void offer_dropsOldestWhenFull() throws Exception {
+        RecordingSession session = new RecordingSession(64, 0);
+        AnalysisEngine engine = new AnalysisEngine(session, 16, new FeedbackBus(), null);
+        float[] acc = new float[3];
+        float[] gyro = new float[3];
+
+        // Not started yet, so everything beyond the capacity pushes out older samples
+        for (int i = 0; i < 100; i++) {
+            fill(acc, gyro, i);
+            assertEquals(i < 16, engine.offer(acc, gyro, i));
+        }
+        assertEquals(84, engine.getDroppedCount());
+        assertEquals(16, engine.getQueuedCount());
+
+        engine.start();
+        awaitDrained(engine);
+        engine.stop();
+
+        assertEquals(null, session.problem);
+        assertEquals(16, session.count);
+        for (int i = 0; i < 16; i++) {
+            assertEquals(84 + i, session.timestamps[i]);
+        }
+    }
+
+    @Test
+    public void offerBatch_reportsDroppedSamples() throws Exception {
+        RecordingSession session = new RecordingSession(64, 0);
+        AnalysisEngine engine = new AnalysisEngine(session, 8, new FeedbackBus(), null);
+
+        float[] samples = new float[20 * MotionAnalyzer.SAMPLE_STRIDE];
+        for (int i = 0; i < 20; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                samples[i * MotionAnalyzer.SAMPLE_STRIDE + axis] = 1000 + i * 10;
+                samples[i * MotionAnalyzer.SAMPLE_STRIDE + 3 + axis] = -(1000 + i * 10);
+            }
+        }
+        assertEquals(12, engine.offerBatch(samples, 20, 1000, 10f));
+
+        engine.start();
+        awaitDrained(engine);
+        engine.stop();
+
+        assertEquals(null, session.problem);
+        assertEquals(8, session.count);
+        assertEquals(1120, session.timestamps[0]);
+        assertEquals(1190, session.timestamps[7]);
+    }
+
+    @Test
+    public void stop_analysesSamplesQueuedBeforeIt() {
+        // More than one drain batch, analysed slowly enough that stop comes first
+        RecordingSession session = new RecordingSession(256, 200000);
+        AnalysisEngine engine = new AnalysisEngine(session, 256, new FeedbackBus(), null);
+        float[] acc = new float[3];
+        float[] gyro = new float[3];
+        for (int i = 0; i < 200; i++) {
+            fill(acc, gyro, i);
+            engine.offer(acc, gyro, i);
+        }
+
+        // No waiting for the thread to catch up: stop itself finishes the queue
+        engine.start();
+        engine.stop();
+
+        assertEquals(null, session.problem);
+        assertEquals(200, session.count);
+        assertEquals(200, engine.getAnalyzedCount());
+        assertEquals(0, engine.getQueuedCount());
+        assertEquals(199, session.timestamps[199]);
+    }
+
+    @Test
+    public void repetitionListener_reportsEachRepWithItsSampleTime() {
+        MotionSession session = new MotionSession(new MotionAnalyzer(), MotionAnalyzer.EXERCISE_SQUAT, null, 5);
+        AnalysisEngine engine = new AnalysisEngine(session, 1024, new FeedbackBus(), null);
+        final List<Integer> counts = new ArrayList<>();
+        final List<Long> times = new ArrayList<>();
+        engine.setRepetitionListener(new AnalysisEngine.RepetitionListener() {
+            @Override
+            public void onRepetition(int repetitionCount, long timestamp) {
+                counts.add(repetitionCount);
+                times.add(timestamp);
+            }
+        });
+
+        // A squat every 2 s at 50 Hz, checked against a counter fed the same samples
+        RepetitionCounter reference = RepetitionCounter.forExercise(MotionAnalyzer.EXERCISE_SQUAT);
+        List<Long> expected = new ArrayList<>();
+        float[] acc = new float[3];
+        float[] gyro = new float[3];
+        for (int i = 0; i < 1000; i++) {
+            long timestamp = 5000 + i * 20L;
+            acc[1] = 2.5f * (float) Math.sin(2 * Math.PI * i / 100.0);
+            acc[2] = 9.8f;
+            engine.offer(acc, gyro, timestamp);
+            if (reference.addSample(acc, gyro, timestamp)) {
+                expected.add(timestamp);
+            }
+        }
+        engine.start();
+        engine.stop();
+
+        assertTrue(expected.size() >= 9);
+        assertEquals(expected, times);
+        for (int i = 0; i < counts.size(); i++) {
+            assertEquals(i + 1, (int) counts.get(i));
+        }
+        assertEquals(expected.size(), engine.getRepetitionCount());
+    }
+
+    @Test
+    public void stress_analyzedPlusDroppedEqualsOffered() throws Exception {
+        final int total = 300000;
+        RecordingSession session = new RecordingSession(total, 2000);
+        final AnalysisEngine engine = new AnalysisEngine(session, 64, new FeedbackBus(), new PipelineLatency());
+        engine.start();
+
+        final long[] producerDropped = new long[1];
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                float[] acc = new float[3];
+                float[] gyro = new float[3];
+                for (int i = 1; i <= total; i++) {
+                    fill(acc, gyro, i);
+                    if (!engine.offer(acc, gyro, i)) {
+                        producerDropped[0]++;
+                    }
+                    // Pause now and then so the consumer also runs dry and parks
+                    if (i % 50000 == 0) {
+                        long end = System.nanoTime() + 50000000L;
+                        while (System.nanoTime() < end) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            }
+        });
+        producer.start();
+        producer.join();
+        awaitDrained(engine);
+        engine.stop();
+
+        assertEquals(null, session.problem);
+        assertEquals(total, engine.getOfferedCount());
+        assertEquals(producerDropped[0], engine.getDroppedCount());
+        assertEquals(total, engine.getAnalyzedCount() + engine.getDroppedCount());
+        assertEquals(engine.getAnalyzedCount(), session.count);
+        assertTrue("Consumer never fell behind", engine.getDroppedCount() > 0);
+        // The newest sample always survives an overflow
+        assertEquals(total, session.timestamps[session.count - 1]);
+        assertFalse(engine.isRunning());
+    }
+
+    private static void fill(float[] acc, float[] gyro, long timestamp) {
+        for (int axis = 0; axis < 3; axis++) {
+            acc[axis] = timestamp;
+            gyro[axis] = -timestamp;
+        }
+    }
+
+    private static void awaitDrained(AnalysisEngine engine) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (engine.getAnalyzedCount() + engine.getDroppedCount() < engine.getOfferedCount()) {
+            assertTrue("Analysis did not catch up", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+}
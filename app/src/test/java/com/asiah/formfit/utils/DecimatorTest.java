@@ -0,0 +1,93 @@
+package com.asiah.formfit.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Feeds pure tones through a 400 Hz to 50 Hz decimator
+ */
+public class DecimatorTest {
+
+    private static final float INPUT_RATE = 400f;
+    private static final long INTERVAL_MICROS = 2500;
+
+    @Test
+    public void passBandTone_keepsAmplitudeAndPhase() {
+        Decimator decimator = new Decimator(INPUT_RATE, Decimator.RATE_DYNAMIC);
+        assertEquals(8, decimator.getFactor());
+
+        float frequency = 2f;
+        float[] acc = new float[3];
+        float[] gyro = new float[3];
+        float[] outAcc = new float[3];
+        float[] outGyro = new float[3];
+        long previous = -1;
+        int outputs = 0;
+        for (int i = 0; i < 4000; i++) {
+            long timestamp = i * INTERVAL_MICROS;
+            acc[0] = tone(frequency, timestamp);
+            gyro[2] = tone(frequency, timestamp);
+            if (!decimator.addSample(acc, gyro, timestamp)) {
+                continue;
+            }
+            outputs++;
+
+            long outputTimestamp = decimator.getOutput(outAcc, outGyro);
+            if (previous >= 0) {
+                assertEquals("Output spacing", decimator.getFactor() * INTERVAL_MICROS, outputTimestamp - previous);
+            }
+            previous = outputTimestamp;
+
+            // The timestamp is corrected for group delay, so the output lines up with the input tone
+            assertEquals("Acceleration at " + outputTimestamp, tone(frequency, outputTimestamp), outAcc[0], 0.03f);
+            assertEquals("Gyroscope at " + outputTimestamp, tone(frequency, outputTimestamp), outGyro[2], 0.03f);
+        }
+        assertEquals((4000 - decimator.getTapCount()) / decimator.getFactor() + 1, outputs);
+    }
+
+    @Test
+    public void stopBandTone_isAttenuated() {
+        Decimator decimator = new Decimator(INPUT_RATE, Decimator.RATE_DYNAMIC);
+
+        // Without filtering this would fold onto a 10 Hz wobble at the 50 Hz output rate
+        float frequency = 140f;
+        float[] acc = new float[3];
+        float[] gyro = new float[3];
+        float[] outAcc = new float[3];
+        float[] outGyro = new float[3];
+        float peak = 0;
+        int outputs = 0;
+        for (int i = 0; i < 4000; i++) {
+            long timestamp = i * INTERVAL_MICROS;
+            acc[1] = 9.8f + tone(frequency, timestamp);
+            if (decimator.addSample(acc, gyro, timestamp)) {
+                decimator.getOutput(outAcc, outGyro);
+                peak = Math.max(peak, Math.abs(outAcc[1] - 9.8f));
+                outputs++;
+            }
+        }
+        assertTrue(outputs > 0);
+        assertTrue("Residual amplitude " + peak, peak < 0.01f);
+    }
+
+    @Test
+    public void matchingRates_passSamplesThrough() {
+        Decimator decimator = new Decimator(50f, Decimator.RATE_DYNAMIC);
+        assertEquals(1, decimator.getFactor());
+
+        float[] acc = {1, 2, 3};
+        float[] gyro = {4, 5, 6};
+        float[] outAcc = new float[3];
+        float[] outGyro = new float[3];
+        assertTrue(decimator.addSample(acc, gyro, 20));
+        assertEquals(20, decimator.getOutput(outAcc, outGyro));
+        assertEquals(3f, outAcc[2], 0f);
+        assertEquals(4f, outGyro[0], 0f);
+    }
+
+    private static float tone(float frequency, long timestampMicros) {
+        return (float) Math.sin(2 * Math.PI * frequency * timestampMicros / 1e6);
+    }
+}
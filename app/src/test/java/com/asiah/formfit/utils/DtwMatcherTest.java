@@ -0,0 +1,160 @@
+package com.asiah.formfit.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Checks the pruned DTW matcher against an unpruned full-matrix DTW
+ */
+public class DtwMatcherTest {
+
+    private static final int STRIDE = MotionAnalyzer.SAMPLE_STRIDE;
+    private static final int LENGTH = 40;
+    private static final int TEMPLATES = 24;
+
+    @Test
+    public void match_agreesWithBruteForceForEveryBand() {
+        int[] radii = {0, 1, 4, 10, LENGTH};
+        for (int radius : radii) {
+            Random random = new Random(42 + radius);
+            DtwMatcher matcher = new DtwMatcher(LENGTH, radius);
+            float[][] templates = new float[TEMPLATES][];
+            for (int t = 0; t < TEMPLATES; t++) {
+                templates[t] = randomShape(random);
+                assertEquals(t, matcher.addTemplate(templates[t], t % 3));
+            }
+
+            for (int trial = 0; trial < 200; trial++) {
+                // Mostly warped, noisy copies of a template, sometimes pure noise
+                float[] window = trial % 5 == 0
+                        ? randomShape(random)
+                        : warp(templates[random.nextInt(TEMPLATES)], random);
+
+                int expected = -1;
+                float expectedDistance = Float.POSITIVE_INFINITY;
+                for (int t = 0; t < TEMPLATES; t++) {
+                    float distance = bruteForce(window, templates[t], matcher.getBandRadius());
+                    if (distance < expectedDistance) {
+                        expectedDistance = distance;
+                        expected = t;
+                    }
+                }
+
+                int best = matcher.match(window);
+                String label = "Radius " + radius + " trial " + trial;
+                assertEquals(label, expected, best);
+                assertEquals(label, expected, matcher.getBestTemplate());
+                assertEquals(label, expectedDistance, matcher.getBestDistance(), expectedDistance * 1e-5f);
+                assertEquals(expected % 3, matcher.getTemplateType(best));
+            }
+
+            long pruned = matcher.getLbKimPruned() + matcher.getLbKeoghPruned();
+            assertEquals(200L * TEMPLATES, pruned + matcher.getFullComputations());
+            assertTrue("Radius " + radius + " never pruned", pruned > 0);
+        }
+    }
+
+    @Test
+    public void match_resamplesTemplatesToMatcherLength() {
+        DtwMatcher matcher = new DtwMatcher(LENGTH, 3);
+        Random random = new Random(7);
+        float[] shape = randomShape(random);
+
+        // The same shape at double length comes back within interpolation error
+        matcher.addTemplate(randomShape(random), 0);
+        matcher.addTemplate(DtwMatcher.resample(shape, LENGTH, LENGTH * 2), 1);
+        assertEquals(1, matcher.match(shape));
+        assertTrue(matcher.getBestDistance() / LENGTH < 0.1f);
+    }
+
+    @Test
+    public void match_withoutTemplatesFindsNothing() {
+        DtwMatcher matcher = new DtwMatcher(LENGTH, 3);
+        assertEquals(-1, matcher.match(new float[LENGTH * STRIDE]));
+        assertEquals(Float.POSITIVE_INFINITY, matcher.getBestDistance(), 0f);
+        assertEquals(0f, matcher.getBestSimilarity(), 0f);
+    }
+
+    /**
+     * Full cost matrix inside the band, no lower bounds and no early abandoning
+     */
+    private static float bruteForce(float[] window, float[] template, int radius) {
+        float[][] cost = new float[LENGTH][LENGTH];
+        for (int i = 0; i < LENGTH; i++) {
+            for (int j = 0; j < LENGTH; j++) {
+                if (Math.abs(i - j) > radius) {
+                    cost[i][j] = Float.POSITIVE_INFINITY;
+                    continue;
+                }
+                float best;
+                if (i == 0 && j == 0) {
+                    best = 0;
+                } else {
+                    best = Float.POSITIVE_INFINITY;
+                    if (i > 0) {
+                        best = Math.min(best, cost[i - 1][j]);
+                    }
+                    if (j > 0) {
+                        best = Math.min(best, cost[i][j - 1]);
+                    }
+                    if (i > 0 && j > 0) {
+                        best = Math.min(best, cost[i - 1][j - 1]);
+                    }
+                }
+                cost[i][j] = frameCost(window, i, template, j) + best;
+            }
+        }
+        return cost[LENGTH - 1][LENGTH - 1];
+    }
+
+    private static float frameCost(float[] a, int i, float[] b, int j) {
+        float acc = 0;
+        float gyro = 0;
+        for (int c = 0; c < 3; c++) {
+            float d = a[i * STRIDE + c] - b[j * STRIDE + c];
+            acc += d * d;
+            float g = a[i * STRIDE + 3 + c] - b[j * STRIDE + 3 + c];
+            gyro += g * g;
+        }
+        return (float) Math.sqrt(acc) + (float) Math.sqrt(gyro);
+    }
+
+    /**
+     * Smooth random motion: a few sinusoids per channel
+     */
+    private static float[] randomShape(Random random) {
+        float[] frames = new float[LENGTH * STRIDE];
+        for (int c = 0; c < STRIDE; c++) {
+            float amplitude = 1 + random.nextFloat() * 4;
+            float cycles = 0.5f + random.nextFloat() * 2;
+            float phase = random.nextFloat() * 6.28f;
+            float offset = random.nextFloat() * 4 - 2;
+            for (int i = 0; i < LENGTH; i++) {
+                frames[i * STRIDE + c] = offset
+                        + amplitude * (float) Math.sin(phase + 6.28f * cycles * i / LENGTH);
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * Copy a template with a random time stretch and sensor noise
+     */
+    private static float[] warp(float[] template, Random random) {
+        float stretch = 0.8f + random.nextFloat() * 0.4f;
+        int stretched = Math.max(2, Math.round(LENGTH * stretch));
+        float[] resampled = DtwMatcher.resample(template, LENGTH, stretched);
+        float[] window = new float[LENGTH * STRIDE];
+        for (int i = 0; i < LENGTH; i++) {
+            int from = Math.min(i, stretched - 1);
+            for (int c = 0; c < STRIDE; c++) {
+                window[i * STRIDE + c] = resampled[from * STRIDE + c] + (float) random.nextGaussian() * 0.3f;
+            }
+        }
+        return window;
+    }
+}
@@ -0,0 +1,116 @@
+package com.asiah.formfit.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks coalescing of published feedback and the priority hold on drain
+ */
+public class FeedbackBusTest {
+
+    private static final long HOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(FeedbackBus.DEFAULT_HOLD_MS);
+
+    @Test
+    public void publish_higherPriorityReplacesPending() {
+        FeedbackBus bus = new FeedbackBus();
+
+        assertTrue(bus.publish(FeedbackBus.FEEDBACK_GOOD_FORM));
+        assertFalse(bus.publish(FeedbackBus.FEEDBACK_FULL_RANGE));
+        assertFalse(bus.publish(FeedbackBus.FEEDBACK_SLOW_DOWN));
+
+        assertEquals(FeedbackBus.FEEDBACK_SLOW_DOWN, bus.drain(0));
+    }
+
+    @Test
+    public void publish_lowerPriorityDoesNotReplacePending() {
+        FeedbackBus bus = new FeedbackBus();
+
+        assertTrue(bus.publish(FeedbackBus.FEEDBACK_CHECK_ALIGNMENT));
+        assertFalse(bus.publish(FeedbackBus.FEEDBACK_SQUAT_DEEPER));
+        assertFalse(bus.publish(FeedbackBus.FEEDBACK_GOOD_FORM));
+
+        assertEquals(FeedbackBus.FEEDBACK_CHECK_ALIGNMENT, bus.drain(0));
+        assertEquals(3, bus.getPublishedCount());
+        assertEquals(1, bus.getDeliveredCount());
+    }
+
+    @Test
+    public void drain_returnsLatestCoalescedCode() {
+        FeedbackBus bus = new FeedbackBus();
+
+        // Equal priorities coalesce to the most recent one
+        assertTrue(bus.publish(FeedbackBus.FEEDBACK_FULL_RANGE));
+        assertFalse(bus.publish(FeedbackBus.FEEDBACK_SQUAT_DEEPER));
+        assertFalse(bus.publish(FeedbackBus.FEEDBACK_MAINTAIN_FORM));
+        assertEquals(FeedbackBus.FEEDBACK_MAINTAIN_FORM, bus.drain(0));
+
+        // Draining empties the bus, so the next publish asks for a new drain
+        assertEquals(FeedbackBus.FEEDBACK_NONE, bus.drain(1));
+        assertTrue(bus.publish(FeedbackBus.FEEDBACK_STEADY_PACE));
+    }
+
+    @Test
+    public void drain_holdsCorrectionAgainstLowerPriority() {
+        FeedbackBus bus = new FeedbackBus();
+        long shown = 1000;
+
+        bus.publish(FeedbackBus.FEEDBACK_SLOW_DOWN);
+        assertEquals(FeedbackBus.FEEDBACK_SLOW_DOWN, bus.drain(shown));
+
+        // Inside the hold a lower priority code is swallowed
+        bus.publish(FeedbackBus.FEEDBACK_GOOD_FORM);
+        assertEquals(FeedbackBus.FEEDBACK_NONE, bus.drain(shown + HOLD_NANOS - 1));
+        assertEquals(FeedbackBus.FEEDBACK_SLOW_DOWN, bus.getDisplayed());
+
+        // A correction of the same priority may still replace it
+        bus.publish(FeedbackBus.FEEDBACK_SQUAT_ALIGNMENT);
+        assertEquals(FeedbackBus.FEEDBACK_SQUAT_ALIGNMENT, bus.drain(shown + 1));
+
+        // Once the hold has passed lower priority feedback is shown again
+        bus.publish(FeedbackBus.FEEDBACK_GOOD_FORM);
+        assertEquals(FeedbackBus.FEEDBACK_GOOD_FORM, bus.drain(shown + 1 + HOLD_NANOS));
+    }
+
+    @Test
+    public void drain_skipsCodeAlreadyDisplayed() {
+        FeedbackBus bus = new FeedbackBus();
+
+        bus.publish(FeedbackBus.FEEDBACK_GOOD_FORM);
+        assertEquals(FeedbackBus.FEEDBACK_GOOD_FORM, bus.drain(0));
+        bus.publish(FeedbackBus.FEEDBACK_GOOD_FORM);
+        assertEquals(FeedbackBus.FEEDBACK_NONE, bus.drain(HOLD_NANOS));
+        assertEquals(1, bus.getDeliveredCount());
+    }
+
+    @Test
+    public void publish_concurrentPublishersDeliverHighestPriority() throws Exception {
+        final FeedbackBus bus = new FeedbackBus();
+        final int rounds = 20000;
+        Thread[] publishers = new Thread[4];
+        for (int t = 0; t < publishers.length; t++) {
+            // One safety publisher against info and technique ones
+            final int code = t == 0 ? FeedbackBus.FEEDBACK_PUSHUP_LINE : FeedbackBus.FEEDBACK_GOOD_FORM + t - 1;
+            publishers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < rounds; i++) {
+                        bus.publish(code);
+                    }
+                }
+            });
+            publishers[t].start();
+        }
+        for (Thread publisher : publishers) {
+            publisher.join();
+        }
+
+        // Once the safety code is pending nothing of lower priority displaces it
+        assertEquals(FeedbackBus.FEEDBACK_PUSHUP_LINE, bus.drain(0));
+        assertEquals(rounds * publishers.length, bus.getPublishedCount());
+    }
+}
@@ -0,0 +1,254 @@
+package com.asiah.formfit.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.asiah.formfit.model.MotionPattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Checks rule parsing, ordering and reloading, and the built-in squat rules against the old switch
+ */
+public class FormRuleEngineTest {
+
+    private static final int SQUAT = MotionAnalyzer.EXERCISE_SQUAT;
+
+    private FormRuleEngine engine;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        engine = new FormRuleEngine();
+        file = File.createTempFile("form_rules", ".txt");
+        assertTrue(file.delete());
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void load_reportsTheLineOfABadRule() {
+        String[][] cases = {
+                {"squat too_fast\n", "Line 1: expected exercise"},
+                {"# header\n\nhopscotch too_fast always\n", "Line 3: unknown exercise hopscotch"},
+                {"squat too_fast always\nsquat sloppy always\n", "Line 2: unknown error sloppy"},
+                {"squat too_fast always now\n", "Line 1: unexpected text after always"},
+                {"squat too_fast when jerk acc_y > 1\n", "Line 1: expected if"},
+                {"\n\nsquat too_fast if speed acc_y > 1\n", "Line 3: unknown feature speed"},
+                {"squat too_fast if jerk acc_w > 1\n", "Line 1: unknown axis acc_w"},
+                {"squat too_fast if jerk acc_y >= 1\n", "Line 1: operator must be > or <"},
+                {"squat too_fast if jerk acc_y > fast\n", "Line 1: bad threshold fast"},
+                {"squat too_fast if jerk acc_y > NaN\n", "Line 1: bad threshold nan"},
+        };
+        int ruleCount = engine.getRuleCount();
+        for (String[] c : cases) {
+            try {
+                engine.load(c[0]);
+                fail("Compiled: " + c[0]);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith(c[1]));
+            }
+            assertEquals(ruleCount, engine.getRuleCount());
+        }
+    }
+
+    @Test
+    public void load_ignoresCommentsCaseAndSpacing() {
+        engine.load("  # only a comment\n\tSQUAT   Too_Fast  IF value ACC_Y > 2   # trailing\n\n");
+        assertEquals(1, engine.getRuleCount());
+        assertEquals(MotionPattern.ERROR_TOO_FAST, evaluate(SQUAT, 3, 0, null));
+        assertEquals(MotionPattern.ERROR_NONE, evaluate(SQUAT, 1, 0, null));
+    }
+
+    @Test
+    public void evaluate_lastMatchingRuleWins() {
+        engine.load("squat too_slow if value acc_y > 1\n"
+                + "squat too_fast if value acc_y > 2\n"
+                + "squat wrong_angle if value gyro_x < -1\n");
+        assertEquals(MotionPattern.ERROR_NONE, evaluate(SQUAT, 0, 0, null));
+        assertEquals(MotionPattern.ERROR_TOO_SLOW, evaluate(SQUAT, 1.5f, 0, null));
+        assertEquals(MotionPattern.ERROR_TOO_FAST, evaluate(SQUAT, 2.5f, 0, null));
+        assertEquals(MotionPattern.ERROR_WRONG_ANGLE, evaluate(SQUAT, 2.5f, -2, null));
+
+        // The same rules in the other order: the broader rule now hides the narrower one
+        engine.load("squat too_fast if value acc_y > 2\n"
+                + "squat too_slow if value acc_y > 1\n");
+        assertEquals(MotionPattern.ERROR_TOO_SLOW, evaluate(SQUAT, 2.5f, 0, null));
+    }
+
+    @Test
+    public void evaluate_alwaysRulesAndFallbackGroup() {
+        engine.load("squat too_slow always\n"
+                + "squat too_fast if value acc_y > 2\n"
+                + "* wrong_angle always\n"
+                + "* incomplete_range if value acc_y > 2\n");
+        assertEquals(MotionPattern.ERROR_TOO_SLOW, evaluate(SQUAT, 0, 0, null));
+        assertEquals(MotionPattern.ERROR_TOO_FAST, evaluate(SQUAT, 3, 0, null));
+
+        // Exercises without rules of their own, and unknown ones, use "*"
+        assertEquals(MotionPattern.ERROR_WRONG_ANGLE, evaluate(MotionAnalyzer.EXERCISE_PLANK, 0, 0, null));
+        assertEquals(MotionPattern.ERROR_INCOMPLETE_RANGE, evaluate(MotionAnalyzer.EXERCISE_PLANK, 3, 0, null));
+        assertEquals(MotionPattern.ERROR_WRONG_ANGLE, evaluate(-1, 0, 0, null));
+        assertEquals(MotionPattern.ERROR_WRONG_ANGLE, evaluate(MotionAnalyzer.EXERCISE_COUNT, 0, 0, null));
+
+        // Without a "*" group nothing matches
+        engine.load("squat too_slow always\n");
+        assertEquals(MotionPattern.ERROR_NONE, evaluate(MotionAnalyzer.EXERCISE_PLANK, 0, 0, null));
+    }
+
+    @Test
+    public void evaluate_unavailableFeaturesNeverMatch() {
+        engine.load("squat too_fast if std acc_y < 1\n"
+                + "squat too_slow if diff acc_y < 1\n");
+        MotionPattern pattern = new MotionPattern(new float[3], new float[3]);
+        assertEquals(MotionPattern.ERROR_NONE, engine.evaluate(SQUAT, pattern, null, 0, null));
+        assertEquals(MotionPattern.ERROR_NONE, engine.evaluate(SQUAT, pattern, null, 0, new RollingFeatures(5)));
+        assertEquals(MotionPattern.ERROR_NONE, engine.evaluate(SQUAT, pattern, templates(0, 0), 1, null));
+    }
+
+    @Test
+    public void reloadIfChanged_keepsCurrentRulesOnABadFile() throws IOException {
+        int defaultCount = engine.getRuleCount();
+
+        write("squat too_fast always\n");
+        assertTrue(engine.reloadIfChanged(file));
+        assertEquals(1, engine.getRuleCount());
+        assertFalse(engine.reloadIfChanged(file));
+
+        // A typo in the pushed file leaves the last good table in place
+        write("squat too_fast always\nsquat too_slow if jerk acc_y >> 3\n");
+        assertFalse(engine.reloadIfChanged(file));
+        assertEquals(1, engine.getRuleCount());
+        assertEquals(MotionPattern.ERROR_TOO_FAST, evaluate(SQUAT, 0, 0, null));
+
+        write("squat too_slow always\nsquat too_fast if value acc_y > 2\n");
+        assertTrue(engine.reloadIfChanged(file));
+        assertEquals(2, engine.getRuleCount());
+        assertEquals(MotionPattern.ERROR_TOO_SLOW, evaluate(SQUAT, 0, 0, null));
+
+        // Removing the file goes back to the built-in rules
+        assertTrue(file.delete());
+        assertTrue(engine.reloadIfChanged(file));
+        assertEquals(defaultCount, engine.getRuleCount());
+    }
+
+    @Test
+    public void defaultRules_matchRemovedSquatSwitch() {
+        // acc y, gyro x, reference acc y, reference gyro x, acc y change over 0.1 s (NaN: no window)
+        float[][] table = {
+                {0, 0, 0, 0, Float.NaN},
+                {-3, 0, 0, 0, Float.NaN},
+                {-3.01f, 0, 0, 0, Float.NaN},
+                {3, 0, 0, 0, Float.NaN},
+                {3.01f, 0, 0, 0, Float.NaN},
+                {5, 0, 1, 0, Float.NaN},
+                {-5, 0, -1, 0, Float.NaN},
+                {0, 1, 0, 0, Float.NaN},
+                {0, 1.01f, 0, 0, Float.NaN},
+                {0, -1.01f, 0, 0, Float.NaN},
+                {4, 2, 0, 0, Float.NaN},
+                {0, 0, 0, 0, 0},
+                {0, 0, 0, 0, 9.9f},
+                {0, 0, 0, 0, 10.1f},
+                {4, 0, 0, 0, 10.1f},
+                {-4, 0, 0, 0, 5},
+                {4, 0, 0, 0, 10.1f},
+                {4, 2, 0, 0, 10.1f},
+                {0, 0.5f, 0, -0.6f, 12},
+        };
+        for (int row = 0; row < table.length; row++) {
+            float[] r = table[row];
+            RollingFeatures features = null;
+            if (!Float.isNaN(r[4])) {
+                features = new RollingFeatures(MotionAnalyzer.DEFAULT_FEATURE_WINDOW);
+                features.addSample(new float[]{0, 0, 9.8f}, new float[3], 0);
+                features.addSample(new float[]{0, r[4], 9.8f}, new float[3], 100);
+            }
+            compare("Row " + row, r[0], r[1], r[2], r[3], features);
+        }
+
+        // And a random sweep with real windows, including ones with a single sample
+        Random random = new Random(19);
+        for (int trial = 0; trial < 20000; trial++) {
+            RollingFeatures features = null;
+            if (trial % 4 != 0) {
+                features = new RollingFeatures(MotionAnalyzer.DEFAULT_FEATURE_WINDOW);
+                int samples = 1 + random.nextInt(8);
+                for (int i = 0; i < samples; i++) {
+                    features.addSample(new float[]{0, (float) random.nextGaussian() * 3, 9.8f},
+                            new float[3], i * 20L);
+                }
+            }
+            compare("Trial " + trial,
+                    (float) random.nextGaussian() * 4, (float) random.nextGaussian() * 1.5f,
+                    (float) random.nextGaussian() * 2, (float) random.nextGaussian(), features);
+        }
+    }
+
+    private void compare(String label, float accY, float gyroX, float refAccY, float refGyroX,
+                         RollingFeatures features) {
+        MotionPattern pattern = new MotionPattern(new float[]{0.5f, accY, 9.8f}, new float[]{gyroX, 0.2f, -0.1f});
+        ExerciseTemplates templates = templates(refAccY, refGyroX);
+        assertEquals(label, legacyErrorType(pattern, templates, 0, features),
+                engine.evaluate(SQUAT, pattern, templates, 0, features));
+    }
+
+    /**
+     * The squat case of MotionAnalyzer.determineErrorType before the rule table replaced it
+     */
+    private static int legacyErrorType(MotionPattern currentPattern, ExerciseTemplates templates,
+                                       int referenceIndex, RollingFeatures features) {
+        int error = MotionPattern.ERROR_NONE;
+        float[] currAcc = currentPattern.getAccelerationData();
+        float[] currGyro = currentPattern.getGyroscopeData();
+
+        float refVerticalAcc = templates.getValue(referenceIndex, 1);
+        float verticalAccDiff = Math.abs(currAcc[1] - refVerticalAcc);
+        if (features != null && features.getCount() > 1
+                && features.getJerk(RepetitionCounter.AXIS_ACC_Y) > 50.0f) {
+            error = MotionPattern.ERROR_TOO_FAST;
+        } else if (verticalAccDiff > 3.0f) {
+            if (currAcc[1] < refVerticalAcc) {
+                error = MotionPattern.ERROR_TOO_FAST;
+            } else {
+                error = MotionPattern.ERROR_TOO_SLOW;
+            }
+        }
+
+        float rotationDiff = Math.abs(currGyro[0] - templates.getValue(referenceIndex, 3));
+        if (rotationDiff > 1.0f) {
+            error = MotionPattern.ERROR_WRONG_ANGLE;
+        }
+        return error;
+    }
+
+    private int evaluate(int exerciseType, float accY, float gyroX, RollingFeatures features) {
+        MotionPattern pattern = new MotionPattern(new float[]{0, accY, 0}, new float[]{gyroX, 0, 0});
+        return engine.evaluate(exerciseType, pattern, null, 0, features);
+    }
+
+    private static ExerciseTemplates templates(float accY, float gyroX) {
+        return new ExerciseTemplates(SQUAT, new float[]{0.3f, accY, 9.6f, gyroX, 0.1f, 0},
+                new int[]{MotionPattern.TYPE_CORRECT}, Integer.MAX_VALUE);
+    }
+
+    private void write(String rules) throws IOException {
+        try (OutputStream output = new FileOutputStream(file)) {
+            output.write(rules.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.asiah.formfit.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks bucket boundaries and the 12.5% percentile bound of the latency histogram
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets_splitOctavesIntoEighths() {
+        assertEquals(7, LatencyHistogram.bucketOf(7));
+        assertEquals(7, LatencyHistogram.upperBound(7));
+        assertEquals(8, LatencyHistogram.bucketOf(8));
+        assertEquals(8, LatencyHistogram.upperBound(8));
+        assertEquals(15, LatencyHistogram.bucketOf(15));
+        assertEquals(15, LatencyHistogram.upperBound(15));
+        // From 16 on each bucket spans two or more values
+        assertEquals(16, LatencyHistogram.bucketOf(16));
+        assertEquals(16, LatencyHistogram.bucketOf(17));
+        assertEquals(17, LatencyHistogram.upperBound(16));
+        assertEquals(17, LatencyHistogram.bucketOf(18));
+
+        int last = LatencyHistogram.bucketOf(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBound(last));
+        assertEquals(last - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE - (1L << 59)));
+    }
+
+    @Test
+    public void buckets_boundEveryValueWithinAnEighth() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            long value = (random.nextLong() >>> 1) >>> random.nextInt(63);
+            int bucket = LatencyHistogram.bucketOf(value);
+            long upper = LatencyHistogram.upperBound(bucket);
+            long lower = bucket == 0 ? 0 : LatencyHistogram.upperBound(bucket - 1) + 1;
+            assertTrue(value + " in [" + lower + ", " + upper + "]", lower <= value && value <= upper);
+            assertTrue(value + " bucket too wide", (double) (upper - lower) <= Math.max(0, lower / 8.0));
+        }
+    }
+
+    @Test
+    public void percentiles_onKnownDistributions() {
+        // Exact below 8
+        LatencyHistogram small = new LatencyHistogram("small");
+        for (int value = 0; value < 8; value++) {
+            small.record(value);
+        }
+        assertEquals(3, small.getPercentile(50));
+        assertEquals(7, small.getPercentile(100));
+        assertEquals(0, small.getPercentile(0));
+
+        // A constant is reported exactly, capped by the maximum
+        LatencyHistogram constant = new LatencyHistogram("constant");
+        for (int i = 0; i < 1000; i++) {
+            constant.record(1_234_567);
+        }
+        assertEquals(1_234_567, constant.getPercentile(50));
+        assertEquals(1_234_567, constant.getPercentile(99.9));
+        assertEquals(1_234_567, constant.getMean());
+
+        // Uniform and long-tailed samples: never below the true percentile, at most 12.5% above
+        Random random = new Random(2);
+        long[][] distributions = new long[2][100000];
+        for (int i = 0; i < distributions[0].length; i++) {
+            distributions[0][i] = 1 + random.nextInt(10_000_000);
+            distributions[1][i] = (long) (100_000 * Math.exp(random.nextGaussian() * 1.5));
+        }
+        double[] percentiles = {1, 25, 50, 90, 99, 99.9, 100};
+        for (long[] samples : distributions) {
+            LatencyHistogram histogram = new LatencyHistogram("latency");
+            for (long sample : samples) {
+                histogram.record(sample);
+            }
+            long[] sorted = samples.clone();
+            Arrays.sort(sorted);
+            for (double percentile : percentiles) {
+                int rank = (int) Math.max(1, Math.ceil(sorted.length * percentile / 100.0));
+                long exact = sorted[rank - 1];
+                long reported = histogram.getPercentile(percentile);
+                assertTrue("p" + percentile + " " + reported + " below " + exact, reported >= exact);
+                assertTrue("p" + percentile + " " + reported + " vs " + exact, reported <= exact * 1.125);
+            }
+            assertEquals(sorted[sorted.length - 1], histogram.getMax());
+        }
+    }
+
+    @Test
+    public void record_clampsNegativeDurations() {
+        LatencyHistogram histogram = new LatencyHistogram("clock");
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(100));
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    public void add_matchesRecordingEverything() {
+        Random random = new Random(3);
+        LatencyHistogram whole = new LatencyHistogram("whole");
+        LatencyHistogram left = new LatencyHistogram("left");
+        LatencyHistogram right = new LatencyHistogram("right");
+        for (int i = 0; i < 50000; i++) {
+            long value = (long) (50_000 * Math.exp(random.nextGaussian()));
+            whole.record(value);
+            (i % 3 == 0 ? left : right).record(value);
+        }
+
+        left.add(right);
+        assertEquals(whole.getCount(), left.getCount());
+        assertEquals(whole.getMax(), left.getMax());
+        assertEquals(whole.getMean(), left.getMean());
+        for (double percentile = 0; percentile <= 100; percentile += 0.5) {
+            assertEquals(whole.getPercentile(percentile), left.getPercentile(percentile));
+        }
+        // The source is left unchanged
+        assertEquals(50000 - 16667, right.getCount());
+    }
+
+    @Test
+    public void reset_clearsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram("reset");
+        histogram.record(1000);
+        histogram.record(5_000_000);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getPercentile(99));
+
+        histogram.record(40);
+        assertEquals(40, histogram.getPercentile(50));
+        assertEquals(40, histogram.getMax());
+    }
+}
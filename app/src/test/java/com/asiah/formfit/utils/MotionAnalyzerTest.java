@@ -0,0 +1,255 @@
+package com.asiah.formfit.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import android.content.ComponentCallbacks2;
+
+import com.asiah.formfit.model.MotionPattern;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Local unit tests for MotionAnalyzer pattern detection
+ */
+public class MotionAnalyzerTest {
+
+    private MotionAnalyzer analyzer;
+
+    @Before
+    public void setUp() {
+        analyzer = new MotionAnalyzer();
+    }
+
+    @Test
+    public void detectPattern_standingSquatIsCorrect() {
+        MotionPattern pattern = analyzer.detectPattern(
+                new float[]{0, 0, 9.8f}, new float[]{0, 0, 0}, MotionAnalyzer.EXERCISE_SQUAT);
+
+        assertEquals(MotionPattern.TYPE_CORRECT, pattern.getType());
+        assertEquals(1.0f, pattern.getConfidence(), 1e-6f);
+    }
+
+    @Test
+    public void detectPattern_callerHolderMatchesAllocatingPath() {
+        float[][] acc = {{0, 0, 9.8f}, {0, -2.0f, 9.5f}, {0, -12.0f, 9.8f}, {3, 8, -4}};
+        float[][] gyro = {{0, 0, 0}, {0.5f, 0, 0}, {0, 0, 0}, {6, -6, 2}};
+        MotionPattern holder = new MotionPattern();
+
+        for (int i = 0; i < acc.length; i++) {
+            MotionPattern expected = analyzer.detectPattern(acc[i], gyro[i], MotionAnalyzer.EXERCISE_SQUAT);
+            assertTrue(analyzer.detectPattern(acc[i], gyro[i], MotionAnalyzer.EXERCISE_SQUAT, holder));
+
+            assertEquals(expected.getType(), holder.getType());
+            assertEquals(expected.getErrorType(), holder.getErrorType());
+            assertEquals(expected.getConfidence(), holder.getConfidence(), 0f);
+        }
+    }
+
+    @Test
+    public void detectPattern_unknownExerciseIsUnclassified() {
+        MotionPattern holder = new MotionPattern();
+        holder.setType(MotionPattern.TYPE_CORRECT);
+
+        assertFalse(analyzer.detectPattern(new float[3], new float[3], MotionAnalyzer.EXERCISE_PLANK, holder));
+        assertEquals(MotionPattern.TYPE_UNKNOWN, holder.getType());
+    }
+
+    @Test
+    public void detectPattern_doesNotAllocateAfterWarmUp() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        // Alternate good and bad samples so both classification branches are exercised
+        float[] goodAcc = {0, -1.8f, 9.6f};
+        float[] goodGyro = {0.4f, 0, 0};
+        float[] badAcc = {0, -15.0f, 3.0f};
+        float[] badGyro = {4.0f, 1.0f, 0};
+        MotionPattern holder = new MotionPattern();
+
+        runDetection(goodAcc, goodGyro, badAcc, badGyro, holder, 200_000);
+
+        // A one-off JIT transition can show up in a single round, a per-sample allocation shows up in all of them
+        long threadId = Thread.currentThread().getId();
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < 3; round++) {
+            long before = threads.getThreadAllocatedBytes(threadId);
+            runDetection(goodAcc, goodGyro, badAcc, badGyro, holder, 100_000);
+            allocated = Math.min(allocated, threads.getThreadAllocatedBytes(threadId) - before);
+        }
+
+        assertEquals("Bytes allocated by steady-state detection", 0, allocated);
+    }
+
+    private void runDetection(float[] goodAcc, float[] goodGyro, float[] badAcc, float[] badGyro,
+                              MotionPattern holder, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            if ((i & 1) == 0) {
+                analyzer.detectPattern(goodAcc, goodGyro, MotionAnalyzer.EXERCISE_SQUAT, holder);
+            } else {
+                analyzer.detectPattern(badAcc, badGyro, MotionAnalyzer.EXERCISE_SQUAT, holder);
+            }
+        }
+    }
+
+    @Test
+    public void templates_loadOnFirstUseAndReloadAfterTrim() {
+        TemplateRegistry registry = analyzer.getTemplateRegistry();
+        assertFalse(registry.isLoaded(MotionAnalyzer.EXERCISE_SQUAT));
+
+        analyzer.newSession(MotionAnalyzer.EXERCISE_SQUAT);
+        assertTrue(registry.isLoaded(MotionAnalyzer.EXERCISE_SQUAT));
+        assertFalse(registry.isLoaded(MotionAnalyzer.EXERCISE_PUSHUP));
+
+        analyzer.trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertFalse(registry.isLoaded(MotionAnalyzer.EXERCISE_SQUAT));
+
+        MotionPattern result = new MotionPattern();
+        assertTrue(analyzer.detectPattern(new float[]{0, 0, 9.8f}, new float[]{0, 0, 0},
+                MotionAnalyzer.EXERCISE_SQUAT, result));
+        assertEquals(2, registry.getLoadCount());
+    }
+
+    @Test
+    public void referenceLibrary_reusesTemplatesBuiltForItsThreshold() {
+        List<MotionPattern> patterns = randomPatterns(new Random(3), 40);
+        ReferenceLibrary library = ReferenceLibrary.fromPatterns(
+                Collections.singletonMap(MotionAnalyzer.EXERCISE_SQUAT, patterns), 10);
+        ExerciseTemplates indexed = library.getTemplates(MotionAnalyzer.EXERCISE_SQUAT);
+        assertTrue(indexed.isIndexed());
+
+        // Same threshold, or one that still indexes: the built index is kept
+        assertTrue(library.withTemplates(indexed).getTemplates(MotionAnalyzer.EXERCISE_SQUAT) == indexed);
+        assertTrue(library.withIndexThreshold(20).getTemplates(MotionAnalyzer.EXERCISE_SQUAT) == indexed);
+
+        ExerciseTemplates linear = library.withIndexThreshold(100).getTemplates(MotionAnalyzer.EXERCISE_SQUAT);
+        assertFalse(linear.isIndexed());
+        assertTrue(linear.withIndexThreshold(40) == linear);
+    }
+
+    @Test
+    public void sessions_classifyConcurrentlyWhileTemplatesAreSwapped() throws Exception {
+        final List<MotionPattern> patterns = randomPatterns(new Random(5), 200);
+        final MotionAnalyzer shared = new MotionAnalyzer(ReferenceLibrary.fromPatterns(
+                Collections.singletonMap(MotionAnalyzer.EXERCISE_SQUAT, patterns), 1000));
+        final int threads = 8;
+        final int samples = 5000;
+
+        // Each thread's stream, classified up front by a session of its own
+        final float[][] streams = new float[threads][];
+        final int[][] expected = new int[threads][];
+        final float[][] expectedConfidence = new float[threads][];
+        for (int t = 0; t < threads; t++) {
+            Random random = new Random(100 + t);
+            streams[t] = new float[samples * MotionAnalyzer.SAMPLE_STRIDE];
+            for (int i = 0; i < streams[t].length; i++) {
+                streams[t][i] = (float) random.nextGaussian() * 4;
+            }
+            expected[t] = new int[samples * 2];
+            expectedConfidence[t] = new float[samples];
+            classify(shared.newSession(MotionAnalyzer.EXERCISE_SQUAT), streams[t], expected[t], expectedConfidence[t]);
+        }
+
+        // Swap between linear and indexed copies of the same references while sessions run
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Thread[] workers = new Thread[threads];
+        Thread swapper = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; isAlive(workers); i++) {
+                    if (i % 3 == 0) {
+                        shared.setReferencePatterns(MotionAnalyzer.EXERCISE_SQUAT, patterns);
+                    } else {
+                        shared.setIndexThreshold(i % 2 == 0 ? 0 : 1000);
+                    }
+                    Thread.yield();
+                }
+            }
+        });
+
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            workers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        int[] actual = new int[samples * 2];
+                        float[] confidence = new float[samples];
+                        for (int round = 0; round < 5; round++) {
+                            classify(shared.newSession(MotionAnalyzer.EXERCISE_SQUAT),
+                                    streams[thread], actual, confidence);
+                            for (int i = 0; i < actual.length; i++) {
+                                assertEquals("Thread " + thread + " value " + i, expected[thread][i], actual[i]);
+                            }
+                            for (int i = 0; i < samples; i++) {
+                                assertEquals(expectedConfidence[thread][i], confidence[i], 0f);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+        }
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        swapper.start();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        swapper.join();
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+
+    private static boolean isAlive(Thread[] threads) {
+        for (Thread thread : threads) {
+            if (thread == null || thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void classify(MotionSession session, float[] stream, int[] types, float[] confidence) {
+        float[] acc = new float[3];
+        float[] gyro = new float[3];
+        for (int i = 0; i < confidence.length; i++) {
+            System.arraycopy(stream, i * MotionAnalyzer.SAMPLE_STRIDE, acc, 0, 3);
+            System.arraycopy(stream, i * MotionAnalyzer.SAMPLE_STRIDE + 3, gyro, 0, 3);
+            MotionPattern pattern = session.addSample(acc, gyro, i);
+            types[i * 2] = pattern.getType();
+            types[i * 2 + 1] = pattern.getErrorType();
+            confidence[i] = pattern.getConfidence();
+        }
+    }
+
+    private static List<MotionPattern> randomPatterns(Random random, int count) {
+        List<MotionPattern> patterns = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            MotionPattern pattern = new MotionPattern(
+                    new float[]{(float) random.nextGaussian() * 4, (float) random.nextGaussian() * 4,
+                            (float) random.nextGaussian() * 4},
+                    new float[]{(float) random.nextGaussian() * 4, (float) random.nextGaussian() * 4,
+                            (float) random.nextGaussian() * 4});
+            pattern.setType(random.nextInt(4) == 0 ? MotionPattern.TYPE_INCORRECT : MotionPattern.TYPE_CORRECT);
+            patterns.add(pattern);
+        }
+        return patterns;
+    }
+}
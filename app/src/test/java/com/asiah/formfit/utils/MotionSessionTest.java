@@ -0,0 +1,189 @@
+package com.asiah.formfit.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.asiah.formfit.model.MotionPattern;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Checks the classification cascade and the ways samples enter a session
+ */
+public class MotionSessionTest {
+
+    private final MotionAnalyzer analyzer = new MotionAnalyzer();
+
+    @Test
+    public void cascade_matchesFullMatching() {
+        MotionSession cascade = analyzer.newSession(MotionAnalyzer.EXERCISE_SQUAT);
+        MotionSession full = analyzer.newSession(MotionAnalyzer.EXERCISE_SQUAT);
+        full.setCascadeEnabled(false);
+
+        float[] acc = new float[3];
+        float[] gyro = new float[3];
+        float[] mean = new float[3];
+        float[] meanGyro = new float[3];
+        float confidenceBound = MotionSession.GATE_DISTANCE / MotionPattern.MAX_DISTANCE + 1e-5f;
+        Random random = new Random(21);
+        int samples = 30000;
+        for (int i = 0; i < samples; i++) {
+            streamSample(random, i, acc, gyro);
+            long before = cascade.getGatedCount();
+            MotionPattern expected = full.addSample(acc, gyro, i * 20L);
+            int expectedType = expected.getType();
+            int expectedError = expected.getErrorType();
+            float expectedConfidence = expected.getConfidence();
+
+            MotionPattern actual = cascade.addSample(acc, gyro, i * 20L);
+            String label = "Sample " + i;
+            assertEquals(label, expectedType, actual.getType());
+            assertEquals(label, expectedError, actual.getErrorType());
+            float tolerance = cascade.getGatedCount() > before ? confidenceBound : 1e-5f;
+            assertEquals(label, expectedConfidence, actual.getConfidence(), tolerance);
+
+            // Gated or not, the result reports the current window mean
+            cascade.getFeatures().getMeans(mean, meanGyro);
+            assertArrayEquals(label, mean, actual.getAccelerationData(), 0f);
+            assertArrayEquals(label, meanGyro, actual.getGyroscopeData(), 0f);
+            assertEquals(i * 20L, actual.getTimestamp());
+        }
+
+        assertEquals(samples, cascade.getGatedCount() + cascade.getMarginCount() + cascade.getFullMatchCount());
+        assertTrue("Gated " + cascade.getGatedCount(), cascade.getGatedCount() > samples / 10);
+        assertTrue("Margin " + cascade.getMarginCount(), cascade.getMarginCount() > samples / 10);
+        assertTrue("Full " + cascade.getFullMatchCount(), cascade.getFullMatchCount() > samples / 10);
+        assertEquals(0, full.getGatedCount() + full.getMarginCount() + full.getFullMatchCount());
+        assertEquals(full.getFormAccuracy(), cascade.getFormAccuracy(), 0f);
+    }
+
+    @Test
+    public void addFrame_skipsFramesWherePreferredDeviceIsStale() {
+        MotionSession frames = analyzer.newSession(MotionAnalyzer.EXERCISE_SQUAT);
+        MotionSession expected = analyzer.newSession(MotionAnalyzer.EXERCISE_SQUAT);
+        SensorFrame frame = new SensorFrame(3);
+        float[] values = frame.getValues();
+        int stride = MotionAnalyzer.SAMPLE_STRIDE;
+        float[] acc = new float[3];
+        float[] gyro = new float[3];
+        Random random = new Random(20);
+
+        int skipped = 0;
+        for (int i = 0; i < 5000; i++) {
+            long timestamp = i * 20L;
+            streamSample(random, i, acc, gyro);
+            for (int device = 0; device < 3; device++) {
+                for (int axis = 0; axis < 3; axis++) {
+                    // Devices 0 and 2 sit elsewhere on the body and read very differently
+                    float offset = device == 1 ? 0 : 5f * (device + 1);
+                    values[device * stride + axis] = acc[axis] + offset;
+                    values[device * stride + 3 + axis] = gyro[axis] - offset;
+                }
+            }
+            frame.setTimestamp(timestamp);
+            // The preferred device 1 drops out for a stretch now and then; the others stay fresh
+            boolean stale = i % 300 >= 280;
+            frame.setStaleMask(stale ? 0b010 : 0);
+
+            MotionPattern actual = frames.addFrame(frame, 1);
+            if (stale) {
+                assertNull(actual);
+                skipped++;
+                continue;
+            }
+            MotionPattern reference = expected.addSample(acc, gyro, timestamp);
+            String label = "Frame " + i;
+            assertEquals(label, reference.getType(), actual.getType());
+            assertEquals(label, reference.getErrorType(), actual.getErrorType());
+            assertEquals(label, reference.getConfidence(), actual.getConfidence(), 0f);
+            assertEquals(label, timestamp, actual.getTimestamp());
+        }
+
+        assertTrue(skipped > 0);
+        assertEquals(expected.getInputCount(), frames.getInputCount());
+        assertEquals(5000 - skipped, frames.getInputCount());
+        assertEquals(expected.getRepetitionCount(), frames.getRepetitionCount());
+        assertEquals(expected.getFormAccuracy(), frames.getFormAccuracy(), 0f);
+
+        // Fresh data from the other devices is not a substitute
+        frame.setStaleMask(0b010);
+        assertNull(frames.addFrame(frame, 1));
+        frame.setStaleMask(0b111);
+        assertNull(frames.addFrame(frame, 0));
+    }
+
+    @Test
+    public void addSamples_matchesOneSampleAtATime() {
+        int stride = MotionAnalyzer.SAMPLE_STRIDE;
+        float[] acc = new float[3];
+        float[] gyro = new float[3];
+        Random random = new Random(23);
+
+        // Plain and decimated sessions, so blocks that end between decimator outputs are covered
+        for (float inputRate : new float[]{0, 200}) {
+            MotionSession batched = analyzer.newSession(MotionAnalyzer.EXERCISE_SQUAT);
+            MotionSession single = analyzer.newSession(MotionAnalyzer.EXERCISE_SQUAT);
+            batched.setInputRate(inputRate);
+            single.setInputRate(inputRate);
+
+            float interval = inputRate > 0 ? 1000f / inputRate : 20f;
+            long timestamp = 0;
+            int i = 0;
+            while (i < 6000) {
+                int count = 1 + random.nextInt(13);
+                int offset = random.nextInt(4);
+                // Unrelated values around the block must not be read
+                float[] block = new float[(offset + count + 2) * stride];
+                for (int v = 0; v < block.length; v++) {
+                    block[v] = 1000;
+                }
+
+                MotionPattern expected = null;
+                for (int k = 0; k < count; k++, i++) {
+                    streamSample(random, i, acc, gyro);
+                    System.arraycopy(acc, 0, block, (offset + k) * stride, 3);
+                    System.arraycopy(gyro, 0, block, (offset + k) * stride + 3, 3);
+                    expected = single.addSample(acc, gyro, timestamp + Math.round(k * interval));
+                }
+                int expectedType = expected.getType();
+                int expectedError = expected.getErrorType();
+                float expectedConfidence = expected.getConfidence();
+                long expectedTimestamp = expected.getTimestamp();
+
+                MotionPattern actual = batched.addSamples(block, offset, count, timestamp, interval);
+                String label = "Rate " + inputRate + " sample " + i;
+                assertEquals(label, expectedType, actual.getType());
+                assertEquals(label, expectedError, actual.getErrorType());
+                assertEquals(label, expectedConfidence, actual.getConfidence(), 0f);
+                assertEquals(label, expectedTimestamp, actual.getTimestamp());
+                timestamp += Math.round(count * interval);
+            }
+
+            assertEquals(single.getInputCount(), batched.getInputCount());
+            assertEquals(single.getSampleCount(), batched.getSampleCount());
+            assertEquals(inputRate > 0, batched.getSampleCount() < batched.getInputCount());
+            assertEquals(single.getRepetitionCount(), batched.getRepetitionCount());
+            assertEquals(single.getFormAccuracy(), batched.getFormAccuracy(), 0f);
+            assertNull(batched.addSamples(new float[stride], 0, 0, timestamp, interval));
+        }
+    }
+
+    /**
+     * Alternating stretches of standing still, slow drift and vigorous movement
+     */
+    private static void streamSample(Random random, int i, float[] acc, float[] gyro) {
+        int phase = (i / 500) % 3;
+        float noise = phase == 0 ? 0.01f : phase == 1 ? 0.05f : 2f;
+        float swing = phase == 1 ? -2f * (float) Math.sin(Math.PI * (i % 500) / 500.0) : 0;
+        acc[0] = (float) random.nextGaussian() * noise;
+        acc[1] = swing + (float) random.nextGaussian() * noise;
+        acc[2] = 9.8f + (float) random.nextGaussian() * noise;
+        gyro[0] = -swing * 0.25f + (float) random.nextGaussian() * noise;
+        gyro[1] = (float) random.nextGaussian() * noise;
+        gyro[2] = (float) random.nextGaussian() * noise;
+    }
+}
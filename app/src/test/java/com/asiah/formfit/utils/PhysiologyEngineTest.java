@@ -0,0 +1,154 @@
+package com.asiah.formfit.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Checks calories, heart-rate zones and the timeouts of the physiology engine
+ */
+public class PhysiologyEngineTest {
+
+    private static final int SQUAT = MotionAnalyzer.EXERCISE_SQUAT;
+    private static final float MASS = 70f;
+    private static final float MAX_HR = 200f;
+    private static final float REST_HR = 60f;
+
+    // kcal per second at 1 MET for MASS
+    private static final double KCAL_PER_MET_SECOND = MASS / 3600.0;
+
+    private static PhysiologyEngine engine() {
+        return new PhysiologyEngine(SQUAT, MASS, MAX_HR, REST_HR);
+    }
+
+    @Test
+    public void calories_useExerciseMetWhileRepsKeepComing() {
+        PhysiologyEngine engine = engine();
+        for (long t = 0; t <= 60000; t += 2000) {
+            engine.addRepetition(t);
+        }
+        assertEquals(31, engine.getRepetitionCount());
+        assertEquals(5.0 * 60 * KCAL_PER_MET_SECOND, engine.getCalories(), 1e-9);
+        assertEquals(0.0, engine.getTrainingLoad(), 0.0);
+    }
+
+    @Test
+    public void calories_restWithoutRepsOrHeartRate() {
+        PhysiologyEngine engine = engine();
+        for (long t = 0; t <= 60000; t += 1000) {
+            engine.update(t);
+        }
+        assertEquals(60 * KCAL_PER_MET_SECOND, engine.getCalories(), 1e-9);
+    }
+
+    @Test
+    public void calories_nominalReserveBurnsExerciseMet() {
+        PhysiologyEngine engine = engine();
+        float bpm = REST_HR + 0.6f * (MAX_HR - REST_HR);
+        for (long t = 0; t <= 60000; t += 1000) {
+            assertTrue(engine.addHeartRate(bpm, t));
+        }
+        assertEquals(bpm, engine.getHeartRate(), 1e-4f);
+        assertEquals(0.6f, engine.getHeartRateReserve(), 1e-5f);
+        assertEquals(5.0 * 60 * KCAL_PER_MET_SECOND, engine.getCalories(), 1e-4);
+
+        // One minute in zone 3, 70-80% of maximum
+        assertEquals(3, engine.getZone());
+        assertEquals(60000, engine.getZoneMillis(3));
+        assertEquals(0.6 * 0.64 * Math.exp(1.92 * 0.6), engine.getTrainingLoad(), 1e-4);
+    }
+
+    @Test
+    public void getZone_boundariesAtTenPercentSteps() {
+        float[] bpms = {30, 99.9f, 100, 119.9f, 120, 139.9f, 140, 159.9f, 160, 179.9f, 180, 200, 240};
+        int[] zones = {0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 5};
+        for (int i = 0; i < bpms.length; i++) {
+            PhysiologyEngine engine = engine();
+            assertTrue(engine.addHeartRate(bpms[i], 0));
+            assertEquals("BPM " + bpms[i], zones[i], engine.getZone());
+        }
+    }
+
+    @Test
+    public void addHeartRate_dropsImplausibleReadings() {
+        PhysiologyEngine engine = engine();
+        assertTrue(engine.addHeartRate(100, 0));
+
+        float[] readings = {0, -5, 29.9f, 240.1f, 500, Float.NaN, Float.POSITIVE_INFINITY};
+        for (float bpm : readings) {
+            assertFalse("BPM " + bpm, engine.addHeartRate(bpm, 5000));
+        }
+        assertEquals(100f, engine.getHeartRate(), 0f);
+        // A dropped reading does not advance the totals either
+        assertEquals(0.0, engine.getCalories(), 0.0);
+
+        assertTrue(engine.addHeartRate(30, 6000));
+        assertTrue(engine.addHeartRate(240, 7000));
+    }
+
+    @Test
+    public void heartRate_timesOutAfterTenSeconds() {
+        PhysiologyEngine engine = engine();
+        float bpm = REST_HR + 0.6f * (MAX_HR - REST_HR);
+        engine.addHeartRate(bpm, 0);
+        engine.update(5000);
+        engine.update(10000);
+        assertEquals(10000, engine.getZoneMillis(3));
+
+        // Past the timeout the reading no longer counts and the exercise is at rest
+        engine.update(15000);
+        assertEquals(10000, engine.getZoneMillis(3));
+        assertEquals((5.0 * 10 + 5) * KCAL_PER_MET_SECOND, engine.getCalories(), 1e-4);
+
+        // A stale rate is replaced rather than smoothed towards
+        engine.addHeartRate(100, 20000);
+        assertEquals(100f, engine.getHeartRate(), 0f);
+        engine.addHeartRate(160, 21000);
+        assertEquals(100f + 1000f / 6000f * 60f, engine.getHeartRate(), 1e-4f);
+    }
+
+    @Test
+    public void repetitions_keepExerciseActiveForTenSeconds() {
+        PhysiologyEngine engine = engine();
+        engine.addRepetition(0);
+        engine.update(5000);
+        engine.update(10000);
+        assertEquals(5.0 * 10 * KCAL_PER_MET_SECOND, engine.getCalories(), 1e-9);
+
+        engine.update(15000);
+        assertEquals((5.0 * 10 + 5) * KCAL_PER_MET_SECOND, engine.getCalories(), 1e-9);
+    }
+
+    @Test
+    public void update_skipsGapsLongerThanTenSeconds() {
+        PhysiologyEngine engine = engine();
+        engine.update(0);
+        engine.update(10000);
+        assertEquals(10 * KCAL_PER_MET_SECOND, engine.getCalories(), 1e-9);
+
+        // A paused session adds nothing, then integration resumes from the new time
+        engine.update(10000 + 5 * 60000);
+        assertEquals(10 * KCAL_PER_MET_SECOND, engine.getCalories(), 1e-9);
+        engine.update(11000 + 5 * 60000);
+        assertEquals(11 * KCAL_PER_MET_SECOND, engine.getCalories(), 1e-9);
+    }
+
+    @Test
+    public void reset_clearsTotals() {
+        PhysiologyEngine engine = engine();
+        engine.addHeartRate(150, 0);
+        engine.addRepetition(1000);
+        engine.update(5000);
+        engine.reset();
+
+        assertEquals(0.0, engine.getCalories(), 0.0);
+        assertEquals(0.0, engine.getTrainingLoad(), 0.0);
+        assertEquals(0, engine.getRepetitionCount());
+        assertEquals(0f, engine.getHeartRate(), 0f);
+        for (int zone = 0; zone < PhysiologyEngine.ZONE_COUNT; zone++) {
+            assertEquals(0, engine.getZoneMillis(zone));
+        }
+    }
+}
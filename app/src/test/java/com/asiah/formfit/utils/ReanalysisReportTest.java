@@ -0,0 +1,108 @@
+package com.asiah.formfit.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import com.asiah.formfit.model.MotionPattern;
+
+import org.junit.Test;
+
+/**
+ * Checks confusion counting, repetition error and merging of re-analysis reports
+ */
+public class ReanalysisReportTest {
+
+    @Test
+    public void addSample_countsConfusionByPredictedClass() {
+        ReanalysisReport report = new ReanalysisReport();
+
+        report.addSample(MotionPattern.ERROR_NONE, pattern(MotionPattern.TYPE_CORRECT, MotionPattern.ERROR_NONE));
+        report.addSample(MotionPattern.ERROR_NONE, pattern(MotionPattern.TYPE_INCORRECT, MotionPattern.ERROR_TOO_FAST));
+        report.addSample(MotionPattern.ERROR_TOO_FAST, pattern(MotionPattern.TYPE_INCORRECT, MotionPattern.ERROR_TOO_FAST));
+        report.addSample(MotionPattern.ERROR_TOO_FAST, pattern(MotionPattern.TYPE_CORRECT, MotionPattern.ERROR_NONE));
+        report.addSample(-1, pattern(MotionPattern.TYPE_CORRECT, MotionPattern.ERROR_NONE));
+
+        assertEquals(5, report.getSampleCount());
+        assertEquals(4, report.getLabelledSampleCount());
+        assertEquals(1, report.getConfusion(MotionPattern.ERROR_NONE, MotionPattern.ERROR_NONE));
+        assertEquals(1, report.getConfusion(MotionPattern.ERROR_NONE, MotionPattern.ERROR_TOO_FAST));
+        assertEquals(1, report.getConfusion(MotionPattern.ERROR_TOO_FAST, MotionPattern.ERROR_TOO_FAST));
+        assertEquals(1, report.getConfusion(MotionPattern.ERROR_TOO_FAST, MotionPattern.ERROR_NONE));
+        assertEquals(0.5f, report.getAccuracy(), 1e-6f);
+        assertEquals(0.5f, report.getPrecision(MotionPattern.ERROR_TOO_FAST), 1e-6f);
+        assertEquals(0.5f, report.getRecall(MotionPattern.ERROR_TOO_FAST), 1e-6f);
+        assertEquals(0f, report.getPrecision(MotionPattern.ERROR_WRONG_ANGLE), 0f);
+        assertEquals(60f, report.getFormAccuracy(), 1e-4f);
+    }
+
+    @Test
+    public void addSample_keepsUnclassifiedOutOfGoodForm() {
+        ReanalysisReport report = new ReanalysisReport();
+
+        report.addSample(MotionPattern.ERROR_NONE, pattern(MotionPattern.TYPE_UNKNOWN, MotionPattern.ERROR_NONE));
+        report.addSample(MotionPattern.ERROR_NONE, pattern(MotionPattern.TYPE_UNKNOWN, MotionPattern.ERROR_NONE));
+        report.addSample(MotionPattern.ERROR_TOO_SLOW, pattern(MotionPattern.TYPE_UNKNOWN, MotionPattern.ERROR_NONE));
+        report.addSample(MotionPattern.ERROR_NONE, pattern(MotionPattern.TYPE_CORRECT, MotionPattern.ERROR_NONE));
+
+        assertEquals(2, report.getConfusion(MotionPattern.ERROR_NONE, ReanalysisReport.PREDICTED_UNCLASSIFIED));
+        assertEquals(1, report.getConfusion(MotionPattern.ERROR_TOO_SLOW, ReanalysisReport.PREDICTED_UNCLASSIFIED));
+        assertEquals(1, report.getConfusion(MotionPattern.ERROR_NONE, MotionPattern.ERROR_NONE));
+        assertEquals(3, report.getUnclassifiedCount());
+        assertEquals(0.25f, report.getAccuracy(), 1e-6f);
+        assertEquals(1f, report.getPrecision(MotionPattern.ERROR_NONE), 1e-6f);
+        assertEquals(1f / 3, report.getRecall(MotionPattern.ERROR_NONE), 1e-6f);
+        assertEquals(25f, report.getFormAccuracy(), 1e-4f);
+    }
+
+    @Test
+    public void addSession_averagesErrorOverKnownCounts() {
+        ReanalysisReport report = new ReanalysisReport();
+        report.addSession(10, 8);
+        report.addSession(5, 7);
+        report.addSession(-1, 3);
+
+        assertEquals(3, report.getSessionCount());
+        assertEquals(18, report.getDetectedRepetitions());
+        assertEquals(2f, report.getMeanRepetitionError(), 1e-6f);
+    }
+
+    @Test
+    public void merge_matchesSingleReport() {
+        ReanalysisReport whole = new ReanalysisReport();
+        ReanalysisReport left = new ReanalysisReport();
+        ReanalysisReport right = new ReanalysisReport();
+        int[] types = {MotionPattern.TYPE_CORRECT, MotionPattern.TYPE_INCORRECT, MotionPattern.TYPE_UNKNOWN};
+
+        for (int i = 0; i < 300; i++) {
+            int expected = i % 7 == 0 ? -1 : i % ReanalysisReport.ERROR_CLASSES;
+            MotionPattern predicted = pattern(types[i % 3], (i / 3) % ReanalysisReport.ERROR_CLASSES);
+            whole.addSample(expected, predicted);
+            (i % 2 == 0 ? left : right).addSample(expected, predicted);
+        }
+        for (int i = 0; i < 10; i++) {
+            int expected = i % 4 == 0 ? -1 : i;
+            whole.addSession(expected, i * 2);
+            (i < 3 ? left : right).addSession(expected, i * 2);
+        }
+
+        left.merge(right);
+        assertEquals(whole.getSessionCount(), left.getSessionCount());
+        assertEquals(whole.getSampleCount(), left.getSampleCount());
+        assertEquals(whole.getLabelledSampleCount(), left.getLabelledSampleCount());
+        assertEquals(whole.getDetectedRepetitions(), left.getDetectedRepetitions());
+        assertEquals(whole.getMeanRepetitionError(), left.getMeanRepetitionError(), 0f);
+        assertEquals(whole.getFormAccuracy(), left.getFormAccuracy(), 0f);
+        assertEquals(whole.getUnclassifiedCount(), left.getUnclassifiedCount());
+        for (int i = 0; i < ReanalysisReport.ERROR_CLASSES; i++) {
+            for (int j = 0; j < ReanalysisReport.PREDICTED_CLASSES; j++) {
+                assertEquals(whole.getConfusion(i, j), left.getConfusion(i, j));
+            }
+        }
+    }
+
+    private static MotionPattern pattern(int type, int errorType) {
+        MotionPattern pattern = new MotionPattern();
+        pattern.setType(type);
+        pattern.setErrorType(errorType);
+        return pattern;
+    }
+}
@@ -0,0 +1,90 @@
+package com.asiah.formfit.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import com.asiah.formfit.model.MotionPattern;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that indexed reference lookups match the linear scan exactly
+ */
+public class ReferenceIndexTest {
+
+    private static final int STRIDE = MotionAnalyzer.SAMPLE_STRIDE;
+
+    @Test
+    public void findBestMatch_matchesLinearScan() {
+        Random random = new Random(42);
+        int referenceCount = 3000;
+        float[] references = new float[referenceCount * STRIDE];
+        for (int i = 0; i < references.length; i++) {
+            references[i] = (random.nextFloat() - 0.5f) * 40;
+        }
+        // Duplicates exercise the lowest-index tie-breaking
+        System.arraycopy(references, 0, references, 1000 * STRIDE, 100 * STRIDE);
+
+        ReferenceIndex index = new ReferenceIndex(references, referenceCount);
+        int queryCount = 2000;
+        float[] queries = new float[queryCount * STRIDE];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = (random.nextFloat() - 0.5f) * 60;
+        }
+        // Queries equal to references produce exact ties at similarity 1
+        System.arraycopy(references, 1000 * STRIDE, queries, 0, 50 * STRIDE);
+
+        int[] expectedIndices = new int[queryCount];
+        float[] expectedSimilarities = new float[queryCount];
+        MotionAnalyzer.scoreBatch(queries, queryCount, references, referenceCount,
+                expectedIndices, expectedSimilarities);
+
+        MotionPattern result = new MotionPattern();
+        float[] acc = new float[3];
+        float[] gyro = new float[3];
+        for (int q = 0; q < queryCount; q++) {
+            System.arraycopy(queries, q * STRIDE, acc, 0, 3);
+            System.arraycopy(queries, q * STRIDE + 3, gyro, 0, 3);
+
+            assertEquals("Index for query " + q, expectedIndices[q], index.findBestMatch(acc, gyro, result));
+            assertEquals("Similarity for query " + q, expectedSimilarities[q], result.getConfidence(), 0f);
+        }
+    }
+
+    @Test
+    public void detectPattern_indexedAndLinearAnalyzersAgree() {
+        Random random = new Random(7);
+        List<MotionPattern> patterns = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            MotionPattern pattern = new MotionPattern(
+                    new float[]{random.nextFloat() * 4 - 2, random.nextFloat() * 4 - 2, 9.8f},
+                    new float[]{random.nextFloat() - 0.5f, random.nextFloat() - 0.5f, 0});
+            pattern.setType(i % 3 == 0 ? MotionPattern.TYPE_INCORRECT : MotionPattern.TYPE_CORRECT);
+            patterns.add(pattern);
+        }
+
+        MotionAnalyzer linear = new MotionAnalyzer();
+        linear.setIndexThreshold(Integer.MAX_VALUE);
+        linear.setReferencePatterns(MotionAnalyzer.EXERCISE_SQUAT, patterns);
+        MotionAnalyzer indexed = new MotionAnalyzer();
+        indexed.setIndexThreshold(0);
+        indexed.setReferencePatterns(MotionAnalyzer.EXERCISE_SQUAT, patterns);
+
+        MotionPattern linearResult = new MotionPattern();
+        MotionPattern indexedResult = new MotionPattern();
+        for (int i = 0; i < 1000; i++) {
+            float[] acc = {random.nextFloat() * 6 - 3, random.nextFloat() * 6 - 3, 9 + random.nextFloat()};
+            float[] gyro = {random.nextFloat() * 2 - 1, random.nextFloat() * 2 - 1, 0};
+
+            linear.detectPattern(acc, gyro, MotionAnalyzer.EXERCISE_SQUAT, linearResult);
+            indexed.detectPattern(acc, gyro, MotionAnalyzer.EXERCISE_SQUAT, indexedResult);
+
+            assertEquals(linearResult.getType(), indexedResult.getType());
+            assertEquals(linearResult.getErrorType(), indexedResult.getErrorType());
+            assertEquals(linearResult.getConfidence(), indexedResult.getConfidence(), 0f);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.asiah.formfit.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.asiah.formfit.model.MotionPattern;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks the online counter against the original batch countRepetitions loop
+ */
+public class RepetitionCounterTest {
+
+    /**
+     * The loop countRepetitions ran before the counter existed, with the rep
+     * timestamps and an optional low-pass filter added
+     */
+    private static class LegacyCounter {
+
+        final float smoothing;
+        float filtered;
+        boolean started;
+        boolean inRep;
+        int count;
+        long repStart = -1;
+        long lastStart = -1;
+        long lastEnd = -1;
+
+        LegacyCounter(float smoothing) {
+            this.smoothing = smoothing;
+        }
+
+        boolean add(float value, long timestamp) {
+            filtered = started ? filtered + smoothing * (value - filtered) : value;
+            started = true;
+            if (!inRep && filtered < -1.0f) {
+                inRep = true;
+                repStart = timestamp;
+            } else if (inRep && filtered > 1.0f) {
+                inRep = false;
+                count++;
+                lastStart = repStart;
+                lastEnd = timestamp;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    @Test
+    public void unfiltered_matchesLegacyLoop() {
+        Random random = new Random(11);
+        RepetitionCounter counter = new RepetitionCounter(RepetitionCounter.AXIS_ACC_Y,
+                RepetitionCounter.DEFAULT_START_THRESHOLD, RepetitionCounter.DEFAULT_END_THRESHOLD, 1.0f);
+        LegacyCounter legacy = new LegacyCounter(1.0f);
+        List<MotionPattern> patterns = new ArrayList<>();
+
+        for (int i = 0; i < 20000; i++) {
+            long timestamp = i * 20L;
+            float value = squatWave(i) + (float) random.nextGaussian() * 0.8f;
+            MotionPattern pattern = new MotionPattern(new float[]{0, value, 9.8f}, new float[3]);
+            pattern.setTimestamp(timestamp);
+            patterns.add(pattern);
+
+            assertEquals("Sample " + i, legacy.add(value, timestamp),
+                    counter.addSample(pattern.getAccelerationData(), pattern.getGyroscopeData(), timestamp));
+            assertEquals(legacy.inRep, counter.isInRep());
+            assertEquals(legacy.lastStart, counter.getLastRepStart());
+            assertEquals(legacy.lastEnd, counter.getLastRepEnd());
+            assertEquals(legacy.inRep ? legacy.repStart : -1, counter.getCurrentRepStart());
+        }
+
+        assertTrue(legacy.count > 100);
+        assertEquals(legacy.count, counter.getCount());
+        assertEquals(legacy.count, new MotionAnalyzer().countRepetitions(patterns));
+    }
+
+    @Test
+    public void filtered_matchesLegacyLoopOnSmoothedValues() {
+        Random random = new Random(12);
+        RepetitionCounter counter = new RepetitionCounter(RepetitionCounter.AXIS_ACC_Y,
+                RepetitionCounter.DEFAULT_START_THRESHOLD, RepetitionCounter.DEFAULT_END_THRESHOLD,
+                RepetitionCounter.DEFAULT_SMOOTHING);
+        LegacyCounter legacy = new LegacyCounter(RepetitionCounter.DEFAULT_SMOOTHING);
+
+        for (int i = 0; i < 20000; i++) {
+            long timestamp = i * 20L;
+            float value = squatWave(i) + (float) random.nextGaussian() * 0.8f;
+            assertEquals("Sample " + i, legacy.add(value, timestamp), counter.addValue(value, timestamp));
+            assertEquals(legacy.filtered, counter.getFilteredValue(), 0f);
+            assertEquals(legacy.lastStart, counter.getLastRepStart());
+            assertEquals(legacy.lastEnd, counter.getLastRepEnd());
+        }
+        assertEquals(legacy.count, counter.getCount());
+    }
+
+    @Test
+    public void filter_suppressesSingleSampleSpikes() {
+        RepetitionCounter filtered = RepetitionCounter.forExercise(MotionAnalyzer.EXERCISE_SQUAT);
+        RepetitionCounter raw = new RepetitionCounter(RepetitionCounter.AXIS_ACC_Y, -1.0f, 1.0f, 1.0f);
+
+        // Alternating one-sample spikes that cross both thresholds
+        for (int i = 0; i < 100; i++) {
+            float value = i % 10 == 3 ? -2f : i % 10 == 7 ? 2f : 0f;
+            filtered.addValue(value, i);
+            raw.addValue(value, i);
+        }
+        assertEquals(10, raw.getCount());
+        assertEquals(0, filtered.getCount());
+    }
+
+    @Test
+    public void reset_clearsCountAndFilter() {
+        RepetitionCounter counter = new RepetitionCounter(RepetitionCounter.AXIS_ACC_Y, -1.0f, 1.0f, 0.5f);
+        hold(counter, RepetitionCounter.AXIS_ACC_Y, -2f, 0, 20);
+        hold(counter, RepetitionCounter.AXIS_ACC_Y, 2f, 20, 20);
+        assertEquals(1, counter.getCount());
+
+        counter.reset();
+        assertEquals(0, counter.getCount());
+        assertFalse(counter.isInRep());
+        assertEquals(-1, counter.getLastRepStart());
+        assertEquals(-1, counter.getLastRepEnd());
+
+        // The filter restarts from the next sample instead of from the old value
+        counter.addValue(-3f, 100);
+        assertEquals(-3f, counter.getFilteredValue(), 0f);
+        assertTrue(counter.isInRep());
+    }
+
+    @Test
+    public void forExercise_squatUsesVerticalAcceleration() {
+        RepetitionCounter counter = RepetitionCounter.forExercise(MotionAnalyzer.EXERCISE_SQUAT);
+        assertEquals(0, cycle(counter, RepetitionCounter.AXIS_ACC_Y, -0.9f, 0.9f));
+        assertEquals(1, cycle(counter, RepetitionCounter.AXIS_ACC_Y, -1.1f, 1.1f));
+        assertEquals(0, cycle(counter, RepetitionCounter.AXIS_GYRO_X, -1.1f, 1.1f));
+    }
+
+    @Test
+    public void forExercise_pushupUsesForwardRotation() {
+        RepetitionCounter counter = RepetitionCounter.forExercise(MotionAnalyzer.EXERCISE_PUSHUP);
+        // Starts above the start threshold and ends below the end threshold
+        assertEquals(0, cycle(counter, RepetitionCounter.AXIS_GYRO_X, 0.7f, -0.7f));
+        assertEquals(0, cycle(counter, RepetitionCounter.AXIS_GYRO_X, -0.9f, 0.9f));
+        assertEquals(1, cycle(counter, RepetitionCounter.AXIS_GYRO_X, 0.9f, -0.9f));
+        assertEquals(0, cycle(counter, RepetitionCounter.AXIS_ACC_Y, -2f, 2f));
+    }
+
+    @Test
+    public void forExercise_lungeNeedsDeeperStart() {
+        RepetitionCounter counter = RepetitionCounter.forExercise(MotionAnalyzer.EXERCISE_LUNGE);
+        assertEquals(0, cycle(counter, RepetitionCounter.AXIS_ACC_Y, -1.4f, 1.3f));
+        assertEquals(0, cycle(counter, RepetitionCounter.AXIS_ACC_Y, -1.6f, 1.1f));
+        assertEquals(1, cycle(counter, RepetitionCounter.AXIS_ACC_Y, -1.6f, 1.3f));
+    }
+
+    @Test
+    public void forExercise_plankNeverCounts() {
+        RepetitionCounter counter = RepetitionCounter.forExercise(MotionAnalyzer.EXERCISE_PLANK);
+        for (int axis = RepetitionCounter.AXIS_ACC_X; axis <= RepetitionCounter.AXIS_GYRO_Z; axis++) {
+            assertEquals(0, cycle(counter, axis, -5f, 5f));
+            assertEquals(0, cycle(counter, axis, 5f, -5f));
+        }
+    }
+
+    @Test
+    public void forExercise_othersUseDefaultThresholds() {
+        for (int exercise = MotionAnalyzer.EXERCISE_PULLUP; exercise < MotionAnalyzer.EXERCISE_COUNT; exercise++) {
+            RepetitionCounter counter = RepetitionCounter.forExercise(exercise);
+            assertEquals(0, cycle(counter, RepetitionCounter.AXIS_ACC_Y, -0.9f, 0.9f));
+            assertEquals(1, cycle(counter, RepetitionCounter.AXIS_ACC_Y, -1.1f, 1.1f));
+        }
+    }
+
+    /**
+     * Hold one axis at a start value and then an end value until the filter settles
+     * @return Number of reps completed by the cycle
+     */
+    private static int cycle(RepetitionCounter counter, int axis, float start, float end) {
+        int before = counter.getCount();
+        hold(counter, axis, start, 0, 60);
+        hold(counter, axis, end, 60, 60);
+        hold(counter, axis, 0, 120, 60);
+        return counter.getCount() - before;
+    }
+
+    private static void hold(RepetitionCounter counter, int axis, float value, long from, int samples) {
+        float[] acc = new float[3];
+        float[] gyro = new float[3];
+        if (axis < 3) {
+            acc[axis] = value;
+        } else {
+            gyro[axis - 3] = value;
+        }
+        for (int i = 0; i < samples; i++) {
+            counter.addSample(acc, gyro, from + i);
+        }
+    }
+
+    /**
+     * Vertical acceleration of a squat every 2 s at 50 Hz
+     */
+    private static float squatWave(int sample) {
+        return 2.5f * (float) Math.sin(2 * Math.PI * sample / 100.0);
+    }
+}
@@ -0,0 +1,76 @@
+package com.asiah.formfit.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Checks the O(1) rolling features against a full rescan of the window
+ */
+public class RollingFeaturesTest {
+
+    @Test
+    public void features_matchWindowRescan() {
+        int window = 17;
+        int sampleCount = 5000;
+        Random random = new Random(9);
+        float[][] history = new float[sampleCount][RollingFeatures.AXES];
+        RollingFeatures features = new RollingFeatures(window);
+        float[] acc = new float[3];
+        float[] gyro = new float[3];
+
+        for (int n = 0; n < sampleCount; n++) {
+            for (int axis = 0; axis < RollingFeatures.AXES; axis++) {
+                // Offset and drift stress the sliding variance update
+                history[n][axis] = 9.8f * (axis == 2 ? 1 : 0) + (float) Math.sin(n * 0.1 + axis)
+                        + (random.nextFloat() - 0.5f) + n * 1e-4f;
+            }
+            System.arraycopy(history[n], 0, acc, 0, 3);
+            System.arraycopy(history[n], 3, gyro, 0, 3);
+            features.addSample(acc, gyro, n * 20L);
+
+            int from = Math.max(0, n - window + 1);
+            int count = n - from + 1;
+            assertEquals(count, features.getCount());
+            for (int axis = 0; axis < RollingFeatures.AXES; axis++) {
+                double sum = 0;
+                float min = Float.MAX_VALUE;
+                float max = -Float.MAX_VALUE;
+                for (int i = from; i <= n; i++) {
+                    sum += history[i][axis];
+                    min = Math.min(min, history[i][axis]);
+                    max = Math.max(max, history[i][axis]);
+                }
+                double mean = sum / count;
+                double squares = 0;
+                for (int i = from; i <= n; i++) {
+                    squares += (history[i][axis] - mean) * (history[i][axis] - mean);
+                }
+
+                assertEquals("Mean at " + n, mean, features.getMean(axis), 1e-4);
+                assertEquals("Variance at " + n, squares / count, features.getVariance(axis), 1e-4);
+                assertEquals("Min at " + n, min, features.getMin(axis), 0f);
+                assertEquals("Max at " + n, max, features.getMax(axis), 0f);
+            }
+        }
+    }
+
+    @Test
+    public void jerkAndZeroCrossings_trackOscillation() {
+        RollingFeatures features = new RollingFeatures(50);
+        float[] acc = new float[3];
+        float[] gyro = new float[3];
+        // Square wave of +/-1 every 5 samples at 50 Hz
+        for (int n = 0; n < 500; n++) {
+            gyro[0] = (n / 5) % 2 == 0 ? 1 : -1;
+            features.addSample(acc, gyro, n * 20L);
+        }
+
+        // 10 sign changes per 50 samples, each a step of 2 over 0.02 s
+        assertEquals(10, features.getZeroCrossings(3));
+        assertEquals(10 * 2 / 0.02f / 50, features.getJerk(3), 1e-3f);
+        assertEquals(0, features.getZeroCrossings(0));
+    }
+}
@@ -0,0 +1,61 @@
+package com.asiah.formfit.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Checks the int16 representation against the float path
+ */
+public class SensorQuantizerTest {
+
+    private static final int STRIDE = MotionAnalyzer.SAMPLE_STRIDE;
+
+    @Test
+    public void quantize_roundTripsWithinHalfAStep() {
+        SensorQuantizer quantizer = new SensorQuantizer(0.002f, 0.0005f);
+        Random random = new Random(5);
+        for (int i = 0; i < 10000; i++) {
+            int axis = i % STRIDE;
+            float value = (random.nextFloat() - 0.5f) * 2 * quantizer.getRange(axis) * 0.99f;
+            float restored = quantizer.dequantize(quantizer.quantize(value, axis), axis);
+            assertEquals(value, restored, quantizer.getScale(axis) * 0.5f + Math.abs(value) * 1e-6f);
+        }
+    }
+
+    @Test
+    public void scoreBatch_staysWithinDocumentedBound() {
+        SensorQuantizer quantizer = new SensorQuantizer();
+        Random random = new Random(11);
+        int sampleCount = 2000;
+        int referenceCount = 40;
+        float[] samples = new float[sampleCount * STRIDE];
+        float[] references = new float[referenceCount * STRIDE];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (random.nextFloat() - 0.5f) * 30;
+        }
+        for (int i = 0; i < references.length; i++) {
+            references[i] = (random.nextFloat() - 0.5f) * 30;
+        }
+
+        int[] floatIndices = new int[sampleCount];
+        float[] floatSimilarities = new float[sampleCount];
+        MotionAnalyzer.scoreBatch(samples, sampleCount, references, referenceCount,
+                floatIndices, floatSimilarities);
+
+        int[] indices = new int[sampleCount];
+        float[] similarities = new float[sampleCount];
+        quantizer.scoreBatch(quantizer.quantizeSamples(samples, sampleCount), sampleCount,
+                quantizer.quantizeSamples(references, referenceCount), referenceCount, indices, similarities);
+
+        // Allow for float rounding on top of the quantization bound
+        float bound = quantizer.getSimilarityErrorBound() + 1e-5f;
+        assertTrue(bound < 1e-4f);
+        for (int s = 0; s < sampleCount; s++) {
+            assertEquals("Sample " + s, floatSimilarities[s], similarities[s], bound);
+        }
+    }
+}
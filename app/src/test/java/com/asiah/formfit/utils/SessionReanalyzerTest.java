@@ -0,0 +1,128 @@
+package com.asiah.formfit.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.asiah.formfit.model.MotionPattern;
+import com.asiah.formfit.model.RecordedSession;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Checks that parallel re-analysis gives the same report as scoring sessions one by one
+ */
+public class SessionReanalyzerTest {
+
+    private final MotionAnalyzer analyzer = new MotionAnalyzer();
+
+    @Test
+    public void analyze_parallelMatchesSequential() {
+        List<RecordedSession> sessions = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            sessions.add(squatSession(i, 5 + i));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ReanalysisReport parallel = new SessionReanalyzer(analyzer, pool).analyze(sessions);
+
+            ReanalysisReport sequential = new ReanalysisReport();
+            SessionReanalyzer reanalyzer = new SessionReanalyzer(analyzer);
+            long detected = 0;
+            for (RecordedSession session : sessions) {
+                ReanalysisReport single = reanalyzer.analyzeSession(session);
+                detected += countReps(session);
+                sequential.merge(single);
+            }
+
+            assertTrue(detected > 0);
+            assertEquals(12, parallel.getSessionCount());
+            assertEquals(sequential.getSampleCount(), parallel.getSampleCount());
+            assertEquals(sequential.getLabelledSampleCount(), parallel.getLabelledSampleCount());
+            assertEquals(detected, parallel.getDetectedRepetitions());
+            assertEquals(sequential.getMeanRepetitionError(), parallel.getMeanRepetitionError(), 0f);
+            for (int i = 0; i < ReanalysisReport.ERROR_CLASSES; i++) {
+                for (int j = 0; j < ReanalysisReport.PREDICTED_CLASSES; j++) {
+                    assertEquals(sequential.getConfusion(i, j), parallel.getConfusion(i, j));
+                }
+            }
+            assertEquals(0, parallel.getUnclassifiedCount());
+            assertTrue(parallel.getElapsedNanos() > 0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void analyze_reportsRepetitionError() {
+        List<RecordedSession> sessions = new ArrayList<>();
+        long error = 0;
+        for (int i = 0; i < 4; i++) {
+            RecordedSession session = squatSession(20 + i, 8);
+            // Claim a count that is off by i from what the analyzer detects
+            session.setExpectedRepetitions(countReps(session) + i);
+            error += i;
+            sessions.add(session);
+        }
+
+        ReanalysisReport report = new SessionReanalyzer(analyzer).analyze(sessions);
+        assertEquals(error / 4f, report.getMeanRepetitionError(), 1e-6f);
+    }
+
+    @Test
+    public void analyze_exerciseWithoutTemplatesIsUnclassified() {
+        RecordedSession session = squatSession(30, 3);
+        RecordedSession plank = new RecordedSession("plank", MotionAnalyzer.EXERCISE_PLANK,
+                session.getSamples(), session.getTimestamps(), session.getSampleCount());
+        plank.setExpectedErrorTypes(new int[session.getSampleCount()]);
+
+        ReanalysisReport report = new SessionReanalyzer(analyzer).analyzeSession(plank);
+        assertEquals(session.getSampleCount(), report.getUnclassifiedCount());
+        assertEquals(0, report.getConfusion(MotionPattern.ERROR_NONE, MotionPattern.ERROR_NONE));
+        assertEquals(0f, report.getAccuracy(), 0f);
+        assertEquals(0f, report.getFormAccuracy(), 0f);
+    }
+
+    private int countReps(RecordedSession recorded) {
+        MotionSession session = analyzer.newSession(recorded.getExerciseType());
+        float[] acc = new float[3];
+        float[] gyro = new float[3];
+        for (int i = 0; i < recorded.getSampleCount(); i++) {
+            System.arraycopy(recorded.getSamples(), i * RecordedSession.SAMPLE_STRIDE, acc, 0, 3);
+            System.arraycopy(recorded.getSamples(), i * RecordedSession.SAMPLE_STRIDE + 3, gyro, 0, 3);
+            session.addSample(acc, gyro, recorded.getTimestamps()[i]);
+        }
+        return session.getRepetitionCount();
+    }
+
+    /**
+     * Noisy squats at 50 Hz, labelled as good form while standing and too fast while moving
+     */
+    private static RecordedSession squatSession(int seed, int reps) {
+        Random random = new Random(seed);
+        int count = reps * 100;
+        float[] samples = new float[count * RecordedSession.SAMPLE_STRIDE];
+        long[] timestamps = new long[count];
+        int[] labels = new int[count];
+        for (int i = 0; i < count; i++) {
+            float swing = 2.5f * (float) Math.sin(2 * Math.PI * i / 100.0);
+            int base = i * RecordedSession.SAMPLE_STRIDE;
+            samples[base + 1] = swing + (float) random.nextGaussian() * 0.3f;
+            samples[base + 2] = 9.8f + (float) random.nextGaussian() * 0.3f;
+            samples[base + 3] = swing * 0.2f;
+            timestamps[i] = i * 20L;
+            labels[i] = Math.abs(swing) < 1 ? MotionPattern.ERROR_NONE : MotionPattern.ERROR_TOO_FAST;
+        }
+
+        RecordedSession session = new RecordedSession("squat-" + seed, MotionAnalyzer.EXERCISE_SQUAT,
+                samples, timestamps, count);
+        session.setExpectedErrorTypes(labels);
+        session.setExpectedRepetitions(reps);
+        return session;
+    }
+}
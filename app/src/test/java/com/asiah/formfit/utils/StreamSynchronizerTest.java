@@ -0,0 +1,111 @@
+package com.asiah.formfit.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Checks frame alignment and that a lagging device cannot stall the others
+ */
+public class StreamSynchronizerTest {
+
+    private final float[] acc = new float[3];
+    private final float[] gyro = new float[3];
+
+    @Test
+    public void poll_interpolatesBetweenSamples() {
+        StreamSynchronizer synchronizer = new StreamSynchronizer(2, 32, 10, 100);
+        SensorFrame frame = new SensorFrame(2);
+
+        // Device 0 every 20 ms, device 1 every 5 ms offset by 2 ms
+        for (long t = 0; t <= 100; t += 20) {
+            offer(synchronizer, 0, t, t);
+        }
+        for (long t = 2; t <= 102; t += 5) {
+            offer(synchronizer, 1, t, -t);
+        }
+
+        long expected = 2;
+        while (synchronizer.poll(frame)) {
+            assertEquals(expected, frame.getTimestamp());
+            assertFalse(frame.isStale(0));
+            assertFalse(frame.isStale(1));
+            assertEquals(expected, frame.getValue(0, 0), 1e-3f);
+            assertEquals(-expected, frame.getValue(1, 0), 1e-3f);
+            expected += 10;
+        }
+        assertEquals(92, expected - 10);
+    }
+
+    @Test
+    public void poll_doesNotStallWhenDeviceDisconnects() {
+        int capacity = 8;
+        // Far more lag allowed than one ring holds, so only a full ring can end the wait
+        StreamSynchronizer synchronizer = new StreamSynchronizer(2, capacity, 10, 1000);
+        SensorFrame frame = new SensorFrame(2);
+
+        offer(synchronizer, 1, 0, 5);
+        long time = 0;
+        long frames = 0;
+        long lastFrame = Long.MIN_VALUE;
+        for (int round = 0; round < 200; round++) {
+            // Device 1 stops after its first sample; device 0 keeps streaming
+            while (offer(synchronizer, 0, time, time)) {
+                time += 10;
+            }
+            while (synchronizer.poll(frame)) {
+                assertTrue(frame.getTimestamp() > lastFrame);
+                lastFrame = frame.getTimestamp();
+                assertFalse(frame.isStale(0));
+                assertEquals(lastFrame, frame.getValue(0, 0), 1e-3f);
+                frames++;
+            }
+        }
+
+        // Once the ring is full the timeline advances one frame per sample, a ring behind the newest data
+        assertTrue("Only " + frames + " frames", frames >= 190);
+        assertTrue(time - lastFrame <= (capacity + 1) * 10);
+        assertTrue(frame.isStale(1));
+        assertEquals(5f, frame.getValue(1, 0), 0f);
+        assertTrue(synchronizer.getStaleCount(1) > 0);
+    }
+
+    @Test
+    public void poll_startsWithoutDeviceThatNeverConnects() {
+        StreamSynchronizer synchronizer = new StreamSynchronizer(2, 4, 10, 1000);
+        SensorFrame frame = new SensorFrame(2);
+
+        long time = 0;
+        boolean polled = false;
+        for (int round = 0; round < 3 && !polled; round++) {
+            while (offer(synchronizer, 0, time, time)) {
+                time += 10;
+            }
+            polled = synchronizer.poll(frame);
+        }
+        assertTrue(polled);
+        assertEquals(0, frame.getTimestamp());
+        assertTrue(frame.isStale(1));
+        assertFalse(frame.isStale(0));
+    }
+
+    @Test
+    public void offer_rejectsFullRingAndOldSamples() {
+        StreamSynchronizer synchronizer = new StreamSynchronizer(1, 2, 10, 0);
+
+        assertTrue(offer(synchronizer, 0, 10, 1));
+        assertFalse(offer(synchronizer, 0, 10, 1));
+        assertTrue(offer(synchronizer, 0, 20, 2));
+        assertFalse(offer(synchronizer, 0, 30, 3));
+        assertEquals(1, synchronizer.getOutOfOrderCount(0));
+        assertEquals(1, synchronizer.getRejectedCount(0));
+    }
+
+    private boolean offer(StreamSynchronizer synchronizer, int device, long timestamp, float value) {
+        acc[0] = value;
+        gyro[0] = value;
+        return synchronizer.offer(device, timestamp, acc, gyro);
+    }
+}
@@ -0,0 +1,134 @@
+package com.asiah.formfit.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.asiah.formfit.model.MotionPattern;
+import com.asiah.formfit.model.RecordedSession;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks template calibration and the binary template asset round trip
+ */
+public class TemplateCalibratorTest {
+
+    private static final int STRIDE = MotionAnalyzer.SAMPLE_STRIDE;
+
+    private static final float[][] POSES = {
+            {0, 0, 9.8f, 0, 0, 0},
+            {0, -2.0f, 9.5f, 0.5f, 0, 0},
+            {0, -4.0f, 8.0f, 1.0f, 0, 0},
+    };
+
+    @Test
+    public void calibrate_recoversRecordedPosesInOrder() {
+        Random random = new Random(3);
+        int sampleCount = 300;
+        float[] samples = new float[sampleCount * STRIDE];
+        int[] labels = new int[sampleCount];
+        for (int i = 0; i < sampleCount; i++) {
+            float[] pose = POSES[i * POSES.length / sampleCount];
+            for (int d = 0; d < STRIDE; d++) {
+                samples[i * STRIDE + d] = pose[d] + (random.nextFloat() - 0.5f) * 0.1f;
+            }
+        }
+        // Labelled mistakes must not become templates
+        for (int i = 0; i < sampleCount; i += 10) {
+            samples[i * STRIDE + 1] = 15;
+            labels[i] = MotionPattern.ERROR_TOO_FAST;
+        }
+
+        RecordedSession session = new RecordedSession("squat", MotionAnalyzer.EXERCISE_SQUAT,
+                samples, new long[sampleCount], sampleCount);
+        session.setExpectedErrorTypes(labels);
+
+        TemplateCalibrator calibrator = new TemplateCalibrator(POSES.length, 50, 1L);
+        calibrator.addSession(session);
+        ExerciseTemplates templates = calibrator.calibrate(MotionAnalyzer.DEFAULT_INDEX_THRESHOLD)
+                .getTemplates(MotionAnalyzer.EXERCISE_SQUAT);
+
+        assertEquals(POSES.length, templates.size());
+        for (int t = 0; t < POSES.length; t++) {
+            for (int d = 0; d < STRIDE; d++) {
+                assertEquals("Template " + t + " channel " + d, POSES[t][d], templates.getValue(t, d), 0.1f);
+            }
+            assertEquals(MotionPattern.TYPE_CORRECT, templates.getType(t));
+        }
+    }
+
+    @Test
+    public void templateAsset_roundTripsLibrary() throws Exception {
+        ReferenceLibrary library = MotionAnalyzer.createDefaultLibrary();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        TemplateAsset.write(library, output);
+        MotionAnalyzer analyzer = new MotionAnalyzer(new ByteArrayInputStream(output.toByteArray()));
+
+        ReferenceLibrary loaded = analyzer.getReferenceLibrary();
+        assertEquals(library.getExerciseTypes(), loaded.getExerciseTypes());
+        for (int exerciseType : library.getExerciseTypes()) {
+            ExerciseTemplates expected = library.getTemplates(exerciseType);
+            ExerciseTemplates actual = loaded.getTemplates(exerciseType);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.getType(i), actual.getType(i));
+            }
+            assertTrue(Arrays.equals(expected.copyReferences(), actual.copyReferences()));
+        }
+    }
+
+    @Test
+    public void templateAsset_rejectsOverflowingSizes() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        TemplateAsset.write(MotionAnalyzer.createDefaultLibrary(), output);
+        byte[] asset = output.toByteArray();
+        int squatEntry = 12;
+        assertEquals(MotionAnalyzer.EXERCISE_SQUAT, ByteBuffer.wrap(asset).order(ByteOrder.LITTLE_ENDIAN).getInt(squatEntry));
+
+        // A reference count whose block size wraps around in int arithmetic
+        byte[] hugeCount = asset.clone();
+        ByteBuffer.wrap(hugeCount).order(ByteOrder.LITTLE_ENDIAN).putInt(squatEntry + 4, 0x10000000);
+        assertReadFails(hugeCount);
+
+        // An exercise count far beyond the data that follows
+        byte[] hugeTable = asset.clone();
+        ByteBuffer.wrap(hugeTable).order(ByteOrder.LITTLE_ENDIAN).putInt(8, Integer.MAX_VALUE);
+        assertReadFails(hugeTable);
+
+        int squatOffset = ByteBuffer.wrap(asset).order(ByteOrder.LITTLE_ENDIAN).getInt(squatEntry + 8);
+        byte[] truncated = Arrays.copyOf(asset, squatOffset + 10);
+        assertReadFails(truncated);
+    }
+
+    private static void assertReadFails(byte[] asset) {
+        try {
+            TemplateAsset.read(new ByteArrayInputStream(asset), 0);
+            fail("read accepted a corrupt asset");
+        } catch (IOException expected) {
+            // Corruption must surface as IOException so callers fall back
+        }
+        try {
+            TemplateAsset.readTemplates(new ByteArrayInputStream(asset), MotionAnalyzer.EXERCISE_SQUAT, 0);
+            fail("readTemplates accepted a corrupt asset");
+        } catch (IOException expected) {
+            // As above
+        }
+    }
+
+    @Test
+    public void invalidAsset_fallsBackToBuiltInPatterns() {
+        MotionAnalyzer analyzer = new MotionAnalyzer(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        assertEquals(3, analyzer.getReferenceLibrary().getTemplates(MotionAnalyzer.EXERCISE_SQUAT).size());
+    }
+}
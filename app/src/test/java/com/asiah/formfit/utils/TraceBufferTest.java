@@ -0,0 +1,155 @@
+package com.asiah.formfit.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Checks event contents and that concurrent writers and dumps never pair one event's sequence with another's fields
+ */
+public class TraceBufferTest {
+
+    // Codes outside EVENT_NAMES, so other tests' events are easy to tell apart
+    private static final int TEST_CODE = 1000;
+    private static final int WRITER_CODE = 2000;
+
+    @Before
+    public void setUp() {
+        assumeTrue(TraceBuffer.ENABLED);
+    }
+
+    @Test
+    public void dump_writesLatestEventsOldestFirst() throws IOException {
+        long recorded = TraceBuffer.getRecordedCount();
+        int events = TraceBuffer.CAPACITY + 100;
+        for (int i = 0; i < events; i++) {
+            TraceBuffer.record(TEST_CODE, i, i * 0.5f);
+        }
+        assertEquals(recorded + events, TraceBuffer.getRecordedCount());
+
+        StringWriter out = new StringWriter();
+        assertEquals(TraceBuffer.CAPACITY, TraceBuffer.dump(out));
+        String[] lines = out.toString().split("\n");
+        assertEquals(TraceBuffer.CAPACITY, lines.length);
+        long previousTime = Long.MIN_VALUE;
+        for (int i = 0; i < lines.length; i++) {
+            String[] fields = lines[i].trim().split(" ");
+            int expected = events - TraceBuffer.CAPACITY + i;
+            assertEquals("event_" + TEST_CODE, fields[1]);
+            assertEquals("arg=" + expected, fields[2]);
+            assertEquals(expected * 0.5f, Float.parseFloat(fields[3].substring("value=".length())), 1e-4f);
+            long time = Long.parseLong(fields[0]);
+            assertTrue(time >= previousTime);
+            previousTime = time;
+        }
+    }
+
+    @Test
+    public void record_keepsLongArguments() throws IOException {
+        long id = 5_000_000_000L;
+        TraceBuffer.record(TraceBuffer.EVENT_DATA_USER_ID_SET, id);
+
+        StringWriter out = new StringWriter();
+        TraceBuffer.dump(out);
+        assertTrue(out.toString().contains("user_id_set arg=" + id + " "));
+    }
+
+    @Test
+    public void concurrentWritersAndDumps_neverTearEvents() throws Exception {
+        final int writers = Runtime.getRuntime().availableProcessors() * 2 + 2;
+        final int perWriter = 200000;
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<String> problem = new AtomicReference<>();
+
+        Thread[] threads = new Thread[writers];
+        for (int t = 0; t < writers; t++) {
+            final int writer = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perWriter; i++) {
+                        // Argument and value both identify the event
+                        TraceBuffer.record(WRITER_CODE + writer, i, i);
+                    }
+                }
+            });
+        }
+        Thread dumper = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long lines = 0;
+                while (!done.get() || lines == 0) {
+                    StringWriter out = new StringWriter();
+                    try {
+                        TraceBuffer.dump(out);
+                    } catch (IOException e) {
+                        problem.compareAndSet(null, e.toString());
+                        return;
+                    }
+                    String error = check(out.toString(), writers);
+                    if (error != null) {
+                        problem.compareAndSet(null, error);
+                        return;
+                    }
+                    lines += out.getBuffer().length();
+                }
+            }
+        });
+
+        dumper.start();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        done.set(true);
+        dumper.join();
+
+        assertEquals(null, problem.get());
+        assertEquals(null, check(dumpAll(), writers));
+    }
+
+    /**
+     * Each writer's events must be whole and, since sequences follow each writer's order, ascending
+     * @return Description of the first problem, or null
+     */
+    private static String check(String dump, int writers) {
+        long[] last = new long[writers];
+        java.util.Arrays.fill(last, -1);
+        for (String line : dump.split("\n")) {
+            String[] fields = line.trim().split(" ");
+            if (fields.length < 4 || !fields[1].startsWith("event_")) {
+                continue;
+            }
+            int writer = Integer.parseInt(fields[1].substring("event_".length())) - WRITER_CODE;
+            if (writer < 0 || writer >= writers) {
+                continue;
+            }
+            long arg = Long.parseLong(fields[2].substring("arg=".length()));
+            float value = Float.parseFloat(fields[3].substring("value=".length()));
+            if (value != (float) arg) {
+                return "Torn event: " + line;
+            }
+            if (arg <= last[writer]) {
+                return "Writer " + writer + " event " + arg + " listed after " + last[writer];
+            }
+            last[writer] = arg;
+        }
+        return null;
+    }
+
+    private static String dumpAll() throws IOException {
+        StringWriter out = new StringWriter();
+        TraceBuffer.dump(out);
+        return out.toString();
+    }
+}
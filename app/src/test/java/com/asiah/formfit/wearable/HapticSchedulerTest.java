@@ -0,0 +1,194 @@
+package com.asiah.formfit.wearable;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.asiah.formfit.utils.FeedbackBus;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Drives the haptic scheduler with explicit times and records each radio write
+ */
+public class HapticSchedulerTest {
+
+    /**
+     * Controller that keeps every batch it is asked to send
+     */
+    private static class RecordingController implements WearableController {
+
+        final List<int[]> writes = new ArrayList<>();
+
+        @Override
+        public void sendHapticBatch(int device, int[] types, int count) {
+            writes.add(Arrays.copyOf(types, count));
+        }
+
+        @Override
+        public void sendHapticFeedback(int type) {
+            sendHapticBatch(0, new int[]{type}, 1);
+        }
+
+        @Override
+        public void startListening() {
+        }
+
+        @Override
+        public void stopListening() {
+        }
+
+        @Override
+        public void setSensorDataListener(SensorDataListener listener) {
+        }
+
+        @Override
+        public void simulateSensorData(int exerciseType) {
+        }
+    }
+
+    private RecordingController controller;
+    private HapticScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        controller = new RecordingController();
+        scheduler = new HapticScheduler(controller, 2);
+    }
+
+    @Test
+    public void flush_sendsQueueInOneWriteMostSevereFirst() {
+        scheduler.request(0, 1, HapticScheduler.SEVERITY_INFO, 0);
+        scheduler.request(0, 2, HapticScheduler.SEVERITY_SAFETY, 1);
+        scheduler.request(0, 3, HapticScheduler.SEVERITY_TECHNIQUE, 2);
+
+        assertEquals(3, scheduler.flush(10));
+        assertEquals(1, controller.writes.size());
+        assertArrayEquals(new int[]{2, 3, 1}, controller.writes.get(0));
+        assertEquals(0, scheduler.getPendingCount(0));
+        assertEquals(1, scheduler.getWriteCount());
+        assertEquals(3, scheduler.getSentCount());
+    }
+
+    @Test
+    public void request_dropsDuplicatesUntilRepeatIntervalPasses() {
+        assertTrue(scheduler.request(0, 5, HapticScheduler.SEVERITY_TECHNIQUE, 0));
+        assertFalse(scheduler.request(0, 5, HapticScheduler.SEVERITY_TECHNIQUE, 5));
+        scheduler.flush(10);
+
+        // Sent at 10, so the same type is a duplicate until 10 + repeat interval
+        long repeat = HapticScheduler.DEFAULT_REPEAT_INTERVAL_MS;
+        assertFalse(scheduler.request(0, 5, HapticScheduler.SEVERITY_TECHNIQUE, 10 + repeat - 1));
+        assertTrue(scheduler.request(0, 5, HapticScheduler.SEVERITY_TECHNIQUE, 10 + repeat));
+
+        // Other devices keep their own history
+        assertTrue(scheduler.request(1, 5, HapticScheduler.SEVERITY_TECHNIQUE, 20));
+        assertEquals(2, scheduler.getDuplicateCount());
+    }
+
+    @Test
+    public void flush_keepsMinimumIntervalBetweenWrites() {
+        long interval = HapticScheduler.DEFAULT_MIN_WRITE_INTERVAL_MS;
+        scheduler.request(0, 1, HapticScheduler.SEVERITY_TECHNIQUE, 0);
+        assertEquals(1, scheduler.flush(0));
+
+        scheduler.request(0, 2, HapticScheduler.SEVERITY_TECHNIQUE, 10);
+        assertEquals(0, scheduler.flush(interval - 1));
+        assertEquals(1, scheduler.getPendingCount(0));
+        assertEquals(1, scheduler.flush(interval));
+        assertEquals(2, controller.writes.size());
+    }
+
+    @Test
+    public void flush_limitsPulsesWithTokenBucket() {
+        scheduler.setRateLimit(2, 1000);
+        scheduler.setMinWriteInterval(0);
+        scheduler.setMaxAge(10000);
+        for (int type = 0; type < 4; type++) {
+            scheduler.request(0, type, HapticScheduler.SEVERITY_TECHNIQUE, 0);
+        }
+
+        assertEquals(2, scheduler.flush(0));
+        assertEquals(2, scheduler.getPendingCount(0));
+        assertEquals(0, scheduler.flush(999));
+        assertEquals(1, scheduler.flush(1000));
+        assertEquals(1, scheduler.flush(2000));
+        assertArrayEquals(new int[]{0, 1}, controller.writes.get(0));
+        assertArrayEquals(new int[]{2}, controller.writes.get(1));
+        assertArrayEquals(new int[]{3}, controller.writes.get(2));
+    }
+
+    @Test
+    public void flush_sendsSafetyWithoutToken() {
+        scheduler.setRateLimit(1, 100000);
+        scheduler.setMinWriteInterval(0);
+        scheduler.request(0, 1, HapticScheduler.SEVERITY_TECHNIQUE, 0);
+        assertEquals(1, scheduler.flush(0));
+
+        scheduler.request(0, 2, HapticScheduler.SEVERITY_TECHNIQUE, 1);
+        scheduler.request(0, 3, HapticScheduler.SEVERITY_SAFETY, 1);
+        assertEquals(1, scheduler.flush(1));
+        assertArrayEquals(new int[]{3}, controller.writes.get(1));
+        assertEquals(1, scheduler.getPendingCount(0));
+    }
+
+    @Test
+    public void flush_discardsRequestsOlderThanMaxAge() {
+        scheduler.setRateLimit(1, 100000);
+        scheduler.setMinWriteInterval(0);
+        scheduler.request(0, 1, HapticScheduler.SEVERITY_TECHNIQUE, 0);
+        scheduler.request(0, 2, HapticScheduler.SEVERITY_TECHNIQUE, 0);
+        assertEquals(1, scheduler.flush(0));
+
+        // The second request never gets a token and expires
+        long maxAge = HapticScheduler.DEFAULT_MAX_AGE_MS;
+        assertEquals(0, scheduler.flush(maxAge));
+        assertEquals(1, scheduler.getPendingCount(0));
+        assertEquals(0, scheduler.flush(maxAge + 1));
+        assertEquals(0, scheduler.getPendingCount(0));
+        assertEquals(1, scheduler.getExpiredCount());
+    }
+
+    @Test
+    public void request_fullQueueKeepsMostSevere() {
+        for (int type = 0; type < HapticScheduler.MAX_PENDING; type++) {
+            int severity = type == 0 ? HapticScheduler.SEVERITY_INFO : HapticScheduler.SEVERITY_TECHNIQUE;
+            assertTrue(scheduler.request(0, type, severity, type));
+        }
+
+        // Not more severe than anything queued: rejected, nothing displaced
+        assertFalse(scheduler.request(0, 10, HapticScheduler.SEVERITY_INFO, 10));
+        assertEquals(1, scheduler.getRejectedCount());
+        assertEquals(0, scheduler.getDisplacedCount());
+
+        // More severe: the info request makes room
+        assertTrue(scheduler.request(0, 11, HapticScheduler.SEVERITY_SAFETY, 11));
+        assertEquals(1, scheduler.getDisplacedCount());
+        assertEquals(2, scheduler.getSuppressedCount());
+
+        // The safety pulse spends one of the three tokens, so the newest technique request waits
+        assertEquals(3, scheduler.flush(20));
+        assertArrayEquals(new int[]{11, 1, 2}, controller.writes.get(0));
+        assertEquals(scheduler.getRequestedCount(),
+                scheduler.getSentCount() + scheduler.getSuppressedCount() + scheduler.getPendingCount(0));
+    }
+
+    @Test
+    public void requestFeedback_usesFeedbackPriority() {
+        scheduler.setRateLimit(1, 100000);
+        assertFalse(scheduler.requestFeedback(0, FeedbackBus.FEEDBACK_NONE, 0));
+        assertTrue(scheduler.requestFeedback(0, FeedbackBus.FEEDBACK_SQUAT_DEEPER, 0));
+        assertTrue(scheduler.requestFeedback(0, FeedbackBus.FEEDBACK_SLOW_DOWN, 0));
+
+        // One token: the safety code goes first and spends it, so the technique code waits
+        assertEquals(1, scheduler.flush(0));
+        assertArrayEquals(new int[]{FeedbackBus.FEEDBACK_SLOW_DOWN}, controller.writes.get(0));
+        assertEquals(1, scheduler.getPendingCount(0));
+    }
+}
@@ -0,0 +1,82 @@
+package com.asiah.formfit.wearable;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.asiah.formfit.model.MotionPattern;
+import com.asiah.formfit.utils.MotionAnalyzer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that the default batch adapter delivers each sample as a single callback would
+ */
+public class SensorDataListenerTest {
+
+    private static final int STRIDE = MotionAnalyzer.SAMPLE_STRIDE;
+
+    /**
+     * Listener that only implements the per-sample callback and copies what it receives
+     */
+    private static class SampleListener implements SensorDataListener {
+
+        final List<float[]> values = new ArrayList<>();
+        final List<Long> timestamps = new ArrayList<>();
+        final List<MotionPattern> patterns = new ArrayList<>();
+
+        @Override
+        public void onMotionDataReceived(MotionPattern motionPattern) {
+            float[] sample = new float[STRIDE];
+            System.arraycopy(motionPattern.getAccelerationData(), 0, sample, 0, 3);
+            System.arraycopy(motionPattern.getGyroscopeData(), 0, sample, 3, 3);
+            values.add(sample);
+            timestamps.add(motionPattern.getTimestamp());
+            patterns.add(motionPattern);
+        }
+
+        @Override
+        public void onHeartRateReceived(float heartRate) {
+        }
+
+        @Override
+        public void onWearableError(String errorMessage) {
+        }
+    }
+
+    @Test
+    public void onMotionDataBatch_deliversEverySampleInOrder() {
+        int count = 7;
+        // One spare sample at the end that is not part of the batch
+        float[] samples = new float[(count + 1) * STRIDE];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = i * 0.5f - 3;
+        }
+
+        SampleListener listener = new SampleListener();
+        listener.onMotionDataBatch(samples, count, 1000, 20f / 3);
+
+        assertEquals(count, listener.values.size());
+        for (int i = 0; i < count; i++) {
+            float[] expected = new float[STRIDE];
+            System.arraycopy(samples, i * STRIDE, expected, 0, STRIDE);
+            assertArrayEquals("Sample " + i, expected, listener.values.get(i), 0f);
+            // 150 Hz: timestamps are rounded to the nearest millisecond, not truncated
+            assertEquals(1000 + Math.round(i * 20f / 3), (long) listener.timestamps.get(i));
+            // One pattern is reused for the whole batch
+            assertSame(listener.patterns.get(0), listener.patterns.get(i));
+        }
+        assertEquals(1007, (long) listener.timestamps.get(1));
+        assertEquals(1040, (long) listener.timestamps.get(6));
+    }
+
+    @Test
+    public void onMotionDataBatch_emptyBatchDeliversNothing() {
+        SampleListener listener = new SampleListener();
+        listener.onMotionDataBatch(new float[0], 0, 1000, 5f);
+        assertEquals(0, listener.values.size());
+    }
+}
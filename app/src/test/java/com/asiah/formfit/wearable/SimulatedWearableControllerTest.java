@@ -0,0 +1,106 @@
+package com.asiah.formfit.wearable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.asiah.formfit.model.MotionPattern;
+import com.asiah.formfit.utils.MotionAnalyzer;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Checks that the simulator's output depends only on its seed and settings
+ */
+public class SimulatedWearableControllerTest {
+
+    private static final int STRIDE = MotionAnalyzer.SAMPLE_STRIDE;
+
+    @Test
+    public void generate_sameSeedGivesSameSamples() {
+        long[] first = record(42, 1);
+        long[] second = record(42, 1);
+
+        assertTrue(first.length > 10000);
+        assertTrue("Runs with the same seed differ", Arrays.equals(first, second));
+        assertFalse("Seed has no effect", Arrays.equals(first, record(43, 1)));
+    }
+
+    @Test
+    public void generate_batchingDoesNotChangeSamples() {
+        assertTrue(Arrays.equals(record(7, 1), record(7, 16)));
+    }
+
+    @Test
+    public void generate_countsInjectedFaults() {
+        SimulatedWearableController simulator = configure(new SimulatedWearableController(3), 1);
+        long delivered = simulator.generate(0, 60000);
+
+        long nominal = 2 * 60 * 200;
+        assertEquals(delivered, simulator.getEmittedCount());
+        assertEquals(nominal, delivered + simulator.getDroppedCount() - simulator.getDuplicatedCount());
+        assertTrue(simulator.getDroppedCount() > 0);
+        assertTrue(simulator.getDuplicatedCount() > 0);
+        long errors = 0;
+        for (int error = 0; error < 5; error++) {
+            errors += simulator.getInjectedErrorCount(error);
+        }
+        assertTrue(errors > 0);
+    }
+
+    // Flattens every delivered sample to timestamp and raw value bits, device by device;
+    // batches change how devices interleave, not what each one delivers
+    private static long[] record(long seed, int batchSize) {
+        SimulatedWearableController simulator = configure(new SimulatedWearableController(seed), batchSize);
+        final long[][] samples = {new long[4096], new long[4096]};
+        final int[] size = {0, 0};
+        simulator.setDeviceListener(new SimulatedWearableController.DeviceListener() {
+            @Override
+            public void onDeviceSample(int device, MotionPattern sample) {
+                add(device, sample.getTimestamp(), sample.getAccelerationData(), sample.getGyroscopeData());
+            }
+
+            @Override
+            public void onDeviceBatch(int device, float[] batch, int count, long firstTimestamp,
+                                      float intervalMillis) {
+                float[] acc = new float[3];
+                float[] gyro = new float[3];
+                for (int i = 0; i < count; i++) {
+                    System.arraycopy(batch, i * STRIDE, acc, 0, 3);
+                    System.arraycopy(batch, i * STRIDE + 3, gyro, 0, 3);
+                    add(device, firstTimestamp + Math.round(i * intervalMillis), acc, gyro);
+                }
+            }
+
+            private void add(int device, long timestamp, float[] acc, float[] gyro) {
+                if (size[device] + 7 > samples[device].length) {
+                    samples[device] = Arrays.copyOf(samples[device], samples[device].length * 2);
+                }
+                long[] out = samples[device];
+                out[size[device]++] = timestamp;
+                for (int axis = 0; axis < 3; axis++) {
+                    out[size[device]++] = Float.floatToRawIntBits(acc[axis]);
+                    out[size[device]++] = Float.floatToRawIntBits(gyro[axis]);
+                }
+            }
+        });
+        simulator.generate(1000, 30000);
+
+        long[] all = Arrays.copyOf(samples[0], size[0] + size[1]);
+        System.arraycopy(samples[1], 0, all, size[0], size[1]);
+        return all;
+    }
+
+    private static SimulatedWearableController configure(SimulatedWearableController simulator, int batchSize) {
+        simulator.setDeviceCount(2);
+        simulator.setSampleRate(200);
+        simulator.setExerciseType(MotionAnalyzer.EXERCISE_SQUAT);
+        simulator.setErrorRate(0.3f);
+        simulator.setDropouts(0.01f, 5);
+        simulator.setDuplicateRate(0.01f);
+        simulator.setBatchSize(batchSize);
+        return simulator;
+    }
+}